@@ -0,0 +1,158 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2007 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.management.runtime;
+
+import java.util.Date;
+
+/**
+ * Tracks how often an event, such as a message being serviced or pushed, has
+ * occurred for a management control. Recording an event only bumps a
+ * <code>StripedCounter</code> and, at most once per millisecond, a monotonic
+ * timestamp; the <code>Date</code> and rate values exposed over JMX are only
+ * computed when they are read.
+ *
+ * The frequency is the number of events per minute over roughly the last
+ * minute. Each read may store a snapshot of the count, and the rate is taken
+ * against the newest snapshot that is at least a minute old; until a minute has
+ * passed since the metric was created or reset it is the count so far, per minute.
+ * If reads are further apart than a minute the rate covers the time since the
+ * previous read.
+ */
+public class EventMetric
+{
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long WINDOW_NANOS = 60000L * NANOS_PER_MILLI;
+    private static final long SNAPSHOT_INTERVAL_NANOS = 5000L * NANOS_PER_MILLI;
+    private static final int MAX_SNAPSHOTS = (int)(WINDOW_NANOS / SNAPSHOT_INTERVAL_NANOS) + 2;
+
+    // Anchors used to render the monotonic timestamps as wall clock dates.
+    private final long baseMillis;
+    private final long baseNanos;
+
+    private final StripedCounter count = new StripedCounter();
+
+    // Nanos since baseNanos, plus one, of the last event; 0 when there has been none.
+    private volatile long lastEventOffset;
+
+    // Snapshots of (nanos, count) taken on reads, oldest first, guarded by this.
+    private final long[] snapshotNanos = new long[MAX_SNAPSHOTS];
+    private final long[] snapshotCounts = new long[MAX_SNAPSHOTS];
+    private int snapshotStart;
+    private int snapshotSize;
+
+    /**
+     * Constructs a new <code>EventMetric</code> with no events recorded.
+     */
+    public EventMetric()
+    {
+        baseMillis = System.currentTimeMillis();
+        baseNanos = System.nanoTime();
+        reset();
+    }
+
+    /**
+     * Records a single event.
+     */
+    public void record()
+    {
+        count.increment();
+        long offset = System.nanoTime() - baseNanos + 1;
+        long last = lastEventOffset;
+        if (last == 0 || offset - last >= NANOS_PER_MILLI)
+            lastEventOffset = offset;
+    }
+
+    /**
+     * Returns the number of events recorded since the metric was created or reset.
+     *
+     * @return The number of events.
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Returns the time of the last recorded event, to the millisecond.
+     *
+     * @return The time of the last event, or <code>null</code> if there has been none.
+     */
+    public Date getLastEventTimestamp()
+    {
+        long offset = lastEventOffset;
+        return offset == 0 ? null : new Date(baseMillis + (offset - 1) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Returns the number of events per minute over roughly the last minute.
+     *
+     * @return The number of events per minute.
+     */
+    public synchronized double getFrequency()
+    {
+        long now = System.nanoTime();
+        long current = count.sum();
+        if (current == 0)
+            return 0d;
+
+        // Pick the newest snapshot that is at least a window old, falling back to the oldest.
+        int base = snapshotStart;
+        for (int i = 1; i < snapshotSize; i++)
+        {
+            int index = (snapshotStart + i) % MAX_SNAPSHOTS;
+            if (now - snapshotNanos[index] < WINDOW_NANOS)
+                break;
+            base = index;
+        }
+        long baseTime = snapshotNanos[base];
+        long baseCount = snapshotCounts[base];
+
+        int newest = (snapshotStart + snapshotSize - 1) % MAX_SNAPSHOTS;
+        if (now - snapshotNanos[newest] >= SNAPSHOT_INTERVAL_NANOS)
+            addSnapshot(now, current);
+
+        double minutes = (double)(now - baseTime) / WINDOW_NANOS;
+        return (current - baseCount) / (minutes > 1d ? minutes : 1d);
+    }
+
+    /**
+     * Clears the count, the last event timestamp and the rate history.
+     */
+    public synchronized void reset()
+    {
+        count.reset();
+        lastEventOffset = 0;
+        snapshotStart = 0;
+        snapshotSize = 0;
+        addSnapshot(System.nanoTime(), 0);
+    }
+
+    private void addSnapshot(long nanos, long value)
+    {
+        if (snapshotSize == MAX_SNAPSHOTS)
+        {
+            snapshotStart = (snapshotStart + 1) % MAX_SNAPSHOTS;
+            snapshotSize--;
+        }
+        int index = (snapshotStart + snapshotSize) % MAX_SNAPSHOTS;
+        snapshotNanos[index] = nanos;
+        snapshotCounts[index] = value;
+        snapshotSize++;
+    }
+}
@@ -0,0 +1,189 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2007 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.management.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free latency histogram in the style of HdrHistogram.
+ * Values are nanoseconds and are counted in log-linear buckets: every power of
+ * two is split into <code>SUB_BUCKET_COUNT</code> linear sub-buckets, so a
+ * recorded value is reported to within about 3% of its actual value. Values
+ * above roughly 18 minutes are counted in the highest bucket.
+ *
+ * Recording is a bucket index computation and an atomic increment; percentiles
+ * are only computed when a <code>Snapshot</code> is taken.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 35; // 2^40 ns, a little over 18 minutes.
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT * (MAX_EXPONENT + 2);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos The latency in nanoseconds; negative values are ignored.
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            return;
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+            max = maxNanos.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with a reset may
+     * be partially kept.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts.set(i, 0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Returns a consistent-enough copy of the histogram for computing percentiles.
+     *
+     * @return A snapshot of the histogram.
+     */
+    public Snapshot getSnapshot()
+    {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalNanos.get(), maxNanos.get());
+    }
+
+    static int bucketIndex(long nanos)
+    {
+        if (nanos < SUB_BUCKET_COUNT)
+            return (int)nanos;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        if (exponent > MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+        int subBucket = (int)(nanos >>> exponent) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + exponent * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value that is counted in the bucket.
+     */
+    static long highestValueInBucket(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long)(SUB_BUCKET_COUNT + subBucket + 1) << exponent) - 1;
+    }
+
+    /**
+     * An immutable copy of a <code>LatencyHistogram</code>.
+     */
+    public static class Snapshot
+    {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long count, long totalNanos, long maxNanos)
+        {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         *
+         * @return The number of recorded values.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the mean of the recorded values in nanoseconds.
+         *
+         * @return The mean, or 0 if nothing has been recorded.
+         */
+        public double getMean()
+        {
+            return count == 0 ? 0d : (double)totalNanos / count;
+        }
+
+        /**
+         * Returns the largest recorded value in nanoseconds.
+         *
+         * @return The largest recorded value.
+         */
+        public long getMax()
+        {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the value at the given percentile in nanoseconds.
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return The value at or below which the given percentage of values fall,
+         * or 0 if nothing has been recorded.
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            if (count == 0)
+                return 0;
+
+            double p = Math.min(Math.max(percentile, 0d), 100d);
+            long rank = Math.max(1, (long)Math.ceil(p / 100d * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(highestValueInBucket(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+}
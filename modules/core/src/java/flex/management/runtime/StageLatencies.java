@@ -0,0 +1,113 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2007 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.management.runtime;
+
+/**
+ * A set of named <code>LatencyHistogram</code>s, one for each stage of
+ * processing that a management control reports on. Stages are addressed by
+ * index when recording and by name when read over JMX.
+ */
+public class StageLatencies
+{
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final String[] stages;
+    private final LatencyHistogram[] histograms;
+
+    /**
+     * Constructs a histogram for each of the given stages.
+     *
+     * @param stages The stage names, in index order.
+     */
+    public StageLatencies(String[] stages)
+    {
+        this.stages = stages;
+        histograms = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Records a latency for the stage.
+     *
+     * @param stage The index of the stage.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(int stage, long nanos)
+    {
+        histograms[stage].record(nanos);
+    }
+
+    /**
+     * Returns the latency of the named stage at the given percentile.
+     *
+     * @param stage The stage name.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in milliseconds, or <code>null</code> for an unknown stage.
+     */
+    public Double getPercentileMillis(String stage, double percentile)
+    {
+        for (int i = 0; i < stages.length; i++)
+        {
+            if (stages[i].equals(stage))
+                return new Double(histograms[i].getSnapshot().getValueAtPercentile(percentile) / NANOS_PER_MILLI);
+        }
+        return null;
+    }
+
+    /**
+     * Returns one line per stage with the count, mean, common percentiles and
+     * maximum of its latencies in milliseconds.
+     *
+     * @return The percentile summaries.
+     */
+    public String[] getPercentileSummaries()
+    {
+        String[] result = new String[stages.length];
+        for (int i = 0; i < stages.length; i++)
+        {
+            LatencyHistogram.Snapshot snapshot = histograms[i].getSnapshot();
+            StringBuffer buffer = new StringBuffer(stages[i]);
+            buffer.append(": count=").append(snapshot.getCount());
+            appendMillis(buffer, " mean=", snapshot.getMean());
+            appendMillis(buffer, " p50=", snapshot.getValueAtPercentile(50d));
+            appendMillis(buffer, " p90=", snapshot.getValueAtPercentile(90d));
+            appendMillis(buffer, " p99=", snapshot.getValueAtPercentile(99d));
+            appendMillis(buffer, " p99.9=", snapshot.getValueAtPercentile(99.9d));
+            appendMillis(buffer, " max=", snapshot.getMax());
+            result[i] = buffer.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Clears the histograms of all stages.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i].reset();
+    }
+
+    private static void appendMillis(StringBuffer buffer, String label, double nanos)
+    {
+        // Three decimals, i.e. microsecond resolution.
+        buffer.append(label).append(Math.round(nanos / 1000d) / 1000d).append("ms");
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2007 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.management.runtime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A long counter for metrics that are updated on every message. Updates are
+ * spread over a small number of cells, each on its own cache line, chosen by
+ * the updating thread, so concurrent threads rarely contend for the same cell.
+ * Reading the counter sums the cells, which is only done when a management
+ * client asks for the value.
+ *
+ * A <code>reset()</code> that races with updates may lose the updates that
+ * land on a cell before it is cleared; updates are never counted twice.
+ */
+public final class StripedCounter
+{
+    // Cells are spaced this many longs apart so each sits on its own cache line.
+    private static final int CELL_SPACING = 8;
+    private static final int MAX_CELLS = 64;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Constructs a counter sized for the number of available processors.
+     */
+    public StripedCounter()
+    {
+        int processors = Runtime.getRuntime().availableProcessors() * 2;
+        int size = 1;
+        while (size < processors && size < MAX_CELLS)
+            size <<= 1;
+        cells = new AtomicLongArray(size * CELL_SPACING);
+        mask = size - 1;
+    }
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment()
+    {
+        add(1);
+    }
+
+    /**
+     * Adds the given amount to the counter.
+     *
+     * @param amount The amount to add.
+     */
+    public void add(long amount)
+    {
+        cells.addAndGet(cellIndex(), amount);
+    }
+
+    /**
+     * Returns the current value of the counter.
+     *
+     * @return The sum of all cells.
+     */
+    public long sum()
+    {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += CELL_SPACING)
+            sum += cells.get(i);
+        return sum;
+    }
+
+    /**
+     * Resets the counter to zero.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < cells.length(); i += CELL_SPACING)
+            cells.set(i, 0);
+    }
+
+    private int cellIndex()
+    {
+        long id = Thread.currentThread().getId();
+        int h = (int)(id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return (h & mask) * CELL_SPACING;
+    }
+}
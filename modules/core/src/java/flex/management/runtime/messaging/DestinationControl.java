@@ -21,9 +21,11 @@ package flex.management.runtime.messaging;
 import java.util.Date;
 
 import flex.management.BaseControl;
+import flex.management.runtime.StageLatencies;
 import flex.management.runtime.messaging.services.ServiceControl;
 import flex.messaging.Destination;
 import flex.messaging.services.ServiceAdapter;
+import flex.messaging.util.Bulkhead;
 
 import javax.management.ObjectName;
 
@@ -36,8 +38,21 @@ import javax.management.ObjectName;
 public abstract class DestinationControl extends BaseControl implements
         DestinationControlMBean
 {
+    /**
+     * Index of the stage covering <code>Service.serviceMessage()</code> for the destination.
+     */
+    public static final int STAGE_SERVICE = 0;
+
+    /**
+     * Index of the stage covering the adapter invocation for the destination.
+     */
+    public static final int STAGE_ADAPTER = 1;
+
+    private static final String[] STAGES = {"service", "adapter"};
+
     protected Destination destination;
     private ObjectName adapter;
+    private final StageLatencies stageLatencies = new StageLatencies(STAGES);
         
     /**
      * Constructs a new <code>DestinationControl</code> instance.
@@ -96,7 +111,75 @@ public abstract class DestinationControl extends BaseControl implements
     {
         return startTimestamp;
     }
+
+    /**
+     * Records how long a stage of processing a message for the destination took.
+     *
+     * @param stage <code>STAGE_SERVICE</code> or <code>STAGE_ADAPTER</code>.
+     * @param nanos The time the stage took, in nanoseconds.
+     */
+    public void recordStageLatency(int stage, long nanos)
+    {
+        stageLatencies.record(stage, nanos);
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.DestinationControlMBean#getStageLatencyPercentiles()
+     */
+    public String[] getStageLatencyPercentiles()
+    {
+        return stageLatencies.getPercentileSummaries();
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.DestinationControlMBean#getStageLatencyPercentile(java.lang.String, java.lang.Double)
+     */
+    public Double getStageLatencyPercentile(String stage, Double percentile)
+    {
+        return percentile == null ? null : stageLatencies.getPercentileMillis(stage, percentile.doubleValue());
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.DestinationControlMBean#resetStageLatencies()
+     */
+    public void resetStageLatencies()
+    {
+        stageLatencies.reset();
+    }
         
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.DestinationControlMBean#getBulkheadActiveCount()
+     */
+    public Integer getBulkheadActiveCount()
+    {
+        Bulkhead bulkhead = destination.getBulkhead();
+        return bulkhead == null ? null : new Integer(bulkhead.getActiveCount());
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.DestinationControlMBean#getBulkheadWaitingCount()
+     */
+    public Integer getBulkheadWaitingCount()
+    {
+        Bulkhead bulkhead = destination.getBulkhead();
+        return bulkhead == null ? null : new Integer(bulkhead.getWaitingCount());
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.DestinationControlMBean#getBulkheadRejectedCount()
+     */
+    public Long getBulkheadRejectedCount()
+    {
+        Bulkhead bulkhead = destination.getBulkhead();
+        return bulkhead == null ? null : new Long(bulkhead.getRejectedCount());
+    }
+
     /*
      *  (non-Javadoc)
      * @see javax.management.MBeanRegistration#preDeregister()
@@ -56,4 +56,55 @@ public interface DestinationControlMBean extends BaseControlMBean
      * @throws IOException Throws IOException.
      */
     Date getStartTimestamp() throws IOException;
+
+    /**
+     * Returns one summary line per stage of message processing (service and adapter) with the count, mean, 50th, 90th, 99th
+     * and 99.9th percentile and maximum latency in milliseconds since the
+     * destination started or the latencies were last reset.
+     *
+     * @return The latency percentile summaries.
+     * @throws IOException Throws IOException.
+     */
+    String[] getStageLatencyPercentiles() throws IOException;
+
+    /**
+     * Returns the latency of a stage of message processing at the given percentile.
+     *
+     * @param stage The name of the stage, as listed by <code>getStageLatencyPercentiles()</code>.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in milliseconds, or <code>null</code> for an unknown stage.
+     * @throws IOException Throws IOException.
+     */
+    Double getStageLatencyPercentile(String stage, Double percentile) throws IOException;
+
+    /**
+     * Resets the latency histograms of all stages.
+     *
+     * @throws IOException Throws IOException.
+     */
+    void resetStageLatencies() throws IOException;
+
+    /**
+     * Returns the number of messages the destination's bulkhead is currently letting through.
+     *
+     * @return The number of active messages, or <code>null</code> if the destination has no bulkhead.
+     * @throws IOException Throws IOException.
+     */
+    Integer getBulkheadActiveCount() throws IOException;
+
+    /**
+     * Returns the number of messages waiting to enter the destination's bulkhead.
+     *
+     * @return The number of waiting messages, or <code>null</code> if the destination has no bulkhead.
+     * @throws IOException Throws IOException.
+     */
+    Integer getBulkheadWaitingCount() throws IOException;
+
+    /**
+     * Returns the number of messages the destination's bulkhead has rejected.
+     *
+     * @return The number of rejected messages, or <code>null</code> if the destination has no bulkhead.
+     * @throws IOException Throws IOException.
+     */
+    Long getBulkheadRejectedCount() throws IOException;
 }
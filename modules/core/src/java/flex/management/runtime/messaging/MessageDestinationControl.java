@@ -22,6 +22,7 @@ import java.util.Date;
 
 import flex.management.BaseControl;
 import flex.management.runtime.AdminConsoleTypes;
+import flex.management.runtime.EventMetric;
 import flex.messaging.Destination;
 
 import javax.management.ObjectName;
@@ -40,15 +41,10 @@ public class MessageDestinationControl extends DestinationControl implements
     private ObjectName throttleManager;
     private ObjectName subscriptionManager;
 
-    private int serviceMessageCount = 0;
-    private Date lastServiceMessageTimestamp;
-    private long serviceMessageStart;
-    private int serviceCommandCount = 0;
-    private Date lastServiceCommandTimestamp;
-    private long serviceCommandStart;
-    private int serviceMessageFromAdapterCount = 0;
-    private Date lastServiceMessageFromAdapterTimestamp;
-    private long serviceMessageFromAdapterStart;   
+    private final EventMetric serviceMessages = new EventMetric();
+    private final EventMetric serviceCommands = new EventMetric();
+    private final EventMetric serviceMessagesFromAdapter = new EventMetric();
+
     /**
      * Constructs a new <code>MessageDestinationControl</code> instance.
      * 
@@ -58,9 +54,6 @@ public class MessageDestinationControl extends DestinationControl implements
     public MessageDestinationControl(Destination destination, BaseControl parent)
     {
         super(destination, parent);          
-        serviceMessageStart = System.currentTimeMillis();
-        serviceCommandStart = serviceMessageStart;
-        serviceMessageFromAdapterStart = serviceMessageStart;             
     }
     
     protected void onRegistrationComplete()
@@ -152,7 +145,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Integer getServiceMessageCount()
     {
-        return new Integer(serviceMessageCount);
+        return new Integer((int)serviceMessages.getCount());
     }
     
     /*
@@ -161,9 +154,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public void resetServiceMessageCount()
     {
-        serviceMessageStart = System.currentTimeMillis();
-        serviceMessageCount = 0;
-        lastServiceMessageTimestamp = null;
+        serviceMessages.reset();
     }
     
     /**
@@ -171,8 +162,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public void incrementServiceMessageCount()
     {
-        ++serviceMessageCount;
-        lastServiceMessageTimestamp = new Date();
+        serviceMessages.record();
     }
     
     /*
@@ -181,7 +171,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Date getLastServiceMessageTimestamp()
     {
-        return lastServiceMessageTimestamp;
+        return serviceMessages.getLastEventTimestamp();
     }
     
     /*
@@ -190,15 +180,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Double getServiceMessageFrequency()
     {
-        if (serviceMessageCount > 0)
-        {
-            double runtime = differenceInMinutes(serviceMessageStart, System.currentTimeMillis());
-            return new Double(serviceMessageCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(serviceMessages.getFrequency());
     }
 
     /*
@@ -207,7 +189,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Integer getServiceCommandCount()
     {        
-        return new Integer(serviceCommandCount);
+        return new Integer((int)serviceCommands.getCount());
     }
     
     /*
@@ -216,9 +198,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public void resetServiceCommandCount()
     {
-        serviceCommandStart = System.currentTimeMillis();
-        serviceCommandCount = 0;
-        lastServiceCommandTimestamp = null;
+        serviceCommands.reset();
     }
     
     /**
@@ -226,8 +206,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public void incrementServiceCommandCount()
     {
-        ++serviceCommandCount;
-        lastServiceCommandTimestamp = new Date();
+        serviceCommands.record();
     }
     
     /*
@@ -236,7 +215,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Date getLastServiceCommandTimestamp()
     {
-        return lastServiceCommandTimestamp;
+        return serviceCommands.getLastEventTimestamp();
     }
     
     /*
@@ -245,15 +224,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Double getServiceCommandFrequency()
     {
-        if (serviceCommandCount > 0)
-        {
-            double runtime = differenceInMinutes(serviceCommandStart, System.currentTimeMillis());
-            return new Double(serviceCommandCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(serviceCommands.getFrequency());
     }
 
     /*
@@ -262,7 +233,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Integer getServiceMessageFromAdapterCount()
     {
-        return new Integer(serviceMessageFromAdapterCount);
+        return new Integer((int)serviceMessagesFromAdapter.getCount());
     }
     
     /*
@@ -271,9 +242,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public void resetServiceMessageFromAdapterCount()
     {
-        serviceMessageFromAdapterStart = System.currentTimeMillis();
-        serviceMessageFromAdapterCount = 0;
-        lastServiceMessageFromAdapterTimestamp = null;
+        serviceMessagesFromAdapter.reset();
     }
     
     /**
@@ -281,8 +250,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public void incrementServiceMessageFromAdapterCount()
     {
-        ++serviceMessageFromAdapterCount;
-        lastServiceMessageFromAdapterTimestamp = new Date();
+        serviceMessagesFromAdapter.record();
     }
     
     /*
@@ -291,7 +259,7 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Date getLastServiceMessageFromAdapterTimestamp()
     {
-        return lastServiceMessageFromAdapterTimestamp;
+        return serviceMessagesFromAdapter.getLastEventTimestamp();
     }
     
     /*
@@ -300,14 +268,6 @@ public class MessageDestinationControl extends DestinationControl implements
      */
     public Double getServiceMessageFromAdapterFrequency()
     {
-        if (serviceMessageFromAdapterCount > 0)
-        {
-            double runtime = differenceInMinutes(serviceMessageFromAdapterStart, System.currentTimeMillis());
-            return new Double(serviceMessageFromAdapterCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(serviceMessagesFromAdapter.getFrequency());
     }    
 }
@@ -20,9 +20,13 @@ package flex.management.runtime.messaging.endpoints;
 
 import flex.management.BaseControl;
 import flex.management.runtime.AdminConsoleTypes;
+import flex.management.runtime.EventMetric;
+import flex.management.runtime.StripedCounter;
 import flex.management.runtime.messaging.MessageBrokerControl;
+import flex.management.runtime.StageLatencies;
 import flex.messaging.config.SecurityConstraint;
 import flex.messaging.endpoints.Endpoint;
+import flex.messaging.io.amf.ActionContext;
 
 import java.util.Date;
 import java.util.List;
@@ -35,12 +39,18 @@ import java.util.List;
  */
 public abstract class EndpointControl extends BaseControl implements EndpointControlMBean
 {
+    /**
+     * Stage names, indexed by the <code>ActionContext.STAGE_*</code> constants
+     * followed by the total for the request.
+     */
+    private static final String[] STAGES = {"deserialize", "batch", "session", "route", "serialize", "total"};
+    private static final int STAGE_TOTAL = ActionContext.STAGE_COUNT;
+
     protected Endpoint endpoint;
-    private int serviceMessageCount;
-    private Date lastServiceMessageTimestamp;
-    private long serviceMessageStart;
-    private long bytesDeserialized=0;
-    private long bytesSerialized=0;
+    private final EventMetric serviceMessages = new EventMetric();
+    private final StripedCounter bytesDeserialized = new StripedCounter();
+    private final StripedCounter bytesSerialized = new StripedCounter();
+    private final StageLatencies stageLatencies = new StageLatencies(STAGES);
 
     /**
      * Constructs an <code>EndpointControl</code>, assigning its managed endpoint and
@@ -53,7 +63,6 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
     {
         super(parent);
         this.endpoint = endpoint;
-        serviceMessageStart = System.currentTimeMillis();
     }
 
 
@@ -105,7 +114,7 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      */
     public Integer getServiceMessageCount()
     {
-        return new Integer(serviceMessageCount);
+        return new Integer((int)serviceMessages.getCount());
     }
 
     /*
@@ -114,9 +123,7 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      */
     public void resetServiceMessageCount()
     {
-        serviceMessageStart = System.currentTimeMillis();
-        serviceMessageCount = 0;
-        lastServiceMessageTimestamp = null;
+        serviceMessages.reset();
     }
 
     /**
@@ -124,8 +131,7 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      */
     public void incrementServiceMessageCount()
     {
-        ++serviceMessageCount;
-        lastServiceMessageTimestamp = new Date();
+        serviceMessages.record();
     }
 
     /*
@@ -134,7 +140,7 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      */
     public Date getLastServiceMessageTimestamp()
     {
-        return lastServiceMessageTimestamp;
+        return serviceMessages.getLastEventTimestamp();
     }
 
     /*
@@ -143,15 +149,7 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      */
     public Double getServiceMessageFrequency()
     {
-        if (serviceMessageCount > 0)
-        {
-            double runtime = differenceInMinutes(serviceMessageStart, System.currentTimeMillis());
-            return new Double(serviceMessageCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(serviceMessages.getFrequency());
     }
 
     /*
@@ -212,14 +210,14 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      * @see flex.management.runtime.EndpointControlMBean#getBytesDeserialized()
      */
     public Long getBytesDeserialized(){
-        return new Long(bytesDeserialized);
+        return new Long(bytesDeserialized.sum());
     }
 
     /**
      * Increments the count of bytes deserialized by the endpoint.
      */
     public void addToBytesDeserialized(int bytesDeserialized) {
-        this.bytesDeserialized += bytesDeserialized;
+        this.bytesDeserialized.add(bytesDeserialized);
     }
 
     /*
@@ -227,13 +225,57 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
      * @see flex.management.runtime.EndpointControlMBean#getBytesSerialized()
      */
     public Long getBytesSerialized() {
-        return new Long(bytesSerialized);
+        return new Long(bytesSerialized.sum());
     }
 
     /**
      * Increments the count of bytes serialized by the endpoint.
      */
     public void addToBytesSerialized(int bytesSerialized) {
-        this.bytesSerialized += bytesSerialized;
+        this.bytesSerialized.add(bytesSerialized);
+    }
+
+    /**
+     * Records how long each stage of a request took, as tracked by its context.
+     *
+     * @param context The context of the request.
+     * @param totalNanos The time the whole request took, in nanoseconds.
+     */
+    public void recordStageLatencies(ActionContext context, long totalNanos)
+    {
+        for (int i = 0; i < ActionContext.STAGE_COUNT; i++)
+        {
+            long nanos = context.getStageNanos(i);
+            if (nanos >= 0)
+                stageLatencies.record(i, nanos);
+        }
+        stageLatencies.record(STAGE_TOTAL, totalNanos);
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.endpoints.EndpointControlMBean#getStageLatencyPercentiles()
+     */
+    public String[] getStageLatencyPercentiles()
+    {
+        return stageLatencies.getPercentileSummaries();
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.endpoints.EndpointControlMBean#getStageLatencyPercentile(java.lang.String, java.lang.Double)
+     */
+    public Double getStageLatencyPercentile(String stage, Double percentile)
+    {
+        return percentile == null ? null : stageLatencies.getPercentileMillis(stage, percentile.doubleValue());
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.endpoints.EndpointControlMBean#resetStageLatencies()
+     */
+    public void resetStageLatencies()
+    {
+        stageLatencies.reset();
     }
 }
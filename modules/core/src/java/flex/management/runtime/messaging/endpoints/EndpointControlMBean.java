@@ -112,4 +112,32 @@ public interface EndpointControlMBean extends BaseControlMBean
      * @throws IOException Throws IOException.
      */
     Long getBytesSerialized() throws IOException;
+
+    /**
+     * Returns one summary line per stage of request processing (deserialize, batch,
+     * session, route, serialize and total) with the count, mean, 50th, 90th, 99th
+     * and 99.9th percentile and maximum latency in milliseconds since the
+     * endpoint started or the latencies were last reset.
+     *
+     * @return The latency percentile summaries.
+     * @throws IOException Throws IOException.
+     */
+    String[] getStageLatencyPercentiles() throws IOException;
+
+    /**
+     * Returns the latency of a stage of request processing at the given percentile.
+     *
+     * @param stage The name of the stage, as listed by <code>getStageLatencyPercentiles()</code>.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in milliseconds, or <code>null</code> for an unknown stage.
+     * @throws IOException Throws IOException.
+     */
+    Double getStageLatencyPercentile(String stage, Double percentile) throws IOException;
+
+    /**
+     * Resets the latency histograms of all stages.
+     *
+     * @throws IOException Throws IOException.
+     */
+    void resetStageLatencies() throws IOException;
 }
@@ -22,6 +22,7 @@ import java.util.Date;
 
 import flex.management.BaseControl;
 import flex.management.runtime.AdminConsoleTypes;
+import flex.management.runtime.EventMetric;
 import flex.messaging.endpoints.BaseStreamingHTTPEndpoint;
 
 /**
@@ -31,9 +32,7 @@ import flex.messaging.endpoints.BaseStreamingHTTPEndpoint;
 public abstract class StreamingEndpointControl extends EndpointControl implements
         StreamingEndpointControlMBean
 {   
-    private int pushCount;
-    private Date lastPushTimeStamp;
-    private long pushStart;
+    private final EventMetric pushes = new EventMetric();
     
     /**
      * Constructs a <code>StreamingEndpointControl</code>, assigning managed message 
@@ -74,7 +73,7 @@ public abstract class StreamingEndpointControl extends EndpointControl implement
      */
     public Integer getPushCount()
     {
-        return new Integer(pushCount);
+        return new Integer((int)pushes.getCount());
     }
     
     /*
@@ -83,9 +82,7 @@ public abstract class StreamingEndpointControl extends EndpointControl implement
      */
     public void resetPushCount()
     {
-        pushStart = System.currentTimeMillis();
-        pushCount = 0;
-        lastPushTimeStamp = null;
+        pushes.reset();
     }
     
     /**
@@ -93,8 +90,7 @@ public abstract class StreamingEndpointControl extends EndpointControl implement
      */
     public void incrementPushCount()
     {
-        ++pushCount;
-        lastPushTimeStamp = new Date();
+        pushes.record();
     }    
     
     /*
@@ -103,7 +99,7 @@ public abstract class StreamingEndpointControl extends EndpointControl implement
      */
     public Date getLastPushTimestamp()
     {
-        return lastPushTimeStamp;
+        return pushes.getLastEventTimestamp();
     }
     
     /*
@@ -112,15 +108,7 @@ public abstract class StreamingEndpointControl extends EndpointControl implement
      */
     public Double getPushFrequency()
     {
-        if (pushCount > 0)
-        {
-            double runtime = differenceInMinutes(pushStart, System.currentTimeMillis());
-            return new Double(pushCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(pushes.getFrequency());
     }
     
     /*
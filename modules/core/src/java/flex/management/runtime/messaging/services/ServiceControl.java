@@ -79,7 +79,7 @@ public abstract class ServiceControl extends BaseControl implements ServiceContr
      * 
      * @param value The <code>ObjectName</code> of a destination registered with the managed service.
      */
-    public void addDestination(ObjectName value)
+    public synchronized void addDestination(ObjectName value)
     {
         destinations.add(value);
     }
@@ -89,7 +89,7 @@ public abstract class ServiceControl extends BaseControl implements ServiceContr
      * 
      * @param value The <code>ObjectName</code> of a destination registered with the managed service.
      */
-    public void removeDestination(ObjectName value)
+    public synchronized void removeDestination(ObjectName value)
     {
         destinations.remove(value);
     }
@@ -98,7 +98,7 @@ public abstract class ServiceControl extends BaseControl implements ServiceContr
      *  (non-Javadoc)
      * @see flex.management.runtime.ServiceControlMBean#getDestinations()
      */
-    public ObjectName[] getDestinations()
+    public synchronized ObjectName[] getDestinations()
     {
         int size = destinations.size();
         ObjectName[] destinationNames = new ObjectName[size];
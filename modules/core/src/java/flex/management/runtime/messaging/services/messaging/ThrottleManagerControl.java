@@ -20,6 +20,7 @@ package flex.management.runtime.messaging.services.messaging;
 
 import flex.management.BaseControl;
 import flex.management.runtime.AdminConsoleTypes;
+import flex.management.runtime.EventMetric;
 import flex.messaging.services.messaging.ThrottleManager;
 
 import java.util.Date;
@@ -34,18 +35,10 @@ public class ThrottleManagerControl extends BaseControl implements
         ThrottleManagerControlMBean
 {
     private ThrottleManager throttleManager;
-    private long clientIncomingMessageThrottleStart;
-    private int clientIncomingMessageThrottleCount;
-    private Date lastClientIncomingMessageThrottleTimestamp;
-    private long clientOutgoingMessageThrottleStart;
-    private int clientOutgoingMessageThrottleCount;
-    private Date lastClientOutgoingMessageThrottleTimestamp;
-    private long destinationIncomingMessageThrottleStart;
-    private int destinationIncomingMessageThrottleCount;
-    private Date lastDestinationIncomingMessageThrottleTimestamp;
-    private long destinationOutgoingMessageThrottleStart;
-    private int destinationOutgoingMessageThrottleCount;
-    private Date lastDestinationOutgoingMessageThrottleTimestamp;
+    private final EventMetric clientIncomingMessageThrottles = new EventMetric();
+    private final EventMetric clientOutgoingMessageThrottles = new EventMetric();
+    private final EventMetric destinationIncomingMessageThrottles = new EventMetric();
+    private final EventMetric destinationOutgoingMessageThrottles = new EventMetric();
 
     /**
      * Constructs a new <code>ThrottleManagerControl</code> instance, assigning its
@@ -58,10 +51,6 @@ public class ThrottleManagerControl extends BaseControl implements
     {
         super(parent);
         this.throttleManager = throttleManager;
-        clientIncomingMessageThrottleStart = System.currentTimeMillis();
-        clientOutgoingMessageThrottleStart = clientIncomingMessageThrottleStart;
-        destinationIncomingMessageThrottleStart = clientIncomingMessageThrottleStart;
-        destinationOutgoingMessageThrottleStart = clientIncomingMessageThrottleStart;
     }
     
     protected void onRegistrationComplete()
@@ -103,7 +92,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Integer getClientIncomingMessageThrottleCount()
     {
-        return new Integer(clientIncomingMessageThrottleCount);
+        return new Integer((int)clientIncomingMessageThrottles.getCount());
     }
     
     /**
@@ -111,8 +100,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void incrementClientIncomingMessageThrottleCount()
     {
-        ++clientIncomingMessageThrottleCount;
-        lastClientIncomingMessageThrottleTimestamp = new Date();
+        clientIncomingMessageThrottles.record();
     }
     
     /*
@@ -121,9 +109,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void resetClientIncomingMessageThrottleCount()
     {
-        clientIncomingMessageThrottleStart = System.currentTimeMillis();
-        clientIncomingMessageThrottleCount = 0;
-        lastClientIncomingMessageThrottleTimestamp = null;
+        clientIncomingMessageThrottles.reset();
     }
     
     /*
@@ -132,7 +118,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Date getLastClientIncomingMessageThrottleTimestamp()
     {
-        return lastClientIncomingMessageThrottleTimestamp;
+        return clientIncomingMessageThrottles.getLastEventTimestamp();
     }
     
     /*
@@ -141,15 +127,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Double getClientIncomingMessageThrottleFrequency()
     {
-        if (clientIncomingMessageThrottleCount > 0)
-        {
-            double runtime = differenceInMinutes(clientIncomingMessageThrottleStart, System.currentTimeMillis());
-            return new Double(clientIncomingMessageThrottleCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(clientIncomingMessageThrottles.getFrequency());
     }
     
     /*
@@ -158,7 +136,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Integer getClientOutgoingMessageThrottleCount()
     {
-        return new Integer(clientOutgoingMessageThrottleCount);
+        return new Integer((int)clientOutgoingMessageThrottles.getCount());
     }
     
     /**
@@ -166,8 +144,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void incrementClientOutgoingMessageThrottleCount()
     {
-        ++clientOutgoingMessageThrottleCount;
-        lastClientOutgoingMessageThrottleTimestamp = new Date();
+        clientOutgoingMessageThrottles.record();
     }
     
     /*
@@ -176,9 +153,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void resetClientOutgoingMessageThrottleCount()
     {
-        clientOutgoingMessageThrottleStart = System.currentTimeMillis();
-        clientOutgoingMessageThrottleCount = 0;
-        lastClientOutgoingMessageThrottleTimestamp = null;
+        clientOutgoingMessageThrottles.reset();
     }
     
     /*
@@ -187,7 +162,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Date getLastClientOutgoingMessageThrottleTimestamp()
     {
-        return lastClientOutgoingMessageThrottleTimestamp;
+        return clientOutgoingMessageThrottles.getLastEventTimestamp();
     }
     
     /*
@@ -196,15 +171,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Double getClientOutgoingMessageThrottleFrequency()
     {
-        if (clientOutgoingMessageThrottleCount > 0)
-        {
-            double runtime = differenceInMinutes(clientOutgoingMessageThrottleStart, System.currentTimeMillis());
-            return new Double(clientOutgoingMessageThrottleCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(clientOutgoingMessageThrottles.getFrequency());
     }
     
     /*
@@ -213,7 +180,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Integer getDestinationIncomingMessageThrottleCount()
     {
-        return new Integer(destinationIncomingMessageThrottleCount);
+        return new Integer((int)destinationIncomingMessageThrottles.getCount());
     }
     
     /**
@@ -221,8 +188,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void incrementDestinationIncomingMessageThrottleCount()
     {
-        ++destinationIncomingMessageThrottleCount;
-        lastDestinationIncomingMessageThrottleTimestamp = new Date();
+        destinationIncomingMessageThrottles.record();
     }
     
     /*
@@ -231,9 +197,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void resetDestinationIncomingMessageThrottleCount()
     {
-        destinationIncomingMessageThrottleStart = System.currentTimeMillis();
-        destinationIncomingMessageThrottleCount = 0;
-        lastDestinationIncomingMessageThrottleTimestamp = null;
+        destinationIncomingMessageThrottles.reset();
     }
     
     /*
@@ -242,7 +206,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Date getLastDestinationIncomingMessageThrottleTimestamp()
     {
-        return lastDestinationIncomingMessageThrottleTimestamp;
+        return destinationIncomingMessageThrottles.getLastEventTimestamp();
     }
     
     /*
@@ -251,15 +215,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Double getDestinationIncomingMessageThrottleFrequency()
     {
-        if (destinationIncomingMessageThrottleCount > 0)
-        {
-            double runtime = differenceInMinutes(destinationIncomingMessageThrottleStart, System.currentTimeMillis());
-            return new Double(destinationIncomingMessageThrottleCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(destinationIncomingMessageThrottles.getFrequency());
     }
     
     /*
@@ -268,7 +224,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Integer getDestinationOutgoingMessageThrottleCount()
     {
-        return new Integer(destinationOutgoingMessageThrottleCount);
+        return new Integer((int)destinationOutgoingMessageThrottles.getCount());
     }
     
     /**
@@ -276,8 +232,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void incrementDestinationOutgoingMessageThrottleCount()
     {
-        ++destinationOutgoingMessageThrottleCount;
-        lastDestinationOutgoingMessageThrottleTimestamp = new Date();
+        destinationOutgoingMessageThrottles.record();
     }
     
     /*
@@ -286,9 +241,7 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public void resetDestinationOutgoingMessageThrottleCount()
     {
-        destinationOutgoingMessageThrottleStart = System.currentTimeMillis();
-        destinationOutgoingMessageThrottleCount = 0;
-        lastDestinationOutgoingMessageThrottleTimestamp = null;
+        destinationOutgoingMessageThrottles.reset();
     }
     
     /*
@@ -297,19 +250,11 @@ public class ThrottleManagerControl extends BaseControl implements
      */
     public Date getLastDestinationOutgoingMessageThrottleTimestamp()
     {
-        return lastDestinationOutgoingMessageThrottleTimestamp;
+        return destinationOutgoingMessageThrottles.getLastEventTimestamp();
     }
     
     public Double getDestinationOutgoingMessageThrottleFrequency()
     {
-        if (destinationOutgoingMessageThrottleCount > 0)
-        {
-            double runtime = differenceInMinutes(destinationOutgoingMessageThrottleStart, System.currentTimeMillis());
-            return new Double(destinationOutgoingMessageThrottleCount/runtime);
-        }
-        else
-        {
-            return new Double(0);
-        }
+        return new Double(destinationOutgoingMessageThrottles.getFrequency());
     }
 }
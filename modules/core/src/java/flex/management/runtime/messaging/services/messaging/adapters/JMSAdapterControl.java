@@ -74,6 +74,15 @@ public class JMSAdapterControl extends ServiceAdapterControl implements
         return new Integer(jmsAdapter.getTopicConsumerCount());
     }
     
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getSharedTopicConsumerSubscriberCount()
+     */
+    public Integer getSharedTopicConsumerSubscriberCount()
+    {
+        return new Integer(jmsAdapter.getSharedTopicConsumerSubscriberCount());
+    }
+    
     /*
      *  (non-Javadoc)
      * @see flex.management.runtime.JMSAdapterControlMBean#getTopicConsumerIds()
@@ -110,6 +119,105 @@ public class JMSAdapterControl extends ServiceAdapterControl implements
         return jmsAdapter.getQueueConsumerIds();
     }
     
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getActiveProducerCount()
+     */
+    public Integer getActiveProducerCount()
+    {
+        return new Integer(jmsAdapter.getActiveProducerCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getIdleProducerCount()
+     */
+    public Integer getIdleProducerCount()
+    {
+        return new Integer(jmsAdapter.getIdleProducerCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getProducerBorrowCount()
+     */
+    public Long getProducerBorrowCount()
+    {
+        return new Long(jmsAdapter.getProducerBorrowCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getProducerBorrowWaitCount()
+     */
+    public Long getProducerBorrowWaitCount()
+    {
+        return new Long(jmsAdapter.getProducerBorrowWaitCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getProducerBorrowTimeoutCount()
+     */
+    public Long getProducerBorrowTimeoutCount()
+    {
+        return new Long(jmsAdapter.getProducerBorrowTimeoutCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getProducerCreatedCount()
+     */
+    public Long getProducerCreatedCount()
+    {
+        return new Long(jmsAdapter.getProducerCreatedCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getProducerDiscardedCount()
+     */
+    public Long getProducerDiscardedCount()
+    {
+        return new Long(jmsAdapter.getProducerDiscardedCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getAsyncSendQueueSize()
+     */
+    public Integer getAsyncSendQueueSize()
+    {
+        return new Integer(jmsAdapter.getAsyncSendQueueSize());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getAsyncSentCount()
+     */
+    public Long getAsyncSentCount()
+    {
+        return new Long(jmsAdapter.getAsyncSentCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getAsyncSendFailedCount()
+     */
+    public Long getAsyncSendFailedCount()
+    {
+        return new Long(jmsAdapter.getAsyncSendFailedCount());
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.JMSAdapterControlMBean#getSendBatchCommitCount()
+     */
+    public Long getSendBatchCommitCount()
+    {
+        return new Long(jmsAdapter.getSendBatchCommitCount());
+    }
+    
     /*
      *  (non-Javadoc)
      * @see flex.management.runtime.JMSAdapterControlMBean#removeConsumer(java.lang.String)
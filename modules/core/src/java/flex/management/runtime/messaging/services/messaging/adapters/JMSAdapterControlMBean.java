@@ -45,6 +45,15 @@ public interface JMSAdapterControlMBean extends ServiceAdapterControlMBean
      */
     Integer getTopicConsumerCount() throws IOException;
 
+    /**
+     * Returns the number of topic subscribers served by the shared topic consumer
+     * of the adapter.
+     *
+     * @return The number of topic subscribers served by the shared topic consumer.
+     * @throws IOException Throws IOException.
+     */
+    Integer getSharedTopicConsumerSubscriberCount() throws IOException;
+
     /**
      * Returns the ids of all topic consumers.
      *
@@ -77,6 +86,94 @@ public interface JMSAdapterControlMBean extends ServiceAdapterControlMBean
      */
     String[] getQueueConsumerIds() throws IOException;
 
+    /**
+     * Returns the number of producers currently in use for publishing.
+     *
+     * @return The number of producers currently in use for publishing.
+     * @throws IOException Throws IOException.
+     */
+    Integer getActiveProducerCount() throws IOException;
+
+    /**
+     * Returns the number of pooled producers that are not currently in use.
+     *
+     * @return The number of pooled producers that are not currently in use.
+     * @throws IOException Throws IOException.
+     */
+    Integer getIdleProducerCount() throws IOException;
+
+    /**
+     * Returns the number of producers borrowed from the producer pool.
+     *
+     * @return The number of producers borrowed from the producer pool.
+     * @throws IOException Throws IOException.
+     */
+    Long getProducerBorrowCount() throws IOException;
+
+    /**
+     * Returns the number of producer borrows that had to wait for a producer.
+     *
+     * @return The number of producer borrows that had to wait for a producer.
+     * @throws IOException Throws IOException.
+     */
+    Long getProducerBorrowWaitCount() throws IOException;
+
+    /**
+     * Returns the number of producer borrows that timed out.
+     *
+     * @return The number of producer borrows that timed out.
+     * @throws IOException Throws IOException.
+     */
+    Long getProducerBorrowTimeoutCount() throws IOException;
+
+    /**
+     * Returns the number of producers started by the producer pool.
+     *
+     * @return The number of producers started by the producer pool.
+     * @throws IOException Throws IOException.
+     */
+    Long getProducerCreatedCount() throws IOException;
+
+    /**
+     * Returns the number of producers discarded after a send failure.
+     *
+     * @return The number of producers discarded after a send failure.
+     * @throws IOException Throws IOException.
+     */
+    Long getProducerDiscardedCount() throws IOException;
+
+    /**
+     * Returns the number of messages waiting to be sent in the background.
+     *
+     * @return The number of messages waiting to be sent in the background.
+     * @throws IOException Throws IOException.
+     */
+    Integer getAsyncSendQueueSize() throws IOException;
+
+    /**
+     * Returns the number of messages sent in the background.
+     *
+     * @return The number of messages sent in the background.
+     * @throws IOException Throws IOException.
+     */
+    Long getAsyncSentCount() throws IOException;
+
+    /**
+     * Returns the number of messages that failed to be sent in the background.
+     *
+     * @return The number of messages that failed to be sent in the background.
+     * @throws IOException Throws IOException.
+     */
+    Long getAsyncSendFailedCount() throws IOException;
+
+    /**
+     * Returns the number of transacted send batches committed.
+     *
+     * @return The number of transacted send batches committed.
+     * @throws IOException Throws IOException.
+     */
+    Long getSendBatchCommitCount() throws IOException;
+
     /**
      * Unsubscribes the consumer (for either a topic or queue).
      *
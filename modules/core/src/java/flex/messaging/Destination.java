@@ -30,6 +30,7 @@ import flex.messaging.log.LogCategories;
 import flex.messaging.log.Log;
 import flex.messaging.services.Service;
 import flex.messaging.services.ServiceAdapter;
+import flex.messaging.util.Bulkhead;
 import flex.messaging.util.ClassUtil;
 import flex.messaging.cluster.ClusterManager;
 import flex.messaging.config.ClusterSettings;
@@ -50,6 +51,9 @@ public class Destination extends ManageableComponent implements java.io.Serializ
     /** Default log category for <code>Destination</code>. */
     public static final String LOG_CATEGORY = LogCategories.SERVICE_GENERAL;
 
+    /** Configuration property that defers starting the destination until it is first used. */
+    public static final String LAZY_ELEMENT = "lazy";
+
     // Errors
     private static final int NO_SERVICE = 11117;
 
@@ -60,6 +64,15 @@ public class Destination extends ManageableComponent implements java.io.Serializ
     protected SecurityConstraint securityConstraint;
     protected String securityConstraintRef;
     protected HashMap extraProperties;
+    protected transient Bulkhead bulkhead;
+    protected boolean lazy;
+
+    /**
+     * Set once <code>startIfLazy()</code> has completely started the destination,
+     * including its adapter. <code>isStarted()</code> turns true before the
+     * adapter is started, so it cannot be used to skip the start lock.
+     */
+    private transient volatile boolean lazyStarted;
 
     //--------------------------------------------------------------------------
     //
@@ -128,6 +141,26 @@ public class Destination extends ManageableComponent implements java.io.Serializ
                 networkSettings.setClusterId(clusterId);
             }
         }
+
+        ConfigMap bulkheadInfo = properties.getPropertyAsMap(Bulkhead.BULKHEAD_ELEMENT, null);
+        if (bulkheadInfo != null)
+        {
+            int maxConcurrent = bulkheadInfo.getPropertyAsInt(Bulkhead.MAX_CONCURRENT_ELEMENT, 0);
+            int maxWaiting = bulkheadInfo.getPropertyAsInt(Bulkhead.MAX_WAITING_ELEMENT, 0);
+            long waitTimeout = bulkheadInfo.getPropertyAsLong(Bulkhead.WAIT_TIMEOUT_ELEMENT, 0);
+            if (maxConcurrent < 1)
+            {
+                ConfigurationException ex = new ConfigurationException();
+                ex.setMessage("Invalid " + Bulkhead.BULKHEAD_ELEMENT + " configuration for destination '" + id
+                        + "'; " + Bulkhead.MAX_CONCURRENT_ELEMENT + " must be a positive number.");
+                throw ex;
+            }
+            bulkhead = new Bulkhead(maxConcurrent, maxWaiting, waitTimeout);
+        }
+
+        // Destinations are also initialized with their service's properties, so
+        // a lazy setting on the service applies to each of its destinations.
+        lazy = properties.getPropertyAsBoolean(LAZY_ELEMENT, lazy);
     }
 
     /**
@@ -256,6 +289,32 @@ public class Destination extends ManageableComponent implements java.io.Serializ
         getAdapter().start();
     }
 
+    /**
+     * Starts a lazy <code>Destination</code> that has not been started yet, so
+     * that its adapter, managers and MBeans are only created once it receives
+     * traffic. Does nothing if the destination is already started or its
+     * service is not started.
+     */
+    public void startIfLazy()
+    {
+        if (!lazy || lazyStarted || !getService().isStarted())
+            return;
+
+        synchronized (this)
+        {
+            if (lazyStarted || !getService().isStarted())
+                return;
+
+            if (Log.isDebug() && !isStarted())
+                Log.getLogger(getLogCategory()).debug("Lazy destination with id '{0}' is starting on first use.",
+                        new Object[]{getId()});
+
+            // Also completes a start made elsewhere; starting the adapter twice is harmless.
+            start();
+            lazyStarted = isStarted();
+        }
+    }
+
     /**
      * The default implementation of this method stops all of the adapters
      * of the destination.
@@ -269,6 +328,7 @@ public class Destination extends ManageableComponent implements java.io.Serializ
             return;
         }
 
+        lazyStarted = false;
         getAdapter().stop();
 
         super.stop();
@@ -573,6 +633,54 @@ public class Destination extends ManageableComponent implements java.io.Serializ
         this.networkSettings = networkSettings;
     }
 
+    /**
+     * Returns the <code>Bulkhead</code> that limits how many requests may be
+     * serviced by the <code>Destination</code> at once.
+     *
+     * @return The <code>Bulkhead</code> of the <code>Destination</code>, or
+     * <code>null</code> if its requests are not limited.
+     */
+    public Bulkhead getBulkhead()
+    {
+        return bulkhead;
+    }
+
+    /**
+     * Sets the <code>Bulkhead</code> that limits how many requests may be
+     * serviced by the <code>Destination</code> at once.
+     *
+     * @param bulkhead The <code>Bulkhead</code>, or <code>null</code> to not
+     * limit requests.
+     */
+    public void setBulkhead(Bulkhead bulkhead)
+    {
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * Returns <code>true</code> if the <code>Destination</code> is not started
+     * along with its service but on the first message or command routed to it.
+     *
+     * @return <code>true</code> if the <code>Destination</code> is lazy.
+     */
+    public boolean isLazy()
+    {
+        return lazy;
+    }
+
+    /**
+     * Sets whether the <code>Destination</code> is started on the first message
+     * or command routed to it rather than along with its service. A lazy
+     * destination registers its MBeans and starts its adapter only once it
+     * becomes active.
+     *
+     * @param lazy <code>true</code> to defer starting the <code>Destination</code>.
+     */
+    public void setLazy(boolean lazy)
+    {
+        this.lazy = lazy;
+    }
+
     /**
      * Returns the <code>Service</code> managing this <code>Destination</code>.
      *
@@ -19,8 +19,16 @@
 package flex.messaging;
 
 import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.LinkedBlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ThreadFactory;
+import edu.emory.mathcs.backport.java.util.concurrent.ThreadPoolExecutor;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
 import flex.management.ManageableComponent;
 import flex.management.MBeanServerLocatorFactory;
+import flex.management.runtime.messaging.DestinationControl;
 import flex.management.runtime.messaging.MessageBrokerControl;
 import flex.management.runtime.messaging.log.LogManager;
 import flex.messaging.client.FlexClient;
@@ -52,6 +60,7 @@ import flex.messaging.security.LoginManager;
 import flex.messaging.services.Service;
 import flex.messaging.services.ServiceException;
 import flex.messaging.util.Base64;
+import flex.messaging.util.Bulkhead;
 import flex.messaging.util.ClassUtil;
 import flex.messaging.util.RedeployManager;
 import flex.messaging.util.StringUtils;
@@ -64,12 +73,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 
 /**
@@ -95,6 +106,9 @@ public final class MessageBroker extends ManageableComponent
     /** @exclude */
     public static final String TYPE = "MessageBroker";
 
+    /** Fault code used when a destination's bulkhead rejects a message. */
+    public static final String DESTINATION_BUSY_CODE = "Server.Processing.Busy";
+
     /** @exclude */
     private static final String LOG_MANAGER_ID = "log";
 
@@ -122,9 +136,15 @@ public final class MessageBroker extends ManageableComponent
     /** @exclude */
     private static final int NULL_MESSAGE_ID = 10029;
 
+    /** @exclude */
+    private static final int DESTINATION_BUSY = 10037;
+
     /** @exclude */
     private static final Integer INTEGER_ONE = new Integer(1);
 
+    /** @exclude */
+    private static final int MAX_UNKNOWN_ENDPOINT_PATHS = 256;
+
     /** @exclude */
     private InternalPathResolver internalPathResolver;
 
@@ -146,6 +166,12 @@ public final class MessageBroker extends ManageableComponent
     /** @exclude */
     private Map registeredEndpoints;
 
+    /** @exclude */
+    private volatile ConcurrentHashMap endpointPathTables = new ConcurrentHashMap(); // contextPath ==> (lower case url ==> Endpoint)
+
+    /** @exclude */
+    private volatile ConcurrentHashMap unknownEndpointPaths = new ConcurrentHashMap(); // contextPath + requested path ==> error message
+
     /** @exclude */
     private ClusterManager clusterManager;
 
@@ -197,6 +223,15 @@ public final class MessageBroker extends ManageableComponent
     /** @exclude */
     private LogManager logManager;
 
+    /** @exclude */
+    private int startupThreads = 1;
+
+    /** @exclude */
+    private ThreadPoolExecutor startupExecutor;
+
+    /** @exclude */
+    private final Map startupPhaseTimes = new LinkedHashMap(); // phase name ==> Long elapsed millis
+
     /** The default message broker id when one is not specified in web.xml. */
     static final String DEFAULT_BROKER_ID = "__default__";
 
@@ -347,14 +382,24 @@ public final class MessageBroker extends ManageableComponent
             // usual validation that other components need
             setStarted(true);
 
+            clearEndpointPathTables();
             registerMessageBroker();
             sessionMetricsTracker.start();
             flexClientManager.start();
+
+            startupExecutor = createStartupExecutor();
+
+            long phaseStart = System.currentTimeMillis();
             startServices();
+            phaseStart = recordStartupPhase("services", phaseStart);
             loginManager.start();
+            phaseStart = recordStartupPhase("login-manager", phaseStart);
             startEndpoints();
+            phaseStart = recordStartupPhase("endpoints", phaseStart);
             startServers();
+            phaseStart = recordStartupPhase("servers", phaseStart);
             redeployManager.start();
+            recordStartupPhase("redeploy-manager", phaseStart);
         }
         catch (Exception e)
         {
@@ -365,6 +410,14 @@ public final class MessageBroker extends ManageableComponent
             RuntimeException re = new RuntimeException(e.getMessage(), e);
             throw re;
         }
+        finally
+        {
+            if (startupExecutor != null)
+            {
+                startupExecutor.shutdown();
+                startupExecutor = null;
+            }
+        }
     }
 
     /**
@@ -632,6 +685,7 @@ public final class MessageBroker extends ManageableComponent
 
         // Finally add the endpoint to endpoints map
         endpoints.put(id, endpoint);
+        clearEndpointPathTables();
     }
 
     /**
@@ -708,16 +762,31 @@ public final class MessageBroker extends ManageableComponent
      */
     public Endpoint getEndpoint(String path, String contextPath)
     {
-        for (Iterator iter = endpoints.keySet().iterator(); iter.hasNext();)
+        String key = normalizeEndpointPath(path);
+        Endpoint e = (Endpoint)getEndpointPathTable(contextPath).get(key);
+        if (e != null)
+            return e;
+
+        // Remember the error message for a bounded number of unknown paths so
+        // repeated bad requests do not format it again; paths are client supplied.
+        ConcurrentHashMap unknownPaths = unknownEndpointPaths;
+        String unknownKey = contextPath + ' ' + path;
+        String message = (String)unknownPaths.get(unknownKey);
+
+        MessageException lme = new MessageException();
+        if (message != null)
+        {
+            lme.setNumber(10003);
+            lme.setMessage(message);
+        }
+        else
         {
-            Object id = iter.next();
-            Endpoint e = (Endpoint)endpoints.get(id);
+            lme.setMessage(10003, new Object[] {path});
 
-            if (matchEndpoint(path, contextPath, e))
-                return e;
+            if (unknownPaths.size() >= MAX_UNKNOWN_ENDPOINT_PATHS)
+                unknownPaths.clear();
+            unknownPaths.put(unknownKey, lme.getMessage());
         }
-        MessageException lme = new MessageException();
-        lme.setMessage(10003, new Object[] {path});
         throw lme;
     }
 
@@ -735,37 +804,72 @@ public final class MessageBroker extends ManageableComponent
         {
             endpoint.stop();
             endpoints.remove(id);
+            clearEndpointPathTables();
         }
         return endpoint;
     }
 
     /**
      * @exclude
-     * Matches the current &quot;servlet + pathinfo&quot; to a list of channels registered
-     * in the services configuration file, independent of context root.
+     * Returns the table mapping the lower case parsed url of every endpoint to
+     * the endpoint for the given context root, building it on first use.
+     * If two endpoints share a url the first one registered wins.
      *
-     * @param path        The Servlet mapping and PathInfo of the current request
      * @param contextPath The web application context root (or empty string for default root)
-     * @param endpoint    The endpoint to be matched
-     * @return whether the current request matches a registered endpoint URI
-     *
+     * @return The endpoint lookup table for the context root.
      */
-    private boolean matchEndpoint(String path, String contextPath, Endpoint endpoint)
+    private Map getEndpointPathTable(String contextPath)
     {
-        boolean match = false;
-        String channelEndpoint = endpoint.getParsedUrl(contextPath);
-
-        if (path.endsWith("/"))
+        // Tables built while the endpoints change land in a map that has already
+        // been replaced by clearEndpointPathTables() and are simply dropped.
+        ConcurrentHashMap tables = endpointPathTables;
+        String tableKey = contextPath == null ? "" : contextPath;
+        Map table = (Map)tables.get(tableKey);
+        if (table == null)
         {
-            path = path.substring(0, path.length() - 1);
+            table = new HashMap();
+            for (Iterator iter = endpoints.values().iterator(); iter.hasNext();)
+            {
+                Endpoint endpoint = (Endpoint)iter.next();
+                String channelEndpoint = endpoint.getParsedUrl(contextPath);
+                if (channelEndpoint == null)
+                    continue;
+
+                String key = channelEndpoint.toLowerCase(Locale.ENGLISH);
+                if (!table.containsKey(key))
+                    table.put(key, endpoint);
+            }
+            tables.put(tableKey, table);
         }
+        return table;
+    }
+
+    /**
+     * @exclude
+     * Invalidates the endpoint lookup tables and the unknown path cache after the
+     * set of endpoints changes.
+     */
+    private void clearEndpointPathTables()
+    {
+        endpointPathTables = new ConcurrentHashMap();
+        unknownEndpointPaths = new ConcurrentHashMap();
+    }
 
-        if (path.equalsIgnoreCase(channelEndpoint))
+    /**
+     * @exclude
+     * Normalizes the current &quot;servlet + pathinfo&quot; for lookup in the
+     * endpoint table: a trailing slash is ignored and matching is case insensitive.
+     *
+     * @param path The Servlet mapping and PathInfo of the current request
+     * @return The normalized path.
+     */
+    private String normalizeEndpointPath(String path)
+    {
+        if (path.endsWith("/"))
         {
-            match = true;
+            path = path.substring(0, path.length() - 1);
         }
-
-        return match;
+        return path.toLowerCase(Locale.ENGLISH);
     }
 
     /**
@@ -1352,6 +1456,33 @@ public final class MessageBroker extends ManageableComponent
         setSystemSettings(systemSettings);
     }
 
+    /**
+     * Creates the executor used to start destinations in parallel, or returns null
+     * when the broker is configured to start serially.
+     */
+    private ThreadPoolExecutor createStartupExecutor()
+    {
+        if (startupThreads < 2)
+            return null;
+
+        final String threadPrefix = getId() + "-startup-";
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(startupThreads, startupThreads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue(),
+                new ThreadFactory()
+                {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, threadPrefix + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Start all of the broker's shared servers.
      */
@@ -1489,6 +1620,7 @@ public final class MessageBroker extends ManageableComponent
                 service = (Service)services.get(serviceId);
                 serviced = true;
                 Destination destination = service.getDestination(destId);
+                destination.startIfLazy();
                 inspectOperation(message, destination);
                 // Remove the validate endopint header if it was set.
                 if (message.headerExists(Message.VALIDATE_ENDPOINT_HEADER))
@@ -1500,7 +1632,41 @@ public final class MessageBroker extends ManageableComponent
                             "  incomingMessage: " + message + StringUtils.NEWLINE);
 
                 extractRemoteCredentials(service, message);
-                serviceResult = service.serviceMessage(message);
+
+                Bulkhead bulkhead = destination.getBulkhead();
+                if (bulkhead != null && !bulkhead.tryEnter())
+                {
+                    MessageException me = new MessageException();
+                    me.setMessage(DESTINATION_BUSY, new Object[] {destId});
+                    me.setCode(DESTINATION_BUSY_CODE);
+                    throw me;
+                }
+
+                try
+                {
+                    DestinationControl destinationControl = getDestinationControl(destination);
+                    if (destinationControl != null)
+                    {
+                        long start = System.nanoTime();
+                        try
+                        {
+                            serviceResult = service.serviceMessage(message);
+                        }
+                        finally
+                        {
+                            destinationControl.recordStageLatency(DestinationControl.STAGE_SERVICE, System.nanoTime() - start);
+                        }
+                    }
+                    else
+                    {
+                        serviceResult = service.serviceMessage(message);
+                    }
+                }
+                finally
+                {
+                    if (bulkhead != null)
+                        bulkhead.exit();
+                }
             }
 
             if (!serviced)
@@ -1569,6 +1735,17 @@ public final class MessageBroker extends ManageableComponent
         }
     }
 
+    /**
+     * Returns the control of the destination if it is managed, so that stage
+     * latencies are only tracked for managed destinations.
+     */
+    private DestinationControl getDestinationControl(Destination destination)
+    {
+        if (destination != null && destination.isManaged() && destination.getControl() instanceof DestinationControl)
+            return (DestinationControl)destination.getControl();
+        return null;
+    }
+
     /** @exclude */
     public AsyncMessage routeCommandToService(CommandMessage command, Endpoint endpoint)
     {
@@ -1597,7 +1774,10 @@ public final class MessageBroker extends ManageableComponent
             // the security constraints.
             Destination destination = service.getDestination(destId);
             if (destination != null)
+            {
+                destination.startIfLazy();
                 inspectOperation(command, destination);
+            }
 
             try
             {
@@ -1872,6 +2052,151 @@ public final class MessageBroker extends ManageableComponent
         return classLoader;
     }
 
+    /**
+     * Returns the number of threads used to start the destinations of each service
+     * while the broker starts. The default of 1 starts every component serially on
+     * the calling thread.
+     *
+     * @return The number of startup threads.
+     */
+    public int getStartupThreads()
+    {
+        return startupThreads;
+    }
+
+    /**
+     * Sets the number of threads used to start the destinations of each service
+     * while the broker starts. Services, the login manager, endpoints and servers
+     * still start one after another so a component never starts before the
+     * components it depends on; only the destinations of a single service, which
+     * are independent of each other, are started in parallel. Values less than 1
+     * are treated as 1.
+     *
+     * @param value The number of startup threads.
+     */
+    public void setStartupThreads(int value)
+    {
+        startupThreads = value < 1 ? 1 : value;
+    }
+
+    /**
+     * Returns the time in milliseconds spent in each phase of the most recent
+     * broker startup, keyed by phase name in the order the phases ran.
+     *
+     * @return A copy of the startup phase timings.
+     */
+    public Map getStartupPhaseTimes()
+    {
+        synchronized (startupPhaseTimes)
+        {
+            return new LinkedHashMap(startupPhaseTimes);
+        }
+    }
+
+    /**
+     * @exclude
+     * Records the time spent loading the configuration and creating this broker,
+     * which began at <code>configurationStart</code>.
+     *
+     * @param configurationStart The time in milliseconds at which loading the configuration began.
+     * @return The current time in milliseconds, for use as the start of the configure-broker phase.
+     */
+    public long recordConfigurationPhase(long configurationStart)
+    {
+        return recordStartupPhase("configuration", configurationStart);
+    }
+
+    /**
+     * @exclude
+     * Records the time spent creating the endpoints, services, security and logging
+     * of this broker from its configuration, which began at <code>phaseStart</code>.
+     *
+     * @param phaseStart The time in milliseconds at which configuring the broker began.
+     */
+    public void recordConfigureBrokerPhase(long phaseStart)
+    {
+        recordStartupPhase("configure-broker", phaseStart);
+    }
+
+    /**
+     * Records the time spent in a startup phase that began at <code>phaseStart</code>
+     * and logs it to the broker startup log category.
+     *
+     * @param phase The name of the phase.
+     * @param phaseStart The time in milliseconds at which the phase began.
+     * @return The current time in milliseconds, for use as the start of the next phase.
+     */
+    private long recordStartupPhase(String phase, long phaseStart)
+    {
+        long now = System.currentTimeMillis();
+        Long diffMillis = new Long(now - phaseStart);
+        synchronized (startupPhaseTimes)
+        {
+            startupPhaseTimes.put(phase, diffMillis);
+        }
+        if (Log.isDebug())
+            Log.getLogger(LogCategories.STARTUP_MESSAGEBROKER).debug("MessageBroker with id '{0}' completed startup phase '{1}' in '{2}' ms",
+                    new Object[]{getId(), phase, diffMillis});
+        return now;
+    }
+
+    /**
+     * @exclude
+     * Used internally by AbstractService to start its destinations. While the broker
+     * is starting with more than one startup thread the tasks run in parallel on the
+     * startup executor; otherwise they run serially on the calling thread. Returns once
+     * every task has finished and rethrows the first failure, if any.
+     *
+     * @param tasks A list of <code>Runnable</code> tasks that are independent of each other.
+     */
+    public void runStartupTasks(List tasks)
+    {
+        ThreadPoolExecutor executor = startupExecutor;
+        if (executor == null || tasks.size() < 2)
+        {
+            for (Iterator iter = tasks.iterator(); iter.hasNext();)
+                ((Runnable)iter.next()).run();
+            return;
+        }
+
+        List futures = new ArrayList(tasks.size());
+        for (Iterator iter = tasks.iterator(); iter.hasNext();)
+            futures.add(executor.submit(new StartupTask((Runnable)iter.next())));
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Iterator iter = futures.iterator(); iter.hasNext();)
+        {
+            Future future = (Future)iter.next();
+            try
+            {
+                future.get();
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                    failure = e.getCause();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+                future.cancel(true);
+                if (failure == null)
+                    failure = e;
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException)failure;
+        if (failure instanceof Error)
+            throw (Error)failure;
+        if (failure != null)
+            throw new RuntimeException(failure.getMessage(), failure);
+    }
+
     /**
      * @exclude
      * Used internally by AbstractService to add destination and service id
@@ -1981,4 +2306,40 @@ public final class MessageBroker extends ManageableComponent
             }
         }
     }
+
+    /**
+     * Runs a startup task on a startup thread with the thread locals and context
+     * class loader of the thread that started the broker.
+     */
+    private class StartupTask implements Runnable
+    {
+        private final Runnable task;
+        private final ServletConfig servletConfig;
+        private final ClassLoader contextClassLoader;
+
+        StartupTask(Runnable task)
+        {
+            this.task = task;
+            servletConfig = FlexContext.getServletConfig();
+            contextClassLoader = Thread.currentThread().getContextClassLoader();
+        }
+
+        public void run()
+        {
+            Thread thread = Thread.currentThread();
+            ClassLoader previousLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(contextClassLoader);
+            FlexContext.setThreadLocalObjects(null, null, MessageBroker.this, null, null, servletConfig);
+            systemSettingsThreadLocal.set(systemSettings);
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                FlexContext.clearThreadLocalObjects();
+                thread.setContextClassLoader(previousLoader);
+            }
+        }
+    }
 }
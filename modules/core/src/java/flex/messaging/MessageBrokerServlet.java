@@ -99,6 +99,8 @@ public class MessageBrokerServlet extends HttpServlet
         // Start the broker
         try
         {
+            long phaseStart = System.currentTimeMillis();
+
             // Get the configuration manager
             ConfigurationManager configManager = loadMessagingConfiguration(servletConfig);
 
@@ -125,8 +127,26 @@ public class MessageBrokerServlet extends HttpServlet
                 logger.info(VersionInfo.buildMessage());
             }
 
+            // Number of threads used to start destinations in parallel
+            String startupThreads = servletConfig.getInitParameter("startupThreads");
+            if (startupThreads != null)
+                broker.setStartupThreads(Integer.parseInt(startupThreads.trim()));
+
+            phaseStart = broker.recordConfigurationPhase(phaseStart);
+
             // Create endpoints, services, security, and logger on the broker based on configuration
             config.configureBroker(broker);
+            broker.recordConfigureBrokerPhase(phaseStart);
+
+            // Optional cache of the login command's authorization decisions
+            String authorizationCacheSize = servletConfig.getInitParameter("authorizationCacheSize");
+            if (authorizationCacheSize != null && broker.getLoginManager() != null)
+            {
+                broker.getLoginManager().setAuthorizationCacheSize(Integer.parseInt(authorizationCacheSize.trim()));
+                String authorizationCacheTTL = servletConfig.getInitParameter("authorizationCacheTTLMillis");
+                if (authorizationCacheTTL != null)
+                    broker.getLoginManager().setAuthorizationCacheTTLMillis(Long.parseLong(authorizationCacheTTL.trim()));
+            }
 
             long timeBeforeStartup = 0;
             if (Log.isDebug())
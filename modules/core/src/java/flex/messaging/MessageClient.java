@@ -40,6 +40,7 @@ import flex.messaging.services.messaging.selector.JMSSelectorException;
 import flex.messaging.util.ExceptionUtil;
 import flex.messaging.util.TimeoutAbstractObject;
 import flex.messaging.util.StringUtils;
+import flex.messaging.util.UUIDUtils;
 
 /**
  * Represents a client-side MessageAgent instance.
@@ -188,6 +189,7 @@ public class MessageClient extends TimeoutAbstractObject implements Serializable
     {
         valid = true;        
         this.clientId = clientId;
+        clientIdBytes = (clientId instanceof String) ? UUIDUtils.toByteArray((String)clientId) : null;
         this.destination = destination;
         this.endpointId = endpointId;
         destinationId = destination.getId();
@@ -241,6 +243,13 @@ public class MessageClient extends TimeoutAbstractObject implements Serializable
      */
     protected final Object clientId;
 
+    /**
+     * The clientId in the byte form used by small messages, or null if the
+     * clientId is not a UUID. Derived once so that messages pushed to this
+     * subscriber do not each have to derive it again.
+     */
+    private final byte[] clientIdBytes;
+
     /**
      * Internal reference to the associated MessageDestination; don't expose this in the public API.
      */
@@ -336,6 +345,18 @@ public class MessageClient extends TimeoutAbstractObject implements Serializable
     {
         return clientId; // Field is final; no need to sync.
     }
+
+    /**
+     * @exclude
+     * Returns the clientId in the byte form used by small messages, or null
+     * if the clientId is not a UUID.
+     *
+     * @return The clientId as bytes.
+     */
+    public byte[] getClientIdBytes()
+    {
+        return clientIdBytes; // Field is final; no need to sync.
+    }
     
     /**
      * Returns the destination the MessageClient is subscribed to.
@@ -80,7 +80,7 @@ public class AMFEndpoint extends BasePollingHTTPEndpoint
     protected AMFFilter createFilterChain()
     {
         AMFFilter serializationFilter = new SerializationFilter(getLogCategory());
-        AMFFilter batchFilter = new BatchProcessFilter();
+        AMFFilter batchFilter = new BatchProcessFilter(batchExecutor);
         AMFFilter sessionFilter = new SessionFilter();
         AMFFilter envelopeFilter = new LegacyFilter(this);
         AMFFilter messageBrokerFilter = new MessageBrokerFilter(this);
@@ -98,6 +98,7 @@ public abstract class AbstractEndpoint extends ManageableComponent
     private static final String LEGACY_EXTERNALIZABLE = "legacy-externalizable";
     private static final String LOG_PROPERTY_ERRORS = "log-property-errors";
     private static final String IGNORE_PROPERTY_ERRORS = "ignore-property-errors";
+    private static final String COLUMNAR_ROW_SETS = "columnar-row-sets";
     private static final String CONNECT_TIMEOUT_SECONDS = "connect-timeout-seconds";
     private static final String FLEX_CLIENT_OUTBOUND_QUEUE_PROCESSOR = "flex-client-outbound-queue-processor";
     private static final String SHOW_STACKTRACES = "show-stacktraces";
@@ -257,6 +258,7 @@ public abstract class AbstractEndpoint extends ManageableComponent
             serializationContext.restoreReferences = serialization.getPropertyAsBoolean(RESTORE_REFERENCES, false);
             serializationContext.logPropertyErrors = serialization.getPropertyAsBoolean(LOG_PROPERTY_ERRORS, false);
             serializationContext.ignorePropertyErrors = serialization.getPropertyAsBoolean(IGNORE_PROPERTY_ERRORS, true);
+            serializationContext.columnarRowSets = serialization.getPropertyAsBoolean(COLUMNAR_ROW_SETS, false);
         }
 
         recordMessageSizes = properties.getPropertyAsBoolean(ConfigurationConstants.RECORD_MESSAGE_SIZES_ELEMENT, false);
@@ -705,6 +707,21 @@ public abstract class AbstractEndpoint extends ManageableComponent
         return message;
     }
 
+    /**
+     * @exclude
+     * Converts a message pushed to the client of the current FlexSession, by
+     * a poll response or over a streaming connection, to its small form if
+     * that session has negotiated small messages.
+     */
+    public Message convertPushedMessage(Message message)
+    {
+        FlexSession session = FlexContext.getFlexSession();
+        if (session != null && session.useSmallMessages())
+            return convertToSmallMessage(message);
+
+        return message;
+    }
+
     /**
      * Returns a <code>ConfigMap</code> of endpoint properties that the client
      * needs. By default, it returns a <code>ConfigMap</code> of endpoint id
@@ -1038,7 +1055,14 @@ public abstract class AbstractEndpoint extends ManageableComponent
             if (messagesToReturn != null && !messagesToReturn.isEmpty())
             {
                 pollResponse = new CommandMessage(CommandMessage.CLIENT_SYNC_OPERATION);
-                pollResponse.setBody(messagesToReturn.toArray());
+
+                Object[] messages = messagesToReturn.toArray();
+                for (int i = 0; i < messages.length; i++)
+                {
+                    if (messages[i] instanceof Message)
+                        messages[i] = convertPushedMessage((Message)messages[i]);
+                }
+                pollResponse.setBody(messages);
             }
             else
             {
@@ -25,6 +25,12 @@ import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import edu.emory.mathcs.backport.java.util.concurrent.LinkedBlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ThreadFactory;
+import edu.emory.mathcs.backport.java.util.concurrent.ThreadPoolExecutor;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
 import flex.management.runtime.messaging.endpoints.EndpointControl;
 import flex.messaging.FlexContext;
 import flex.messaging.FlexSession;
@@ -55,6 +61,11 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
     private static final String ADD_NO_CACHE_HEADERS = "add-no-cache-headers";
     private static final String REDIRECT_URL = "redirect-url";
     private static final String INVALIDATE_SESSION_ON_DISCONNECT = "invalidate-session-on-disconnect";
+    private static final String PARALLEL_BATCH_MAX_THREADS = "parallel-batch-max-threads";
+
+    // Batched bodies waiting for a parallel batch thread, per thread, before
+    // further bodies are processed on the request thread instead.
+    private static final int PARALLEL_BATCH_QUEUE_PER_THREAD = 16;
     
     private static final int ERR_MSG_DUPLICATE_SESSIONS_DETECTED = 10035;
     private static final String REQUEST_ATTR_DUPLICATE_SESSION_FLAG = "flex.messaging.request.DuplicateSessionDetected";
@@ -108,6 +119,7 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
         addNoCacheHeaders = properties.getPropertyAsBoolean(ADD_NO_CACHE_HEADERS, true);
         redirectURL = properties.getPropertyAsString(REDIRECT_URL, null);
         invalidateSessionOnDisconnect = properties.getPropertyAsBoolean(INVALIDATE_SESSION_ON_DISCONNECT, false);
+        parallelBatchMaxThreads = properties.getPropertyAsInt(PARALLEL_BATCH_MAX_THREADS, 0);
 
         loginAfterDisconnect = properties.getPropertyAsBoolean(ConfigurationConstants.LOGIN_AFTER_DISCONNECT_ELEMENT, false);
 
@@ -125,9 +137,46 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
 
         super.start();
 
+        if (parallelBatchMaxThreads > 0)
+        {
+            final String threadPrefix = getId() + "-batch-";
+            batchExecutor = new ThreadPoolExecutor(parallelBatchMaxThreads, parallelBatchMaxThreads,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue(parallelBatchMaxThreads * PARALLEL_BATCH_QUEUE_PER_THREAD),
+                    new ThreadFactory()
+                    {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r, threadPrefix + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            batchExecutor.allowCoreThreadTimeOut(true);
+        }
+
         filterChain = createFilterChain();
     }
 
+    /**
+     * Stops the <code>Endpoint</code> and the threads used for parallel
+     * batch processing.
+     */
+    public void stop()
+    {
+        if (!isStarted())
+            return;
+
+        super.stop();
+
+        if (batchExecutor != null)
+        {
+            batchExecutor.shutdown();
+            batchExecutor = null;
+        }
+    }
+
     //--------------------------------------------------------------------------
     //
     // Variables
@@ -144,6 +193,12 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
      */
     protected AMFFilter filterChain;
 
+    /**
+     * Runs independent bodies of batched requests in parallel; <code>null</code>
+     * unless <code>parallel-batch-max-threads</code> is set.
+     */
+    protected ThreadPoolExecutor batchExecutor;
+
     //--------------------------------------------------------------------------
     //
     // Properties
@@ -219,6 +274,36 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
         invalidateSessionOnDisconnect = value;
     }
 
+    //----------------------------------
+    //  parallelBatchMaxThreads
+    //----------------------------------
+
+    protected int parallelBatchMaxThreads;
+
+    /**
+     * Returns the <code>parallel-batch-max-threads</code> property. When positive,
+     * independent remoting calls batched into one request are processed in
+     * parallel on up to this many threads. Default is 0, which processes batched
+     * calls one after the other.
+     *
+     * @return The <code>parallel-batch-max-threads</code> property.
+     */
+    public int getParallelBatchMaxThreads()
+    {
+        return parallelBatchMaxThreads;
+    }
+
+    /**
+     * Sets the <code>parallel-batch-max-threads</code> property. Takes effect
+     * when the endpoint is started.
+     *
+     * @param value The maximum number of threads used for batched calls.
+     */
+    public void setParallelBatchMaxThreads(int value)
+    {
+        parallelBatchMaxThreads = value;
+    }
+
     //----------------------------------
     //  redirectURL
     //---------------------------------- 
@@ -274,15 +359,25 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
             context.setRecordMessageSizes(isRecordMessageSizes());
             context.setRecordMessageTimes(isRecordMessageTimes());
 
+            // Track how long each stage of the request takes if the endpoint is managed
+            boolean managed = isManaged();
+            long requestStart = 0;
+            if (managed)
+            {
+                context.setRecordStageLatencies(true);
+                requestStart = System.nanoTime();
+            }
+
             // Send invocation through filter chain, which ends at the MessageBroker
             filterChain.invoke(context);
 
             // After serialization completes, increment endpoint byte counters, 
             // if the endpoint is managed
-            if (isManaged())
+            if (managed)
             {
                 controller.addToBytesDeserialized(context.getDeserializedBytes());
                 controller.addToBytesSerialized(context.getSerializedBytes());
+                controller.recordStageLatencies(context, System.nanoTime() - requestStart);
             }
 
             if (context.getStatus() != MessageIOConstants.STATUS_NOTAMF)
@@ -480,4 +575,4 @@ public abstract class BaseHTTPEndpoint extends AbstractEndpoint
             throw ce;
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -452,9 +452,10 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
             return;
 
         // Otherwise, move the MPII object of the queued message to be
-        // the MPIP object of the outgoing message.
-        MessagePerformanceInfo mpip;
-        mpip = (MessagePerformanceInfo)mpiOriginal.clone();
+        // the MPIP object of the outgoing message. The queued message is not
+        // read again once it is streamed, so the instance is moved rather
+        // than copied.
+        MessagePerformanceInfo mpip = mpiOriginal;
         try
         {
             // Set the original message info as the pushed causer info.
@@ -479,13 +480,12 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
         mpio.pushedFlag = true;
         MessagePerformanceUtils.setMPIO(message, mpio);
 
-        // If MPI sizing information is enabled serialize again so that we know size
+        // If MPI sizing information is enabled, let the subclass work out the size.
         if (mpip.recordMessageSizes)
         {
             try
             {
-                // Each subclass serializes the message in their own format to
-                // get the message size for the MPIO.
+                // Each subclass sizes the message in its own format for the MPIO.
                 serializationOverhead = System.currentTimeMillis();
                 mpio.messageSize = getMessageSizeForPerformanceInfo(message);
 
@@ -494,7 +494,6 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
                 {
                     serializationOverhead = System.currentTimeMillis() - serializationOverhead;
                     mpip.addToOverhead(serializationOverhead);
-                    mpiOriginal.addToOverhead(serializationOverhead);
                     mpio.sendTime = System.currentTimeMillis();
                 }
             }
@@ -509,7 +508,9 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
      * Used internally for performance information gathering; not intended for
      * public use. The default implementation of this method returns zero.
      * Subclasses should overwrite if they want to accurately report message
-     * size information in performance information gathering.
+     * size information in performance information gathering. Subclasses that
+     * fill in the size while streaming the message may return
+     * <code>MessageSizeBuffer.SIZE_PLACEHOLDER</code> here.
      *
      * @param message Message to get the size for.
      *
@@ -1083,4 +1084,4 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
         if (pushNotifierTimeoutManager != null)
             pushNotifierTimeoutManager.scheduleTimeout(notifier);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -89,7 +89,7 @@ public class HTTPEndpoint extends BasePollingHTTPEndpoint
     protected AMFFilter createFilterChain()
     {
         AMFFilter serializationFilter = new SerializationFilter(getLogCategory());
-        AMFFilter batchFilter = new BatchProcessFilter();
+        AMFFilter batchFilter = new BatchProcessFilter(batchExecutor);
         AMFFilter sessionFilter = new SessionFilter();
         AMFFilter messageBrokerFilter = new MessageBrokerFilter(this);
 
@@ -18,18 +18,19 @@
  **************************************************************************/
 package flex.messaging.endpoints;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.Iterator;
 import java.util.List;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import flex.management.runtime.messaging.endpoints.StreamingAMFEndpointControl;
 import flex.messaging.MessageBroker;
+import flex.messaging.client.FlexClient;
+import flex.messaging.config.ConfigMap;
 import flex.messaging.endpoints.amf.AMFFilter;
 import flex.messaging.endpoints.amf.BatchProcessFilter;
 import flex.messaging.endpoints.amf.LegacyFilter;
@@ -39,6 +40,7 @@ import flex.messaging.endpoints.amf.SessionFilter;
 import flex.messaging.io.MessageIOConstants;
 import flex.messaging.io.TypeMarshallingContext;
 import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.io.amf.MessageSizeBuffer;
 import flex.messaging.log.Log;
 import flex.messaging.log.LogCategories;
 import flex.messaging.messages.Message;
@@ -65,12 +67,44 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
      * The log category for this endpoint.
      */
     public static final String LOG_CATEGORY = LogCategories.ENDPOINT_STREAMING_AMF;
+
+    /**
+     * Header set to <code>true</code> on the first message streamed over a connection
+     * whose AMF traits table is kept alive across messages. A client that sees it
+     * must clear its object and string tables before each message of that connection,
+     * and reduce its traits table the way <code>Amf3Input.resetRetainingTraits()</code>
+     * does: only the traits of named classes are kept, in order, up to
+     * <code>Amf3Output.MAX_RETAINED_TRAITS</code> entries.
+     */
+    public static final String RETAIN_TRAITS_HEADER = "DSRetainTraits";
  
     //--------------------------------------------------------------------------
     //
     // Private Static Constants
     //
     //--------------------------------------------------------------------------
+
+    /**
+     * Configuration property that allows clients to request retained traits.
+     */
+    private static final String RETAIN_STREAM_TRAITS = "retain-stream-traits";
+
+    /**
+     * Parameter on the streaming open request by which a client asks for retained traits.
+     */
+    private static final String RETAIN_TRAITS_PARAM_NAME = "retainTraits";
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The output state of the streaming connection serviced by the current thread,
+     * set only while that connection retains its traits.
+     */
+    private final ThreadLocal retainedStream = new ThreadLocal();
     
     //--------------------------------------------------------------------------
     //
@@ -96,6 +130,64 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
     {
         super(enableManagement);
     }    
+
+    //--------------------------------------------------------------------------
+    //
+    // Initialize, validate, start, and stop methods.
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Initializes the <code>Endpoint</code> with the properties.
+     * If subclasses override, they must call <code>super.initialize()</code>.
+     *
+     * @param id Id of the <code>Endpoint</code>.
+     * @param properties Properties for the <code>Endpoint</code>.
+     */
+    public void initialize(String id, ConfigMap properties)
+    {
+        super.initialize(id, properties);
+
+        if (properties == null || properties.size() == 0)
+            return;
+
+        retainStreamTraits = properties.getPropertyAsBoolean(RETAIN_STREAM_TRAITS, false);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    //  retainStreamTraits
+    //----------------------------------
+
+    private boolean retainStreamTraits;
+
+    /**
+     * Returns whether clients may ask for the AMF traits table to be kept alive
+     * across the messages of a streaming connection, so that each class is only
+     * described once per connection. Default is <code>false</code>.
+     *
+     * @return <code>true</code> if clients may ask for retained traits.
+     */
+    public boolean isRetainStreamTraits()
+    {
+        return retainStreamTraits;
+    }
+
+    /**
+     * Sets whether clients may ask for the AMF traits table to be kept alive
+     * across the messages of a streaming connection.
+     *
+     * @param value <code>true</code> if clients may ask for retained traits.
+     */
+    public void setRetainStreamTraits(boolean value)
+    {
+        retainStreamTraits = value;
+    }
             
     //--------------------------------------------------------------------------
     //
@@ -110,7 +202,7 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
     protected AMFFilter createFilterChain()
     {
         AMFFilter serializationFilter = new SerializationFilter(getLogCategory());
-        AMFFilter batchFilter = new BatchProcessFilter();
+        AMFFilter batchFilter = new BatchProcessFilter(batchExecutor);
         AMFFilter sessionFilter = new SessionFilter();
         AMFFilter envelopeFilter = new LegacyFilter(this);
         AMFFilter messageBrokerFilter = new MessageBrokerFilter(this);
@@ -143,29 +235,17 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
          
     /**
      * Used internally for performance information gathering; not intended for
-     * public use. Serializes the message in AMF format and returns the size of 
-     * the serialized message.
+     * public use. AMF writes the message size as a fixed width number, so this
+     * returns a placeholder that <code>streamMessages()</code> replaces with the
+     * real size once the message has been serialized.
      * 
      * @param message Message to get the size for.
      * 
-     * @return The size of the message after message is serialized.
+     * @return <code>MessageSizeBuffer.SIZE_PLACEHOLDER</code>.
      */
     protected long getMessageSizeForPerformanceInfo(Message message)
     {
-        Amf3Output amfOut = new Amf3Output(serializationContext);
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        DataOutputStream dataOutStream = new DataOutputStream(outStream);
-        amfOut.setOutputStream(dataOutStream);      
-        try
-        {
-            amfOut.writeObject(message);
-        }
-        catch (IOException e)
-        {
-            if (Log.isDebug())
-                log.debug("MPI exception while retrieving the size of the serialized message: " + e.toString());              
-        }
-        return dataOutStream.size();
+        return MessageSizeBuffer.SIZE_PLACEHOLDER;
     }
     
     /**
@@ -212,6 +292,59 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
         setControl(controller);
     }    
     
+    /**
+     * Handles the streaming connection open command. If the endpoint allows it and
+     * the client asked for it, the connection keeps a single AMF output whose traits
+     * table survives from one streamed message to the next.
+     *
+     * @param req The <code>HttpServletRequest</code> to service.
+     * @param res The <code>HttpServletResponse</code> to be used in case an error
+     * has to be sent back.
+     * @param flexClient FlexClient that requested the streaming connection.
+     */
+    protected void handleFlexClientStreamingOpenRequest(HttpServletRequest req, HttpServletResponse res, FlexClient flexClient)
+    {
+        if (!startRetainedStream(req))
+        {
+            super.handleFlexClientStreamingOpenRequest(req, res, flexClient);
+            return;
+        }
+
+        try
+        {
+            super.handleFlexClientStreamingOpenRequest(req, res, flexClient);
+        }
+        finally
+        {
+            endRetainedStream();
+        }
+    }
+
+    /**
+     * Sets up retained traits for the streaming connection serviced by the
+     * current thread if the endpoint allows it and the open request asks for it.
+     *
+     * @param req The streaming open request.
+     * @return <code>true</code> if the connection retains its traits.
+     */
+    boolean startRetainedStream(HttpServletRequest req)
+    {
+        if (!retainStreamTraits || !"true".equals(req.getParameter(RETAIN_TRAITS_PARAM_NAME)))
+            return false;
+
+        // The connection is serviced entirely by this thread, so its output lives here.
+        retainedStream.set(new RetainedStream(getAmfOutput()));
+        return true;
+    }
+
+    /**
+     * Releases the retained traits state of the current thread's connection.
+     */
+    void endRetainedStream()
+    {
+        retainedStream.set(null);
+    }
+
     /**
      * Helper method invoked by the endpoint request handler thread cycling in wait-notify.
      * Serializes messages and streams each to the client as a response chunk using streamChunk().
@@ -227,14 +360,33 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
                 
         // Serialize each message as a separate chunk of bytes.
         TypeMarshallingContext.setTypeMarshaller(getTypeMarshaller());
+        RetainedStream stream = (RetainedStream)retainedStream.get();
         for (Iterator iter = messages.iterator(); iter.hasNext();)
         {
-            Amf3Output amfOut = getAmfOutput();
-            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-            DataOutputStream dataOutStream = new DataOutputStream(outStream);
-            amfOut.setOutputStream(dataOutStream);
-            
+            Amf3Output amfOut;
+            MessageSizeBuffer outStream;
             Message message = (Message)iter.next();
+            if (stream != null)
+            {
+                amfOut = stream.amfOut;
+                outStream = stream.outStream;
+                outStream.reset();
+                amfOut.resetRetainingTraits();
+
+                // Tell the client on the first message, the connect ack, to keep its traits.
+                if (!stream.headerSent)
+                {
+                    message.setHeader(RETAIN_TRAITS_HEADER, Boolean.TRUE);
+                    stream.headerSent = true;
+                }
+            }
+            else
+            {
+                amfOut = getAmfOutput();
+                outStream = new MessageSizeBuffer();
+                // Written to directly so the buffer learns where the MPI size goes.
+                amfOut.setOutputStream(outStream);
+            }
             
             // Add performance information if MPI is enabled. 
             if (isRecordMessageSizes() || isRecordMessageTimes())
@@ -242,9 +394,14 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
             
             if (Log.isDebug())
                 log.debug("Endpoint with id '" + getId() + "' is streaming message: " + message);
-                        
+
+            // Clients that negotiated small messages get them over streaming connections too.
+            message = convertPushedMessage(message);
+
             amfOut.writeObject(message);
-            dataOutStream.flush();
+            amfOut.flush();
+            if (isRecordMessageSizes())
+                outStream.patchMessageSize(outStream.size());
             byte[] messageBytes = outStream.toByteArray();
             streamChunk(messageBytes, os, response);
             
@@ -284,4 +441,28 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
         }
         return new Amf3Output(serializationContext);
     }
-}
\ No newline at end of file
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The output reused for every message of a streaming connection that retains
+     * its traits.
+     */
+    private static class RetainedStream
+    {
+        final Amf3Output amfOut;
+        final MessageSizeBuffer outStream;
+        boolean headerSent;
+
+        RetainedStream(Amf3Output amfOut)
+        {
+            this.amfOut = amfOut;
+            outStream = new MessageSizeBuffer();
+            amfOut.setOutputStream(outStream);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import flex.messaging.endpoints.amf.BatchProcessFilter;
 import flex.messaging.endpoints.amf.MessageBrokerFilter;
 import flex.messaging.endpoints.amf.SerializationFilter;
 import flex.messaging.endpoints.amf.SessionFilter;
+import flex.messaging.io.CountingOutputStream;
 import flex.messaging.io.MessageIOConstants;
 import flex.messaging.io.TypeMarshallingContext;
 import flex.messaging.io.amfx.AmfxOutput;
@@ -102,7 +103,7 @@ public class StreamingHTTPEndpoint extends BaseStreamingHTTPEndpoint
     protected AMFFilter createFilterChain()
     {
         AMFFilter serializationFilter = new SerializationFilter(getLogCategory());
-        AMFFilter batchFilter = new BatchProcessFilter();
+        AMFFilter batchFilter = new BatchProcessFilter(batchExecutor);
         AMFFilter sessionFilter = new SessionFilter();
         AMFFilter messageBrokerFilter = new MessageBrokerFilter(this);
 
@@ -142,10 +143,11 @@ public class StreamingHTTPEndpoint extends BaseStreamingHTTPEndpoint
      */
     protected long getMessageSizeForPerformanceInfo(Message message)
     {
+        // AMFX writes numbers as text so the size has to be measured up front,
+        // but there is no need to keep a copy of the bytes.
         AmfxOutput amfxOut = new AmfxOutput(serializationContext);
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        DataOutputStream dataOutStream = new DataOutputStream(outStream);
-        amfxOut.setOutputStream(dataOutStream);
+        CountingOutputStream outStream = new CountingOutputStream();
+        amfxOut.setOutputStream(outStream);
         try
         {
             amfxOut.writeObject(message);    
@@ -155,7 +157,7 @@ public class StreamingHTTPEndpoint extends BaseStreamingHTTPEndpoint
             if (Log.isDebug())
                 log.debug("MPI exception while retrieving the size of the serialized message: " + e.toString());              
         }
-        return dataOutStream.size();
+        return outStream.getCount();
     }
     
     /**
@@ -274,4 +276,4 @@ public class StreamingHTTPEndpoint extends BaseStreamingHTTPEndpoint
         }
         return new AmfxOutput(serializationContext);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -18,58 +18,325 @@
  **************************************************************************/
 package flex.messaging.endpoints.amf;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import edu.emory.mathcs.backport.java.util.concurrent.Callable;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.RejectedExecutionException;
+
+import flex.messaging.FlexContext;
+import flex.messaging.FlexSession;
+import flex.messaging.MessageBroker;
+import flex.messaging.MessageException;
+import flex.messaging.client.FlexClient;
 import flex.messaging.io.amf.ActionContext;
 import flex.messaging.io.amf.MessageBody;
 import flex.messaging.io.MessageIOConstants;
 import flex.messaging.io.RecoverableSerializationException;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.TypeMarshaller;
+import flex.messaging.io.TypeMarshallingContext;
+import flex.messaging.log.Log;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+import flex.messaging.util.ExceptionUtil;
+import flex.messaging.util.StringUtils;
 
 /**
  * Filter that breaks down the batched message buffer into individual invocations.
+ * <p>
+ * When constructed with an executor, consecutive remoting messages from an
+ * established FlexClient are treated as independent and run concurrently on the
+ * executor, with the <code>FlexContext</code> and serialization thread locals of
+ * the request carried over to the worker threads. Workers see the servlet request
+ * and response through <code>BatchServletObjects</code> rather than directly.
+ * Any other body, such as a command, waits for the bodies before it and is
+ * processed on the request thread.
+ * Response bodies keep the order of the request bodies. Requests that record
+ * message performance information are always processed sequentially because
+ * their bodies share the outgoing MPI.
+ * </p>
  *
  * @author PS Neville
  */
 public class BatchProcessFilter extends AMFFilter
 {
+    private static final int UNHANDLED_ERROR = 10000;
+
+    private final ExecutorService executor;
+
     public BatchProcessFilter()
     {
+        this(null);
+    }
+
+    /**
+     * Creates a filter that processes independent bodies on the given executor.
+     *
+     * @param executor The executor for parallel bodies, or <code>null</code> to
+     * process every body sequentially.
+     */
+    public BatchProcessFilter(ExecutorService executor)
+    {
+        this.executor = executor;
     }
 
     public void invoke(final ActionContext context)
     {
         // Process each action in the body
         int bodyCount = context.getRequestMessage().getBodyCount();
+        long stageStart = context.isRecordStageLatencies() ? System.nanoTime() : 0;
 
         // Report batch size in Debug mode
         //gateway.getLogger().logDebug("Processing batch of " + bodyCount + " request(s)");
 
+        if (executor != null && bodyCount > 1 && !context.isMPIenabled())
+            invokeParallel(context, bodyCount);
+        else
+            invokeSequential(context, bodyCount);
+
+        if (context.isRecordStageLatencies())
+            context.addStageNanos(ActionContext.STAGE_BATCH, System.nanoTime() - stageStart);
+    }
+
+    private void invokeSequential(ActionContext context, int bodyCount)
+    {
         for (context.setMessageNumber(0); context.getMessageNumber() < bodyCount; context.incrementMessageNumber())
         {
-            try
-            {
-                // create the response body
-                MessageBody responseBody = new MessageBody();
-                responseBody.setTargetURI(context.getRequestMessageBody().getResponseURI());
+            // create the response body
+            MessageBody responseBody = new MessageBody();
+            responseBody.setTargetURI(context.getRequestMessageBody().getResponseURI());
 
-                // append the response body to the output message
-                context.getResponseMessage().addBody(responseBody);
+            // append the response body to the output message
+            context.getResponseMessage().addBody(responseBody);
 
-                //Check that deserialized message body data type was valid. If not, skip this message.
-                Object o = context.getRequestMessageBody().getData();
+            invokeBody(context);
+        }
+    }
 
-                if (o != null && o instanceof RecoverableSerializationException)
+    private void invokeParallel(ActionContext context, int bodyCount)
+    {
+        // Create all response bodies up front so that each one keeps its position
+        // whichever order the bodies finish in.
+        for (int i = 0; i < bodyCount; i++)
+        {
+            MessageBody responseBody = new MessageBody();
+            responseBody.setTargetURI(context.getRequestMessage().getBody(i).getResponseURI());
+            context.getResponseMessage().addBody(responseBody);
+        }
+
+        List pending = new ArrayList();
+        BatchServletObjects servletObjects = null;
+        for (context.setMessageNumber(0); context.getMessageNumber() < bodyCount; context.incrementMessageNumber())
+        {
+            int messageNumber = context.getMessageNumber();
+            if (isIndependent(context.getRequestMessageBody().getData()))
+            {
+                // Read what the bodies need from the servlet objects before any is handed off.
+                if (servletObjects == null)
+                {
+                    servletObjects = new BatchServletObjects(FlexContext.getHttpRequest(),
+                            FlexContext.getHttpResponse(), FlexContext.getTunnelHttpRequest());
+                }
+
+                ActionContext bodyContext = context.createBodyContext(messageNumber);
+                try
                 {
-                    context.getResponseMessageBody().setData(((RecoverableSerializationException)o).createErrorMessage());
-                    context.getResponseMessageBody().setReplyMethod(MessageIOConstants.STATUS_METHOD);
+                    pending.add(new Object[] {executor.submit(new BodyTask(bodyContext, servletObjects)), bodyContext});
                     continue;
                 }
+                catch (RejectedExecutionException e)
+                {
+                    // Executor is saturated or shutting down; run this body here instead.
+                }
+            }
+
+            // Bodies that may depend on earlier ones wait for them to finish.
+            awaitPending(context, pending);
+            invokeBody(context);
+        }
+        awaitPending(context, pending);
+    }
+
+    private void invokeBody(ActionContext context)
+    {
+        try
+        {
+            //Check that deserialized message body data type was valid. If not, skip this message.
+            Object o = context.getRequestMessageBody().getData();
+
+            if (o != null && o instanceof RecoverableSerializationException)
+            {
+                context.getResponseMessageBody().setData(((RecoverableSerializationException)o).createErrorMessage());
+                context.getResponseMessageBody().setReplyMethod(MessageIOConstants.STATUS_METHOD);
+                return;
+            }
+
+            // invoke next filter in the chain
+            next.invoke(context);
+        }
+        catch (Exception e)
+        {
+            // continue invoking on next message body despite error
+        }
+    }
 
-                // invoke next filter in the chain
-                next.invoke(context);
+    private void awaitPending(ActionContext context, List pending)
+    {
+        boolean interrupted = false;
+        for (int i = 0; i < pending.size(); i++)
+        {
+            Object[] entry = (Object[])pending.get(i);
+            Future future = (Future)entry[0];
+            ActionContext bodyContext = (ActionContext)entry[1];
+            while (true)
+            {
+                try
+                {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    // continue invoking on next message body despite error
+                    setErrorBody(bodyContext, e.getCause());
+                    break;
+                }
+            }
+            context.mergeBodyContext(bodyContext);
+        }
+        pending.clear();
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Answers a body whose worker failed with an error, which invokeBody does not
+     * catch, with an error message so that its response body is not left empty.
+     */
+    private void setErrorBody(ActionContext context, Throwable t)
+    {
+        context.setStatus(MessageIOConstants.STATUS_ERR);
+
+        String lmeMessage = t.getMessage();
+        if (lmeMessage == null)
+            lmeMessage = t.getClass().getName();
+
+        MessageException lme = new MessageException();
+        lme.setMessage(UNHANDLED_ERROR, new Object[] {lmeMessage});
+        ErrorMessage errorMessage = lme.createErrorMessage();
+
+        Object data = getFirstItem(context.getRequestMessageBody().getData());
+        if (data instanceof Message)
+        {
+            Message inMessage = (Message)data;
+            errorMessage.setCorrelationId(inMessage.getMessageId());
+            errorMessage.setDestination(inMessage.getDestination());
+            errorMessage.setClientId(inMessage.getClientId());
+        }
+
+        context.getResponseMessageBody().setData(errorMessage);
+        context.getResponseMessageBody().setReplyMethod(MessageIOConstants.STATUS_METHOD);
+
+        if (Log.isError())
+        {
+            Log.getLogger(MessageBrokerFilter.LOG_CATEGORY).error("Unhandled error when processing a message: " +
+                    t.toString() + StringUtils.NEWLINE +
+                    "  incomingMessage: " + data + StringUtils.NEWLINE +
+                    ExceptionUtil.exceptionFollowedByRootCausesToString(t) + StringUtils.NEWLINE);
+        }
+    }
+
+    /**
+     * Only remoting calls from a client that already has a FlexClient id are run
+     * in parallel; commands and the first messages of a new client can change
+     * state that later bodies rely on.
+     */
+    private boolean isIndependent(Object data)
+    {
+        data = getFirstItem(data);
+
+        if (!(data instanceof RemotingMessage))
+            return false;
+
+        Object id = ((Message)data).getHeader(Message.FLEX_CLIENT_ID_HEADER);
+        return id instanceof String && !"nil".equals(id) && !FlexClient.NULL_FLEXCLIENT_ID.equals(id);
+    }
+
+    private Object getFirstItem(Object data)
+    {
+        if (data instanceof List)
+            data = ((List)data).isEmpty() ? null : ((List)data).get(0);
+        else if (data != null && data.getClass().isArray())
+            data = Array.getLength(data) == 0 ? null : Array.get(data, 0);
+        return data;
+    }
+
+    /**
+     * Processes one body on a worker thread with the thread locals of the
+     * request thread that created it, except that the servlet request and
+     * response are replaced by their stand-ins.
+     */
+    private class BodyTask implements Callable
+    {
+        private final ActionContext context;
+        private final FlexClient flexClient;
+        private final FlexSession session;
+        private final MessageBroker broker;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final HttpServletRequest tunnelRequest;
+        private final ServletConfig servletConfig;
+        private final SerializationContext serializationContext;
+        private final TypeMarshaller typeMarshaller;
+
+        BodyTask(ActionContext context, BatchServletObjects servletObjects)
+        {
+            this.context = context;
+            flexClient = FlexContext.getFlexClient();
+            session = FlexContext.getFlexSession();
+            broker = FlexContext.getMessageBroker();
+            request = servletObjects.getRequest();
+            response = servletObjects.getResponse();
+            tunnelRequest = servletObjects.getTunnelRequest();
+            servletConfig = FlexContext.getServletConfig();
+            SerializationContext sc = SerializationContext.getSerializationContext();
+            serializationContext = sc == null ? null : (SerializationContext)sc.clone();
+            typeMarshaller = TypeMarshallingContext.getTypeMarshaller();
+        }
+
+        public Object call()
+        {
+            FlexContext.setThreadLocalObjects(flexClient, session, broker, request, response, servletConfig);
+            FlexContext.setThreadLocalTunnelHttpRequest(tunnelRequest);
+            if (serializationContext != null)
+                SerializationContext.setSerializationContext(serializationContext);
+            TypeMarshallingContext.setTypeMarshaller(typeMarshaller);
+            try
+            {
+                invokeBody(context);
             }
-            catch (Exception e)
+            finally
             {
-                // continue invoking on next message body despite error
+                FlexContext.setThreadLocalFlexClient(null);
+                FlexContext.clearThreadLocalObjects();
+                SerializationContext.clearThreadLocalObjects();
             }
+            return null;
         }
     }
 }
@@ -0,0 +1,156 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.endpoints.amf;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Stands in for the servlet request and response of a batch on the worker
+ * threads of <code>BatchProcessFilter</code>, as servlet objects are not
+ * thread safe.
+ * <p>
+ * The request URL, query string and context path, and the encoded URL that
+ * <code>SessionFilter</code> looks for a session id in, are read on the request
+ * thread when the batch is handed off. Any other call, such as an authorization
+ * check or a service reading a header, is passed on to the original object while
+ * holding a lock shared by every body of the batch, so that the originals are
+ * never used by two threads at once. The request thread does not use them while
+ * bodies are pending.
+ * </p>
+ */
+final class BatchServletObjects
+{
+    private final Object lock = new Object();
+
+    private final HttpServletRequest originalRequest;
+    private final HttpServletResponse originalResponse;
+
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final HttpServletRequest tunnelRequest;
+
+    private boolean captured;
+    private String requestURL;
+    private String queryString;
+    private String contextPath;
+    private String fullURL;
+    private String encodedURL;
+
+    /**
+     * Must be called on the request thread.
+     */
+    BatchServletObjects(HttpServletRequest request, HttpServletResponse response, HttpServletRequest tunnelRequest)
+    {
+        originalRequest = request;
+        originalResponse = response;
+
+        if (request != null)
+        {
+            try
+            {
+                StringBuffer url = request.getRequestURL();
+                requestURL = url == null ? null : url.toString();
+                queryString = request.getQueryString();
+                contextPath = request.getContextPath();
+                fullURL = SessionFilter.getFullRequestURL(request);
+                if (fullURL != null && response != null)
+                    encodedURL = response.encodeURL(fullURL);
+                captured = true;
+            }
+            catch (RuntimeException e)
+            {
+                // Leave these calls to the original objects.
+            }
+        }
+
+        this.request = (HttpServletRequest)createProxy(HttpServletRequest.class, request);
+        this.response = (HttpServletResponse)createProxy(HttpServletResponse.class, response);
+        this.tunnelRequest = (HttpServletRequest)createProxy(HttpServletRequest.class, tunnelRequest);
+    }
+
+    HttpServletRequest getRequest()
+    {
+        return request;
+    }
+
+    HttpServletResponse getResponse()
+    {
+        return response;
+    }
+
+    HttpServletRequest getTunnelRequest()
+    {
+        return tunnelRequest;
+    }
+
+    private Object createProxy(Class type, Object target)
+    {
+        if (target == null)
+            return null;
+
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class[] {type}, new LockingHandler(target));
+    }
+
+    private class LockingHandler implements InvocationHandler
+    {
+        private final Object target;
+
+        LockingHandler(Object target)
+        {
+            this.target = target;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if (captured && target == originalRequest && (args == null || args.length == 0))
+            {
+                if ("getRequestURL".equals(name))
+                    return requestURL == null ? null : new StringBuffer(requestURL);
+                else if ("getQueryString".equals(name))
+                    return queryString;
+                else if ("getContextPath".equals(name))
+                    return contextPath;
+            }
+            else if (captured && target == originalResponse && "encodeURL".equals(name)
+                    && fullURL != null && fullURL.equals(args[0]))
+            {
+                return encodedURL;
+            }
+
+            synchronized (lock)
+            {
+                try
+                {
+                    return method.invoke(target, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw e.getTargetException();
+                }
+            }
+        }
+    }
+}
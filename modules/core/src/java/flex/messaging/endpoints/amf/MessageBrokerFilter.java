@@ -118,7 +118,22 @@ public class MessageBrokerFilter extends AMFFilter
                 MessagePerformanceUtils.setupMPII(context, inMessage);
 
             // Service the message.
-            outMessage = endpoint.serviceMessage(inMessage);
+            if (context.isRecordStageLatencies())
+            {
+                long stageStart = System.nanoTime();
+                try
+                {
+                    outMessage = endpoint.serviceMessage(inMessage);
+                }
+                finally
+                {
+                    context.addStageNanos(ActionContext.STAGE_ROUTE, System.nanoTime() - stageStart);
+                }
+            }
+            else
+            {
+                outMessage = endpoint.serviceMessage(inMessage);
+            }
 
             // if processing of the message resulted in an error, set up context and reply method accordingly
             if (outMessage instanceof ErrorMessage)
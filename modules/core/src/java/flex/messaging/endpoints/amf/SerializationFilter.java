@@ -27,6 +27,7 @@ import java.util.List;
 
 import flex.messaging.FlexContext;
 import flex.messaging.MessageException;
+import flex.messaging.io.CountingOutputStream;
 import flex.messaging.io.MessageDeserializer;
 import flex.messaging.io.MessageIOConstants;
 import flex.messaging.io.MessageSerializer;
@@ -35,8 +36,10 @@ import flex.messaging.io.SerializationException;
 import flex.messaging.io.amf.ASObject;
 import flex.messaging.io.amf.ActionContext;
 import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageSerializer;
 import flex.messaging.io.amf.AmfTrace;
 import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amf.MessageSizeBuffer;
 import flex.messaging.log.Log;
 import flex.messaging.log.LogCategories;
 import flex.messaging.log.Logger;
@@ -81,6 +84,8 @@ public class SerializationFilter extends AMFFilter
         // Create an empty ActionMessage object to hold our response
         context.setResponseMessage(new ActionMessage());
         SerializationContext sc = SerializationContext.getSerializationContext();
+        boolean recordStages = context.isRecordStageLatencies();
+        long stageStart = recordStages ? System.nanoTime() : 0;
 
         try
         {
@@ -137,6 +142,9 @@ public class SerializationFilter extends AMFFilter
 
             if (isDebug)
                 logger.debug(debugTrace.toString());
+
+            if (recordStages)
+                context.addStageNanos(ActionContext.STAGE_DESERIALIZE, System.nanoTime() - stageStart);
         }
 
         try
@@ -155,7 +163,6 @@ public class SerializationFilter extends AMFFilter
             // serialize output
             if (context.getStatus() != MessageIOConstants.STATUS_NOTAMF)
             {
-                ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
                 ActionMessage respMesg = context.getResponseMessage();
 
                 if (isDebug)
@@ -163,52 +170,15 @@ public class SerializationFilter extends AMFFilter
                     debugTrace = new AmfTrace();
                 }
 
+                if (recordStages)
+                    stageStart = System.nanoTime();
+
                 try
                 {
-                    // overhead calculation is only necessary when MPI is enabled
-                    long serializationOverhead=0;
-                    if(context.isRecordMessageTimes())
-                    {
-                        // set server send time
-                        context.getMPIO().sendTime = System.currentTimeMillis();
-                        if(context.isRecordMessageSizes())
-                            serializationOverhead = System.currentTimeMillis();
-                    }
-                    MessageSerializer serializer = sc.newMessageSerializer();
-                    serializer.initialize(sc, outBuffer, debugTrace);
-                    serializer.writeMessage(respMesg);
+                    ByteArrayOutputStream outBuffer = serializeResponse(context, sc, respMesg, debugTrace, logger);
 
                     // keep track of serializes bytes for performance metrics
                     context.setSerializedBytes(outBuffer.size());
-
-                    // serialized message again after adding info if mpio with sizing is enabled
-                    if(context.isRecordMessageSizes())
-                    {
-                        try
-                        {
-                            context.getMPIO().messageSize = outBuffer.size();
-
-                            // reset server send time
-                            if(context.isRecordMessageTimes())
-                            {
-                                serializationOverhead = System.currentTimeMillis() - serializationOverhead;
-                                context.getMPIO().addToOverhead(serializationOverhead);
-                                context.getMPIO().sendTime = System.currentTimeMillis();
-                            }
-
-                            // reserialize the message now that info has been added
-                            outBuffer = new ByteArrayOutputStream();
-                            respMesg = context.getResponseMessage();
-                            serializer = sc.newMessageSerializer();
-                            serializer.initialize(sc, outBuffer, debugTrace);
-                            serializer.writeMessage(respMesg);
-                        }
-                        catch(Exception e)
-                        {
-                            if (isDebug)
-                                logger.debug("MPI set up error: " + e.toString());
-                        }
-                    }
                     context.setResponseOutput(outBuffer);
                 }
                 catch (Exception e)
@@ -219,9 +189,72 @@ public class SerializationFilter extends AMFFilter
                 {
                     if (isDebug)
                         logger.debug(debugTrace.toString());
+
+                    if (recordStages)
+                        context.addStageNanos(ActionContext.STAGE_SERIALIZE, System.nanoTime() - stageStart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serializes the response message. When MPI sizing is enabled the outgoing MPI
+     * message size is filled in during the same pass: AMF writes the size as a fixed
+     * width double, so a placeholder is written and patched once the final size is
+     * known. AMFX writes numbers as text, so the size is measured first with a
+     * counting sink.
+     */
+    static ByteArrayOutputStream serializeResponse(ActionContext context, SerializationContext sc,
+            ActionMessage respMesg, AmfTrace debugTrace, Logger logger) throws IOException
+    {
+        MessagePerformanceInfo mpio = context.getMPIO();
+        boolean recordSizes = mpio != null && context.isRecordMessageSizes();
+
+        // set server send time
+        if (mpio != null && context.isRecordMessageTimes())
+            mpio.sendTime = System.currentTimeMillis();
+
+        MessageSerializer serializer = sc.newMessageSerializer();
+        boolean fixedWidthSizes = serializer instanceof AmfMessageSerializer;
+        if (recordSizes)
+        {
+            if (fixedWidthSizes)
+            {
+                mpio.messageSize = MessageSizeBuffer.SIZE_PLACEHOLDER;
+            }
+            else
+            {
+                try
+                {
+                    long serializationOverhead = System.currentTimeMillis();
+                    CountingOutputStream counter = new CountingOutputStream();
+                    serializer.initialize(sc, counter, null);
+                    serializer.writeMessage(respMesg);
+                    mpio.messageSize = counter.getCount();
+
+                    if (context.isRecordMessageTimes())
+                    {
+                        mpio.addToOverhead(System.currentTimeMillis() - serializationOverhead);
+                        mpio.sendTime = System.currentTimeMillis();
+                    }
+                }
+                catch (Exception e)
+                {
+                    if (Log.isDebug())
+                        logger.debug("MPI set up error: " + e.toString());
                 }
+                serializer = sc.newMessageSerializer();
             }
         }
+
+        MessageSizeBuffer outBuffer = new MessageSizeBuffer();
+        serializer.initialize(sc, outBuffer, debugTrace);
+        serializer.writeMessage(respMesg);
+
+        if (recordSizes && fixedWidthSizes)
+            outBuffer.patchMessageSize(outBuffer.size());
+
+        return outBuffer;
     }
 
     /**
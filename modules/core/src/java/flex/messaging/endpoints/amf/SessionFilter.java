@@ -43,19 +43,16 @@ public class SessionFilter extends AMFFilter
     {
         next.invoke(context);
 
+        long stageStart = context.isRecordStageLatencies() ? System.nanoTime() : 0;
         try
         {
             HttpServletRequest request = FlexContext.getHttpRequest();
             HttpServletResponse response = FlexContext.getHttpResponse();
 
-            StringBuffer reqURL = request.getRequestURL();
+            String oldFullURL = getFullRequestURL(request);
 
-            if (reqURL != null)
+            if (oldFullURL != null)
             {
-                if (request.getQueryString() != null)
-                    reqURL.append("?").append(request.getQueryString());
-
-                String oldFullURL = reqURL.toString().trim();
                 String encFullURL = response.encodeURL(oldFullURL).trim();
 
                 String sessionSuffix = null;
@@ -79,5 +76,26 @@ public class SessionFilter extends AMFFilter
         {
             //Nothing more we can do... don't send 'URL Append' AMF header.
         }
+        finally
+        {
+            if (context.isRecordStageLatencies())
+                context.addStageNanos(ActionContext.STAGE_SESSION, System.nanoTime() - stageStart);
+        }
+    }
+
+    /**
+     * Returns the full URL of the request, including the query string, that is
+     * checked for a ;jsessionid token, or null if the request has no URL.
+     */
+    static String getFullRequestURL(HttpServletRequest request)
+    {
+        StringBuffer reqURL = request.getRequestURL();
+        if (reqURL == null)
+            return null;
+
+        if (request.getQueryString() != null)
+            reqURL.append("?").append(request.getQueryString());
+
+        return reqURL.toString().trim();
     }
 }
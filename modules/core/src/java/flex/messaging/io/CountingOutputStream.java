@@ -0,0 +1,63 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.io;
+
+import java.io.OutputStream;
+
+/**
+ * @exclude
+ *
+ * An OutputStream that discards everything written to it and only counts
+ * the bytes. Used to measure the serialized size of a message without
+ * buffering a copy of it.
+ */
+public class CountingOutputStream extends OutputStream
+{
+    private long count;
+
+    /**
+     * Returns the number of bytes written so far.
+     *
+     * @return The number of bytes written so far.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Resets the byte count to zero.
+     */
+    public void reset()
+    {
+        count = 0;
+    }
+
+    /** {@inheritDoc} */
+    public void write(int b)
+    {
+        count++;
+    }
+
+    /** {@inheritDoc} */
+    public void write(byte[] b, int off, int len)
+    {
+        count += len;
+    }
+}
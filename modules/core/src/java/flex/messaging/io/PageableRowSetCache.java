@@ -0,0 +1,821 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches pageable results detached from their JDBC cursors. When a
+ * <code>PageableRowSet</code> is added, its rows are read once and stored as
+ * serialized blocks of rows, after which the underlying <code>RowSet</code>
+ * can be closed. Pages are then assembled from the blocks without locking, so
+ * several clients can fetch pages of the same result at the same time.
+ * <p>
+ * Results are evicted when they have not been used for the time to live, and
+ * least recently used results are evicted when the cache holds more than the
+ * maximum number of results. When the serialized blocks take more than the
+ * maximum memory, the blocks of the least recently used results are written
+ * to the spill directory if one is set, or the results are evicted if not.
+ * The memory limit is also checked while a result is being read, so the blocks
+ * of a large result are spilled as they fill, and a result that cannot fit in
+ * memory without a spill directory is refused rather than read in full.
+ * </p>
+ * <p>
+ * Rows are serialized with Java serialization. <code>Clob</code> and
+ * <code>Blob</code> values are cached as their <code>String</code> and
+ * <code>byte[]</code> content; a result with any other value that is not
+ * <code>Serializable</code> cannot be cached.
+ * </p>
+ *
+ * @exclude
+ */
+public class PageableRowSetCache
+{
+    /**
+     * The default number of rows serialized together in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 500;
+
+    private static final String SPILL_FILE_PREFIX = "rowset";
+    private static final String SPILL_FILE_SUFFIX = ".block";
+
+    private final int maxRowSets;
+    private final long maxMemoryBytes;
+    private final long timeToLiveNanos;
+    private volatile int blockSize = DEFAULT_BLOCK_SIZE;
+    private volatile File spillDirectory;
+
+    // Access ordered so that iteration starts with the least recently used result; guarded by this
+    private final LinkedHashMap<String, DetachedRowSet> rowSets = new LinkedHashMap<String, DetachedRowSet>(16, 0.75f, true);
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong spillCount = new AtomicLong();
+    // Spill files whose delete failed, retried on clear; guarded by itself
+    private final List<File> undeletedFiles = new ArrayList<File>();
+
+    /**
+     * Creates a <code>PageableRowSetCache</code>.
+     *
+     * @param maxRowSets The maximum number of results to cache.
+     * @param maxMemoryBytes The maximum number of bytes of serialized rows to keep in memory.
+     * @param timeToLiveMillis The time in milliseconds after its last use that a result is evicted.
+     */
+    public PageableRowSetCache(int maxRowSets, long maxMemoryBytes, long timeToLiveMillis)
+    {
+        if (maxRowSets < 1)
+            throw new IllegalArgumentException("maxRowSets must be positive: " + maxRowSets);
+        if (maxMemoryBytes < 1)
+            throw new IllegalArgumentException("maxMemoryBytes must be positive: " + maxMemoryBytes);
+        if (timeToLiveMillis < 1)
+            throw new IllegalArgumentException("timeToLiveMillis must be positive: " + timeToLiveMillis);
+
+        this.maxRowSets = maxRowSets;
+        this.maxMemoryBytes = maxMemoryBytes;
+        timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+    }
+
+    /**
+     * Returns the number of rows serialized together in a block.
+     *
+     * @return The number of rows in a block.
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of rows serialized together in a block. Smaller blocks
+     * make fetching a small page cheaper; larger blocks serialize more compactly.
+     * Only affects results added afterwards.
+     *
+     * @param blockSize The number of rows in a block.
+     */
+    public void setBlockSize(int blockSize)
+    {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the directory blocks are written to when the cache uses more than
+     * its maximum memory, or <code>null</code> if results are evicted instead.
+     *
+     * @return The spill directory.
+     */
+    public File getSpillDirectory()
+    {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory blocks are written to when the cache uses more than
+     * its maximum memory. If <code>null</code>, results are evicted instead.
+     * Spill files left in the directory by an earlier run are deleted, so the
+     * directory must not be shared with another cache.
+     *
+     * @param spillDirectory The spill directory.
+     */
+    public void setSpillDirectory(File spillDirectory)
+    {
+        if (spillDirectory != null)
+        {
+            File[] files = spillDirectory.listFiles();
+            for (int i = 0; files != null && i < files.length; i++)
+            {
+                String name = files[i].getName();
+                if (name.startsWith(SPILL_FILE_PREFIX) && name.endsWith(SPILL_FILE_SUFFIX))
+                    files[i].delete();
+            }
+        }
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Reads all the rows of the result and caches them under its id,
+     * replacing any result cached with the same id. The result's
+     * <code>RowSet</code> is no longer needed once this method returns.
+     *
+     * @param rowSet The result to cache, which must have an id.
+     * @return A <code>PageableRowSet</code> that serves pages from the cache.
+     * @throws SQLException If the rows could not be read or serialized, or
+     * if they need more than the maximum memory and there is no spill directory.
+     */
+    public PageableRowSet put(PageableRowSet rowSet) throws SQLException
+    {
+        if (rowSet.getID() == null)
+            throw new IllegalArgumentException("Cannot cache a PageableRowSet without an id.");
+
+        // The blocks are already counted in memoryBytes
+        DetachedRowSet detached = detach(rowSet);
+
+        List<DetachedRowSet> evicted = new ArrayList<DetachedRowSet>();
+        List<DetachedRowSet> spilled = new ArrayList<DetachedRowSet>();
+        synchronized (this)
+        {
+            DetachedRowSet previous = rowSets.put(detached.getID(), detached);
+            if (previous != null)
+                evicted.add(previous);
+
+            purge(evicted);
+
+            for (Iterator<DetachedRowSet> iter = rowSets.values().iterator(); iter.hasNext() && rowSets.size() > maxRowSets;)
+            {
+                evicted.add(iter.next());
+                iter.remove();
+            }
+
+            // Choose the least recently used results to spill or evict until the rest fit in memory
+            long excess = memoryBytes.get() - maxMemoryBytes;
+            for (Iterator<DetachedRowSet> iter = rowSets.values().iterator(); iter.hasNext() && excess > 0;)
+            {
+                DetachedRowSet candidate = iter.next();
+                if (candidate.memoryBytes == 0)
+                    continue;
+
+                excess -= candidate.memoryBytes;
+                if (spillDirectory != null)
+                {
+                    spilled.add(candidate);
+                }
+                else
+                {
+                    evicted.add(candidate);
+                    iter.remove();
+                }
+            }
+        }
+
+        for (DetachedRowSet victim : evicted)
+            victim.release();
+
+        for (DetachedRowSet victim : spilled)
+            victim.spill(spillDirectory);
+
+        return detached;
+    }
+
+    /**
+     * Returns the cached result with the id, or <code>null</code> if there is
+     * none or it has not been used for longer than the time to live.
+     *
+     * @param id The id of the result.
+     * @return The cached result or <code>null</code>.
+     */
+    public PageableRowSet get(String id)
+    {
+        DetachedRowSet detached;
+        synchronized (this)
+        {
+            detached = rowSets.get(id);
+            if (detached != null && detached.isExpired(System.nanoTime()))
+            {
+                rowSets.remove(id);
+            }
+            else if (detached != null)
+            {
+                detached.touch();
+                hitCount.incrementAndGet();
+                return detached;
+            }
+        }
+
+        if (detached != null)
+            detached.release();
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns a page of the cached result with the id for a paging request.
+     * The page is laid out by column when the current SerializationContext
+     * has <code>columnarRowSets</code> set, as the first page was.
+     *
+     * @param id The id of the result.
+     * @param startIndex The index of the first row of the page, starting at 1.
+     * @param count The maximum number of rows in the page.
+     * @return The page, or <code>null</code> if the result is not cached.
+     * @see PageableRowSetProxy#getPage(PageableRowSet, int, int)
+     */
+    public Map getPage(String id, int startIndex, int count) throws SQLException
+    {
+        PageableRowSet rowSet = get(id);
+        return rowSet != null ? PageableRowSetProxy.getPage(rowSet, startIndex, count) : null;
+    }
+
+    /**
+     * Removes the result with the id from the cache.
+     *
+     * @param id The id of the result.
+     */
+    public void remove(String id)
+    {
+        DetachedRowSet detached;
+        synchronized (this)
+        {
+            detached = rowSets.remove(id);
+        }
+
+        if (detached != null)
+            detached.release();
+    }
+
+    /**
+     * Removes the results that have not been used for longer than the time to live.
+     */
+    public void removeExpired()
+    {
+        List<DetachedRowSet> evicted = new ArrayList<DetachedRowSet>();
+        synchronized (this)
+        {
+            purge(evicted);
+        }
+
+        for (DetachedRowSet victim : evicted)
+            victim.release();
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public void clear()
+    {
+        List<DetachedRowSet> evicted;
+        synchronized (this)
+        {
+            evicted = new ArrayList<DetachedRowSet>(rowSets.values());
+            rowSets.clear();
+        }
+
+        for (DetachedRowSet victim : evicted)
+            victim.release();
+
+        List<File> retry;
+        synchronized (undeletedFiles)
+        {
+            retry = new ArrayList<File>(undeletedFiles);
+            undeletedFiles.clear();
+        }
+        for (File f : retry)
+        {
+            if (!f.delete() && f.exists())
+                fileNotDeleted(f);
+        }
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return The number of cached results.
+     */
+    public synchronized int size()
+    {
+        return rowSets.size();
+    }
+
+    /**
+     * Returns the number of bytes of serialized rows held in memory.
+     *
+     * @return The number of bytes in memory.
+     */
+    public long getMemoryBytes()
+    {
+        return memoryBytes.get();
+    }
+
+    /**
+     * Returns the number of lookups that found a cached result.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups that found no cached result.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of blocks written to the spill directory.
+     *
+     * @return The number of spilled blocks.
+     */
+    public long getSpillCount()
+    {
+        return spillCount.get();
+    }
+
+    /**
+     * Moves the expired results to the evicted list. Must be called holding the lock.
+     */
+    private void purge(List<DetachedRowSet> evicted)
+    {
+        long now = System.nanoTime();
+        for (Iterator<DetachedRowSet> iter = rowSets.values().iterator(); iter.hasNext();)
+        {
+            DetachedRowSet candidate = iter.next();
+            if (candidate.isExpired(now))
+            {
+                evicted.add(candidate);
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the result into blocks. Each block is counted against
+     * the maximum memory as soon as it is serialized; once the cache is over the
+     * limit, new blocks are spilled straight away, or the result is refused if
+     * it cannot fit in memory on its own.
+     */
+    private DetachedRowSet detach(PageableRowSet rowSet) throws SQLException
+    {
+        int size = blockSize;
+        int rowCount = rowSet.getRowCount();
+        List<Block> blocks = new ArrayList<Block>();
+        long detachedBytes = 0;
+        int read = 0;
+
+        try
+        {
+            while (rowCount <= 0 || read < rowCount)
+            {
+                Object[] rows = (Object[])rowSet.getRecords(read + 1, size).get(PageableRowSet.PAGE);
+                if (rows == null || rows.length == 0)
+                    break;
+
+                Block block = new Block(read, rows);
+                blocks.add(block);
+                detachedBytes += block.length;
+                read += rows.length;
+
+                if (memoryBytes.addAndGet(block.length) > maxMemoryBytes)
+                {
+                    File directory = spillDirectory;
+                    long spilled = directory != null ? block.spill(directory) : 0;
+                    if (spilled > 0)
+                    {
+                        detachedBytes -= spilled;
+                        memoryBytes.addAndGet(-spilled);
+                        spillCount.incrementAndGet();
+                    }
+                    else if (detachedBytes > maxMemoryBytes)
+                    {
+                        throw new SQLException("Result '" + rowSet.getID() + "' needs more than the "
+                                + maxMemoryBytes + " bytes of memory of the cache.");
+                    }
+                    // Otherwise older results are spilled or evicted once this one is added
+                }
+
+                if (rows.length < size)
+                    break;
+            }
+        }
+        catch (SQLException ex)
+        {
+            for (Block block : blocks)
+                releaseBlock(block);
+            memoryBytes.addAndGet(-detachedBytes);
+            throw ex;
+        }
+
+        return new DetachedRowSet(rowSet, read, blocks.toArray(new Block[blocks.size()]), detachedBytes);
+    }
+
+    private void releaseBlock(Block block)
+    {
+        File f = block.release();
+        if (f != null && !f.delete() && f.exists())
+            fileNotDeleted(f);
+    }
+
+    private void fileNotDeleted(File f)
+    {
+        synchronized (undeletedFiles)
+        {
+            undeletedFiles.add(f);
+        }
+    }
+
+    /**
+     * A result whose rows are held as serialized blocks.
+     */
+    private final class DetachedRowSet implements PageableRowSet
+    {
+        private final String id;
+        private final String[] columnNames;
+        private final int rowCount;
+        private final int initialDownloadCount;
+        private final Block[] blocks;
+        private volatile String serviceName;
+        private volatile long lastAccess;
+        // Bytes of this result's blocks held in memory; only changed holding this
+        volatile long memoryBytes;
+        private boolean released;
+
+        DetachedRowSet(PageableRowSet rowSet, int rowCount, Block[] blocks, long memoryBytes) throws SQLException
+        {
+            id = rowSet.getID();
+            columnNames = rowSet.getColumnNames();
+            serviceName = rowSet.getServiceName();
+            initialDownloadCount = rowSet.getInitialDownloadCount();
+            this.rowCount = rowCount;
+            this.blocks = blocks;
+            this.memoryBytes = memoryBytes;
+            touch();
+        }
+
+        public String[] getColumnNames()
+        {
+            return columnNames;
+        }
+
+        public Map getRecords(int startIndex, int count) throws SQLException
+        {
+            touch();
+
+            //Starting index cannot be less than 1
+            if (startIndex < 1)
+                startIndex = 1;
+
+            int first = startIndex - 1;
+            int end = count > rowCount - first ? rowCount : first + count;
+            Object[] page = new Object[Math.max(0, end - first)];
+
+            for (int i = 0; i < blocks.length && page.length > 0; i++)
+            {
+                Block block = blocks[i];
+                int blockEnd = block.start + block.rowCount;
+                if (blockEnd <= first || block.start >= end)
+                    continue;
+
+                Object[] rows = block.getRows();
+                int from = Math.max(first, block.start);
+                int to = Math.min(end, blockEnd);
+                System.arraycopy(rows, from - block.start, page, from - first, to - from);
+            }
+
+            Map result = new HashMap(2);
+            result.put(PAGE, page);
+            result.put(CURSOR, new Integer(startIndex));
+            return result;
+        }
+
+        public int getRowCount()
+        {
+            return rowCount;
+        }
+
+        public int getInitialDownloadCount()
+        {
+            return initialDownloadCount;
+        }
+
+        public String getID()
+        {
+            return id;
+        }
+
+        public String getServiceName()
+        {
+            return serviceName;
+        }
+
+        public void setServicename(String serviceName)
+        {
+            this.serviceName = serviceName;
+        }
+
+        void touch()
+        {
+            lastAccess = System.nanoTime();
+        }
+
+        boolean isExpired(long now)
+        {
+            return now - lastAccess >= timeToLiveNanos;
+        }
+
+        synchronized void spill(File directory)
+        {
+            if (released)
+                return;
+
+            for (int i = 0; i < blocks.length; i++)
+            {
+                long spilled = blocks[i].spill(directory);
+                if (spilled > 0)
+                {
+                    memoryBytes -= spilled;
+                    PageableRowSetCache.this.memoryBytes.addAndGet(-spilled);
+                    spillCount.incrementAndGet();
+                }
+            }
+        }
+
+        synchronized void release()
+        {
+            if (released)
+                return;
+
+            released = true;
+            for (int i = 0; i < blocks.length; i++)
+                releaseBlock(blocks[i]);
+            PageableRowSetCache.this.memoryBytes.addAndGet(-memoryBytes);
+            memoryBytes = 0;
+        }
+    }
+
+    /**
+     * A run of consecutive rows serialized together, held in memory until it
+     * is spilled to a file.
+     */
+    private static final class Block
+    {
+        final int start;
+        final int rowCount;
+        final int length;
+        private volatile byte[] bytes;
+        private volatile File file;
+
+        Block(int start, Object[] rows) throws SQLException
+        {
+            this.start = start;
+            rowCount = rows.length;
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try
+            {
+                writeRows(toSerializable(rows), buffer);
+            }
+            catch (IOException ex)
+            {
+                throw sqlException("Could not serialize rows " + (start + 1) + " to " + (start + rows.length) + ".", ex);
+            }
+            bytes = buffer.toByteArray();
+            length = bytes.length;
+        }
+
+        Object[] getRows() throws SQLException
+        {
+            // The file is set before the bytes are cleared, so one of them is always available until release
+            byte[] b = bytes;
+            File f = file;
+            try
+            {
+                if (b != null)
+                    return readRows(new ByteArrayInputStream(b));
+
+                if (f == null)
+                    throw new SQLException("Rows " + (start + 1) + " to " + (start + rowCount) + " are no longer cached.");
+
+                InputStream in = new BufferedInputStream(new FileInputStream(f));
+                try
+                {
+                    return readRows(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException ex)
+            {
+                throw sqlException("Could not read rows " + (start + 1) + " to " + (start + rowCount) + ".", ex);
+            }
+        }
+
+        /**
+         * Writes the block to a file in the directory, returning the number of
+         * bytes freed or 0 if the block is not in memory or could not be written.
+         */
+        long spill(File directory)
+        {
+            byte[] b = bytes;
+            if (b == null)
+                return 0;
+
+            File f = null;
+            try
+            {
+                f = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, directory);
+                OutputStream out = new FileOutputStream(f);
+                try
+                {
+                    out.write(b);
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+            catch (IOException ex)
+            {
+                // Keep the block in memory
+                if (f != null)
+                    f.delete();
+                return 0;
+            }
+
+            file = f;
+            bytes = null;
+            return b.length;
+        }
+
+        /**
+         * Drops the block, returning its spill file for the caller to delete.
+         */
+        File release()
+        {
+            bytes = null;
+            File f = file;
+            file = null;
+            return f;
+        }
+
+        /**
+         * Replaces <code>Clob</code> and <code>Blob</code> values in the rows,
+         * which belong to the block, with their content.
+         */
+        private static Object[] toSerializable(Object[] rows) throws SQLException
+        {
+            for (int i = 0; i < rows.length; i++)
+            {
+                if (!(rows[i] instanceof Object[]))
+                    continue;
+
+                Object[] row = (Object[])rows[i];
+                for (int j = 0; j < row.length; j++)
+                {
+                    Object value = row[j];
+                    if (value != null && !(value instanceof String) && !(value instanceof Number))
+                        row[j] = toSerializable(value);
+                }
+            }
+            return rows;
+        }
+
+        private static Object toSerializable(Object value) throws SQLException
+        {
+            if (value instanceof Clob)
+            {
+                Clob clob = (Clob)value;
+                Reader reader = clob.getCharacterStream();
+                try
+                {
+                    StringWriter writer = new StringWriter();
+                    char[] buffer = new char[4096];
+                    for (int n = reader.read(buffer); n != -1; n = reader.read(buffer))
+                        writer.write(buffer, 0, n);
+                    return writer.toString();
+                }
+                catch (IOException ex)
+                {
+                    throw sqlException("Could not read a CLOB value.", ex);
+                }
+                finally
+                {
+                    try
+                    {
+                        reader.close();
+                    }
+                    catch (IOException ignore)
+                    {
+                    }
+                }
+            }
+
+            if (value instanceof Blob)
+            {
+                Blob blob = (Blob)value;
+                return blob.getBytes(1, (int)blob.length());
+            }
+
+            if (!(value instanceof Serializable))
+                throw new SQLException("Cannot cache a value of type " + value.getClass().getName()
+                        + " because it is not Serializable.");
+
+            return value;
+        }
+
+        private static void writeRows(Object[] rows, OutputStream out) throws IOException
+        {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(out));
+            oos.writeObject(rows);
+            oos.close();
+        }
+
+        private static Object[] readRows(InputStream in) throws IOException
+        {
+            ObjectInputStream ois = new ObjectInputStream(in);
+            try
+            {
+                return (Object[])ois.readObject();
+            }
+            catch (ClassNotFoundException ex)
+            {
+                IOException ioe = new IOException(ex.getMessage());
+                ioe.initCause(ex);
+                throw ioe;
+            }
+        }
+
+        private static SQLException sqlException(String message, Throwable cause)
+        {
+            SQLException ex = new SQLException(message);
+            ex.initCause(cause);
+            return ex;
+        }
+    }
+}
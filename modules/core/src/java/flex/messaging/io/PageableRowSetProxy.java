@@ -62,6 +62,7 @@ public class PageableRowSetProxy extends AbstractProxy
     public static final String VERSION = "version";
     public static final String CURSOR = "cursor";
     public static final String ID = "id";
+    public static final String COLUMNAR = "columnar";
 
     public static final List propertyNameCache = new ArrayList();
     static
@@ -130,7 +131,8 @@ public class PageableRowSetProxy extends AbstractProxy
                     HashMap serverInfo = new HashMap();
                     serverInfo.put(ID, prs.getID());
     
-                    Map pageInfo = prs.getRecords(1, prs.getInitialDownloadCount());
+                    boolean columnar = SerializationContext.getSerializationContext().columnarRowSets;
+                    Map pageInfo = getPage(prs, 1, prs.getInitialDownloadCount());
         
                     serverInfo.put(TOTAL_COUNT, new Integer(prs.getRowCount()));
                     serverInfo.put(INITIAL_DATA, pageInfo.get(PageableRowSet.PAGE)); //Array of Arrays - the first page returned
@@ -138,6 +140,8 @@ public class PageableRowSetProxy extends AbstractProxy
                     serverInfo.put(SERVICE_NAME, prs.getServiceName());
                     serverInfo.put(COLUMN_NAMES, prs.getColumnNames());
                     serverInfo.put(VERSION, RECORD_SET_VERSION);
+                    if (columnar)
+                        serverInfo.put(COLUMNAR, Boolean.TRUE); //INITIAL_DATA is an Array of column Arrays
                     value = serverInfo;
                 }
                 catch (SQLException ex)
@@ -153,6 +157,32 @@ public class PageableRowSetProxy extends AbstractProxy
         return value;
     }
 
+    /**
+     * Returns a page of a PageableRowSet laid out by column when the current
+     * SerializationContext has <code>columnarRowSets</code> set, and by row
+     * otherwise. The first page and the pages that the paging service fetches
+     * later must both be read through this method so that every page matches
+     * the layout advertised by the <code>columnar</code> server info flag.
+     *
+     * @param prs The PageableRowSet to read.
+     * @param startIndex The index of the first row of the page, starting at 1.
+     * @param count The maximum number of rows in the page.
+     * @return Map A map with the index of the row to start the page and the data page.
+     */
+    public static Map getPage(PageableRowSet prs, int startIndex, int count) throws SQLException
+    {
+        if (!SerializationContext.getSerializationContext().columnarRowSets)
+            return prs.getRecords(startIndex, count);
+
+        if (prs instanceof PagedRowSet)
+            return ((PagedRowSet)prs).getColumns(startIndex, count);
+
+        //Other implementations only read by row, so turn the rows around
+        Map result = new HashMap(prs.getRecords(startIndex, count));
+        result.put(PageableRowSet.PAGE, PagedRowSet.toColumns((Object[])result.get(PageableRowSet.PAGE)));
+        return result;
+    }
+
     public void setValue(Object instance, String propertyName, Object value)
     {
         return; // Client-to-server not supported
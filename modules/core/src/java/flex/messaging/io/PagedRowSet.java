@@ -21,8 +21,10 @@ package flex.messaging.io;
 import flex.messaging.util.UUIDUtils;
 
 import javax.sql.RowSet;
+import java.lang.reflect.Array;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -232,20 +234,20 @@ public class PagedRowSet implements PageableRowSet
                 {
                     boolean hasNext = true;
 
-                    List row;
+                    Object[] row;
 
                     if (colCount > 0)
                     {
-                        row = new ArrayList(rowCount + 1);
+                        row = new Object[colCount];
                         //Loop over columns to create an array for the row
-                        for (int j = 1; j <= colCount; j++)
+                        for (int j = 0; j < colCount; j++)
                         {
-                            row.add(rowSet.getObject(j));
+                            row[j] = rowSet.getObject(j + 1);
                         }
                     }
                     else //HACK: Handle any ColdFusion Query Objects that have no column metadata!
                     {
-                        row = new ArrayList();
+                        List columns = new ArrayList();
 
                         try
                         {
@@ -256,7 +258,7 @@ public class PagedRowSet implements PageableRowSet
                                 Object o = rowSet.getObject(j);
                                 if (o != null)
                                 {
-                                    row.add(o);
+                                    columns.add(o);
                                 }
                                 else
                                 {
@@ -268,9 +270,11 @@ public class PagedRowSet implements PageableRowSet
                         {
                             //Stop looking and just add the row.
                         }
+
+                        row = columns.toArray();
                     }
 
-                    aRecords.add(row.toArray());
+                    aRecords.add(row);
 
                     hasNext = rowSet.next();
 
@@ -294,6 +298,101 @@ public class PagedRowSet implements PageableRowSet
         return result;
     }
 
+    /**
+     * Use this method to get a page of records laid out by column rather than
+     * by row. The PAGE entry of the returned map holds one array per column.
+     * INTEGER, SMALLINT and TINYINT columns are returned as int[], BIGINT,
+     * DOUBLE, FLOAT and REAL columns as double[] and BIT and BOOLEAN columns
+     * as boolean[], unless the page contains a null value for the column in
+     * which case, like every other column type, an Object[] is returned.
+     *
+     * @return Map A map with two fields, the index of the row to start the page, and an array of
+     *         column arrays for the actual data page.
+     */
+    public synchronized Map getColumns(int startIndex, int count) throws SQLException
+    {
+        //Ensure column count is initialized
+        if (colCount == 0)
+        {
+            initColumns();
+        }
+
+        //Without column metadata we can't read by column, so turn the rows around instead
+        if (colCount == 0)
+        {
+            Map result = getRecords(startIndex, count);
+            result.put(PAGE, toColumns((Object[])result.get(PAGE)));
+            return result;
+        }
+
+        //Starting index cannot be less than 1
+        if (startIndex < 1)
+            startIndex = 1;
+
+        int capacity = rowCount > 0 ? Math.min(count, rowCount - startIndex + 1) : Math.min(count, 64);
+        ResultSetMetaData rsmd = rowSet.getMetaData();
+        Column[] columns = new Column[colCount];
+        for (int j = 0; j < colCount; j++)
+        {
+            columns[j] = new Column(rsmd.getColumnType(j + 1), capacity);
+        }
+
+        //Populate the page, moving cursor to index
+        if (rowSet.absolute(startIndex))
+        {
+            //Loop over the result set for the count specified
+            for (int i = 0; i < count; i++)
+            {
+                for (int j = 0; j < colCount; j++)
+                {
+                    columns[j].read(rowSet, j + 1);
+                }
+
+                //Cursor beyond last row, stop!
+                if (!rowSet.next())
+                {
+                    break;
+                }
+            }
+        }
+
+        Object[] page = new Object[colCount];
+        for (int j = 0; j < colCount; j++)
+        {
+            page[j] = columns[j].toArray();
+        }
+
+        Map result = new HashMap(2);
+        result.put(PAGE, page);
+        result.put(CURSOR, new Integer(startIndex));
+
+        return result;
+    }
+
+    static Object[] toColumns(Object[] rows)
+    {
+        int columnCount = 0;
+        for (int i = 0; i < rows.length; i++)
+        {
+            columnCount = Math.max(columnCount, ((Object[])rows[i]).length);
+        }
+
+        Object[] columns = new Object[columnCount];
+        for (int j = 0; j < columnCount; j++)
+        {
+            Object[] column = new Object[rows.length];
+            for (int i = 0; i < rows.length; i++)
+            {
+                Object[] row = (Object[])rows[i];
+                if (j < row.length)
+                    column[i] = row[j];
+            }
+            columns[j] = column;
+        }
+
+        return columns;
+    }
+
     /**
      * @return int The total number of rows in the result set.
      */
@@ -333,4 +432,182 @@ public class PagedRowSet implements PageableRowSet
     {
         this.serviceName = serviceName;
     }
+
+    /**
+     * Accumulates the values of one column of a page, keeping numeric and
+     * boolean values unboxed until a null value is read.
+     */
+    private static class Column
+    {
+        private static final int OBJECT = 0;
+        private static final int INT = 1;
+        private static final int DOUBLE = 2;
+        private static final int BOOLEAN = 3;
+
+        private int kind;
+        private int size;
+        private int[] ints;
+        private double[] doubles;
+        private boolean[] booleans;
+        private Object[] objects;
+
+        Column(int sqlType, int capacity)
+        {
+            if (capacity < 1)
+                capacity = 1;
+
+            switch (sqlType)
+            {
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                    kind = INT;
+                    ints = new int[capacity];
+                    break;
+                case Types.BIGINT:
+                case Types.DOUBLE:
+                case Types.FLOAT:
+                case Types.REAL:
+                    kind = DOUBLE;
+                    doubles = new double[capacity];
+                    break;
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    kind = BOOLEAN;
+                    booleans = new boolean[capacity];
+                    break;
+                default:
+                    kind = OBJECT;
+                    objects = new Object[capacity];
+            }
+        }
+
+        void read(RowSet rowSet, int column) throws SQLException
+        {
+            if (size == capacity())
+                grow();
+
+            switch (kind)
+            {
+                case INT:
+                    int i = rowSet.getInt(column);
+                    if (rowSet.wasNull())
+                        box();
+                    else
+                        ints[size++] = i;
+                    break;
+                case DOUBLE:
+                    double d = rowSet.getDouble(column);
+                    if (rowSet.wasNull())
+                        box();
+                    else
+                        doubles[size++] = d;
+                    break;
+                case BOOLEAN:
+                    boolean b = rowSet.getBoolean(column);
+                    if (rowSet.wasNull())
+                        box();
+                    else
+                        booleans[size++] = b;
+                    break;
+                default:
+                    break;
+            }
+
+            // A boxed column stores the value, or the null that caused the switch
+            if (kind == OBJECT)
+                objects[size++] = rowSet.getObject(column);
+        }
+
+        Object toArray()
+        {
+            Object array;
+            switch (kind)
+            {
+                case INT:
+                    array = ints;
+                    break;
+                case DOUBLE:
+                    array = doubles;
+                    break;
+                case BOOLEAN:
+                    array = booleans;
+                    break;
+                default:
+                    array = objects;
+            }
+
+            if (size == capacity())
+                return array;
+
+            Object trimmed = Array.newInstance(array.getClass().getComponentType(), size);
+            System.arraycopy(array, 0, trimmed, 0, size);
+            return trimmed;
+        }
+
+        private int capacity()
+        {
+            switch (kind)
+            {
+                case INT:
+                    return ints.length;
+                case DOUBLE:
+                    return doubles.length;
+                case BOOLEAN:
+                    return booleans.length;
+                default:
+                    return objects.length;
+            }
+        }
+
+        private void grow()
+        {
+            int capacity = capacity() * 2;
+            switch (kind)
+            {
+                case INT:
+                    int[] newInts = new int[capacity];
+                    System.arraycopy(ints, 0, newInts, 0, size);
+                    ints = newInts;
+                    break;
+                case DOUBLE:
+                    double[] newDoubles = new double[capacity];
+                    System.arraycopy(doubles, 0, newDoubles, 0, size);
+                    doubles = newDoubles;
+                    break;
+                case BOOLEAN:
+                    boolean[] newBooleans = new boolean[capacity];
+                    System.arraycopy(booleans, 0, newBooleans, 0, size);
+                    booleans = newBooleans;
+                    break;
+                default:
+                    Object[] newObjects = new Object[capacity];
+                    System.arraycopy(objects, 0, newObjects, 0, size);
+                    objects = newObjects;
+            }
+        }
+
+        private void box()
+        {
+            objects = new Object[capacity()];
+            for (int i = 0; i < size; i++)
+            {
+                switch (kind)
+                {
+                    case INT:
+                        objects[i] = new Integer(ints[i]);
+                        break;
+                    case DOUBLE:
+                        objects[i] = new Double(doubles[i]);
+                        break;
+                    default:
+                        objects[i] = Boolean.valueOf(booleans[i]);
+                }
+            }
+            ints = null;
+            doubles = null;
+            booleans = null;
+            kind = OBJECT;
+        }
+    }
 }
@@ -74,6 +74,18 @@ public class SerializationContext implements Serializable, Cloneable
     public boolean ignorePropertyErrors = true;
     public boolean logPropertyErrors = false;
 
+    /**
+     * Determines whether pageable RowSets are serialized with one array per
+     * column instead of one array per row. Numeric and boolean columns that
+     * contain no null values are written from primitive arrays, so no row
+     * lists are built and no values are boxed. Clients must expect the
+     * columnar layout, both for the first page and for the pages that are
+     * fetched later through <code>PageableRowSetCache.getPage</code>.
+     *
+     * The default is false.
+     */
+    public boolean columnarRowSets = false;
+
     private Class deserializer;
     private Class serializer;
 
@@ -138,6 +150,7 @@ public class SerializationContext implements Serializable, Cloneable
             context.instantiateTypes = instantiateTypes;
             context.ignorePropertyErrors = ignorePropertyErrors;
             context.logPropertyErrors = logPropertyErrors;
+            context.columnarRowSets = columnarRowSets;
             context.deserializer = deserializer;
             context.serializer = serializer;
             return context;
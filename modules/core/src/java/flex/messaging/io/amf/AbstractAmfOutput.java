@@ -19,6 +19,7 @@
 package flex.messaging.io.amf;
 
 import flex.messaging.io.SerializationContext;
+import flex.messaging.messages.MessagePerformanceInfo;
 import flex.messaging.util.XMLUtil;
 
 import java.io.DataOutputStream;
@@ -40,6 +41,20 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
      */
     protected DataOutputStream out;
 
+    /**
+     * The buffer being written to when it is a <code>MessageSizeBuffer</code>,
+     * so that it can be told where MPI message size placeholders are written.
+     *
+     * @exclude
+     */
+    protected MessageSizeBuffer sizeBuffer;
+
+    /**
+     * Set while the <code>messageSize</code> property of a
+     * <code>MessagePerformanceInfo</code> is being written.
+     */
+    private boolean messageSizePending;
+
     /**
      * Construct a serializer without connecting it to an output stream.
      * @param context serialization parameters
@@ -56,6 +71,7 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
      */
     public void setOutputStream(OutputStream out)
     {
+        sizeBuffer = out instanceof MessageSizeBuffer ? (MessageSizeBuffer)out : null;
         if (out instanceof DataOutputStream)
         {
             this.out = (DataOutputStream) out;
@@ -72,6 +88,35 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
         return XMLUtil.documentToString((Document)value);
     }
 
+    /**
+     * Called before each property of a proxied instance is written so that the
+     * position of an MPI message size placeholder can be recorded.
+     *
+     * @exclude
+     */
+    protected void startProperty(Object instance, String propName)
+    {
+        messageSizePending = sizeBuffer != null && instance instanceof MessagePerformanceInfo
+                && MessageSizeBuffer.MESSAGE_SIZE_PROPERTY.equals(propName);
+    }
+
+    /**
+     * Called by subclasses just before the eight bytes of a double are written.
+     * Records their position if the double is the placeholder for the MPI
+     * message size property currently being written.
+     *
+     * @exclude
+     */
+    protected void markMessageSize(double d)
+    {
+        if (messageSizePending)
+        {
+            messageSizePending = false;
+            if (d == MessageSizeBuffer.SIZE_PLACEHOLDER)
+                sizeBuffer.markMessageSize();
+        }
+    }
+
     //
     // java.io.ObjectOutput implementations
     //
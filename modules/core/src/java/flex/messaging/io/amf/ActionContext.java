@@ -31,6 +31,18 @@ import java.io.Serializable;
 public class ActionContext implements Serializable
 {
     static final long serialVersionUID = 2300156738426801921L;
+
+    /**
+     * @exclude
+     * Stages of request processing whose latency can be tracked with <code>addStageNanos</code>.
+     */
+    public static final int STAGE_DESERIALIZE = 0;
+    public static final int STAGE_BATCH = 1;
+    public static final int STAGE_SESSION = 2;
+    public static final int STAGE_ROUTE = 3;
+    public static final int STAGE_SERIALIZE = 4;
+    public static final int STAGE_COUNT = 5;
+
     private int messageNumber;
     private ActionMessage requestMessage;
     private ActionMessage responseMessage;
@@ -81,6 +93,13 @@ public class ActionContext implements Serializable
      */
     private MessagePerformanceInfo mpio;
 
+    /**
+     * @exclude
+     * Performance metrics related field, nanoseconds spent in each stage for this context or -1
+     * for stages that did not run; only allocated when stage latencies are being recorded
+     */
+    private long[] stageNanos;
+
     public ActionContext()
     {
         status = MessageIOConstants.STATUS_OK;
@@ -236,4 +255,93 @@ public class ActionContext implements Serializable
         this.recordMessageTimes = recordMessageTimes;
     }
 
+    public boolean isRecordStageLatencies()
+    {
+        return stageNanos != null;
+    }
+
+    public void setRecordStageLatencies(boolean recordStageLatencies)
+    {
+        if (!recordStageLatencies)
+        {
+            stageNanos = null;
+        }
+        else if (stageNanos == null)
+        {
+            stageNanos = new long[STAGE_COUNT];
+            for (int i = 0; i < STAGE_COUNT; i++)
+                stageNanos[i] = -1;
+        }
+    }
+
+    /**
+     * Adds time spent in a stage; stages that run once per message body accumulate
+     * over the whole batch. Ignored unless stage latencies are being recorded.
+     *
+     * @param stage One of the <code>STAGE_*</code> constants.
+     * @param nanos The time spent in nanoseconds.
+     */
+    public void addStageNanos(int stage, long nanos)
+    {
+        if (stageNanos != null)
+            stageNanos[stage] = stageNanos[stage] < 0 ? nanos : stageNanos[stage] + nanos;
+    }
+
+    /**
+     * Returns the time spent in a stage.
+     *
+     * @param stage One of the <code>STAGE_*</code> constants.
+     * @return The time spent in nanoseconds, or -1 if the stage did not run or
+     * stage latencies are not being recorded.
+     */
+    public long getStageNanos(int stage)
+    {
+        return stageNanos != null ? stageNanos[stage] : -1;
+    }
+
+    /**
+     * @exclude
+     * Creates a context for processing one body of this context's request on
+     * another thread. It shares the request and response messages and settings
+     * of this context but has its own message number, status and metrics; fold
+     * it back in with <code>mergeBodyContext</code> once it has been processed.
+     *
+     * @param messageNumber The index of the body to process.
+     * @return The new context.
+     */
+    public ActionContext createBodyContext(int messageNumber)
+    {
+        ActionContext body = new ActionContext();
+        body.messageNumber = messageNumber;
+        body.requestMessage = requestMessage;
+        body.responseMessage = responseMessage;
+        body.version = version;
+        body.legacy = legacy;
+        body.isPush = isPush;
+        body.isDebug = isDebug;
+        body.recordMessageSizes = recordMessageSizes;
+        body.recordMessageTimes = recordMessageTimes;
+        body.setRecordStageLatencies(isRecordStageLatencies());
+        return body;
+    }
+
+    /**
+     * @exclude
+     * Folds the status and stage timings of a context created by
+     * <code>createBodyContext</code> back into this context.
+     *
+     * @param body The processed body context.
+     */
+    public void mergeBodyContext(ActionContext body)
+    {
+        if (body.status != MessageIOConstants.STATUS_OK)
+            status = body.status;
+
+        for (int i = 0; i < STAGE_COUNT; i++)
+        {
+            long nanos = body.getStageNanos(i);
+            if (nanos >= 0)
+                addStageNanos(i, nanos);
+        }
+    }
 }
@@ -134,11 +134,12 @@ public class ActionMessage implements Serializable
     }
 
     /**
-     * Add a header to the message.
+     * Add a header to the message. Safe to call while the bodies of a batch
+     * are processed in parallel.
      *
      * @param h MessageHeader to add
      */
-    public void addHeader(MessageHeader h)
+    public synchronized void addHeader(MessageHeader h)
     {
         headers.add(h);
     }
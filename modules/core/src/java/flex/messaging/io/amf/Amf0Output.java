@@ -127,6 +127,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
     {
         avmPlusOutput = new Amf3Output(context);
         avmPlusOutput.setOutputStream(out);
+        avmPlusOutput.sizeBuffer = sizeBuffer;
         avmPlusOutput.setDebugTrace(trace);
     }
 
@@ -317,6 +318,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
 
         out.write(kNumberType);
 
+        markMessageSize(d);
         out.writeDouble(d);
     }
 
@@ -471,6 +473,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
             {
                 String propName = (String)it.next();
                 Object value = pp.getValue(instance, propName);
+                startProperty(instance, propName);
                 writeObjectProperty(propName, value);
             }
         }
@@ -86,6 +86,28 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
         traitsTable.clear();
     }
 
+    /**
+     * Like reset, but keeps the retainable entries of the traits table, the
+     * same way <code>Amf3Output.resetRetainingTraits()</code> does. Used between
+     * the messages of a streaming connection on which the server retains its traits.
+     */
+    public void resetRetainingTraits()
+    {
+        super.reset();
+        stringTable.clear();
+        objectTable.clear();
+
+        List retained = new ArrayList(Math.min(traitsTable.size(), Amf3Output.MAX_RETAINED_TRAITS));
+        for (int i = 0; i < traitsTable.size() && retained.size() < Amf3Output.MAX_RETAINED_TRAITS; i++)
+        {
+            TraitsInfo ti = (TraitsInfo)traitsTable.get(i);
+            if (ti.isRetainable())
+                retained.add(ti);
+        }
+        traitsTable.clear();
+        traitsTable.addAll(retained);
+    }
+
     public Object saveObjectTable()
     {
         Object table = objectTable;
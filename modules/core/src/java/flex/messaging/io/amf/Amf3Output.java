@@ -58,6 +58,11 @@ import javax.sql.RowSet;
  */
 public class Amf3Output extends AbstractAmfOutput implements Amf3Types
 {
+    /**
+     * The most traits entries kept by <code>resetRetainingTraits()</code>.
+     */
+    public static final int MAX_RETAINED_TRAITS = 256;
+
     /**
      * @exclude
      */
@@ -92,6 +97,41 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         stringTable.clear();
     }
 
+    /**
+     * Resets the object and string reference tables but keeps the retainable
+     * entries of the traits table, so that named classes already described by
+     * this output are sent as traits references from then on. Used between the
+     * messages of a single streaming connection whose client has agreed to do
+     * the same with its own traits table.
+     * <p>
+     * The kept entries are renumbered in their original order, and at most
+     * <code>MAX_RETAINED_TRAITS</code> of them are kept, so that a reader that
+     * applies the same rule ends up with the same table.
+     * </p>
+     *
+     * @see TraitsInfo#isRetainable()
+     * @exclude
+     */
+    public void resetRetainingTraits()
+    {
+        super.reset();
+        objectTable.clear();
+        stringTable.clear();
+
+        TraitsInfo[] ordered = new TraitsInfo[traitsTable.size()];
+        for (Iterator iter = traitsTable.entrySet().iterator(); iter.hasNext();)
+        {
+            Map.Entry entry = (Map.Entry)iter.next();
+            ordered[((Integer)entry.getValue()).intValue()] = (TraitsInfo)entry.getKey();
+        }
+        traitsTable.clear();
+        for (int i = 0; i < ordered.length && traitsTable.size() < MAX_RETAINED_TRAITS; i++)
+        {
+            if (ordered[i].isRetainable())
+                traitsTable.put(ordered[i], new Integer(traitsTable.size()));
+        }
+    }
+
     //
     // java.io.ObjectOutput IMPLEMENTATIONS
     //
@@ -305,6 +345,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             trace.write(d);
 
         out.write(kDoubleType);
+        markMessageSize(d);
         out.writeDouble(d);
     }
 
@@ -570,6 +611,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 String propName = (String)it.next();
                 Object value = null;
                 value = proxy.getValue(instance, propName);
+                startProperty(instance, propName);
                 writeObjectProperty(propName, value);
             }
         }
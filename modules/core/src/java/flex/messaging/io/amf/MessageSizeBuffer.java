@@ -0,0 +1,141 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * @exclude
+ *
+ * A byte buffer for AMF output that lets the size of a message be recorded
+ * inside the message itself without serializing it twice.
+ * <p>
+ * AMF encodes every <code>long</code> as an 8 byte double, so the serialized
+ * size of a message does not depend on the value written for
+ * <code>MessagePerformanceInfo.messageSize</code>. Callers write
+ * <code>SIZE_PLACEHOLDER</code> into that field and serialize the message once
+ * into this buffer. The AMF output tells the buffer where it writes that
+ * property, and <code>patchMessageSize(size())</code> then replaces the
+ * placeholder at exactly those positions with the real size. Other doubles in
+ * the message are never touched, even if they hold the placeholder value.
+ * </p>
+ */
+public class MessageSizeBuffer extends ByteArrayOutputStream
+{
+    /**
+     * Value written in place of a message size that is not yet known. It is
+     * exactly representable as a double and far larger than any real message.
+     */
+    public static final long SIZE_PLACEHOLDER = 0x1FEDCBA9876543L;
+
+    /**
+     * Name of the <code>MessagePerformanceInfo</code> property that holds the size.
+     */
+    static final String MESSAGE_SIZE_PROPERTY = "messageSize";
+
+    private static final long PLACEHOLDER_BITS = Double.doubleToLongBits((double)SIZE_PLACEHOLDER);
+
+    /**
+     * Offsets of the placeholders written so far. A response usually carries a
+     * single MPI object, but the same one may be written once per message body.
+     */
+    private int[] sizeOffsets = new int[1];
+    private int sizeOffsetCount;
+
+    /**
+     * Creates an empty buffer with the default initial capacity.
+     */
+    public MessageSizeBuffer()
+    {
+        super();
+    }
+
+    /**
+     * Creates an empty buffer with the given initial capacity.
+     *
+     * @param size The initial capacity in bytes.
+     */
+    public MessageSizeBuffer(int size)
+    {
+        super(size);
+    }
+
+    /**
+     * Records that the next eight bytes written to the buffer are an encoded
+     * <code>SIZE_PLACEHOLDER</code> for an MPI message size.
+     */
+    public synchronized void markMessageSize()
+    {
+        if (sizeOffsetCount == sizeOffsets.length)
+        {
+            int[] offsets = new int[sizeOffsets.length * 2];
+            System.arraycopy(sizeOffsets, 0, offsets, 0, sizeOffsetCount);
+            sizeOffsets = offsets;
+        }
+        sizeOffsets[sizeOffsetCount++] = count;
+    }
+
+    /**
+     * Replaces the placeholders recorded with <code>markMessageSize()</code>
+     * with the given size.
+     *
+     * @param size The message size to write.
+     * @return The number of placeholders that were replaced.
+     */
+    public synchronized int patchMessageSize(long size)
+    {
+        long sizeBits = Double.doubleToLongBits((double)size);
+        int patched = 0;
+        for (int i = 0; i < sizeOffsetCount; i++)
+        {
+            int offset = sizeOffsets[i];
+            if (offset + 8 <= count && readLong(offset) == PLACEHOLDER_BITS)
+            {
+                writeLong(offset, sizeBits);
+                patched++;
+            }
+        }
+        return patched;
+    }
+
+    /**
+     * Discards the content of the buffer and any recorded placeholders.
+     */
+    public synchronized void reset()
+    {
+        super.reset();
+        sizeOffsetCount = 0;
+    }
+    private long readLong(int offset)
+    {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (buf[offset + i] & 0xFF);
+        return value;
+    }
+
+    private void writeLong(int offset, long value)
+    {
+        for (int i = 7; i >= 0; i--)
+        {
+            buf[offset + i] = (byte)value;
+            value >>>= 8;
+        }
+    }
+}
@@ -88,6 +88,17 @@ public class TraitsInfo
         return className;
     }
 
+    /**
+     * Whether these traits may be kept between the messages of a streaming
+     * connection that retains its traits. Anonymous objects, such as maps,
+     * are written with a sealed trait per key and would grow the table
+     * without bound, so only named classes are retained.
+     */
+    public boolean isRetainable()
+    {
+        return className.length() > 0;
+    }
+
     public void addProperty(String name)
     {
         properties.add(name);
@@ -51,7 +51,8 @@ import flex.messaging.io.amf.client.exceptions.ServerStatusException.HttpRespons
  * AMFConnection in Actionscript. AMF connection automatically handles cookies
  * by looking for cookie headers and setting the cookies in subsequent request.
  *
- * AMF connection class is not thread safe.
+ * AMF connection class is not thread safe. See <code>PooledAMFConnection</code>
+ * for a thread safe variant that supports batched and asynchronous calls.
  */
 public class AMFConnection
 {
@@ -0,0 +1,837 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * ___________________
+ *
+ *  2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated and its
+ * suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.io.amf.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfMessageSerializer;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amf.MessageHeader;
+import flex.messaging.io.amf.client.exceptions.ClientStatusException;
+import flex.messaging.io.amf.client.exceptions.ServerStatusException;
+import flex.messaging.io.amf.client.exceptions.ServerStatusException.HttpResponseInfo;
+
+/**
+ * A thread safe variant of <code>AMFConnection</code> for making many AMF
+ * requests to the same url from several threads, for example for
+ * server-to-server calls or load generation.
+ *
+ * Requests share the connection's cookies, headers and settings but are
+ * otherwise independent, so any number of threads may call concurrently. At
+ * most <code>maxConnections</code> requests are in flight at once; each
+ * response is read to the end and its stream closed, so the JDK keeps the
+ * underlying sockets alive and reuses them for later requests rather than
+ * opening a new socket for every call. For best reuse
+ * <code>maxConnections</code> should not exceed the <code>http.maxConnections</code>
+ * system property, which bounds how many idle sockets the JDK keeps per host.
+ *
+ * Several calls may be sent in a single AMF request with <code>callBatch</code>,
+ * and <code>callAsync</code> makes a call on a background thread.
+ */
+public class PooledAMFConnection
+{
+    //--------------------------------------------------------------------------
+    //
+    // Public Static Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The default number of concurrent requests, which matches the default of
+     * the <code>http.maxConnections</code> system property.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 5;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Creates a pooled AMF connection that allows up to
+     * <code>DEFAULT_MAX_CONNECTIONS</code> concurrent requests.
+     */
+    public PooledAMFConnection()
+    {
+        this(DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Creates a pooled AMF connection that allows up to the given number of
+     * concurrent requests.
+     *
+     * @param maxConnections The maximum number of concurrent requests.
+     */
+    public PooledAMFConnection(int maxConnections)
+    {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+
+        this.maxConnections = maxConnections;
+        connectionPermits = new Semaphore(maxConnections, true);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Variables
+    //
+    //--------------------------------------------------------------------------
+
+    private final Semaphore connectionPermits;
+    private final int maxConnections;
+    private final AtomicInteger responseCounter = new AtomicInteger();
+
+    private ExecutorService asyncExecutor;
+    private volatile String cookieHeader;
+    private volatile boolean instantiateTypes = true;
+    private volatile int objectEncoding;
+    private volatile boolean objectEncodingSet = false;
+    private volatile String url;
+    private volatile URL urlObject;
+
+    //--------------------------------------------------------------------------
+    //
+    // Protected Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * List of AMF message headers.
+     */
+    protected final List<MessageHeader> amfHeaders = new CopyOnWriteArrayList<MessageHeader>();
+
+    /**
+     * An AMF connection may have an AMF header processor where AMF headers
+     * can be passed to as they are encountered in AMF response messages. The
+     * processor is called from every thread that makes a call.
+     */
+    protected volatile AMFHeaderProcessor amfHeaderProcessor;
+
+    /**
+     * A map of cookie names and values that are used to keep track of cookies.
+     */
+    protected final ConcurrentMap<String, String> cookies = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Map of Http request header names and values.
+     */
+    protected final ConcurrentMap<String, String> httpRequestHeaders = new ConcurrentHashMap<String, String>();
+
+    //--------------------------------------------------------------------------
+    //
+    // Properties
+    //
+    //--------------------------------------------------------------------------
+
+    //----------------------------------
+    //  amfHeaderProcessor
+    //----------------------------------
+
+    /**
+     * Returns the AMF header processor associated with the AMF connection.
+     *
+     * @return The AMF header processor associated with the AMF connection.
+     */
+    public AMFHeaderProcessor getAMFHeaderProcessor()
+    {
+        return amfHeaderProcessor;
+    }
+
+    /**
+     * Sets the AMF header processor associated with the AMF connection. The
+     * processor must be thread safe.
+     *
+     * @param amfHeaderProcessor The AMF header processor to set.
+     */
+    public void setAMFHeaderProcessor(AMFHeaderProcessor amfHeaderProcessor)
+    {
+        this.amfHeaderProcessor = amfHeaderProcessor;
+    }
+
+    //----------------------------------
+    //  instantiateTypes
+    //----------------------------------
+
+    /**
+     * Returns instantiateTypes property. See
+     * <code>AMFConnection#isInstantiateTypes()</code>.
+     *
+     * @return The instantitateTypes property.
+     */
+    public boolean isInstantiateTypes()
+    {
+        return instantiateTypes;
+    }
+
+    /**
+     * Sets the instantiateTypes property.
+     *
+     * @param instantiateTypes The value to set the instantiateTypes property to.
+     */
+    public void setInstantiateTypes(boolean instantiateTypes)
+    {
+        this.instantiateTypes = instantiateTypes;
+    }
+
+    //----------------------------------
+    //  maxConnections
+    //----------------------------------
+
+    /**
+     * Returns the maximum number of concurrent requests.
+     *
+     * @return The maximum number of concurrent requests.
+     */
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    //----------------------------------
+    //  objectEncoding
+    //----------------------------------
+
+    /**
+     * The object encoding for this connection sets which AMF version to use
+     * during serialization. If not set, <code>AMFConnection#getDefaultObjectEncoding()</code>
+     * is used.
+     *
+     * @return The object encoding for the AMF connection.
+     */
+    public int getObjectEncoding()
+    {
+        if (!objectEncodingSet)
+            return AMFConnection.getDefaultObjectEncoding();
+        return objectEncoding;
+    }
+
+    /**
+     * Sets the object encoding for the AMF connection.
+     *
+     * @param objectEncoding The value to set the object encoding to.
+     */
+    public void setObjectEncoding(int objectEncoding)
+    {
+        this.objectEncoding = objectEncoding;
+        objectEncodingSet = true;
+    }
+
+    //----------------------------------
+    //  url
+    //----------------------------------
+
+    /**
+     * Returns the HTTP or HTTPS url for the AMF connection.
+     *
+     * @return The HTTP or HTTPs url for the AMF connection.
+     */
+    public String getUrl()
+    {
+        return url;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds an AMF packet-level header which is sent with every request for
+     * the life of this AMF connection.
+     *
+     * @param name The name of the header.
+     * @param mustUnderstand Whether the header must be processed or not.
+     * @param data The value of the header.
+     */
+    public void addAmfHeader(String name, boolean mustUnderstand, Object data)
+    {
+        amfHeaders.add(new MessageHeader(name, mustUnderstand, data));
+    }
+
+    /**
+     * Add an AMF packet-level header with mustUnderstand=false, which is sent
+     * with every request for the life of this AMF connection.
+     *
+     * @param name The name of the header.
+     * @param data The value of the header.
+     */
+    public void addAmfHeader(String name, Object data)
+    {
+        addAmfHeader(name, false, data);
+    }
+
+    /**
+     * Removes any AMF headers found with the name given.
+     *
+     * @param name The name of the header(s) to remove.
+     *
+     * @return true if a header existed with the given name.
+     */
+    public boolean removeAmfHeader(String name)
+    {
+        List<MessageHeader> matches = new ArrayList<MessageHeader>();
+        for (MessageHeader header : amfHeaders)
+        {
+            if (name.equals(header.getName()))
+                matches.add(header);
+        }
+        return amfHeaders.removeAll(matches);
+    }
+
+    /**
+     * Removes all AMF headers.
+     */
+    public void removeAllAmfHeaders()
+    {
+        amfHeaders.clear();
+    }
+
+    /**
+     * Adds a Http request header which is sent with every request.
+     *
+     * @param name The name of the Http header.
+     * @param value The value of the Http header.
+     */
+    public void addHttpRequestHeader(String name, String value)
+    {
+        httpRequestHeaders.put(name, value);
+    }
+
+    /**
+     * Removes the Http header found with the name given.
+     *
+     * @param name The name of the Http header.
+     *
+     * @return true if a header existed with the given name.
+     */
+    public boolean removeHttpRequestHeader(String name)
+    {
+        return httpRequestHeaders.remove(name) != null;
+    }
+
+    /**
+     * Removes all Http request headers.
+     */
+    public void removeAllHttpRequestHeaders()
+    {
+        httpRequestHeaders.clear();
+    }
+
+    /**
+     * Makes an AMF request to the server. A connection must have been made
+     * prior to making a call.
+     *
+     * @param command The method to call on the server.
+     * @param arguments Arguments for the method.
+     *
+     * @return The result of the call.
+     *
+     * @throws ClientStatusException If there is a client side exception.
+     * @throws ServerStatusException If there is a server side exception.
+     */
+    public Object call(String command, Object ... arguments) throws ClientStatusException, ServerStatusException
+    {
+        Object result = callBatch(new Call(command, arguments))[0];
+        if (result instanceof ServerStatusException)
+            throw (ServerStatusException)result;
+        return result;
+    }
+
+    /**
+     * Makes several calls in a single AMF request to the server. The server
+     * processes the calls in order and each call succeeds or fails on its own,
+     * so a failed call does not fail the request. A connection must have been
+     * made prior to making a call.
+     *
+     * @param calls The calls to make.
+     *
+     * @return The result of each call, in the order of the calls. The result of
+     * a call that failed on the server is the <code>ServerStatusException</code>
+     * describing the failure.
+     *
+     * @throws ClientStatusException If there is a client side exception.
+     */
+    public Object[] callBatch(Call ... calls) throws ClientStatusException
+    {
+        URL target = urlObject;
+        if (target == null)
+        {
+            String message = "AMF connection is not connected";
+            ClientStatusException cse = new ClientStatusException(message, ClientStatusException.AMF_CALL_FAILED_CODE);
+            throw cse;
+        }
+
+        ActionMessage requestMessage = new ActionMessage(getObjectEncoding());
+        for (MessageHeader header : amfHeaders)
+            requestMessage.addHeader(header);
+
+        String[] responseURIs = new String[calls.length];
+        for (int i = 0; i < calls.length; i++)
+        {
+            responseURIs[i] = getResponseURI();
+            requestMessage.addBody(new MessageBody(calls[i].getCommand(), responseURIs[i], calls[i].getArguments()));
+        }
+
+        try
+        {
+            SerializationContext serializationContext = createSerializationContext();
+            ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+            AmfMessageSerializer amfMessageSerializer = new AmfMessageSerializer();
+            amfMessageSerializer.initialize(serializationContext, outBuffer, null/*debugTrace*/);
+            amfMessageSerializer.writeMessage(requestMessage);
+
+            return send(target, outBuffer, serializationContext, responseURIs);
+        }
+        catch (ClientStatusException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            // Wrap into a ClientStatusException.
+            ClientStatusException exception = new ClientStatusException(e, ClientStatusException.AMF_CALL_FAILED_CODE);
+            throw exception;
+        }
+    }
+
+    /**
+     * Makes an AMF request to the server on a background thread. A connection
+     * must have been made prior to making a call. The returned
+     * <code>Future</code> throws an <code>ExecutionException</code> wrapping a
+     * <code>ClientStatusException</code> or <code>ServerStatusException</code>
+     * if the call fails.
+     *
+     * @param command The method to call on the server.
+     * @param arguments Arguments for the method.
+     *
+     * @return A <code>Future</code> for the result of the call.
+     */
+    public Future<Object> callAsync(final String command, final Object ... arguments)
+    {
+        return getAsyncExecutor().submit(new Callable<Object>()
+        {
+            public Object call() throws ClientStatusException, ServerStatusException
+            {
+                return PooledAMFConnection.this.call(command, arguments);
+            }
+        });
+    }
+
+    /**
+     * Stops the background threads used by <code>callAsync</code>, sets the url
+     * to null, and clears the cookies. Calls in flight are allowed to complete.
+     */
+    public void close()
+    {
+        urlObject = null;
+        url = null;
+
+        cookies.clear();
+        cookieHeader = null;
+
+        synchronized (this)
+        {
+            if (asyncExecutor != null)
+            {
+                asyncExecutor.shutdown();
+                asyncExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Connects to the URL provided. Any previous connection is closed.
+     *
+     * @param url The url to connect to.
+     *
+     * @throws ClientStatusException If there is a client side exception.
+     */
+    public void connect(String url) throws ClientStatusException
+    {
+        if (urlObject != null)
+            close();
+
+        try
+        {
+            URL target = new URL(url);
+            this.url = url;
+            urlObject = target;
+        }
+        catch (IOException e)
+        {
+            ClientStatusException exception = new ClientStatusException(e, ClientStatusException.AMF_CONNECT_FAILED_CODE);
+            throw exception;
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Protected Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Creates the serialization context for a single request.
+     *
+     * @return A new serialization context.
+     */
+    protected SerializationContext createSerializationContext()
+    {
+        SerializationContext serializationContext = new SerializationContext();
+        serializationContext.createASObjectForMissingType = true;
+        serializationContext.instantiateTypes = instantiateTypes;
+        return serializationContext;
+    }
+
+    /**
+     * Returns the executor used by <code>callAsync</code>, creating it on first
+     * use.
+     *
+     * @return The executor used by <code>callAsync</code>.
+     */
+    protected synchronized ExecutorService getAsyncExecutor()
+    {
+        if (asyncExecutor == null)
+        {
+            asyncExecutor = Executors.newFixedThreadPool(maxConnections, new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "PooledAMFConnection-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Generates and returns a response URI that is unique for this connection.
+     *
+     * @return The response URI.
+     */
+    protected String getResponseURI()
+    {
+        return "/" + responseCounter.getAndIncrement();
+    }
+
+    /**
+     * Writes the serialized request over a pooled connection and processes the
+     * response.
+     */
+    protected Object[] send(URL target, ByteArrayOutputStream outBuffer, SerializationContext serializationContext,
+            String[] responseURIs) throws ClassNotFoundException, IOException, ClientStatusException
+    {
+        try
+        {
+            connectionPermits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ClientStatusException(e, ClientStatusException.AMF_CALL_FAILED_CODE);
+        }
+
+        try
+        {
+            HttpURLConnection urlConnection = (HttpURLConnection)target.openConnection();
+            urlConnection.setDoOutput(true);
+            urlConnection.setFixedLengthStreamingMode(outBuffer.size());
+            setHttpRequestHeaders(urlConnection);
+
+            OutputStream out = urlConnection.getOutputStream();
+            outBuffer.writeTo(out);
+            out.close();
+
+            InputStream in;
+            try
+            {
+                in = urlConnection.getInputStream();
+            }
+            catch (IOException e)
+            {
+                // Read the error response so that the socket can be reused.
+                drain(urlConnection.getErrorStream());
+                throw e;
+            }
+
+            ActionMessage responseMessage = new ActionMessage();
+            try
+            {
+                processHttpResponseHeaders(urlConnection);
+
+                ActionContext actionContext = new ActionContext();
+                actionContext.setRequestMessage(responseMessage);
+                AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+                deserializer.initialize(serializationContext, new DataInputStream(in), null/*trace*/);
+                deserializer.readMessage(responseMessage, actionContext);
+                drain(in);
+            }
+            finally
+            {
+                in.close();
+            }
+
+            processAmfHeaders(responseMessage.getHeaders());
+            return processAmfBodies(responseMessage.getBodies(), responseURIs, urlConnection);
+        }
+        finally
+        {
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Processes the AMF headers by dispatching them to an AMF header processor,
+     * if one exists.
+     */
+    protected void processAmfHeaders(ArrayList<MessageHeader> headers) throws ClientStatusException
+    {
+        AMFHeaderProcessor processor = amfHeaderProcessor;
+        if (processor == null)
+            return;
+
+        for (MessageHeader header : headers)
+            processor.processHeader(header);
+    }
+
+    /**
+     * Matches the AMF response bodies to the calls by response URI.
+     */
+    protected Object[] processAmfBodies(ArrayList<MessageBody> messages, String[] responseURIs,
+            HttpURLConnection urlConnection) throws ClientStatusException
+    {
+        Object[] results = new Object[responseURIs.length];
+        boolean[] answered = new boolean[responseURIs.length];
+        for (MessageBody message : messages)
+        {
+            String targetURI = message.getTargetURI();
+            int index = indexOfResponse(targetURI, responseURIs);
+            if (index < 0)
+                continue;
+
+            if (targetURI.endsWith(MessageIOConstants.RESULT_METHOD))
+            {
+                results[index] = message.getData();
+                answered[index] = true;
+            }
+            else if (targetURI.endsWith(MessageIOConstants.STATUS_METHOD))
+            {
+                HttpResponseInfo responseInfo = generateHttpResponseInfo(urlConnection);
+                results[index] = new ServerStatusException("Server error", message.getData(), responseInfo);
+                answered[index] = true;
+            }
+        }
+
+        for (int i = 0; i < answered.length; i++)
+        {
+            if (!answered[i])
+            {
+                String message = "No response for AMF call " + responseURIs[i];
+                throw new ClientStatusException(message, ClientStatusException.AMF_CALL_FAILED_CODE);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Processes the HTTP response headers.
+     */
+    protected void processHttpResponseHeaders(HttpURLConnection urlConnection)
+    {
+        Map<String, List<String>> headers = urlConnection.getHeaderFields();
+        for (Map.Entry<String, List<String>> element : headers.entrySet())
+        {
+            // Header names are case insensitive; the status line has a null name.
+            String headerName = element.getKey();
+            if (AMFConnection.SET_COOKIE.equalsIgnoreCase(headerName) || AMFConnection.COOKIE.equalsIgnoreCase(headerName)
+                    || AMFConnection.SET_COOKIE2.equalsIgnoreCase(headerName) || AMFConnection.COOKIE2.equalsIgnoreCase(headerName))
+            {
+                for (String headerValue : element.getValue())
+                    processSetCookieHeader(headerValue);
+            }
+        }
+    }
+
+    /**
+     * Processes an incoming set-cookie header. The cookie header sent with
+     * requests is rebuilt only when a cookie value changes.
+     *
+     * @param headerValue The value of the set-cookie header.
+     */
+    protected void processSetCookieHeader(String headerValue)
+    {
+        int end = headerValue.indexOf(AMFConnection.COOKIE_SEPERATOR);
+        String cookie = end == -1 ? headerValue : headerValue.substring(0, end);
+        int separator = cookie.indexOf(AMFConnection.COOKIE_NAMEVALUE_SEPERATOR);
+        if (separator <= 0)
+            return;
+
+        String name = cookie.substring(0, separator).trim();
+        String value = cookie.substring(separator + 1).trim();
+        if (!value.equals(cookies.put(name, value)))
+        {
+            synchronized (cookies)
+            {
+                StringBuffer cookieHeaderValue = new StringBuffer();
+                for (Map.Entry<String, String> element : cookies.entrySet())
+                {
+                    if (cookieHeaderValue.length() > 0)
+                        cookieHeaderValue.append(AMFConnection.COOKIE_SEPERATOR).append(' ');
+                    cookieHeaderValue.append(element.getKey()).append(AMFConnection.COOKIE_NAMEVALUE_SEPERATOR).append(element.getValue());
+                }
+                cookieHeader = cookieHeaderValue.toString();
+            }
+        }
+    }
+
+    /**
+     * Sets the Http request headers, including the cookie header.
+     */
+    protected void setHttpRequestHeaders(HttpURLConnection urlConnection)
+    {
+        String cookieHeaderValue = cookieHeader;
+        if (cookieHeaderValue != null)
+            urlConnection.setRequestProperty(AMFConnection.COOKIE, cookieHeaderValue);
+
+        for (Map.Entry<String, String> element : httpRequestHeaders.entrySet())
+            urlConnection.setRequestProperty(element.getKey(), element.getValue());
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private static void drain(InputStream in) throws IOException
+    {
+        if (in == null)
+            return;
+
+        byte[] buffer = new byte[512];
+        while (in.read(buffer) != -1)
+        {
+            // Discard
+        }
+        in.close();
+    }
+
+    private static HttpResponseInfo generateHttpResponseInfo(HttpURLConnection urlConnection)
+    {
+        HttpResponseInfo httpResponseInfo = null;
+        try
+        {
+            httpResponseInfo = new HttpResponseInfo(urlConnection.getResponseCode(), urlConnection.getResponseMessage());
+        }
+        catch (IOException ignore)
+        {
+        }
+        return httpResponseInfo;
+    }
+
+    private static int indexOfResponse(String targetURI, String[] responseURIs)
+    {
+        for (int i = 0; i < responseURIs.length; i++)
+        {
+            String responseURI = responseURIs[i];
+            if (targetURI.startsWith(responseURI) && targetURI.length() > responseURI.length()
+                    && targetURI.charAt(responseURI.length()) == '/')
+                return i;
+        }
+        return -1;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Inner Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * A single call in a batch sent with <code>callBatch</code>.
+     */
+    public static class Call
+    {
+        private final String command;
+        private final Object[] arguments;
+
+        /**
+         * Creates a call.
+         *
+         * @param command The method to call on the server.
+         * @param arguments Arguments for the method.
+         */
+        public Call(String command, Object ... arguments)
+        {
+            this.command = command;
+            this.arguments = arguments;
+        }
+
+        /**
+         * Returns the method to call on the server.
+         *
+         * @return The method to call on the server.
+         */
+        public String getCommand()
+        {
+            return command;
+        }
+
+        /**
+         * Returns the arguments for the method.
+         *
+         * @return The arguments for the method.
+         */
+        public Object[] getArguments()
+        {
+            return arguments;
+        }
+    }
+}
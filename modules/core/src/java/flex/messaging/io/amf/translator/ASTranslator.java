@@ -62,11 +62,7 @@ public class ASTranslator implements TypeMarshaller
 
         SerializationContext serializationContext = SerializationContext.getSerializationContext();
 
-        ActionScriptDecoder decoder;
-        if (serializationContext.restoreReferences)
-            decoder = DecoderFactory.getReferenceAwareDecoder(source, desiredClass);
-        else
-            decoder = DecoderFactory.getDecoder(source, desiredClass);
+        ActionScriptDecoder decoder = DecoderFactory.getDecoder(source, desiredClass, serializationContext.restoreReferences);
 
         if (Trace.remote)
         {
@@ -77,4 +73,4 @@ public class ASTranslator implements TypeMarshaller
         Object result = decoder.decodeObject(source, desiredClass);
         return result;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
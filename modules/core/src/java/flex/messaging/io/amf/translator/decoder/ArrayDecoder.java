@@ -117,6 +117,12 @@ public class ArrayDecoder extends ActionScriptDecoder
         Object encodedValue = null;
         Object decodedValue = null;
 
+        // Arrays are usually homogeneous, so only look up a new element decoder
+        // when the class of the encoded element changes.
+        boolean restoreReferences = SerializationContext.getSerializationContext().restoreReferences;
+        ActionScriptDecoder decoder = null;
+        Class decoderClass = null;
+
         int n = 0;
         int len = Array.getLength(array);
 
@@ -133,11 +139,11 @@ public class ArrayDecoder extends ActionScriptDecoder
                 // We may need to honor our loose-typing rules for individual types as,
                 // unlike a Collection, an Array has a fixed element type. We'll use our handy
                 // decoder suite again to find us the right decoder...
-                ActionScriptDecoder decoder;
-                if (SerializationContext.getSerializationContext().restoreReferences)
-                    decoder = DecoderFactory.getReferenceAwareDecoder(encodedValue, arrayElementClass);
-                else
-                    decoder = DecoderFactory.getDecoder(encodedValue, arrayElementClass);
+                if (decoder == null || encodedValue.getClass() != decoderClass || !DecoderFactory.isCacheable(encodedValue))
+                {
+                    decoder = DecoderFactory.getDecoder(encodedValue, arrayElementClass, restoreReferences);
+                    decoderClass = encodedValue.getClass();
+                }
 
                 decodedValue = decoder.decodeObject(encodedValue, arrayElementClass);
 
@@ -26,6 +26,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class that tries to find an ActionScriptDecoder that will be able
@@ -67,6 +68,13 @@ public class DecoderFactory
     private static final CollectionDecoder deepCollectionDecoder = new ReferenceAwareCollectionDecoder();
     private static final TypedObjectDecoder deepTypedObjectDecoder = new ReferenceAwareTypedObjectDecoder();
 
+    // Decoder selection only depends on the encoded and desired classes (except for
+    // typed ASObjects), so remember each decision rather than re-walking the checks
+    // below for every value. The number of class pairs an application converts is
+    // small, but the cache is capped in case classes are generated dynamically.
+    private static final int MAX_CACHED_DECODERS = 4096;
+    private static final ConcurrentHashMap<DecoderKey, ActionScriptDecoder> decoderCache =
+        new ConcurrentHashMap<DecoderKey, ActionScriptDecoder>();
 
     /**
      * A simple method for obtaining a placeholder or 'shell' object that will be subsequently
@@ -113,6 +121,61 @@ public class DecoderFactory
      * @return The <tt>ActionScriptDecoder</tt> to use for instances of the desired class. 
      */
     public static ActionScriptDecoder getDecoder(Object encodedObject, Class desiredClass)
+    {
+        return getDecoder(encodedObject, desiredClass, false);
+    }
+
+    /**
+     * Returns the decoder for the encoded object and desired class, using
+     * the reference aware decoders if <code>restoreReferences</code> is true.
+     * The selection is cached by encoded class and desired class so repeated
+     * conversions between the same types skip the type checks.
+     *
+     * @param encodedObject
+     * @param desiredClass
+     * @param restoreReferences whether references need to be tracked and restored.
+     * @return The <tt>ActionScriptDecoder</tt> to use for instances of the desired class.
+     */
+    public static ActionScriptDecoder getDecoder(Object encodedObject, Class desiredClass, boolean restoreReferences)
+    {
+        if (!isCacheable(encodedObject))
+        {
+            return restoreReferences ? lookupReferenceAwareDecoder(encodedObject, desiredClass)
+                    : lookupDecoder(encodedObject, desiredClass);
+        }
+
+        DecoderKey key = new DecoderKey(encodedObject.getClass(), desiredClass, restoreReferences);
+        ActionScriptDecoder decoder = decoderCache.get(key);
+        if (decoder == null)
+        {
+            decoder = restoreReferences ? lookupReferenceAwareDecoder(encodedObject, desiredClass)
+                    : lookupDecoder(encodedObject, desiredClass);
+
+            if (decoderCache.size() < MAX_CACHED_DECODERS)
+                decoderCache.put(key, decoder);
+        }
+        return decoder;
+    }
+
+    /**
+     * Clears the cached decoder selections.
+     */
+    public static void clearDecoderCache()
+    {
+        decoderCache.clear();
+    }
+
+    /**
+     * Whether the decoder chosen for the encoded object depends only on its
+     * class. Null is cheap to resolve and typed ASObjects depend on the type
+     * name of the instance, so neither is cached.
+     */
+    static boolean isCacheable(Object encodedObject)
+    {
+        return encodedObject != null && !(encodedObject instanceof ASObject);
+    }
+
+    private static ActionScriptDecoder lookupDecoder(Object encodedObject, Class desiredClass)
     {
         if (encodedObject != null)
         {
@@ -185,6 +248,11 @@ public class DecoderFactory
      * @return The <tt>ActionScriptDecoder</tt> to use for instances of the desired class.
      */
     public static ActionScriptDecoder getReferenceAwareDecoder(Object encodedObject, Class desiredClass)
+    {
+        return getDecoder(encodedObject, desiredClass, true);
+    }
+
+    private static ActionScriptDecoder lookupReferenceAwareDecoder(Object encodedObject, Class desiredClass)
     {
         if (encodedObject != null)
         {
@@ -370,4 +438,39 @@ public class DecoderFactory
         ex.setCode("Client.Message.Deserialize.InvalidType");
         throw ex;
     }
+
+    /**
+     * Key for the decoder cache.
+     */
+    private static final class DecoderKey
+    {
+        private final Class encodedClass;
+        private final Class desiredClass;
+        private final boolean restoreReferences;
+        private final int hash;
+
+        DecoderKey(Class encodedClass, Class desiredClass, boolean restoreReferences)
+        {
+            this.encodedClass = encodedClass;
+            this.desiredClass = desiredClass;
+            this.restoreReferences = restoreReferences;
+            hash = (31 * encodedClass.hashCode() + desiredClass.hashCode()) * 2 + (restoreReferences ? 1 : 0);
+        }
+
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof DecoderKey))
+                return false;
+            DecoderKey other = (DecoderKey)o;
+            return encodedClass == other.encodedClass && desiredClass == other.desiredClass
+                    && restoreReferences == other.restoreReferences;
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
 }
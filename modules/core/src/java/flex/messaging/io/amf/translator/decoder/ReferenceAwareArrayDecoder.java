@@ -67,6 +67,7 @@ public class ReferenceAwareArrayDecoder extends ArrayDecoder
         TypeMarshallingContext context = TypeMarshallingContext.getTypeMarshallingContext();
         
         ActionScriptDecoder decoder = null;
+        Class decoderClass = null;
         int n = 0;
         int len = Array.getLength(array);
         for (int i = 0; i < len; i++)
@@ -88,7 +89,11 @@ public class ReferenceAwareArrayDecoder extends ArrayDecoder
 
                 if (ref == null)
                 {
-                    decoder = DecoderFactory.getReferenceAwareDecoder(encodedValue, arrayElementClass);
+                    if (decoder == null || encodedValue.getClass() != decoderClass || !DecoderFactory.isCacheable(encodedValue))
+                    {
+                        decoder = DecoderFactory.getReferenceAwareDecoder(encodedValue, arrayElementClass);
+                        decoderClass = encodedValue.getClass();
+                    }
                     decodedValue = decoder.decodeObject(encodedValue, arrayElementClass);
 
                     if (canUseByReference(decodedValue))
@@ -59,6 +59,7 @@ public class ReferenceAwareCollectionDecoder extends CollectionDecoder
 
         TypeMarshallingContext context = TypeMarshallingContext.getTypeMarshallingContext();
         ActionScriptDecoder decoder = null;
+        Class decoderClass = null;
 
         if (encodedObject instanceof String)
         {
@@ -95,7 +96,11 @@ public class ReferenceAwareCollectionDecoder extends CollectionDecoder
 
                 if (ref == null)
                 {
-                    decoder = DecoderFactory.getReferenceAwareDecoder(obj, obj.getClass());
+                    if (decoder == null || obj.getClass() != decoderClass || !DecoderFactory.isCacheable(obj))
+                    {
+                        decoder = DecoderFactory.getReferenceAwareDecoder(obj, obj.getClass());
+                        decoderClass = obj.getClass();
+                    }
                     decodedObject = decoder.decodeObject(obj, obj.getClass());
 
                     if (canUseByReference(decodedObject))
@@ -47,7 +47,6 @@ import java.util.Date;
 import java.util.EmptyStackException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
 
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -72,6 +71,56 @@ import javax.xml.stream.XMLStreamReader;
  */
 public class AmfxInput
 {
+    /*
+     *  AMFX ELEMENT CODES, used to dispatch on element names with a switch
+     */
+    private static final int ELEMENT_UNKNOWN = 0;
+    private static final int ELEMENT_AMFX = 1;
+    private static final int ELEMENT_ARRAY = 2;
+    private static final int ELEMENT_BODY = 3;
+    private static final int ELEMENT_BYTEARRAY = 4;
+    private static final int ELEMENT_DATE = 5;
+    private static final int ELEMENT_DOUBLE = 6;
+    private static final int ELEMENT_FALSE = 7;
+    private static final int ELEMENT_HEADER = 8;
+    private static final int ELEMENT_INT = 9;
+    private static final int ELEMENT_ITEM = 10;
+    private static final int ELEMENT_NULL = 11;
+    private static final int ELEMENT_OBJECT = 12;
+    private static final int ELEMENT_REF = 13;
+    private static final int ELEMENT_STRING = 14;
+    private static final int ELEMENT_TRAITS = 15;
+    private static final int ELEMENT_TRUE = 16;
+    private static final int ELEMENT_UNDEFINED = 17;
+    private static final int ELEMENT_XML = 18;
+    private static final int ELEMENT_CHAR = 19;
+    private static final int ELEMENT_CHARS = 20;
+
+    private static final Map<String, Integer> ELEMENT_CODES = new HashMap<String, Integer>();
+    static
+    {
+        ELEMENT_CODES.put("amfx", ELEMENT_AMFX);
+        ELEMENT_CODES.put("array", ELEMENT_ARRAY);
+        ELEMENT_CODES.put("body", ELEMENT_BODY);
+        ELEMENT_CODES.put("bytearray", ELEMENT_BYTEARRAY);
+        ELEMENT_CODES.put("date", ELEMENT_DATE);
+        ELEMENT_CODES.put("double", ELEMENT_DOUBLE);
+        ELEMENT_CODES.put("false", ELEMENT_FALSE);
+        ELEMENT_CODES.put("header", ELEMENT_HEADER);
+        ELEMENT_CODES.put("int", ELEMENT_INT);
+        ELEMENT_CODES.put("item", ELEMENT_ITEM);
+        ELEMENT_CODES.put("null", ELEMENT_NULL);
+        ELEMENT_CODES.put("object", ELEMENT_OBJECT);
+        ELEMENT_CODES.put("ref", ELEMENT_REF);
+        ELEMENT_CODES.put("string", ELEMENT_STRING);
+        ELEMENT_CODES.put("traits", ELEMENT_TRAITS);
+        ELEMENT_CODES.put("true", ELEMENT_TRUE);
+        ELEMENT_CODES.put("undefined", ELEMENT_UNDEFINED);
+        ELEMENT_CODES.put("xml", ELEMENT_XML);
+        ELEMENT_CODES.put("char", ELEMENT_CHAR);
+        ELEMENT_CODES.put("chars", ELEMENT_CHARS);
+    }
+
     private SerializationContext context;
     private BeanProxy beanproxy = new BeanProxy();
     
@@ -84,12 +133,13 @@ public class AmfxInput
     private ActionMessage message;
     private MessageHeader currentHeader;
     private MessageBody currentBody;
-    private Stack<Object> objectStack;
-    private Stack<PropertyProxy> proxyStack;
-    private Stack<String> arrayPropertyStack;
-    private Stack<int[]> ecmaArrayIndexStack;
-    private Stack<int[]> strictArrayIndexStack;
-    private Stack<TraitsContext> traitsStack;
+    private final ArrayStack<Object> objectStack;
+    private final ArrayStack<PropertyProxy> proxyStack;
+    private final ArrayStack<String> arrayPropertyStack;
+    private final IntStack ecmaArrayIndexStack;
+    private final IntStack strictArrayIndexStack;
+    private final ArrayStack<TraitsInfo> traitsStack;
+    private final IntStack traitsIndexStack;
     private boolean isStringReference;
     private boolean isTraitProperty;
 
@@ -107,12 +157,13 @@ public class AmfxInput
         objectTable = new ArrayList<Object>(64);
         traitsTable = new ArrayList<TraitsInfo>(10);
 
-        objectStack = new Stack<Object>();
-        proxyStack = new Stack<PropertyProxy>();
-        arrayPropertyStack = new Stack<String>();
-        strictArrayIndexStack = new Stack<int[]>();
-        ecmaArrayIndexStack = new Stack<int[]>();
-        traitsStack = new Stack<TraitsContext>();
+        objectStack = new ArrayStack<Object>();
+        proxyStack = new ArrayStack<PropertyProxy>();
+        arrayPropertyStack = new ArrayStack<String>();
+        strictArrayIndexStack = new IntStack();
+        ecmaArrayIndexStack = new IntStack();
+        traitsStack = new ArrayStack<TraitsInfo>();
+        traitsIndexStack = new IntStack();
     }
 
     public void reset()
@@ -123,7 +174,10 @@ public class AmfxInput
         objectStack.clear();
         proxyStack.clear();
         arrayPropertyStack.clear();
+        ecmaArrayIndexStack.clear();
+        strictArrayIndexStack.clear();
         traitsStack.clear();
+        traitsIndexStack.clear();
         currentBody = null;
         currentHeader = null;
 
@@ -155,7 +209,7 @@ public class AmfxInput
     public void parse() throws XMLStreamException, IOException
     {
         int eventType = xmlStreamReader.nextTag();
-        if (eventType != XMLStreamConstants.START_ELEMENT || !xmlStreamReader.getLocalName().equals("amfx"))
+        if (eventType != XMLStreamConstants.START_ELEMENT || elementCode(xmlStreamReader.getLocalName()) != ELEMENT_AMFX)
         {
             throw new MessageException("Invalid XML element: " + xmlStreamReader.getLocalName());
         }
@@ -193,84 +247,75 @@ public class AmfxInput
         while (xmlStreamReader.nextTag() == XMLStreamConstants.START_ELEMENT)
         {
             String name = xmlStreamReader.getLocalName();
-            
-            // System.out.println("*** processing element: " + name);
 
-            if (name.equals("array"))
+            switch (elementCode(name))
             {
-                readArrayElement();
-            }
-            else if (name.equals("body"))
-            {
-                readBodyElement();
-            }
-            else if (name.equals("bytearray"))
-            {
-                readByteArrayElement();
-            }
-            else if (name.equals("date"))
-            {
-                readDateElement();
-            }
-            else if (name.equals("double"))
-            {
-                readDoubleElement();
-            }
-            else if (name.equals("false"))
-            {
-                readFalseElement();
-            }
-            else if (name.equals("header"))
-            {
-                readHeaderElement();
-            }
-            else if (name.equals("int"))
-            {
-                readIntElement();
-            }
-            else if (name.equals("item"))
-            {
-                readItemElement();
-            }
-            else if (name.equals("null"))
-            {
-                readNullElement();
-            }
-            else if (name.equals("object"))
-            {
-                readObjectElement();
-            }
-            else if (name.equals("ref"))
-            {
-                readRefElement();
-            }
-            else if (name.equals("string"))
-            {
-                readStringElement();
-            }
-            else if (name.equals("traits"))
-            {
-                readTraitsElement();
-            }
-            else if (name.equals("true"))
-            {
-                readTrueElement();
-            }
-            else if (name.equals("undefined"))
-            {
-                // Processed the same way as "null".
-                readNullElement();
-            }
-            else if (name.equals("xml"))
-            {
-                readXmlElement();
-            }
-            else
-            {
-                throw new MessageException("Unexpected XML element: " + name);
+                case ELEMENT_ARRAY:
+                    readArrayElement();
+                    break;
+                case ELEMENT_BODY:
+                    readBodyElement();
+                    break;
+                case ELEMENT_BYTEARRAY:
+                    readByteArrayElement();
+                    break;
+                case ELEMENT_DATE:
+                    readDateElement();
+                    break;
+                case ELEMENT_DOUBLE:
+                    readDoubleElement();
+                    break;
+                case ELEMENT_FALSE:
+                    readFalseElement();
+                    break;
+                case ELEMENT_HEADER:
+                    readHeaderElement();
+                    break;
+                case ELEMENT_INT:
+                    readIntElement();
+                    break;
+                case ELEMENT_ITEM:
+                    readItemElement();
+                    break;
+                case ELEMENT_NULL:
+                // "undefined" is processed the same way as "null".
+                case ELEMENT_UNDEFINED:
+                    readNullElement();
+                    break;
+                case ELEMENT_OBJECT:
+                    readObjectElement();
+                    break;
+                case ELEMENT_REF:
+                    readRefElement();
+                    break;
+                case ELEMENT_STRING:
+                    readStringElement();
+                    break;
+                case ELEMENT_TRAITS:
+                    readTraitsElement();
+                    break;
+                case ELEMENT_TRUE:
+                    readTrueElement();
+                    break;
+                case ELEMENT_XML:
+                    readXmlElement();
+                    break;
+                default:
+                    throw new MessageException("Unexpected XML element: " + name);
             }
         }
     }
+
+    /**
+     * Maps an AMFX element name to one of the ELEMENT_ codes, or ELEMENT_UNKNOWN.
+     * StAX parsers hand back interned names so the lookup normally hits the
+     * cached hash code of the name rather than comparing characters.
+     */
+    private static int elementCode(String name)
+    {
+        Integer code = ELEMENT_CODES.get(name);
+        return code == null ? ELEMENT_UNKNOWN : code.intValue();
+    }
     
     private void readBodyElement() throws XMLStreamException, IOException
     {
@@ -346,8 +391,8 @@ public class AmfxInput
                     int i = Integer.parseInt(id);
                     traitsInfo = traitsTable.get(i); 
 
-                    TraitsContext traitsContext = new TraitsContext(traitsInfo);
-                    traitsStack.push(traitsContext);
+                    traitsStack.push(traitsInfo);
+                    traitsIndexStack.push(0);
                     
                     xmlStreamReader.nextTag();
                 }
@@ -373,8 +418,8 @@ public class AmfxInput
                 traitsInfo = new TraitsInfo(pp.getAlias(obj), pp.isDynamic(), externalizable, 10);
                 traitsTable.add(traitsInfo);
                 
-                TraitsContext traitsContext = new TraitsContext(traitsInfo);
-                traitsStack.push(traitsContext);
+                traitsStack.push(traitsInfo);
+                traitsIndexStack.push(0);
                 
                 if (externalizable)
                 {
@@ -432,8 +477,7 @@ public class AmfxInput
                 String s = (String)stringTable.get(i);
                 if (isTraitProperty)
                 {
-                    TraitsContext traitsContext = (TraitsContext)traitsStack.peek();
-                    traitsContext.traits.addProperty(s);
+                    traitsStack.peek().addProperty(s);
                 }
                 else
                 {
@@ -475,8 +519,7 @@ public class AmfxInput
 
             if (isTraitProperty)
             {
-                TraitsContext traitsContext = (TraitsContext)traitsStack.peek();
-                traitsContext.traits.addProperty(s);
+                traitsStack.peek().addProperty(s);
             }
             else
             {
@@ -511,7 +554,7 @@ public class AmfxInput
         String d = xmlStreamReader.getElementText();
         try
         {
-            long l = Long.parseLong(d);
+            long l = Long.parseLong(d.trim());
             Date date = new Date(l);
             setValue(date);
   
@@ -548,7 +591,7 @@ public class AmfxInput
         String is = xmlStreamReader.getElementText();
         try
         {
-            Integer i = Integer.valueOf(is);
+            Integer i = Integer.valueOf(is.trim());
             setValue(i);
   
             if (isDebug)
@@ -600,8 +643,8 @@ public class AmfxInput
   
         setValue(array);
   
-        ecmaArrayIndexStack.push(new int[]{0});
-        strictArrayIndexStack.push(new int[]{0});
+        ecmaArrayIndexStack.push(0);
+        strictArrayIndexStack.push(0);
   
         objectTable.add(array);
         objectStack.push(array);
@@ -754,12 +797,15 @@ public class AmfxInput
         readElement();
 
         if (!traitsStack.empty())
-          traitsStack.pop();
+        {
+            traitsStack.pop();
+            traitsIndexStack.pop();
+        }
       
         if (!objectStack.empty())
         {
             Object obj = objectStack.pop();
-            proxy = (PropertyProxy) proxyStack.pop();
+            proxy = proxyStack.pop();
   
             Object newObj = proxy == null ? obj : proxy.instanceComplete(obj);
             if (newObj != obj)
@@ -868,10 +914,9 @@ public class AmfxInput
         {
             String prop;
 
-            TraitsContext traitsContext = (TraitsContext)traitsStack.peek();
             try
             {
-                prop = traitsContext.next();
+                prop = nextTrait();
             }
             catch (IndexOutOfBoundsException ex)
             {
@@ -901,19 +946,20 @@ public class AmfxInput
         {
             if (!strictArrayIndexStack.empty())
             {
-                int[] indexObj = (int[])strictArrayIndexStack.peek();
-                int index = indexObj[0];
+                int index = strictArrayIndexStack.peek();
 
                 if (Array.getLength(obj) > index)
                 {
-                    // System.out.println("*** setting array element " + index + " to: " + value);
-                    Array.set(obj, index, value);
+                    if (obj instanceof Object[])
+                        ((Object[])obj)[index] = value;
+                    else
+                        Array.set(obj, index, value);
                 }
                 else
                 {
                     throw new MessageException(xmlStreamReader.getLocation() + " Index out of bounds at: " + index + " cannot set array value: " + value + "");
                 }
-                indexObj[0]++;
+                strictArrayIndexStack.increment();
             }
         }
 
@@ -925,7 +971,7 @@ public class AmfxInput
             // <item name="prop">
             if (!arrayPropertyStack.empty())
             {
-                String prop = (String)arrayPropertyStack.peek();
+                String prop = arrayPropertyStack.peek();
                 map.put(prop, value);
 
                 if (isDebug)
@@ -937,10 +983,8 @@ public class AmfxInput
             // Mixed content, auto-generate string for ECMA Array index
             if (!ecmaArrayIndexStack.empty())
             {
-                int[] index = (int[])ecmaArrayIndexStack.peek();
-
-                String prop = String.valueOf(index[0]);
-                index[0]++;
+                String prop = String.valueOf(ecmaArrayIndexStack.peek());
+                ecmaArrayIndexStack.increment();
 
                 map.put(prop, value);
 
@@ -954,10 +998,9 @@ public class AmfxInput
         {
             String prop;
 
-            TraitsContext traitsContext = (TraitsContext)traitsStack.peek();
             try
             {
-                prop = traitsContext.next();
+                prop = nextTrait();
             }
             catch (IndexOutOfBoundsException ex)
             {
@@ -967,7 +1010,7 @@ public class AmfxInput
             try
             {
                 // Then check if there's a more suitable proxy now that we have an instance
-                PropertyProxy proxy = (PropertyProxy) proxyStack.peek();
+                PropertyProxy proxy = proxyStack.peek();
                 if (proxy == null)
                     proxy = beanproxy;
                 proxy.setValue(obj, prop, value);
@@ -983,21 +1026,124 @@ public class AmfxInput
         }
     }
 
-    private class TraitsContext
+    /**
+     * Returns the name of the next trait of the object being read and advances
+     * the trait index of that object.
+     */
+    private String nextTrait()
+    {
+        TraitsInfo traits = traitsStack.peek();
+        String trait = (String)traits.getProperties().get(traitsIndexStack.peek());
+        traitsIndexStack.increment();
+        return trait;
+    }
+
+    /**
+     * Unsynchronized, array backed replacement for java.util.Stack. An input
+     * is only ever used by one thread at a time so the locking done by Stack
+     * (a Vector) is pure overhead on every element read.
+     */
+    private static final class ArrayStack<T>
+    {
+        private Object[] elements = new Object[16];
+        private int size;
+
+        void push(T element)
+        {
+            if (size == elements.length)
+            {
+                Object[] grown = new Object[size << 1];
+                System.arraycopy(elements, 0, grown, 0, size);
+                elements = grown;
+            }
+            elements[size++] = element;
+        }
+
+        @SuppressWarnings("unchecked")
+        T pop()
+        {
+            if (size == 0)
+                throw new EmptyStackException();
+
+            T element = (T)elements[--size];
+            elements[size] = null;
+            return element;
+        }
+
+        @SuppressWarnings("unchecked")
+        T peek()
+        {
+            if (size == 0)
+                throw new EmptyStackException();
+
+            return (T)elements[size - 1];
+        }
+
+        boolean empty()
+        {
+            return size == 0;
+        }
+
+        void clear()
+        {
+            for (int i = 0; i < size; i++)
+                elements[i] = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * Stack of primitive counters, used for array and trait indices so that
+     * no holder object has to be allocated for each array or object read.
+     */
+    private static final class IntStack
     {
-        private TraitsInfo traits;
-        private int counter;
+        private int[] elements = new int[16];
+        private int size;
+
+        void push(int value)
+        {
+            if (size == elements.length)
+            {
+                int[] grown = new int[size << 1];
+                System.arraycopy(elements, 0, grown, 0, size);
+                elements = grown;
+            }
+            elements[size++] = value;
+        }
+
+        int pop()
+        {
+            if (size == 0)
+                throw new EmptyStackException();
+
+            return elements[--size];
+        }
+
+        int peek()
+        {
+            if (size == 0)
+                throw new EmptyStackException();
+
+            return elements[size - 1];
+        }
+
+        void increment()
+        {
+            if (size == 0)
+                throw new EmptyStackException();
+
+            elements[size - 1]++;
+        }
 
-        private TraitsContext(TraitsInfo traits)
+        boolean empty()
         {
-            this.traits = traits;
+            return size == 0;
         }
 
-        private String next()
+        void clear()
         {
-            String trait = (String)traits.getProperties().get(counter);
-            counter++;
-            return trait;
+            size = 0;
         }
     }
     
@@ -1022,12 +1168,14 @@ public class AmfxInput
                 
                 String name = xmlStreamReader.getLocalName();
 
-                if (name.equals("true"))
+                int code = elementCode(name);
+
+                if (code == ELEMENT_TRUE)
                 {
                     xmlStreamReader.nextTag();
                     return true;
                 }
-                else if (name.equals("false"))
+                else if (code == ELEMENT_FALSE)
                 {
                     xmlStreamReader.nextTag();
                     return false;
@@ -1078,7 +1226,9 @@ public class AmfxInput
                     
                     String name = xmlStreamReader.getLocalName();
       
-                    if (name.equals("char") || name.equals("chars"))
+                    int code = elementCode(name);
+
+                    if (code == ELEMENT_CHAR || code == ELEMENT_CHARS)
                     {
                         charBuffer = xmlStreamReader.getElementText();
                         charBufferPos = 0;
@@ -1143,15 +1293,17 @@ public class AmfxInput
               
               String name = xmlStreamReader.getLocalName();
               
-              if (name.equals("string"))
+              int code = elementCode(name);
+
+              if (code == ELEMENT_STRING)
               {
                   return xmlStreamReader.getElementText();
               }
-              else if (name.equals("array"))
+              else if (code == ELEMENT_ARRAY)
               {
                   return AmfxInput.this.readArrayElement();
               }
-              else if (name.equals("object"))
+              else if (code == ELEMENT_OBJECT)
               {
                   return AmfxInput.this.readObjectElement();
               }
@@ -1249,7 +1401,7 @@ public class AmfxInput
                 
                 String name = xmlStreamReader.getLocalName();
   
-                if (name.equals(expectedName))
+                if (name == expectedName || name.equals(expectedName))
                 {
                     return xmlStreamReader.getElementText();
                 }
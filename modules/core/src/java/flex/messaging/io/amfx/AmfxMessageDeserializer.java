@@ -30,6 +30,7 @@ import org.xml.sax.Locator;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,6 +42,13 @@ import java.io.InputStream;
  */
 public class AmfxMessageDeserializer implements MessageDeserializer
 {
+    /**
+     * Looking up an XMLInputFactory goes through service discovery so it is
+     * done once and shared; a configured factory is safe to use concurrently
+     * for creating stream readers.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
     protected InputStream in;
 
     protected Locator locator;
@@ -100,9 +108,11 @@ public class AmfxMessageDeserializer implements MessageDeserializer
 
     protected void parse(ActionMessage m)
     {
+        XMLStreamReader reader = null;
         try
         {
-            amfxIn.setXMLStreamReader(XMLInputFactory.newInstance().createXMLStreamReader(in));
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            amfxIn.setXMLStreamReader(reader);
             amfxIn.parse();
         }
         catch (MessageException ex)
@@ -120,6 +130,20 @@ public class AmfxMessageDeserializer implements MessageDeserializer
             ex.printStackTrace();
             clientMessageEncodingException(m, ex);
         }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (XMLStreamException ignore)
+                {
+                }
+            }
+            amfxIn.setXMLStreamReader(null);
+        }
     }
 
     protected void clientMessageEncodingException(ActionMessage m, Throwable t)
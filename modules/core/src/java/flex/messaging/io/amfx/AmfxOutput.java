@@ -73,6 +73,82 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     protected HashMap<TraitsInfo, Object> traitsTable;
     protected HashMap<String, Object> stringTable;
 
+    /*
+     *  PRE-ENCODED TAGS
+     */
+    private static final byte[] EMPTY_STRING_TAG_BYTES = toBytes(EMPTY_STRING_TAG);
+    private static final byte[] FALSE_TAG_BYTES = toBytes(FALSE_TAG);
+    private static final byte[] NULL_TAG_BYTES = toBytes(NULL_TAG);
+    private static final byte[] TRUE_TAG_BYTES = toBytes(TRUE_TAG);
+    private static final byte[] EMPTY_TRAITS_TAG_BYTES = toBytes(EMPTY_TRAITS_TAG);
+    private static final byte[] TRAITS_EXTERNALIZABLE_TAG_BYTES = toBytes(TRAITS_EXTERNALIZALBE_TAG);
+    private static final byte[] TRAITS_OPEN_TAG_BYTES = toBytes(TRAITS_OPEN_TAG);
+    private static final byte[] TRAITS_CLOSE_TAG_BYTES = toBytes(TRAITS_CLOSE_TAG);
+    private static final byte[] TRAITS_REF_OPEN_BYTES = toBytes("<" + TRAITS_TYPE + " id=\"");
+    private static final byte[] OBJECT_OPEN_TAG_BYTES = toBytes(OBJECT_OPEN_TAG);
+    private static final byte[] OBJECT_TYPE_OPEN_BYTES = toBytes("<" + OBJECT_TYPE + " type=\"");
+    private static final byte[] OBJECT_CLOSE_TAG_BYTES = toBytes(OBJECT_CLOSE_TAG);
+    private static final byte[] REF_OPEN_BYTES = toBytes("<" + REF_TYPE + " id=\"");
+    private static final byte[] ARRAY_LENGTH_OPEN_BYTES = toBytes("<" + ARRAY_TYPE + " length=\"");
+    private static final byte[] ECMA_ARRAY_OPEN_TAG_BYTES = toBytes("<" + ARRAY_TYPE + " ecma=\"true\">");
+    private static final byte[] ARRAY_CLOSE_TAG_BYTES = toBytes(ARRAY_CLOSE_TAG);
+    private static final byte[] ITEM_NAME_OPEN_BYTES = toBytes("<" + ITEM_TYPE + " name=\"");
+    private static final byte[] ITEM_CLOSE_TAG_BYTES = toBytes(ITEM_CLOSE_TAG);
+    private static final byte[] STRING_OPEN_TAG_BYTES = toBytes(STRING_OPEN_TAG);
+    private static final byte[] STRING_CLOSE_TAG_BYTES = toBytes(STRING_CLOSE_TAG);
+    private static final byte[] STRING_REF_OPEN_BYTES = toBytes("<" + STRING_TYPE + " id=\"");
+    private static final byte[] INTEGER_OPEN_TAG_BYTES = toBytes(INTEGER_OPEN_TAG);
+    private static final byte[] INTEGER_CLOSE_TAG_BYTES = toBytes(INTEGER_CLOSE_TAG);
+    private static final byte[] DOUBLE_OPEN_TAG_BYTES = toBytes(DOUBLE_OPEN_TAG);
+    private static final byte[] DOUBLE_CLOSE_TAG_BYTES = toBytes(DOUBLE_CLOSE_TAG);
+    private static final byte[] DATE_OPEN_TAG_BYTES = toBytes(DATE_OPEN_TAG);
+    private static final byte[] DATE_CLOSE_TAG_BYTES = toBytes(DATE_CLOSE_TAG);
+    private static final byte[] BYTE_ARRAY_OPEN_TAG_BYTES = toBytes(BYTE_ARRAY_OPEN_TAG);
+    private static final byte[] BYTE_ARRAY_CLOSE_TAG_BYTES = toBytes(BYTE_ARRAY_CLOSE_TAG);
+    private static final byte[] XML_OPEN_TAG_BYTES = toBytes(XML_OPEN_TAG);
+    private static final byte[] XML_CLOSE_TAG_BYTES = toBytes(XML_CLOSE_TAG);
+    private static final byte[] BYTE_OPEN_TAG_BYTES = toBytes("<byte>");
+    private static final byte[] BYTE_CLOSE_TAG_BYTES = toBytes("</byte>");
+    private static final byte[] BYTES_OPEN_TAG_BYTES = toBytes("<bytes>");
+    private static final byte[] BYTES_CLOSE_TAG_BYTES = toBytes("</bytes>");
+    private static final byte[] CHAR_OPEN_TAG_BYTES = toBytes("<char>");
+    private static final byte[] CHAR_CLOSE_TAG_BYTES = toBytes("</char>");
+    private static final byte[] CHARS_OPEN_TAG_BYTES = toBytes("<chars>");
+    private static final byte[] CHARS_CLOSE_TAG_BYTES = toBytes("</chars>");
+    private static final byte[] SHORT_OPEN_TAG_BYTES = toBytes("<short>");
+    private static final byte[] SHORT_CLOSE_TAG_BYTES = toBytes("</short>");
+    private static final byte[] LONG_OPEN_TAG_BYTES = toBytes("<long>");
+    private static final byte[] LONG_CLOSE_TAG_BYTES = toBytes("</long>");
+    private static final byte[] FLOAT_OPEN_TAG_BYTES = toBytes("<float>");
+    private static final byte[] FLOAT_CLOSE_TAG_BYTES = toBytes("</float>");
+    private static final byte[] ATTRIBUTE_END_BYTES = toBytes("\">");
+    private static final byte[] EMPTY_ELEMENT_END_BYTES = toBytes("\"/>");
+
+    private static final byte[] HEX_DIGITS = toBytes("0123456789ABCDEF");
+    private static final byte[] LOWER_HEX_DIGITS = toBytes("0123456789abcdef");
+
+    /**
+     * Size of the buffer that UTF-8 output is collected in before it is
+     * written to the underlying stream.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The most bytes a single char can be written as, i.e. an escaped
+     * numerical character reference such as &amp;#xfffe;
+     */
+    private static final int MAX_CHAR_BYTES = 8;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    /**
+     * Nesting depth of writeObject calls. The buffer is written to the
+     * stream whenever a top level write completes so callers do not
+     * need to flush this output to see the bytes on their stream.
+     */
+    private int depth;
+
     public AmfxOutput(SerializationContext context)
     {
         super(context);
@@ -88,6 +164,8 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         objectTable.clear();
         traitsTable.clear();
         stringTable.clear();
+        position = 0;
+        depth = 0;
     }
 
     /**
@@ -104,8 +182,22 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     // java.io.ObjectOutput IMPLEMENTATIONS
     //
 
-    @SuppressWarnings("unchecked")
     public void writeObject(Object o) throws IOException
+    {
+        depth++;
+        try
+        {
+            writeValue(o);
+        }
+        finally
+        {
+            if (--depth == 0)
+                flushBuffer();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object o) throws IOException
     {
         if (o == null)
         {
@@ -160,14 +252,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         {
             String xml = documentToString(o);
 
-            int len = xml.length() + 15; // <xml>...</xml>
-
-            StringBuffer sb = new StringBuffer(len);
-            sb.append(XML_OPEN_TAG);
-            writeEscapedString(sb, xml);
-            sb.append(XML_CLOSE_TAG);
-
-            writeUTF(sb);
+            writeTag(XML_OPEN_TAG_BYTES);
+            writeText(xml, true);
+            writeTag(XML_CLOSE_TAG_BYTES);
 
             if (isDebug)
                 trace.writeString(xml);
@@ -215,17 +302,13 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
         if (className == null || className.length() == 0)
         {
-            writeUTF(OBJECT_OPEN_TAG);
+            writeTag(OBJECT_OPEN_TAG_BYTES);
         }
         else
         {
-            int len = 127; // <object type="...">
-            StringBuffer sb = new StringBuffer(len);
-            sb.append("<").append(OBJECT_TYPE).append(" type=\"");
-            sb.append(className);
-            sb.append("\">");
-
-            writeUTF(sb);
+            writeTag(OBJECT_TYPE_OPEN_BYTES); // <object type="...">
+            writeText(className, false);
+            writeTag(ATTRIBUTE_END_BYTES);
         }
 
         if (isDebug)
@@ -235,7 +318,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         // of <traits/> and thus do not serialize by reference.
         if (ti.length() == 0 && className == null)
         {
-            writeUTF(EMPTY_TRAITS_TAG);
+            writeTag(EMPTY_TRAITS_TAG_BYTES);
         }
         else if (!byReference(ti))
         {
@@ -243,7 +326,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             //boolean dynamic = ti.isDynamic();
             if (ti.isExternalizable())
             {
-                writeUTF(TRAITS_EXTERNALIZALBE_TAG);
+                writeTag(TRAITS_EXTERNALIZABLE_TAG_BYTES);
             }
             else
             {
@@ -251,11 +334,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
                 if (count <= 0)
                 {
-                    writeUTF(EMPTY_TRAITS_TAG);
+                    writeTag(EMPTY_TRAITS_TAG_BYTES);
                 }
                 else
                 {
-                    writeUTF(TRAITS_OPEN_TAG);
+                    writeTag(TRAITS_OPEN_TAG_BYTES);
 
                     for (int i = 0; i < count; i++)
                     {
@@ -263,10 +346,12 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
                         writeString(propName, true);
                     }
 
-                    writeUTF(TRAITS_CLOSE_TAG);
+                    writeTag(TRAITS_CLOSE_TAG_BYTES);
                 }
             }
         }
+
+        endWrite();
     }
 
 
@@ -280,20 +365,58 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
     public void writeObjectEnd() throws IOException
     {
-        writeUTF(OBJECT_CLOSE_TAG);
+        writeTag(OBJECT_CLOSE_TAG_BYTES);
 
         if (isDebug)
             trace.endAMFObject();
+
+        endWrite();
     }
 
     //
-    // java.io.DataOutput IMPLEMENTATIONS
+    // java.io.ObjectOutput and java.io.DataOutput IMPLEMENTATIONS
     //
 
+    /**
+     * Writes any buffered AMFX to the stream before flushing it.
+     */
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        super.flush();
+    }
+
+    /**
+     * Writes any buffered AMFX to the stream before closing it.
+     */
+    public void close() throws IOException
+    {
+        flushBuffer();
+        super.close();
+    }
+
+    public void write(int b) throws IOException
+    {
+        flushBuffer();
+        super.write(b);
+    }
+
+    public void write(byte bytes[]) throws IOException
+    {
+        flushBuffer();
+        super.write(bytes);
+    }
+
+    public void write(byte bytes[], int offset, int length) throws IOException
+    {
+        flushBuffer();
+        super.write(bytes, offset, length);
+    }
+
     public void writeUTF(String s) throws IOException
     {
-        byte[] bytes = s.getBytes(UTF_8);
-        out.write(bytes);
+        writeText(s, false);
+        endWrite();
     }
 
     //
@@ -306,9 +429,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     protected void writeAMFBoolean(boolean b) throws IOException
     {
         if (b)
-            writeUTF(TRUE_TAG); // <true/>
+            writeTag(TRUE_TAG_BYTES); // <true/>
         else
-            writeUTF(FALSE_TAG); // <false/>
+            writeTag(FALSE_TAG_BYTES); // <false/>
 
         if (isDebug)
             trace.write(b);
@@ -319,13 +442,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeAMFDouble(double d) throws IOException
     {
-        int buflen = 40; // <double>...</double>
-        StringBuffer sb = new StringBuffer(buflen);
-        sb.append(DOUBLE_OPEN_TAG);
-        sb.append(d);
-        sb.append(DOUBLE_CLOSE_TAG);
-
-        writeUTF(sb);
+        writeTag(DOUBLE_OPEN_TAG_BYTES);
+        writeDoubleText(d);
+        writeTag(DOUBLE_CLOSE_TAG_BYTES);
 
         if (isDebug)
             trace.write(d);
@@ -336,13 +455,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeAMFInt(int i) throws IOException
     {
-        int buflen = 25; // <int>...</int>
-        StringBuffer sb = new StringBuffer(buflen);
-        sb.append(INTEGER_OPEN_TAG);
-        sb.append(i);
-        sb.append(INTEGER_CLOSE_TAG);
-
-        writeUTF(sb);
+        writeTag(INTEGER_OPEN_TAG_BYTES);
+        writeDecimal(i);
+        writeTag(INTEGER_CLOSE_TAG_BYTES);
 
         if (isDebug)
             trace.write(i);
@@ -351,16 +466,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     
     protected void writeAMFByte(int b) throws IOException
     {
-      Hex.Encoder encoder = new Hex.Encoder(1);
-      encoder.encode(new byte[] { (byte)b });
-      String hex = encoder.drain();
-
-      StringBuilder sb = new StringBuilder();
-      sb.append("<byte>");
-      sb.append(hex);
-      sb.append("</byte>");
-
-      writeUTF(sb.toString());
+      writeTag(BYTE_OPEN_TAG_BYTES);
+      writeHexByte(b);
+      writeTag(BYTE_CLOSE_TAG_BYTES);
 
       if (isDebug)
         trace.write(b);
@@ -373,29 +481,23 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     
     protected void writeAMFBytes(byte[] b, int offset, int length) throws IOException
     {
-      Hex.Encoder encoder = new Hex.Encoder(length);
-      encoder.encode(b, offset, length);
-      String hex = encoder.drain();
-
-      StringBuilder sb = new StringBuilder();
-      sb.append("<bytes>");
-      sb.append(hex);
-      sb.append("</bytes>");
-
-      writeUTF(sb.toString());
+      writeTag(BYTES_OPEN_TAG_BYTES);
+      writeHex(b, offset, length);
+      writeTag(BYTES_CLOSE_TAG_BYTES);
 
       if (isDebug)
-        trace.write(hex);
+      {
+        Hex.Encoder encoder = new Hex.Encoder(length);
+        encoder.encode(b, offset, length);
+        trace.write(encoder.drain());
+      }
     }
     
     protected void writeAMFChar(int c) throws IOException
     {
-      StringBuilder sb = new StringBuilder();
-      sb.append("<char>");
-      sb.append((char)c);
-      sb.append("</char>");
-
-      writeUTF(sb.toString());
+      writeTag(CHAR_OPEN_TAG_BYTES);
+      writeText(String.valueOf((char)c), true);
+      writeTag(CHAR_CLOSE_TAG_BYTES);
 
       if (isDebug)
         trace.write(c);
@@ -403,12 +505,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     
     protected void writeAMFChars(String s) throws IOException
     {
-      StringBuilder sb = new StringBuilder();
-      sb.append("<chars>");
-      sb.append(s);
-      sb.append("</chars>");
-
-      writeUTF(sb.toString());
+      writeTag(CHARS_OPEN_TAG_BYTES);
+      writeText(s, true);
+      writeTag(CHARS_CLOSE_TAG_BYTES);
 
       if (isDebug)
         trace.write(s);
@@ -416,12 +515,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     
     protected void writeAMFShort(int s) throws IOException
     {
-      StringBuilder sb = new StringBuilder();
-      sb.append("<short>");
-      sb.append(s);
-      sb.append("</short>");
-
-      writeUTF(sb.toString());
+      writeTag(SHORT_OPEN_TAG_BYTES);
+      writeDecimal(s);
+      writeTag(SHORT_CLOSE_TAG_BYTES);
 
       if (isDebug)
         trace.write(s);
@@ -429,12 +525,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     
     protected void writeAMFLong(long l) throws IOException
     {
-      StringBuilder sb = new StringBuilder();
-      sb.append("<long>");
-      sb.append(l);
-      sb.append("</long>");
-
-      writeUTF(sb.toString());
+      writeTag(LONG_OPEN_TAG_BYTES);
+      writeDecimal(l);
+      writeTag(LONG_CLOSE_TAG_BYTES);
 
       if (isDebug)
         trace.write(l);
@@ -442,12 +535,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     
     protected void writeAMFFloat(float f) throws IOException
     {
-      StringBuilder sb = new StringBuilder();
-      sb.append("<float>");
-      sb.append(f);
-      sb.append("</float>");
-
-      writeUTF(sb.toString());
+      writeTag(FLOAT_OPEN_TAG_BYTES);
+      writeText(String.valueOf(f), false);
+      writeTag(FLOAT_CLOSE_TAG_BYTES);
 
       if (isDebug)
         trace.write(f);
@@ -458,19 +548,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeByteArray(byte[] ba) throws IOException
     {
-        int length = ba.length * 2;
-
-        int len = 23 + length; // <bytearray>number of bytes * 2 for encoding</bytearray>
-        StringBuffer sb = new StringBuffer(len);
-        sb.append(BYTE_ARRAY_OPEN_TAG);
-        writeUTF(sb);
-
-        Hex.Encoder encoder = new Hex.Encoder(ba.length * 2);
-        encoder.encode(ba);
-        String encoded = encoder.drain();
-        writeUTF(encoded);
-
-        writeUTF(BYTE_ARRAY_CLOSE_TAG);
+        writeTag(BYTE_ARRAY_OPEN_TAG_BYTES);
+        writeHex(ba, 0, ba.length);
+        writeTag(BYTE_ARRAY_CLOSE_TAG_BYTES);
 
         if (isDebug)
             trace.startByteArray(objectTable.size() - 1, ba.length);
@@ -501,8 +581,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     public void writeUTF(StringBuffer sb) throws IOException
     {
-        byte[] bytes = sb.toString().getBytes(UTF_8);
-        out.write(bytes);
+        writeUTF(sb.toString());
     }
 
     /**
@@ -512,14 +591,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     {
         if (!byReference(d))
         {
-            int buflen = 30; // <date>...</date>
-            long time = d.getTime();
-            StringBuffer sb = new StringBuffer(buflen);
-            sb.append(DATE_OPEN_TAG);
-            sb.append(time);
-            sb.append(DATE_CLOSE_TAG);
-
-            writeUTF(sb);
+            writeTag(DATE_OPEN_TAG_BYTES);
+            writeDecimal(d.getTime());
+            writeTag(DATE_CLOSE_TAG_BYTES);
 
             if (isDebug)
                 trace.write(d);
@@ -531,11 +605,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeMapAsECMAArray(Map<Object, Object> map) throws IOException
     {
-        int len = 20; // <array ecma="true">
-
-        StringBuffer sb = new StringBuffer(len);
-        sb.append("<").append(ARRAY_TYPE).append(" ecma=\"true\">");
-        writeUTF(sb);
+        writeTag(ECMA_ARRAY_OPEN_TAG_BYTES); // <array ecma="true">
 
         if (isDebug)
             trace.startAMFArray(objectTable.size() - 1);
@@ -547,22 +617,22 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             if (key != null)
             {
                 String propName = key.toString();
-                sb = new StringBuffer();
 
                 // For now, all keys will be named items
-                sb.append("<").append(ITEM_TYPE).append(" name=\"").append(propName).append("\">");
-                writeUTF(sb);
+                writeTag(ITEM_NAME_OPEN_BYTES);
+                writeText(propName, false);
+                writeTag(ATTRIBUTE_END_BYTES);
 
                 if (isDebug)
                     trace.namedElement(propName);
 
                 writeObject(map.get(key));
 
-                writeUTF(ITEM_CLOSE_TAG);
+                writeTag(ITEM_CLOSE_TAG_BYTES);
             }
         }
 
-        writeUTF(ARRAY_CLOSE_TAG);
+        writeTag(ARRAY_CLOSE_TAG_BYTES);
 
         if (isDebug)
             trace.endAMFArray();
@@ -573,7 +643,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeAMFNull() throws IOException
     {
-        writeUTF(NULL_TAG);
+        writeTag(NULL_TAG_BYTES);
 
         if (isDebug)
             trace.writeNull();
@@ -756,24 +826,16 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     {
         if (s.length() == 0)
         {
-            writeUTF(EMPTY_STRING_TAG);
+            writeTag(EMPTY_STRING_TAG_BYTES);
         }
         else if (!byReference(s))
         {
-            int len = s.length() + 35; // <string>...</string> + <![CDATA[ ]]>
-
-            StringBuffer sb = new StringBuffer(len);
-            sb.append(STRING_OPEN_TAG);
+            writeTag(STRING_OPEN_TAG_BYTES);
 
             // Traits won't contain chars that need escaping
-            if (!isTrait)
-                writeEscapedString(sb, s);
-            else
-                sb.append(s);
-
-            sb.append(STRING_CLOSE_TAG);
+            writeText(s, !isTrait);
 
-            writeUTF(sb);
+            writeTag(STRING_CLOSE_TAG_BYTES);
         }
     }
 
@@ -889,13 +951,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeObjectArrayDirectly(Object[] values, SerializationDescriptor descriptor) throws IOException
     {
-        int len = 25; // <array length="...">
-
-        StringBuffer sb = new StringBuffer(len);
-        sb.append("<").append(ARRAY_TYPE).append(" length=\"");
-        sb.append(values.length);
-        sb.append("\">");
-        writeUTF(sb);
+        writeTag(ARRAY_LENGTH_OPEN_BYTES); // <array length="...">
+        writeDecimal(values.length);
+        writeTag(ATTRIBUTE_END_BYTES);
 
         if (isDebug)
             trace.startAMFArray(objectTable.size() - 1);
@@ -908,7 +966,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             writeObject(values[i]);
         }
 
-        writeUTF(ARRAY_CLOSE_TAG);
+        writeTag(ARRAY_CLOSE_TAG_BYTES);
 
         if (isDebug)
             trace.endAMFArray();
@@ -943,12 +1001,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         {
             int length = Array.getLength(obj);
 
-            int buflen = 25; // <array length="...">
-            StringBuffer sb = new StringBuffer(buflen);
-            sb.append("<").append(ARRAY_TYPE).append(" length=\"");
-            sb.append(length);
-            sb.append("\">");
-            writeUTF(sb);
+            writeTag(ARRAY_LENGTH_OPEN_BYTES); // <array length="...">
+            writeDecimal(length);
+            writeTag(ATTRIBUTE_END_BYTES);
 
             if (isDebug)
                 trace.startAMFArray(objectTable.size() - 1);
@@ -992,7 +1047,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
                 }
             }
 
-            writeUTF(ARRAY_CLOSE_TAG);
+            writeTag(ARRAY_CLOSE_TAG_BYTES);
 
             if (isDebug)
                 trace.endAMFArray();
@@ -1019,14 +1074,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             {
                 int refNum = ((Integer)ref).intValue();
 
-                int len = 20; // <ref id="..."/>
-
-                StringBuffer sb = new StringBuffer(len);
-                sb.append("<").append(REF_TYPE).append(" id=\"");
-                sb.append(refNum);
-                sb.append("\"/>");
-
-                writeUTF(sb);
+                writeTag(REF_OPEN_BYTES); // <ref id="..."/>
+                writeDecimal(refNum);
+                writeTag(EMPTY_ELEMENT_END_BYTES);
 
                 if (isDebug)
                     trace.writeRef(refNum);
@@ -1057,14 +1107,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             {
                 int refNum = ((Integer)ref).intValue();
 
-                int len = 20; // <string id="..."/>
-
-                StringBuffer sb = new StringBuffer(len);
-                sb.append("<").append(STRING_TYPE).append(" id=\"");
-                sb.append(refNum);
-                sb.append("\"/>");
-
-                writeUTF(sb);
+                writeTag(STRING_REF_OPEN_BYTES); // <string id="..."/>
+                writeDecimal(refNum);
+                writeTag(EMPTY_ELEMENT_END_BYTES);
 
                 if (Trace.amf && isDebug)
                     trace.writeStringRef(refNum);
@@ -1100,14 +1145,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             {
                 int refNum = ((Integer)ref).intValue();
 
-                int len = 20; // <traits id="..."/>
-
-                StringBuffer sb = new StringBuffer(len);
-                sb.append("<").append(TRAITS_TYPE).append(" id=\"");
-                sb.append(refNum);
-                sb.append("\"/>");
-
-                writeUTF(sb);
+                writeTag(TRAITS_REF_OPEN_BYTES); // <traits id="..."/>
+                writeDecimal(refNum);
+                writeTag(EMPTY_ELEMENT_END_BYTES);
 
                 if (Trace.amf && isDebug)
                     trace.writeTraitsInfoRef(refNum);
@@ -1125,6 +1165,260 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         return (ref != null);
     }
     
+    //
+    // BUFFERED UTF-8 OUTPUT
+    //
+
+    /**
+     * Writes the buffered bytes to the underlying stream.
+     *
+     * @exclude
+     */
+    protected void flushBuffer() throws IOException
+    {
+        if (position > 0)
+        {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Called at the end of public write methods that may be invoked outside
+     * of writeObject so that their output reaches the stream straight away.
+     */
+    private void endWrite() throws IOException
+    {
+        if (depth == 0)
+            flushBuffer();
+    }
+
+    private void ensureCapacity(int length) throws IOException
+    {
+        if (buffer.length - position < length)
+            flushBuffer();
+    }
+
+    private void writeTag(byte[] bytes) throws IOException
+    {
+        int length = bytes.length;
+        ensureCapacity(length);
+        System.arraycopy(bytes, 0, buffer, position, length);
+        position += length;
+    }
+
+    private void writeDecimal(long value) throws IOException
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            writeText(String.valueOf(value), false);
+            return;
+        }
+
+        ensureCapacity(20);
+
+        if (value < 0)
+        {
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        int start = position;
+        do
+        {
+            buffer[position++] = (byte)('0' + (int)(value % 10));
+            value /= 10;
+        }
+        while (value != 0);
+
+        // Digits were written least significant first
+        for (int i = start, j = position - 1; i < j; i++, j--)
+        {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    private void writeDoubleText(double value) throws IOException
+    {
+        if (value > -1.0E7 && value < 1.0E7 && value == (int)value && (value != 0 || 1 / value > 0))
+        {
+            // Matches Double.toString() for integral values below 10^7, e.g. 42.0
+            writeDecimal((int)value);
+            ensureCapacity(2);
+            buffer[position++] = '.';
+            buffer[position++] = '0';
+        }
+        else
+        {
+            writeText(Double.toString(value), false);
+        }
+    }
+
+    private void writeHexByte(int b) throws IOException
+    {
+        ensureCapacity(2);
+        buffer[position++] = HEX_DIGITS[(b & 0xF0) >>> 4];
+        buffer[position++] = HEX_DIGITS[b & 0x0F];
+    }
+
+    private void writeHex(byte[] bytes, int offset, int length) throws IOException
+    {
+        int end = offset + length;
+        while (offset < end)
+        {
+            ensureCapacity(2);
+            int count = Math.min(end - offset, (buffer.length - position) >> 1);
+            for (int i = 0; i < count; i++)
+            {
+                int b = bytes[offset++];
+                buffer[position++] = HEX_DIGITS[(b & 0xF0) >>> 4];
+                buffer[position++] = HEX_DIGITS[b & 0x0F];
+            }
+        }
+    }
+
+    /**
+     * Encodes a String as UTF-8 straight into the buffer. Runs of ASCII
+     * characters that need no escaping are copied without further checks.
+     *
+     * When escaping, the characters that writeEscapedString escapes are
+     * written as entities or numerical character references.
+     */
+    private void writeText(String s, boolean escape) throws IOException
+    {
+        int length = s.length();
+        int i = 0;
+        while (i < length)
+        {
+            ensureCapacity(MAX_CHAR_BYTES);
+
+            byte[] buf = buffer;
+            int pos = position;
+            int end = Math.min(length, i + buf.length - pos);
+            while (i < end)
+            {
+                char c = s.charAt(i);
+                if (c >= 0x80 || (escape && (c < 0x20 || c == '&' || c == '<')))
+                    break;
+                buf[pos++] = (byte)c;
+                i++;
+            }
+            position = pos;
+
+            if (i < end)
+            {
+                ensureCapacity(MAX_CHAR_BYTES);
+                i = writeChar(s, i, escape);
+            }
+        }
+    }
+
+    /**
+     * Writes the character at the given index, which is either outside of
+     * ASCII or needs escaping, and returns the index of the next character.
+     */
+    private int writeChar(String s, int i, boolean escape)
+    {
+        char c = s.charAt(i++);
+
+        if (escape)
+        {
+            if (c == '&')
+            {
+                writeAscii("&amp;");
+                return i;
+            }
+            else if (c == '<')
+            {
+                writeAscii("&lt;");
+                return i;
+            }
+            else if (c < 0x0020)
+            {
+                if (c == 0x0009 || c == 0x000A || c == 0x000D)
+                    buffer[position++] = (byte)c;
+                else
+                    writeCharacterReference(c);
+                return i;
+            }
+            else if (c > 0xD7FF && (c < 0xE000 || c > 0xFFFD))
+            {
+                writeCharacterReference(c);
+                return i;
+            }
+        }
+
+        if (c < 0x80)
+        {
+            buffer[position++] = (byte)c;
+        }
+        else if (c < 0x800)
+        {
+            buffer[position++] = (byte)(0xC0 | (c >> 6));
+            buffer[position++] = (byte)(0x80 | (c & 0x3F));
+        }
+        else if (Character.isHighSurrogate(c) && i < s.length() && Character.isLowSurrogate(s.charAt(i)))
+        {
+            int cp = Character.toCodePoint(c, s.charAt(i++));
+            buffer[position++] = (byte)(0xF0 | (cp >> 18));
+            buffer[position++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+            buffer[position++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte)(0x80 | (cp & 0x3F));
+        }
+        else if (c >= 0xD800 && c <= 0xDFFF)
+        {
+            // Unpaired surrogate, replaced the same way String.getBytes() does
+            buffer[position++] = '?';
+        }
+        else
+        {
+            buffer[position++] = (byte)(0xE0 | (c >> 12));
+            buffer[position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte)(0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    /**
+     * Writes &amp;#x followed by the lower case hex digits of the character,
+     * without leading zeros, and a closing semicolon.
+     */
+    private void writeCharacterReference(char c)
+    {
+        buffer[position++] = '&';
+        buffer[position++] = '#';
+        buffer[position++] = 'x';
+
+        boolean started = false;
+        for (int shift = 12; shift >= 0; shift -= 4)
+        {
+            int digit = (c >> shift) & 0x0F;
+            if (digit != 0 || started || shift == 0)
+            {
+                buffer[position++] = LOWER_HEX_DIGITS[digit];
+                started = true;
+            }
+        }
+
+        buffer[position++] = ';';
+    }
+
+    private void writeAscii(String s)
+    {
+        for (int i = 0; i < s.length(); i++)
+            buffer[position++] = (byte)s.charAt(i);
+    }
+
+    private static byte[] toBytes(String s)
+    {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)s.charAt(i);
+        return bytes;
+    }
+
     private class ExternalizableObjectOutput implements ObjectOutput
     {
         @Override
@@ -83,6 +83,17 @@ public abstract class AbstractMessage implements Message, Cloneable
         this.clientId = clientId;
         clientIdBytes = null;
     }    
+
+    /**
+     * @exclude
+     * Sets the clientId along with its already derived byte form, which must
+     * be the result of <code>UUIDUtils.toByteArray</code> for the clientId.
+     */
+    public void setClientId(Object clientId, byte[] clientIdBytes)
+    {
+        this.clientId = clientId;
+        this.clientIdBytes = clientIdBytes;
+    }
     
     public String getMessageId()
     {
@@ -306,11 +317,7 @@ public abstract class AbstractMessage implements Message, Cloneable
     {
         short flags = 0;
 
-        if (clientIdBytes == null && clientId instanceof String)
-            clientIdBytes = UUIDUtils.toByteArray((String)clientId);
-
-        if (messageIdBytes == null)
-            messageIdBytes = UUIDUtils.toByteArray(messageId);
+        cacheIdBytes();
 
         if (body != null)
             flags |= BODY_FLAG;
@@ -377,6 +384,23 @@ public abstract class AbstractMessage implements Message, Cloneable
             output.writeObject(messageIdBytes);
     }
 
+    /**
+     * @exclude
+     * 
+     * Derives the byte forms of the UUIDs of this message that small messages
+     * are written with. Messages pushed to many subscribers are cloned once
+     * per subscriber, so calling this on the original lets every clone share
+     * the bytes rather than derive them again in writeExternal.
+     */
+    public void cacheIdBytes()
+    {
+        if (clientIdBytes == null && clientId instanceof String)
+            clientIdBytes = UUIDUtils.toByteArray((String)clientId);
+
+        if (messageIdBytes == null)
+            messageIdBytes = UUIDUtils.toByteArray(messageId);
+    }
+
     public Object clone() 
     {
         AbstractMessage m = null;
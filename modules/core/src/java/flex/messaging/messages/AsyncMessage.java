@@ -78,6 +78,7 @@ public class AsyncMessage extends AbstractMessage implements SmallMessage
     public void setCorrelationId(String correlationId)
     {
         this.correlationId = correlationId;
+        correlationIdBytes = null;
     }
 
     /**
@@ -139,9 +140,6 @@ public class AsyncMessage extends AbstractMessage implements SmallMessage
     {
         super.writeExternal(output);
 
-        if (correlationIdBytes == null)
-            correlationIdBytes = UUIDUtils.toByteArray(correlationId);
-
         short flags = 0;
 
         if (correlationId != null && correlationIdBytes == null)
@@ -159,6 +157,17 @@ public class AsyncMessage extends AbstractMessage implements SmallMessage
             output.writeObject(correlationIdBytes);
     }
 
+    /**
+     * @exclude
+     */
+    public void cacheIdBytes()
+    {
+        super.cacheIdBytes();
+
+        if (correlationIdBytes == null)
+            correlationIdBytes = UUIDUtils.toByteArray(correlationId);
+    }
+
     protected String toStringFields(int indentLevel) 
     {
         String sep = getFieldSeparator(indentLevel);
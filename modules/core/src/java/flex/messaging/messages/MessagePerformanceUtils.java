@@ -59,25 +59,23 @@ public class MessagePerformanceUtils
      */
     public static void propogateMPIDownBatch(Message message)
     {
+        // Only batched messages need their own copy, each one is stamped
+        // separately as it passes through its adapter.
+        if (!(message instanceof BatchableMessage) || !((BatchableMessage)message).isBatched())
+            return;
+
         long overhead = System.currentTimeMillis();
-        if(message instanceof BatchableMessage)
+        MessagePerformanceInfo mpi = getMPII(message);
+        Object[] batchedMessages = (Object[])message.getBody();
+        int batchedLength = batchedMessages.length;
+        for(int a=0;a<batchedLength;a++)
         {
-            BatchableMessage dm = (BatchableMessage)message;
-            if(dm.isBatched())
-            {
-                 Object[] batchedMessages = (Object[])message.getBody();
-                 int batchedLength = batchedMessages.length;
-                 for(int a=0;a<batchedLength;a++)
-                 {
-                     Message currentMess = (Message)batchedMessages[a];
-                     MessagePerformanceInfo mpi = MessagePerformanceUtils.getMPII(message);
-                     MessagePerformanceUtils.setMPII(currentMess, (MessagePerformanceInfo)mpi.clone());
-                     propogateMPIDownBatch(currentMess);
-                 }
-            }
+            Message currentMess = (Message)batchedMessages[a];
+            setMPII(currentMess, (MessagePerformanceInfo)mpi.clone());
+            propogateMPIDownBatch(currentMess);
         }
         overhead = System.currentTimeMillis() - overhead;
-        MessagePerformanceUtils.getMPII(message).addToOverhead(overhead);
+        mpi.addToOverhead(overhead);
    }
 
     /**
@@ -131,19 +129,22 @@ public class MessagePerformanceUtils
         try
         {
             MessagePerformanceInfo mpio=null;
+            MessagePerformanceInfo inMPII = getMPII(inMessage);
             if(context != null)
             {
                 mpio = context.getMPIO();
                 if(mpio == null)
                 {
                     mpio = new MessagePerformanceInfo();
-                    if(MessagePerformanceUtils.getMPII(inMessage)!=null && MessagePerformanceUtils.getMPII(inMessage).sendTime!=0)
+                    if(inMPII!=null && inMPII.sendTime!=0)
                         mpio.infoType="OUT";
                 }
+                // The incoming MPI is complete once the adapter has returned, so the
+                // response can share it rather than carry a copy.
                 Message mess = (Message)outMessage;
-                if(MessagePerformanceUtils.getMPII(inMessage)!=null)
-                    MessagePerformanceUtils.setMPII(mess, (MessagePerformanceInfo)MessagePerformanceUtils.getMPII(inMessage).clone());
-                MessagePerformanceUtils.setMPIO(mess, mpio);
+                if(inMPII!=null)
+                    setMPII(mess, inMPII);
+                setMPIO(mess, mpio);
                 context.setMPIO(mpio);
             }
 
@@ -162,7 +163,7 @@ public class MessagePerformanceUtils
                     Message currentMess = (Message)cmdBody[i];
                     MessagePerformanceInfo origMPII =  MessagePerformanceUtils.getMPII(currentMess);
 
-                    if (origMPII == null || MessagePerformanceUtils.getMPII(inMessage) == null)
+                    if (origMPII == null || inMPII == null)
                     {
                         // this can happen if the server has MPI enabled but the producing client does not
                         // log a warning for this and break out of here as MPI requires all participating
@@ -182,11 +183,13 @@ public class MessagePerformanceUtils
                         return;
                     }
 
-                    MessagePerformanceUtils.setMPIP(currentMess, (MessagePerformanceInfo)origMPII.clone());
-                    MessagePerformanceInfo newMPII = (MessagePerformanceInfo)MessagePerformanceUtils.getMPII(inMessage).clone();
+                    // Neither instance is modified once it is on an outgoing message,
+                    // so the original MPII moves to the MPIP header and the poll's
+                    // MPII is shared by every pushed message.
+                    setMPIP(currentMess, origMPII);
                     mpio.pushedFlag=true;
-                    MessagePerformanceUtils.setMPII(currentMess, newMPII);
-                    MessagePerformanceUtils.setMPIO(currentMess, mpio);
+                    setMPII(currentMess, inMPII);
+                    setMPIO(currentMess, mpio);
                 }
             }
         }
@@ -290,10 +293,10 @@ public class MessagePerformanceUtils
     {
         // If the message does not have an MPI header then we are not recording message times
         // and we have nothing to do here
-        if (getMPII(message) == null || getMPII(message).sendTime == 0)
+        MessagePerformanceInfo mpi = getMPII(message);
+        if (mpi == null || mpi.sendTime == 0)
             return;
 
-        MessagePerformanceInfo mpi = getMPII(message);
         mpi.serverPrePushTime = System.currentTimeMillis();
     }
 
@@ -309,10 +312,9 @@ public class MessagePerformanceUtils
     {
         // If the message does not have an MPI header then we are not recording message times
         // and we have nothing to do here
-        if (getMPII(message) == null || getMPII(message).sendTime == 0)
-            return;
-
         MessagePerformanceInfo mpi = getMPII(message);
+        if (mpi == null || mpi.sendTime == 0)
+            return;
 
         // it is possible that a batched message will have this called multiple times,
         // do not reset stamp once it has been set
@@ -334,10 +336,10 @@ public class MessagePerformanceUtils
     {
         // If the message does not have an MPI header then we are not recording message times
         // and we have nothing to do here
-        if (getMPII(message) == null || getMPII(message).sendTime == 0 || getMPII(message).serverPostAdapterTime != 0)
+        MessagePerformanceInfo mpi = getMPII(message);
+        if (mpi == null || mpi.sendTime == 0 || mpi.serverPostAdapterTime != 0)
             return;
 
-        MessagePerformanceInfo mpi = getMPII(message);
         mpi.serverPostAdapterTime = System.currentTimeMillis();
     }
 
@@ -360,10 +362,10 @@ public class MessagePerformanceUtils
     {
         // If the message does not have an MPI header then we are not recording message times
         // and we have nothing to do here
-        if (getMPII(message) == null || getMPII(message).sendTime == 0)
+        MessagePerformanceInfo mpi = getMPII(message);
+        if (mpi == null || mpi.sendTime == 0)
             return;
 
-        MessagePerformanceInfo mpi = getMPII(message);
         mpi.serverPreAdapterExternalTime = System.currentTimeMillis();
     }
 
@@ -386,10 +388,10 @@ public class MessagePerformanceUtils
     {
         // If the message does not have an MPI header then we are not recording message times
         // and we have nothing to do here
-        if (getMPII(message) == null || getMPII(message).sendTime == 0 || getMPII(message).serverPostAdapterExternalTime != 0)
+        MessagePerformanceInfo mpi = getMPII(message);
+        if (mpi == null || mpi.sendTime == 0 || mpi.serverPostAdapterExternalTime != 0)
             return;
 
-        MessagePerformanceInfo mpi = getMPII(message);
         mpi.serverPostAdapterExternalTime = System.currentTimeMillis();
     }
 
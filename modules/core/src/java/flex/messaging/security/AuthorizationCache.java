@@ -0,0 +1,263 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2007 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.security;
+
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import flex.messaging.config.SecurityConstraint;
+
+/**
+ * Caches the authorization decisions a <code>LoginCommand</code> makes for a
+ * principal and a <code>SecurityConstraint</code>, so that a login command
+ * backed by a directory or other remote store is not consulted for every
+ * message. Both grants and denials are cached. Decisions expire after a time
+ * to live, the cache holds at most a fixed number of decisions, and all the
+ * decisions for a principal can be invalidated when it logs out.
+ *
+ * Principals are compared with <code>equals</code>; constraints are compared
+ * by identity, as they are shared configuration objects.
+ *
+ * @exclude
+ */
+public class AuthorizationCache
+{
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final ConcurrentMap<Key, Decision> decisions = new ConcurrentHashMap<Key, Decision>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates an <code>AuthorizationCache</code>.
+     *
+     * @param maxSize The maximum number of decisions to cache.
+     * @param timeToLiveMillis The time in milliseconds for which a decision is used.
+     */
+    public AuthorizationCache(int maxSize, long timeToLiveMillis)
+    {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        if (timeToLiveMillis < 1)
+            throw new IllegalArgumentException("timeToLiveMillis must be positive: " + timeToLiveMillis);
+
+        this.maxSize = maxSize;
+        timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+    }
+
+    /**
+     * Returns the cached decision for the principal and constraint, or
+     * <code>null</code> if there is none or it has expired.
+     *
+     * @param principal The principal being authorized.
+     * @param constraint The constraint the principal is authorized against.
+     * @return <code>Boolean.TRUE</code> if the principal was authorized,
+     * <code>Boolean.FALSE</code> if it was denied, or <code>null</code>.
+     */
+    public Boolean get(Principal principal, SecurityConstraint constraint)
+    {
+        Key key = new Key(principal, constraint);
+        Decision decision = decisions.get(key);
+        if (decision != null)
+        {
+            if (decision.expiresAt - System.nanoTime() > 0)
+            {
+                hitCount.incrementAndGet();
+                return Boolean.valueOf(decision.authorized);
+            }
+            decisions.remove(key, decision);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a decision for the principal and constraint.
+     *
+     * @param principal The principal that was authorized.
+     * @param constraint The constraint the principal was authorized against.
+     * @param authorized Whether the principal was authorized.
+     */
+    public void put(Principal principal, SecurityConstraint constraint, boolean authorized)
+    {
+        if (decisions.size() >= maxSize)
+            evict();
+
+        decisions.put(new Key(principal, constraint), new Decision(authorized, System.nanoTime() + timeToLiveNanos));
+    }
+
+    /**
+     * Removes all the decisions cached for the principal.
+     *
+     * @param principal The principal whose decisions to remove.
+     */
+    public void invalidate(Principal principal)
+    {
+        if (principal == null)
+            return;
+
+        for (Iterator<Key> iter = decisions.keySet().iterator(); iter.hasNext();)
+        {
+            if (principal.equals(iter.next().principal))
+                iter.remove();
+        }
+    }
+
+    /**
+     * Removes all cached decisions.
+     */
+    public void clear()
+    {
+        decisions.clear();
+    }
+
+    /**
+     * Returns the number of cached decisions, including expired decisions that
+     * have not been removed yet.
+     *
+     * @return The number of cached decisions.
+     */
+    public int size()
+    {
+        return decisions.size();
+    }
+
+    /**
+     * Returns the maximum number of decisions to cache.
+     *
+     * @return The maximum number of decisions to cache.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the time in milliseconds for which a decision is used.
+     *
+     * @return The time to live of a decision in milliseconds.
+     */
+    public long getTimeToLiveMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos);
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to be passed to the login command.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache, between 0 and 1.
+     *
+     * @return The cache hit ratio, or 0 if there have been no lookups.
+     */
+    public double getHitRatio()
+    {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+     * Makes room for a new decision by removing expired decisions and, if the
+     * cache is still full, arbitrary decisions until it is a tenth below its
+     * maximum size.
+     */
+    private void evict()
+    {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Key, Decision>> iter = decisions.entrySet().iterator(); iter.hasNext();)
+        {
+            if (iter.next().getValue().expiresAt - now <= 0)
+                iter.remove();
+        }
+
+        if (decisions.size() < maxSize)
+            return;
+
+        int target = maxSize - Math.max(1, maxSize / 10);
+        for (Iterator<Key> iter = decisions.keySet().iterator(); iter.hasNext() && decisions.size() > target;)
+        {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    private static final class Key
+    {
+        final Principal principal;
+        final SecurityConstraint constraint;
+        private final int hash;
+
+        Key(Principal principal, SecurityConstraint constraint)
+        {
+            this.principal = principal;
+            this.constraint = constraint;
+            hash = principal.hashCode() * 31 + System.identityHashCode(constraint);
+        }
+
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key)o;
+            return constraint == other.constraint && principal.equals(other.principal);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    private static final class Decision
+    {
+        final boolean authorized;
+        final long expiresAt;
+
+        Decision(boolean authorized, long expiresAt)
+        {
+            this.authorized = authorized;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -23,6 +23,10 @@ import java.util.List;
 
 import flex.messaging.FlexComponent;
 import flex.messaging.FlexContext;
+import flex.messaging.FlexSession;
+import flex.messaging.FlexSessionListener;
+import flex.messaging.client.FlexClient;
+import flex.messaging.client.FlexClientListener;
 import flex.messaging.config.ConfigMap;
 import flex.messaging.config.ConfigurationException;
 import flex.messaging.config.SecurityConstraint;
@@ -55,8 +59,15 @@ public class LoginManager implements FlexComponent
     private static final int RTMP_NO_BASIC_SECURITY = 10057;
     private static final int PER_CLIENT_ANT_APPSERVER = 10065;
 
+    /** Default time to live of a cached authorization decision. */
+    public static final long DEFAULT_AUTHORIZATION_CACHE_TTL_MILLIS = 60000;
+
     private LoginCommand loginCommand;
     private boolean perClientAuthentication;
+    private int authorizationCacheSize;
+    private long authorizationCacheTTLMillis = DEFAULT_AUTHORIZATION_CACHE_TTL_MILLIS;
+    private volatile AuthorizationCache authorizationCache;
+    private PrincipalListener principalListener;
 
     private boolean started;
 
@@ -116,6 +127,15 @@ public class LoginManager implements FlexComponent
         if (!started)
         {
             validate();
+
+            if (authorizationCacheSize > 0)
+            {
+                authorizationCache = new AuthorizationCache(authorizationCacheSize, authorizationCacheTTLMillis);
+                principalListener = new PrincipalListener();
+                FlexSession.addSessionCreatedListener(principalListener);
+                FlexClient.addClientCreatedListener(principalListener);
+            }
+
             started = true;
         }
     }
@@ -127,7 +147,16 @@ public class LoginManager implements FlexComponent
     public void stop()
     {
         if (started)
+        {
+            if (principalListener != null)
+            {
+                FlexSession.removeSessionCreatedListener(principalListener);
+                FlexClient.removeClientCreatedListener(principalListener);
+                principalListener = null;
+            }
+            authorizationCache = null;
             started = false;
+        }
     }
 
     //--------------------------------------------------------------------------
@@ -158,6 +187,66 @@ public class LoginManager implements FlexComponent
         this.perClientAuthentication = perClientAuthentication;
     }
 
+    /**
+     * Returns the maximum number of authorization decisions cached by the
+     * <code>LoginManager</code>. The default of 0 disables the cache.
+     *
+     * @return The maximum number of cached authorization decisions.
+     */
+    public int getAuthorizationCacheSize()
+    {
+        return authorizationCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of authorization decisions cached by the
+     * <code>LoginManager</code>. When positive, the decisions of the login
+     * command for a principal and a security constraint are reused until they
+     * expire, the principal logs out, or its session or client is invalidated,
+     * rather than asking the login command for every message. Takes effect
+     * when the <code>LoginManager</code> is started.
+     *
+     * @param authorizationCacheSize The maximum number of cached authorization decisions.
+     */
+    public void setAuthorizationCacheSize(int authorizationCacheSize)
+    {
+        this.authorizationCacheSize = authorizationCacheSize;
+    }
+
+    /**
+     * Returns the time in milliseconds for which a cached authorization
+     * decision is used.
+     *
+     * @return The time to live of a cached authorization decision.
+     */
+    public long getAuthorizationCacheTTLMillis()
+    {
+        return authorizationCacheTTLMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds for which a cached authorization decision
+     * is used. Takes effect when the <code>LoginManager</code> is started.
+     *
+     * @param authorizationCacheTTLMillis The time to live of a cached authorization decision.
+     */
+    public void setAuthorizationCacheTTLMillis(long authorizationCacheTTLMillis)
+    {
+        this.authorizationCacheTTLMillis = authorizationCacheTTLMillis;
+    }
+
+    /**
+     * Returns the authorization decision cache, which also reports its hit
+     * and miss counts, or <code>null</code> if caching is disabled or the
+     * <code>LoginManager</code> is not started.
+     *
+     * @return The authorization decision cache.
+     */
+    public AuthorizationCache getAuthorizationCache()
+    {
+        return authorizationCache;
+    }
+
     /**
      * Implements FlexComponent.isStarted.
      * Returns whether the LoginManager is started or not.
@@ -268,6 +357,8 @@ public class LoginManager implements FlexComponent
      */
     public void logout()
     {
+        invalidateAuthorizations(getCurrentPrincipal());
+
         if (loginCommand != null)
         {
             // Always invoke the command's logout hook.
@@ -307,7 +398,7 @@ public class LoginManager implements FlexComponent
             if (currentPrincipal != null)
             {
                 List roles = constraint.getRoles();
-                boolean authorized = roles == null || checkRoles(currentPrincipal, roles);
+                boolean authorized = roles == null || checkRoles(currentPrincipal, constraint, roles);
 
                 if (!authorized)
                 {
@@ -372,6 +463,32 @@ public class LoginManager implements FlexComponent
     //
     //--------------------------------------------------------------------------
 
+    /**
+     * Checks the roles of the constraint, using the authorization cache when
+     * it is enabled.
+     */
+    private boolean checkRoles(Principal principal, SecurityConstraint constraint, List roles)
+    {
+        AuthorizationCache cache = authorizationCache;
+        if (cache == null)
+            return checkRoles(principal, roles);
+
+        Boolean decision = cache.get(principal, constraint);
+        if (decision != null)
+            return decision.booleanValue();
+
+        boolean authorized = checkRoles(principal, roles);
+        cache.put(principal, constraint, authorized);
+        return authorized;
+    }
+
+    private void invalidateAuthorizations(Principal principal)
+    {
+        AuthorizationCache cache = authorizationCache;
+        if (cache != null && principal != null)
+            cache.invalidate(principal);
+    }
+
     private Principal getCurrentPrincipal()
     {
         return FlexContext.getUserPrincipal();
@@ -386,4 +503,32 @@ public class LoginManager implements FlexComponent
     {
         return SecurityConstraint.CUSTOM_AUTH_METHOD.equals(constraint.getMethod());
     }
+
+    /**
+     * Removes the cached authorization decisions of a principal when the
+     * session or, with per client authentication, the client it belongs to
+     * is destroyed.
+     */
+    private class PrincipalListener implements FlexSessionListener, FlexClientListener
+    {
+        public void sessionCreated(FlexSession session)
+        {
+            session.addSessionDestroyedListener(this);
+        }
+
+        public void sessionDestroyed(FlexSession session)
+        {
+            invalidateAuthorizations(session.getUserPrincipal());
+        }
+
+        public void clientCreated(FlexClient client)
+        {
+            client.addClientDestroyedListener(this);
+        }
+
+        public void clientDestroyed(FlexClient client)
+        {
+            invalidateAuthorizations(client.getUserPrincipal());
+        }
+    }
 }
@@ -373,6 +373,7 @@ public abstract class AbstractService extends ManageableComponent implements Ser
             throw new MessageException
                     ("No destination '" + id + "' exists in service " + getClass().getName());
         }
+        result.startIfLazy();
         return result;
     }
 
@@ -635,27 +636,47 @@ public abstract class AbstractService extends ManageableComponent implements Ser
     protected abstract void setupServiceControl(MessageBroker broker);
 
     /**
-     * Start all of the destinations of the service.
+     * Start all of the destinations of the service. Destinations are independent of
+     * each other, so the broker may start them in parallel while it is starting.
+     * Lazy destinations are skipped and start on their first message or command.
      */
     private void startDestinations()
     {
+        List tasks = new ArrayList(destinations.size());
         for (Iterator iter = destinations.values().iterator(); iter.hasNext(); )
         {
-            Destination destination = (Destination)iter.next();
+            final Destination destination = (Destination)iter.next();
+            if (destination.isLazy() && !destination.isStarted())
+                continue;
 
-            long timeBeforeStartup = 0;
-            if (Log.isDebug())
-                timeBeforeStartup = System.currentTimeMillis();
+            tasks.add(new Runnable()
+            {
+                public void run()
+                {
+                    startDestination(destination);
+                }
+            });
+        }
+        getMessageBroker().runStartupTasks(tasks);
+    }
 
-            destination.start();
+    /**
+     * Start a single destination of the service, logging its startup time.
+     */
+    private void startDestination(Destination destination)
+    {
+        long timeBeforeStartup = 0;
+        if (Log.isDebug())
+            timeBeforeStartup = System.currentTimeMillis();
 
-            if (Log.isDebug())
-            {
-                long timeAfterStartup = System.currentTimeMillis();
-                Long diffMillis = new Long(timeAfterStartup - timeBeforeStartup);
-                Log.getLogger(LOG_CATEGORY_STARTUP_DESTINATION).debug("Destination with id '{0}' is ready (startup time: '{1}' ms)",
-                        new Object[]{destination.getId(), diffMillis});
-            }
+        destination.start();
+
+        if (Log.isDebug())
+        {
+            long timeAfterStartup = System.currentTimeMillis();
+            Long diffMillis = new Long(timeAfterStartup - timeBeforeStartup);
+            Log.getLogger(LOG_CATEGORY_STARTUP_DESTINATION).debug("Destination with id '{0}' is ready (startup time: '{1}' ms)",
+                    new Object[]{destination.getId(), diffMillis});
         }
     }
 
@@ -18,6 +18,7 @@
  **************************************************************************/
 package flex.messaging.services;
 
+import flex.management.runtime.messaging.DestinationControl;
 import flex.management.runtime.messaging.MessageDestinationControl;
 import flex.management.runtime.messaging.services.MessageServiceControl;
 import flex.messaging.Destination;
@@ -33,6 +34,7 @@ import flex.messaging.cluster.Cluster;
 import flex.messaging.config.ServerSettings;
 import flex.messaging.log.LogCategories;
 import flex.messaging.log.Log;
+import flex.messaging.messages.AbstractMessage;
 import flex.messaging.messages.AcknowledgeMessage;
 import flex.messaging.messages.AsyncMessage;
 import flex.messaging.messages.CommandMessage;
@@ -221,18 +223,20 @@ public class MessageService extends AbstractService implements MessagingConstant
         if (throttle)
             throttleResult = dest.getThrottleManager().throttleIncomingMessage(message);
         else
-            throttleResult = new ThrottleResult(ThrottleResult.RESULT_OK);
+            throttleResult = ThrottleResult.OK;
 
         int throttleResultCode = throttleResult.getResultCode();
-        MessageException me = throttleResult.getException();
         if (throttleResultCode == ThrottleResult.RESULT_ERROR)
         {
-            throw me;
+            throw throttleResult.getException();
         }
         else if (throttleResultCode == ThrottleResult.RESULT_IGNORE)
         {
             if (Log.isDebug())
+            {
+                MessageException me = throttleResult.getException();
                 Log.getLogger(LOG_CATEGORY).debug(me.getMessage(), me);
+            }
         }
         else
         {
@@ -273,7 +277,22 @@ public class MessageService extends AbstractService implements MessagingConstant
                 ((MessagingAdapter)adapter).getSecurityConstraintManager().assertSendAuthorization();
 
             MessagePerformanceUtils.markServerPreAdapterTime(message);
-            result = adapter.invoke(message);
+            if (dest.isManaged() && dest.getControl() instanceof DestinationControl)
+            {
+                long adapterStart = System.nanoTime();
+                try
+                {
+                    result = adapter.invoke(message);
+                }
+                finally
+                {
+                    ((DestinationControl)dest.getControl()).recordStageLatency(DestinationControl.STAGE_ADAPTER, System.nanoTime() - adapterStart);
+                }
+            }
+            else
+            {
+                result = adapter.invoke(message);
+            }
             MessagePerformanceUtils.markServerPostAdapterTime(message);
 
             if (Log.isDebug())
@@ -317,16 +336,7 @@ public class MessageService extends AbstractService implements MessagingConstant
     public void serviceMessageFromAdapter(Message message, boolean sendToAllSubscribers)
     {
         // Update management metrics.
-        if (isManaged())
-        {
-            MessageDestination destination = (MessageDestination)getDestination(message.getDestination());
-            if (destination != null && destination.isManaged())
-            {
-                MessageDestinationControl destinationControl = (MessageDestinationControl)destination.getControl();
-                if (destinationControl != null) // Should not happen but just in case.
-                    destinationControl.incrementServiceMessageFromAdapterCount();
-            }
-        }
+        incrementServiceMessageFromAdapterCount(message);
 
         // in this service's case, this invocation occurs when an adapter has asynchronously
         // received a message from one of its adapters acting as a consumer
@@ -345,6 +355,63 @@ public class MessageService extends AbstractService implements MessagingConstant
         }
     }
 
+    /**
+     * This method is called from a messaging adapter to handle the delivery
+     * of a batch of messages that it received together. The messages are
+     * delivered in order as described for <code>serviceMessageFromAdapter</code>.
+     *
+     * @param messages The <code>Message</code>s to send.
+     * @param sendToAllSubscribers If <code>true</code>, send the messages to all clients
+     * subscribed to the destination of each message.  If <code>false</code>, send each message
+     * only to the clientId specified in the message.
+     */
+    public void serviceMessagesFromAdapter(Message[] messages, boolean sendToAllSubscribers)
+    {
+        if (sendToAllSubscribers)
+        {
+            for (int i = 0; i < messages.length; i++)
+                serviceMessageFromAdapter(messages[i], true);
+            return;
+        }
+
+        // Messages received by an adapter consumer usually target the same
+        // client, so the subscriber set is only rebuilt when the clientId changes.
+        Set subscriberIds = null;
+        Object clientId = null;
+        for (int i = 0; i < messages.length; i++)
+        {
+            Message message = messages[i];
+            incrementServiceMessageFromAdapterCount(message);
+
+            if (subscriberIds == null || !message.getClientId().equals(clientId))
+            {
+                clientId = message.getClientId();
+                subscriberIds = new TreeSet();
+                subscriberIds.add(clientId);
+            }
+            pushMessageToClients(subscriberIds, message, false);
+        }
+    }
+
+    /**
+     * This method is called from a messaging adapter that receives messages
+     * through a single subscription shared by all of the clients subscribed
+     * to the destination on this server, such as a <code>JMSAdapter</code>
+     * configured with a shared consumer. Unlike <code>serviceMessageFromAdapter</code>,
+     * each subscriber's selector expression is evaluated, and the message is
+     * not sent to peer servers in the cluster because every server holds its
+     * own shared subscription.
+     *
+     * @param message The <code>Message</code> to send.
+     */
+    public void serviceSharedMessageFromAdapter(Message message)
+    {
+        // Update management metrics.
+        incrementServiceMessageFromAdapterCount(message);
+
+        pushMessageToClients(message, true);
+    }
+
     /**
      * This method sends the passed message to clients connected to other
      * server peer nodes in the cluster.  If you are using broadcast cluster-messaging-routing
@@ -532,20 +599,27 @@ public class MessageService extends AbstractService implements MessagingConstant
                 // Throttle outgoing at the destination level
                 ThrottleResult throttleResult = destination.getThrottleManager().throttleOutgoingMessage(message, null);
                 int throttleResultCode = throttleResult.getResultCode();
-                MessageException me = throttleResult.getException();
                 if (throttleResultCode == ThrottleResult.RESULT_ERROR)
                 {
-                    throw me;
+                    throw throttleResult.getException();
                 }
                 else if (throttleResultCode == ThrottleResult.RESULT_IGNORE)
                 {
                     if (Log.isDebug())
+                    {
+                        MessageException me = throttleResult.getException();
                         Log.getLogger(LOG_CATEGORY).debug(me.getMessage(), me);
+                    }
                 }
                 else
                 {
                     SubscriptionManager subscriptionManager = destination.getSubscriptionManager();
 
+                    // Derive the UUID bytes used by small messages once; the per client
+                    // copies of the message made by pushMessageToClient share them.
+                    if (message instanceof AbstractMessage)
+                        ((AbstractMessage)message).cacheIdBytes();
+
                     for (Iterator clientIter = subscriberIds.iterator(); clientIter.hasNext();)
                     {
                         Object clientId = clientIter.next();
@@ -595,17 +669,20 @@ public class MessageService extends AbstractService implements MessagingConstant
             throttleResult = destination.getThrottleManager().throttleOutgoingMessage(message, client.getClientId());
 
             int throttleResultCode = throttleResult.getResultCode();
-            MessageException me = throttleResult.getException();
             if (throttleResultCode == ThrottleResult.RESULT_ERROR)
             {
                 // Log these, but they are not propagated to subscriber, as that would defeat
                 // the purpose of throttling outbound messages to that subscriber client
+                MessageException me = throttleResult.getException();
                 Log.getLogger(LOG_CATEGORY).error(me.getMessage(), me);
             }
             else if (throttleResultCode == ThrottleResult.RESULT_IGNORE)
             {
                 if (Log.isDebug())
+                {
+                    MessageException me = throttleResult.getException();
                     Log.getLogger(LOG_CATEGORY).debug(me.getMessage(), me);
+                }
             }
             else
             {
@@ -638,7 +715,10 @@ public class MessageService extends AbstractService implements MessagingConstant
                     MessagePerformanceUtils.markServerPostAdapterExternalTime(message);
 
                     // Target the message to a specific MessageAgent on the client.
-                    messageForClient.setClientId(client.getClientId());
+                    if (messageForClient instanceof AbstractMessage)
+                        ((AbstractMessage)messageForClient).setClientId(client.getClientId(), client.getClientIdBytes());
+                    else
+                        messageForClient.setClientId(client.getClientId());
 
                     if (Log.isDebug())
                         Log.getLogger(MessageService.LOG_CATEGORY).debug("Routing message to FlexClient id:" + client.getFlexClient().getId() + "', MessageClient id: " + client.getClientId());
@@ -850,6 +930,26 @@ public class MessageService extends AbstractService implements MessagingConstant
         }
     }
 
+    /**
+     * Updates the count of messages received from the adapter of the message's
+     * destination, if the destination is managed.
+     *
+     * @param message The <code>Message</code> received from the adapter.
+     */
+    private void incrementServiceMessageFromAdapterCount(Message message)
+    {
+        if (isManaged())
+        {
+            MessageDestination destination = (MessageDestination)getDestination(message.getDestination());
+            if (destination != null && destination.isManaged())
+            {
+                MessageDestinationControl destinationControl = (MessageDestinationControl)destination.getControl();
+                if (destinationControl != null) // Should not happen but just in case.
+                    destinationControl.incrementServiceMessageFromAdapterCount();
+            }
+        }
+    }
+
     /**
      * Processes subscription related <code>CommandMessage</code>s. Subclasses that perform additional
      * custom subscription management should invoke <code>super.manageSubscriptions()</code> if they
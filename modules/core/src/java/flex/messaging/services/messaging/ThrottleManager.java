@@ -18,8 +18,11 @@
  **************************************************************************/
 package flex.messaging.services.messaging;
 
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import flex.management.ManageableComponent;
 import flex.management.runtime.messaging.services.messaging.ThrottleManagerControl;
@@ -41,6 +44,12 @@ import flex.messaging.messages.Message;
  * consumed by Flash/Flex subscribers that may have bene produced by either Flash clients
  * or external message producers (such as data feeds, JMS publishers, etc).
  *
+ * Rates are enforced with the generic cell rate algorithm (a token bucket expressed
+ * as a single theoretical arrival time), which allows a burst of
+ * <code>MESSAGE_BURST_SIZE</code> messages and then one message per
+ * <code>1/max-frequency</code> seconds. Marks are updated with compare-and-set so
+ * concurrent publishers and subscribers never block each other, and client marks
+ * that have been idle long enough to be indistinguishable from new ones are evicted.
  */
 public class ThrottleManager extends ManageableComponent
 {
@@ -60,7 +69,37 @@ public class ThrottleManager extends ManageableComponent
     //--------------------------------------------------------------------------
 
     private static final Object classMutex = new Object();
-    private static final int MESSAGE_TIMES_SIZE = 15;
+
+    /**
+     * The number of messages a mark accepts back to back before the rate
+     * limit applies.
+     */
+    private static final int MESSAGE_BURST_SIZE = 15;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Client marks that have not been used for this long are removed by the
+     * next idle sweep.
+     */
+    private static final long IDLE_CLIENT_MARK_NANOS = 60 * NANOS_PER_SECOND;
+
+    /**
+     * Minimum time between two idle sweeps of the client marks.
+     */
+    private static final long IDLE_SWEEP_INTERVAL_NANOS = 30 * NANOS_PER_SECOND;
+
+    /**
+     * Stands in for a null client id, which the concurrent client mark maps
+     * do not accept as a key.
+     */
+    private static final Object NULL_CLIENT_ID = new Object();
+
+    private static final String INBOUND_DESTINATION_REASON = "Message throttled: Too many messages sent to destination ";
+    private static final String OUTBOUND_DESTINATION_REASON = "Message throttled: Too many messages routed by destination ";
+    private static final String INBOUND_CLIENT_REASON = "Message throttled: Too many messages sent by client ";
+    private static final String OUTBOUND_CLIENT_REASON = "Message throttled: Too many messages sent to client ";
+    private static final String REASON_SUFFIX = " in too small of a time interval";
 
     //--------------------------------------------------------------------------
     //
@@ -106,11 +145,12 @@ public class ThrottleManager extends ManageableComponent
     //
     //--------------------------------------------------------------------------
 
-    private Map<Object, ThrottleMark> inboundClientMarks;
-    private Map<Object, ThrottleMark> outboundClientMarks;
-    private ThrottleMark inboundDestinationMark;
-    private ThrottleMark outboundDestinationMark;
-    private ThrottleSettings settings;
+    private final ConcurrentMap<Object, ThrottleMark> inboundClientMarks = new ConcurrentHashMap<Object, ThrottleMark>();
+    private final ConcurrentMap<Object, ThrottleMark> outboundClientMarks = new ConcurrentHashMap<Object, ThrottleMark>();
+    private final AtomicLong lastIdleSweep = new AtomicLong(System.nanoTime());
+    private volatile ThrottleMark inboundDestinationMark;
+    private volatile ThrottleMark outboundDestinationMark;
+    private volatile ThrottleSettings settings;
 
     //--------------------------------------------------------------------------
     //
@@ -125,6 +165,9 @@ public class ThrottleManager extends ManageableComponent
     {
         super.stop();
 
+        inboundClientMarks.clear();
+        outboundClientMarks.clear();
+
         // Remove management.
         if (isManaged() && getControl() != null)
         {
@@ -158,11 +201,21 @@ public class ThrottleManager extends ManageableComponent
      */
     public void removeClientThrottleMark(Object clientId)
     {
-        if (inboundClientMarks != null)
-            inboundClientMarks.remove(clientId);
+        Object key = clientId != null ? clientId : NULL_CLIENT_ID;
+        inboundClientMarks.remove(key);
+        outboundClientMarks.remove(key);
+    }
 
-        if (outboundClientMarks != null)
-            outboundClientMarks.remove(clientId);
+    /**
+     * @exclude
+     * Returns the number of client marks currently tracked for incoming and
+     * outgoing messages.
+     *
+     * @return The number of client marks.
+     */
+    public int getClientThrottleMarkCount()
+    {
+        return inboundClientMarks.size() + outboundClientMarks.size();
     }
 
     /**
@@ -172,17 +225,12 @@ public class ThrottleManager extends ManageableComponent
      */
     public void setThrottleSettings(ThrottleSettings throttleSettings)
     {
+        String destinationName = throttleSettings.getDestinationName();
+        inboundDestinationMark = new ThrottleMark(destinationName, INBOUND_DESTINATION_REASON);
+        outboundDestinationMark = new ThrottleMark(destinationName, OUTBOUND_DESTINATION_REASON);
+        inboundClientMarks.clear();
+        outboundClientMarks.clear();
         settings = throttleSettings;
-        if (settings.isDestinationThrottleEnabled())
-        {
-            inboundDestinationMark = new ThrottleMark(settings.getDestinationName());
-            outboundDestinationMark = new ThrottleMark(settings.getDestinationName());
-        }
-        if (settings.isClientThrottleEnabled())
-        {
-            inboundClientMarks = new HashMap<Object, ThrottleMark>();
-            outboundClientMarks = new HashMap<Object, ThrottleMark>();
-        }
     }
 
     /**
@@ -195,17 +243,18 @@ public class ThrottleManager extends ManageableComponent
     {
         // destination-level throttling comes before client-level, because if it
         // fails then it doesn't matter what the client-level throttle reports.
-        ThrottleResult result = new ThrottleResult(ThrottleResult.RESULT_OK);
+        ThrottleResult result = ThrottleResult.OK;
 
         if (settings.getInboundPolicy() != ThrottleSettings.POLICY_NONE)
         {
-            result = throttleDestinationLevel(msg, true);
+            long now = System.nanoTime();
+            result = throttleDestinationLevel(now, true);
             if (result.getResultCode() == ThrottleResult.RESULT_OK)
             {
                 // client-level throttling allows the system to further refine a
                 // different throttle for individual clients, which may be a subset
                 // but never a superset of destination-level throttle settings
-                result = throttleClientLevel(msg, msg.getClientId(), true);
+                result = throttleClientLevel(now, msg.getClientId(), true);
             }
         }
         return result;
@@ -220,13 +269,14 @@ public class ThrottleManager extends ManageableComponent
      */
     public ThrottleResult throttleOutgoingMessage(Message msg, Object clientId)
     {
-        ThrottleResult result = new ThrottleResult(ThrottleResult.RESULT_OK);
+        ThrottleResult result = ThrottleResult.OK;
         if (settings.getOutboundPolicy() != ThrottleSettings.POLICY_NONE)
         {
+            long now = System.nanoTime();
             if (clientId == null)
-                result = throttleDestinationLevel(msg, false);
+                result = throttleDestinationLevel(now, false);
             else
-                result = throttleClientLevel(msg, clientId, false);
+                result = throttleClientLevel(now, clientId, false);
         }
         return result;
     }
@@ -242,18 +292,15 @@ public class ThrottleManager extends ManageableComponent
         return LOG_CATEGORY;
     }
 
-    private ThrottleResult throttleDestinationLevel(Message msg, boolean incoming)
+    private ThrottleResult throttleDestinationLevel(long now, boolean incoming)
     {
-        ThrottleResult result = new ThrottleResult(ThrottleResult.RESULT_OK);
+        ThrottleResult result = ThrottleResult.OK;
         if (settings.isDestinationThrottleEnabled())
         {
             if (incoming)
             {
-                try
-                {
-                    inboundDestinationMark.assertValid(msg.getTimestamp(), settings.getIncomingDestinationFrequency());
-                }
-                catch (RuntimeException e)
+                ThrottleMark mark = inboundDestinationMark;
+                if (!mark.tryAcquire(now, settings.getIncomingDestinationFrequency()))
                 {
                     int throttleResultCode = getResultCode(settings.getInboundPolicy());
 
@@ -261,19 +308,13 @@ public class ThrottleManager extends ManageableComponent
                     if (throttleResultCode != ThrottleResult.RESULT_OK && isManaged())
                         ((ThrottleManagerControl)getControl()).incrementDestinationIncomingMessageThrottleCount();
 
-                    String s = "Message throttled: Too many messages sent to destination "
-                        + inboundDestinationMark.id + " in too small of a time interval.  " + e.getMessage();
-                    MessageException me = new MessageException(s);
-                    result = new ThrottleResult(throttleResultCode, me);
+                    result = mark.getThrottleResult(throttleResultCode);
                 }
             }
             else
             {
-                try
-                {
-                    outboundDestinationMark.assertValid(msg.getTimestamp(), settings.getOutgoingDestinationFrequency());
-                }
-                catch (RuntimeException e)
+                ThrottleMark mark = outboundDestinationMark;
+                if (!mark.tryAcquire(now, settings.getOutgoingDestinationFrequency()))
                 {
                     int throttleResultCode = getResultCode(settings.getOutboundPolicy());
 
@@ -281,32 +322,24 @@ public class ThrottleManager extends ManageableComponent
                     if (throttleResultCode != ThrottleResult.RESULT_OK && isManaged())
                         ((ThrottleManagerControl)getControl()).incrementDestinationOutgoingMessageThrottleCount();
 
-                    String s = "Message throttled: Too many messages routed by destination "
-                        + outboundDestinationMark.id + " in too small of a time interval";
-                    MessageException me = new MessageException(s);
-                    result = new ThrottleResult(throttleResultCode, me);
+                    result = mark.getThrottleResult(throttleResultCode);
                 }
             }
         }
         return result;
     }
 
-    private ThrottleResult throttleClientLevel(Message msg, Object clientId, boolean incoming)
+    private ThrottleResult throttleClientLevel(long now, Object clientId, boolean incoming)
     {
-        ThrottleResult result = new ThrottleResult(ThrottleResult.RESULT_OK);
+        ThrottleResult result = ThrottleResult.OK;
         if (settings.isClientThrottleEnabled())
         {
-            ThrottleMark clientLevelMark;
+            evictIdleClientMarks(now);
+
             if (incoming)
             {
-                clientLevelMark = inboundClientMarks.get(clientId);
-                if (clientLevelMark == null)
-                    clientLevelMark = new ThrottleMark(clientId);
-                try
-                {
-                    clientLevelMark.assertValid(msg.getTimestamp(), settings.getIncomingClientFrequency());
-                }
-                catch (RuntimeException e)
+                ThrottleMark mark = getClientMark(inboundClientMarks, clientId, INBOUND_CLIENT_REASON, now);
+                if (!mark.tryAcquire(now, settings.getIncomingClientFrequency()))
                 {
                     int throttleResultCode = getResultCode(settings.getInboundPolicy());
 
@@ -314,26 +347,13 @@ public class ThrottleManager extends ManageableComponent
                     if ((throttleResultCode != ThrottleResult.RESULT_OK) && isManaged())
                         ((ThrottleManagerControl)getControl()).incrementClientIncomingMessageThrottleCount();
 
-                    String s = "Message throttled: Too many messages sent by client "
-                        + clientId + " in too small of a time interval";
-                    MessageException me = new MessageException(s);
-                    result = new ThrottleResult(throttleResultCode, me);
-                }
-                finally
-                {
-                    inboundClientMarks.put(clientId, clientLevelMark);
+                    result = mark.getThrottleResult(throttleResultCode);
                 }
             }
             else
             {
-                clientLevelMark = outboundClientMarks.get(clientId);
-                if (clientLevelMark == null)
-                    clientLevelMark = new ThrottleMark(clientId);
-                try
-                {
-                    clientLevelMark.assertValid(msg.getTimestamp(), settings.getOutgoingClientFrequency());
-                }
-                catch (RuntimeException e)
+                ThrottleMark mark = getClientMark(outboundClientMarks, clientId, OUTBOUND_CLIENT_REASON, now);
+                if (!mark.tryAcquire(now, settings.getOutgoingClientFrequency()))
                 {
                     int throttleResultCode = getResultCode(settings.getOutboundPolicy());
 
@@ -341,20 +361,59 @@ public class ThrottleManager extends ManageableComponent
                     if ((throttleResultCode != ThrottleResult.RESULT_OK) && isManaged())
                         ((ThrottleManagerControl)getControl()).incrementClientOutgoingMessageThrottleCount();
 
-                    String s = "Message throttled: Too many messages sent to client "
-                        + clientId + " in too small of a time interval";
-                    MessageException me = new MessageException(s);
-                    result = new ThrottleResult(throttleResultCode, me);
-                }
-                finally
-                {
-                    outboundClientMarks.put(clientId, clientLevelMark);
+                    result = mark.getThrottleResult(throttleResultCode);
                 }
             }
         }
         return result;
     }
 
+    /**
+     * Returns the mark for the client, creating it if this is the first
+     * message seen for the client.
+     */
+    private ThrottleMark getClientMark(ConcurrentMap<Object, ThrottleMark> marks, Object clientId, String reason, long now)
+    {
+        Object key = clientId != null ? clientId : NULL_CLIENT_ID;
+        ThrottleMark mark = marks.get(key);
+        if (mark == null)
+        {
+            ThrottleMark newMark = new ThrottleMark(clientId, reason, now);
+            mark = marks.putIfAbsent(key, newMark);
+            if (mark == null)
+                mark = newMark;
+        }
+        return mark;
+    }
+
+    /**
+     * Removes client marks that have been idle for longer than
+     * <code>IDLE_CLIENT_MARK_NANOS</code>. At most one thread sweeps per
+     * <code>IDLE_SWEEP_INTERVAL_NANOS</code>; the others return immediately.
+     * An idle mark carries no state a newly created mark would not, so
+     * evicting one never lets a client exceed its rate.
+     */
+    private void evictIdleClientMarks(long now)
+    {
+        long lastSweep = lastIdleSweep.get();
+        if (now - lastSweep < IDLE_SWEEP_INTERVAL_NANOS || !lastIdleSweep.compareAndSet(lastSweep, now))
+            return;
+
+        evictIdleClientMarks(inboundClientMarks, now);
+        evictIdleClientMarks(outboundClientMarks, now);
+    }
+
+    private void evictIdleClientMarks(ConcurrentMap<Object, ThrottleMark> marks, long now)
+    {
+        for (Iterator<Map.Entry<Object, ThrottleMark>> iter = marks.entrySet().iterator(); iter.hasNext();)
+        {
+            Map.Entry<Object, ThrottleMark> entry = iter.next();
+            ThrottleMark mark = entry.getValue();
+            if (mark.isIdle(now, IDLE_CLIENT_MARK_NANOS))
+                marks.remove(entry.getKey(), mark);
+        }
+    }
+
     /**
      * Given a policy, returns the result code for that policy.
      *
@@ -374,6 +433,7 @@ public class ThrottleManager extends ManageableComponent
                 break;
             case ThrottleSettings.POLICY_ERROR:
                 n = ThrottleResult.RESULT_ERROR;
+                break;
             default:
                 break;
         }
@@ -387,7 +447,9 @@ public class ThrottleManager extends ManageableComponent
     //--------------------------------------------------------------------------
 
     /**
-     * This class is used to keep track of throttling results.
+     * This class is used to keep track of throttling results. Results are
+     * immutable, so the throttle manager hands out shared instances; the
+     * exception for a throttled message is only created when it is asked for.
      */
     public static class ThrottleResult
     {
@@ -396,22 +458,48 @@ public class ThrottleManager extends ManageableComponent
         public static final int RESULT_REPLACE = 2;
         public static final int RESULT_ERROR = 3;
 
-        private MessageException exception;
-        private int resultCode;
+        /**
+         * Shared result for messages that were not throttled.
+         */
+        public static final ThrottleResult OK = new ThrottleResult(RESULT_OK);
+
+        private final MessageException exception;
+        private final String reason;
+        private final int resultCode;
 
         public ThrottleResult(int resultCode)
         {
-            this.resultCode = resultCode;
+            this(resultCode, null, null);
         }
 
         public ThrottleResult(int result, MessageException exception)
         {
-            this(result);
+            this(result, exception, null);
+        }
+
+        ThrottleResult(int result, String reason)
+        {
+            this(result, null, reason);
+        }
+
+        private ThrottleResult(int resultCode, MessageException exception, String reason)
+        {
+            this.resultCode = resultCode;
             this.exception = exception;
+            this.reason = reason;
         }
 
+        /**
+         * Returns the exception describing why the message was throttled. For
+         * results created by the throttle manager a new exception is created on
+         * each call, so callers should only ask for it when they log or throw it.
+         *
+         * @return The exception, or <code>null</code> if the message was not throttled.
+         */
         public MessageException getException()
         {
+            if (exception == null && reason != null)
+                return new MessageException(reason);
             return exception;
         }
 
@@ -423,47 +511,85 @@ public class ThrottleManager extends ManageableComponent
 
     /**
      * ThrottleMark is used to keep track of the message rates for destinations
-     * and clients of those destinations.
+     * and clients of those destinations. The mark stores the theoretical arrival
+     * time of the next message in <code>System.nanoTime()</code> terms; a
+     * message conforms if accepting it does not push that time more than
+     * <code>MESSAGE_BURST_SIZE</code> emission intervals ahead of now.
      */
-    class ThrottleMark
+    static class ThrottleMark
     {
-        Object id;
-        int messageCount;
-        long [] previousMessageTimes;
+        final Object id;
+        private final String reason;
+        private final AtomicLong theoreticalArrivalTime;
+        private volatile ThrottleResult throttleResult;
 
         /**
          * Creates a new ThrottleMark with the specified id.
          *
          * @param id Either the destination or the client id associated with the ThrottleMark.
+         * @param reason The start of the message reported when the mark throttles a message.
          */
-        ThrottleMark(Object id)
+        ThrottleMark(Object id, String reason)
+        {
+            this(id, reason, System.nanoTime());
+        }
+
+        ThrottleMark(Object id, String reason, long now)
         {
             this.id = id;
-            messageCount = 0;
-            previousMessageTimes = new long[MESSAGE_TIMES_SIZE];
+            this.reason = reason;
+            theoreticalArrivalTime = new AtomicLong(now);
         }
 
-        void assertValid(long messageTimestamp, int maxFrequency)
+        /**
+         * Accounts for one message at time <code>now</code> if it conforms to
+         * <code>maxFrequency</code> messages per second; non-conforming messages
+         * are not recorded so the mark represents the rate actually delivered.
+         *
+         * @param now The current <code>System.nanoTime()</code>.
+         * @param maxFrequency The maximum number of messages per second, or 0 for no limit.
+         * @return <code>true</code> if the message conforms.
+         */
+        boolean tryAcquire(long now, int maxFrequency)
         {
-            if (maxFrequency > 0)
+            if (maxFrequency <= 0)
+                return true;
+
+            long emissionInterval = NANOS_PER_SECOND / maxFrequency;
+            long limit = emissionInterval * MESSAGE_BURST_SIZE;
+            while (true)
             {
-                // If we have enough messages to start testing.
-                if (messageCount >= MESSAGE_TIMES_SIZE)
-                {
-                    // Time delay between this message and the last N messages.
-                    long interval = (messageTimestamp - previousMessageTimes[messageCount % MESSAGE_TIMES_SIZE]) / 1000;
-                    long actualFrequency = MESSAGE_TIMES_SIZE / (interval > 0 ? interval : 1);
-                    // If the rate is too high, toss this message and do not record it,
-                    // so the history represents the rate of messages actually delivered.
-                    if (actualFrequency > maxFrequency)
-                        throw new RuntimeException("actual frequency=" + actualFrequency + " max frequency=" + maxFrequency);
-                }
-                // Handle integer wrap
-                if (messageCount == Integer.MAX_VALUE)
-                    messageCount = 0;
-                // Increase the messageCount and update the message times.
-                previousMessageTimes[messageCount++ % MESSAGE_TIMES_SIZE] = messageTimestamp;
+                long tat = theoreticalArrivalTime.get();
+                long next = (tat - now > 0 ? tat : now) + emissionInterval;
+                if (next - now > limit)
+                    return false;
+                if (theoreticalArrivalTime.compareAndSet(tat, next))
+                    return true;
+            }
+        }
+
+        /**
+         * Returns <code>true</code> if no message has been accounted for within
+         * <code>idleNanos</code> of the theoretical arrival time.
+         */
+        boolean isIdle(long now, long idleNanos)
+        {
+            return now - theoreticalArrivalTime.get() > idleNanos;
+        }
+
+        /**
+         * Returns the result for a message this mark throttled, reusing the
+         * previous result when the result code has not changed.
+         */
+        ThrottleResult getThrottleResult(int resultCode)
+        {
+            ThrottleResult result = throttleResult;
+            if (result == null || result.getResultCode() != resultCode)
+            {
+                result = new ThrottleResult(resultCode, reason + id + REASON_SUFFIX);
+                throttleResult = result;
             }
+            return result;
         }
     }
 }
@@ -18,11 +18,13 @@
  **************************************************************************/
 package flex.messaging.services.messaging.adapters;
 
+import java.lang.reflect.Field;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,18 +55,37 @@ import flex.messaging.services.messaging.adapters.JMSSettings.DeliverySettings;
  * This adapter for the MessageService integrates Flex messaging
  * with Java Message Service destinations.
  */
-public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants, JMSExceptionListener, JMSMessageListener, MessageClientListener
+public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants, JMSExceptionListener, JMSMessageBatchListener, MessageClientListener
 {
     public static final String LOG_CATEGORY = LogCategories.SERVICE_MESSAGE_JMS;
     private static final String DURABLE_SUBSCRIBER_NAME_PREFIX = "FlexClient_";
 
+    // Public fields of MessagePerformanceInfo keyed by the JMS property name
+    // they are mapped from, so conversion does not need a reflective lookup
+    // per property.
+    private static final Map<String, Field> MPI_FIELDS = new HashMap<String, Field>();
+    static
+    {
+        Field[] fields = MessagePerformanceInfo.class.getFields();
+        for (int i = 0; i < fields.length; i++)
+            MPI_FIELDS.put(MessagePerformanceUtils.MPI_HEADER_IN + fields[i].getName(), fields[i]);
+    }
+
     private Map<JMSConsumer, String> consumerToClientId;
     private Map<String, MessageClient> messageClients;
-    private LinkedList<JMSProducer> topicProducers;
     private Map<String, JMSConsumer> topicConsumers;
-    private LinkedList<JMSProducer> queueProducers;
     private Map<String, JMSConsumer> queueConsumers;
 
+    // Producers are created on the first publish.
+    private volatile JMSProducerPool producerPool;
+    private volatile JMSAsyncSender asyncSender;
+    private final Object producerPoolLock = new Object();
+
+    // The consumer shared by all topic subscribers when shared-consumer is enabled.
+    private volatile JMSTopicConsumer sharedTopicConsumer;
+    private Set<String> sharedTopicClientIds;
+    private final Object sharedTopicConsumerLock = new Object();
+
     // JMSAdapter properties
     private JMSSettings settings;
     private JMSAdapterControl controller;
@@ -94,10 +115,9 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         super(enableManagement);
         consumerToClientId = new ConcurrentHashMap<JMSConsumer, String>();
         messageClients = new ConcurrentHashMap<String, MessageClient>();
-        topicProducers = new LinkedList<JMSProducer>();
         topicConsumers = new ConcurrentHashMap<String, JMSConsumer>();
-        queueProducers = new LinkedList<JMSProducer>();
         queueConsumers = new ConcurrentHashMap<String, JMSConsumer>();
+        sharedTopicClientIds = new HashSet<String>();
         settings = new JMSSettings();
     }
 
@@ -191,6 +211,8 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
 
         stopConsumers(topicConsumers.values());
         stopConsumers(queueConsumers.values());
+        stopSharedTopicConsumer();
+        stopProducers();
     }
 
     //--------------------------------------------------------------------------
@@ -265,7 +287,7 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
      */
     public int getTopicConsumerCount()
     {
-        return topicConsumers.size();
+        return sharedTopicConsumer != null ? topicConsumers.size() + 1 : topicConsumers.size();
     }
 
     /**
@@ -284,6 +306,34 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         return new String[0];
     }
 
+    /**
+     * Returns the count of topic subscribers served by the shared topic consumer.
+     *
+     * @return The count of topic subscribers served by the shared topic consumer.
+     */
+    public int getSharedTopicConsumerSubscriberCount()
+    {
+        synchronized (sharedTopicConsumerLock)
+        {
+            return sharedTopicClientIds.size();
+        }
+    }
+
+    /**
+     * Returns whether topic subscribers share a single JMS consumer. This is
+     * the case when the <code>shared-consumer</code> property is enabled for
+     * a topic destination that does not use durable subscriptions.
+     *
+     * @return <code>true</code> if topic subscribers share a single JMS consumer;
+     * otherwise <code>false</code>.
+     */
+    public boolean isSharedTopicConsumer()
+    {
+        return settings.isSharedConsumer()
+            && settings.getDestinationType().equals(TOPIC)
+            && !settings.useDurableConsumers();
+    }
+
     /**
      * Returns the count of topic producers currently managed by this adapter.
      *
@@ -291,7 +341,8 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
      */
     public int getTopicProducerCount()
     {
-        return topicProducers.size();
+        JMSProducerPool pool = producerPool;
+        return pool != null && settings.getDestinationType().equals(TOPIC) ? pool.getProducerCount() : 0;
     }
 
     /**
@@ -301,7 +352,134 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
      */
     public int getQueueProducerCount()
     {
-        return queueProducers.size();
+        JMSProducerPool pool = producerPool;
+        return pool != null && settings.getDestinationType().equals(QUEUE) ? pool.getProducerCount() : 0;
+    }
+
+    /**
+     * Returns the count of producers currently in use for publishing.
+     *
+     * @return The count of producers currently in use for publishing.
+     */
+    public int getActiveProducerCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getActiveProducerCount() : 0;
+    }
+
+    /**
+     * Returns the count of pooled producers that are not currently in use.
+     *
+     * @return The count of idle producers.
+     */
+    public int getIdleProducerCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getIdleProducerCount() : 0;
+    }
+
+    /**
+     * Returns the count of producers borrowed from the producer pool.
+     *
+     * @return The count of producers borrowed from the producer pool.
+     */
+    public long getProducerBorrowCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getBorrowCount() : 0;
+    }
+
+    /**
+     * Returns the count of borrows that had to wait for a producer because
+     * all <code>max-producers</code> producers were in use.
+     *
+     * @return The count of borrows that had to wait for a producer.
+     */
+    public long getProducerBorrowWaitCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getBorrowWaitCount() : 0;
+    }
+
+    /**
+     * Returns the count of borrows that timed out waiting for a producer.
+     *
+     * @return The count of borrows that timed out.
+     */
+    public long getProducerBorrowTimeoutCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getBorrowTimeoutCount() : 0;
+    }
+
+    /**
+     * Returns the count of producers started by the producer pool.
+     *
+     * @return The count of producers started.
+     */
+    public long getProducerCreatedCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getCreatedCount() : 0;
+    }
+
+    /**
+     * Returns the count of producers discarded after a send failure.
+     *
+     * @return The count of producers discarded.
+     */
+    public long getProducerDiscardedCount()
+    {
+        JMSProducerPool pool = producerPool;
+        return pool != null ? pool.getDiscardedCount() : 0;
+    }
+
+    /**
+     * Returns the count of messages waiting to be sent when <code>async-send</code>
+     * is enabled.
+     *
+     * @return The count of messages waiting to be sent.
+     */
+    public int getAsyncSendQueueSize()
+    {
+        JMSAsyncSender sender = asyncSender;
+        return sender != null ? sender.getQueueSize() : 0;
+    }
+
+    /**
+     * Returns the count of messages sent in the background when <code>async-send</code>
+     * is enabled.
+     *
+     * @return The count of messages sent in the background.
+     */
+    public long getAsyncSentCount()
+    {
+        JMSAsyncSender sender = asyncSender;
+        return sender != null ? sender.getSentCount() : 0;
+    }
+
+    /**
+     * Returns the count of messages that failed to be sent in the background
+     * when <code>async-send</code> is enabled.
+     *
+     * @return The count of messages that failed to be sent.
+     */
+    public long getAsyncSendFailedCount()
+    {
+        JMSAsyncSender sender = asyncSender;
+        return sender != null ? sender.getFailedCount() : 0;
+    }
+
+    /**
+     * Returns the count of transacted send batches committed when
+     * <code>send-batch-size</code> is greater than 1.
+     *
+     * @return The count of transacted send batches committed.
+     */
+    public long getSendBatchCommitCount()
+    {
+        JMSAsyncSender sender = asyncSender;
+        return sender != null ? sender.getCommitCount() : 0;
     }
 
     /**
@@ -320,7 +498,10 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         // Client is unsubscribed because its corresponding JMS consumer for JMS destination ''{0}'' encountered an error during message delivery: {1}
         MessageException messageEx = new MessageException();
         messageEx.setMessage(JMSConfigConstants.CLIENT_UNSUBSCRIBE_DUE_TO_MESSAGE_DELIVERY_ERROR, new Object[] {consumer.getDestinationJndiName(), jmsEx.getMessage()});
-        removeConsumer(consumer, true, true, messageEx.createErrorMessage());
+        if (consumer == sharedTopicConsumer)
+            removeSharedTopicConsumer(messageEx.createErrorMessage());
+        else
+            removeConsumer(consumer, true, true, messageEx.createErrorMessage());
     }
 
     /**
@@ -343,97 +524,35 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
     @Override
     public Object invoke(Message message)
     {
-        JMSProducer producer = null;
-
         // named Flex message props become JMS headers
         Map msgProps = message.getHeaders();
         msgProps.put(JMSConfigConstants.TIME_TO_LIVE, new Long(message.getTimeToLive()));
 
-        if (settings.getDestinationType().equals(TOPIC))
+        JMSProducerPool pool = getProducerPool();
+        JMSAsyncSender sender = asyncSender;
+        if (sender != null)
         {
-            synchronized (topicProducers)
-            {
-                if (topicProducers.size() < settings.getMaxProducers())
-                {
-                    producer = new JMSTopicProducer();
-                    try
-                    {
-                        producer.initialize(settings);
-                        producer.start();
-                    }
-                    catch (Exception e)
-                    {
-                        throw new MessageException(e);
-                    }
-                }
-                else
-                {
-                    producer = topicProducers.removeFirst();
-                }
-
-                topicProducers.addLast(producer);
-            }
-        }
-        else if (settings.getDestinationType().equals(QUEUE))
-        {
-            synchronized (queueProducers)
-            {
-                if (queueProducers.size() < settings.getMaxProducers())
-                {
-                    producer = new JMSQueueProducer();
-                    try
-                    {
-                        producer.initialize(settings);
-                        producer.start();
-                    }
-                    catch (Exception e)
-                    {
-                        throw new MessageException(e);
-                    }
-                }
-                else
-                {
-                    producer = queueProducers.removeFirst();
-                }
-
-                queueProducers.addLast(producer);
-            }
+            sender.send(message);
+            return null;
         }
 
+        JMSProducer producer = pool.borrowProducer();
+        boolean healthy = true;
         try
         {
-            if (producer != null)
-                producer.sendMessage(message);
+            producer.sendMessage(message);
         }
         catch (JMSException jmsEx)
         {
-            // At this point we give up on this producer, so we just
-            // stop and remove it from the pool.
-            if (settings.getDestinationType().equals(TOPIC))
-            {
-                synchronized (topicProducers)
-                {
-                    if (producer != null)
-                    {
-                        producer.stop();
-                        topicProducers.remove(producer);
-                    }
-                }
-            }
-            else if (settings.getDestinationType().equals(QUEUE))
-            {
-                synchronized (queueProducers)
-                {
-                    if (producer != null)
-                    {
-                        producer.stop();
-                        queueProducers.remove(producer);
-                    }
-                }
-            }
-
+            // At this point we give up on this producer, so the pool stops
+            // and discards it once it is returned.
+            healthy = false;
             throw new MessageException(jmsEx);
         }
+        finally
+        {
+            pool.returnProducer(producer, healthy);
+        }
 
         return null;
     }
@@ -456,7 +575,17 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
             Object selectorExpression = commandMessage.getHeaders().get(CommandMessage.SELECTOR_HEADER);
 
             // Create a JMSConsumer for this destination and associate it with the client id
-            if (settings.getDestinationType().equals(TOPIC))
+            if (isSharedTopicConsumer())
+            {
+                // The shared consumer is started once the MessageClient for
+                // the first subscriber is created; the subscription manager
+                // evaluates the selector for each subscriber.
+                synchronized (sharedTopicConsumerLock)
+                {
+                    sharedTopicClientIds.add(clientId);
+                }
+            }
+            else if (settings.getDestinationType().equals(TOPIC))
             {
                 MessageClient existingMessageClient = null;
                 // This could happen when client disconnects without unsubscribing first.
@@ -554,6 +683,12 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
     public void messageClientCreated(MessageClient messageClient)
     {
         String clientId = (String)messageClient.getClientId();
+        if (isSharedTopicConsumer())
+        {
+            sharedTopicClientCreated(messageClient);
+            return;
+        }
+
         JMSConsumer consumer = null;
         if (topicConsumers.containsKey(clientId))
             consumer = topicConsumers.get(clientId);
@@ -610,6 +745,14 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         JMSConsumer consumer = (JMSConsumer)evt.getSource();
         javax.jms.Message jmsMessage = evt.getJMSMessage();
 
+        if (consumer == sharedTopicConsumer)
+        {
+            flex.messaging.messages.AsyncMessage flexMessage = convertToFlexMessage(jmsMessage, (String)null);
+            MessagePerformanceUtils.markServerPostAdapterExternalTime(flexMessage);
+            ((MessageService)getDestination().getService()).serviceSharedMessageFromAdapter(flexMessage);
+            return;
+        }
+
         flex.messaging.messages.AsyncMessage flexMessage = convertToFlexMessage(jmsMessage, consumer);
         if (flexMessage != null)
         {
@@ -618,6 +761,49 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         }
     }
 
+    /**
+     * Implements JMSMessageBatchListener.
+     * When a JMSConsumer receives a batch of JMS messages, it dispatches a
+     * single JMS message event for the batch. The messages are converted
+     * together and passed to the message service as a group.
+     *
+     * @param evt The <code>JMSMessageEvent</code> containing the batch.
+     */
+    public void messagesReceived(JMSMessageEvent evt)
+    {
+        JMSConsumer consumer = (JMSConsumer)evt.getSource();
+        javax.jms.Message[] jmsMessages = evt.getJMSMessages();
+        MessageService service = (MessageService)getDestination().getService();
+
+        if (consumer == sharedTopicConsumer)
+        {
+            for (int i = 0; i < jmsMessages.length; i++)
+            {
+                flex.messaging.messages.AsyncMessage flexMessage = convertToFlexMessage(jmsMessages[i], (String)null);
+                MessagePerformanceUtils.markServerPostAdapterExternalTime(flexMessage);
+                service.serviceSharedMessageFromAdapter(flexMessage);
+            }
+            return;
+        }
+
+        String clientId = consumerToClientId.get(consumer);
+        if (clientId == null)
+        {
+            if (Log.isWarn())
+                Log.getLogger(LOG_CATEGORY).warn("JMSAdapter encountered a null clientId during JMS to Flex message conversion");
+
+            return;
+        }
+
+        Message[] flexMessages = new Message[jmsMessages.length];
+        for (int i = 0; i < jmsMessages.length; i++)
+        {
+            flexMessages[i] = convertToFlexMessage(jmsMessages[i], clientId);
+            MessagePerformanceUtils.markServerPostAdapterExternalTime(flexMessages[i]);
+        }
+        service.serviceMessagesFromAdapter(flexMessages, false);
+    }
+
     /**
      * Removes (unsubscribes) the specified consumer. By default, it removes
      * the durable subscription and pushes a generic error message to the client
@@ -651,6 +837,9 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
      */
     protected void removeConsumer(String clientId, boolean unsubscribe, boolean invalidate, ErrorMessage invalidateMessage)
     {
+        if (removeSharedTopicClient(clientId, invalidate, invalidateMessage))
+            return;
+
         JMSConsumer consumer = null;
         if (topicConsumers.containsKey(clientId))
             consumer = topicConsumers.get(clientId);
@@ -731,9 +920,63 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         SyncMessageReceiver syncMessageReceiver = new SyncMessageReceiver(consumer);
         syncMessageReceiver.setSyncReceiveIntervalMillis(deliverySettings.getSyncReceiveIntervalMillis());
         syncMessageReceiver.setSyncReceiveWaitMillis(deliverySettings.getSyncReceiveWaitMillis());
+        syncMessageReceiver.setSyncReceiveBatchSize(deliverySettings.getSyncReceiveBatchSize());
+        // Parallel receive threads would reorder topic messages, so they are only used for queues.
+        if (consumer instanceof JMSQueueConsumer)
+            syncMessageReceiver.setSyncMaxReceiveThreads(deliverySettings.getSyncMaxReceiveThreads());
         return syncMessageReceiver;
     }
 
+    /**
+     * Returns the producer pool, creating it along with the async sender, if
+     * <code>async-send</code> is enabled, on first use.
+     *
+     * @return The producer pool of the adapter.
+     */
+    private JMSProducerPool getProducerPool()
+    {
+        JMSProducerPool pool = producerPool;
+        if (pool != null)
+            return pool;
+
+        synchronized (producerPoolLock)
+        {
+            if (producerPool == null)
+            {
+                boolean batched = settings.isAsyncSend() && settings.getSendBatchSize() > 1;
+                pool = new JMSProducerPool(settings, batched);
+                if (settings.isAsyncSend())
+                {
+                    JMSAsyncSender sender = new JMSAsyncSender(pool, settings);
+                    sender.start();
+                    asyncSender = sender;
+                }
+                producerPool = pool;
+            }
+            return producerPool;
+        }
+    }
+
+    /**
+     * Stops the async sender, if any, and the producers of the producer pool.
+     */
+    private void stopProducers()
+    {
+        synchronized (producerPoolLock)
+        {
+            if (asyncSender != null)
+            {
+                asyncSender.stop();
+                asyncSender = null;
+            }
+            if (producerPool != null)
+            {
+                producerPool.stop();
+                producerPool = null;
+            }
+        }
+    }
+
     /**
      * Prefixes a clientId with DURABLE_SUBSCRIBER_NAME_PREFIX to build a
      * subscription name to be used in JMSConsumers with durable connections.
@@ -751,9 +994,6 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
      */
     private flex.messaging.messages.AsyncMessage convertToFlexMessage(javax.jms.Message jmsMessage, JMSConsumer consumer)
     {
-        flex.messaging.messages.AsyncMessage flexMessage = null;
-        flexMessage = new flex.messaging.messages.AsyncMessage();
-
         String clientId = consumerToClientId.get(consumer);
         if (clientId == null)
         {
@@ -762,7 +1002,22 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
 
             return null;
         }
-        flexMessage.setClientId(clientId);
+        return convertToFlexMessage(jmsMessage, clientId);
+    }
+
+    /**
+     * Convert from a <code>javax.jms.Message</code> type to a
+     * <code>flex.messaging.messages.AsyncMessage</code> type targeted to the
+     * specified clientId. The clientId is null for messages received by the
+     * shared topic consumer, as those are routed to all matching subscribers.
+     */
+    private flex.messaging.messages.AsyncMessage convertToFlexMessage(javax.jms.Message jmsMessage, String clientId)
+    {
+        flex.messaging.messages.AsyncMessage flexMessage = null;
+        flexMessage = new flex.messaging.messages.AsyncMessage();
+
+        if (clientId != null)
+            flexMessage.setClientId(clientId);
 
 
         flexMessage.setDestination(getDestination().getId());
@@ -833,16 +1088,17 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
                     {
                         if (mpi == null)
                             mpi = new MessagePerformanceInfo();
-                        propName = propName.substring(MessagePerformanceUtils.MPI_HEADER_IN.length());
-                        java.lang.reflect.Field field;
-                        try
+                        Field field = MPI_FIELDS.get(propName);
+                        if (field != null)
                         {
-                            field = mpi.getClass().getField(propName);
-                            field.set(mpi, propValue);
-                        }
-                        catch (Exception ignore)
-                        {
-                            // Simply don't set the property if the value cannot be retrieved.
+                            try
+                            {
+                                field.set(mpi, propValue);
+                            }
+                            catch (Exception ignore)
+                            {
+                                // Simply don't set the property if the value cannot be retrieved.
+                            }
                         }
                     }
                     else
@@ -913,6 +1169,28 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         }
     }
 
+    /**
+     * Invalidates the MessageClient of a subscriber to the shared topic consumer
+     * with the supplied error message.
+     *
+     * @param clientId The clientId of the MessageClient to invalidate.
+     * @param message The error message to push out before invalidating the
+     * MessageClient. If the message is null, MessageClient is invalidated
+     * silently.
+     */
+    private void invalidateMessageClient(String clientId, flex.messaging.messages.Message message)
+    {
+        MessageClient messageClient = messageClients.get(clientId);
+        if (messageClient != null)
+        {
+            if (Log.isInfo())
+                Log.getLogger(JMSAdapter.LOG_CATEGORY).info("The corresponding MessageClient for shared JMS consumer for JMS destination '"
+                        + settings.getDestinationJNDIName() + "' is being invalidated");
+
+            messageClient.invalidate(message);
+        }
+    }
+
     /**
      *  Handle JMS specific configuration.
      */
@@ -953,6 +1231,12 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
 
                 long receiveWaitMillis = deliverySettings.getPropertyAsLong(SYNC_RECEIVE_WAIT_MILLIS, defaultSyncReceiveWaitMillis);
                 ds.setSyncReceiveWaitMillis(receiveWaitMillis);
+
+                int receiveBatchSize = deliverySettings.getPropertyAsInt(SYNC_RECEIVE_BATCH_SIZE, defaultSyncReceiveBatchSize);
+                ds.setSyncReceiveBatchSize(receiveBatchSize);
+
+                int maxReceiveThreads = deliverySettings.getPropertyAsInt(SYNC_MAX_RECEIVE_THREADS, defaultSyncMaxReceiveThreads);
+                ds.setSyncMaxReceiveThreads(maxReceiveThreads);
             }
 
             String destJNDI = jms.getPropertyAsString(DESTINATION_JNDI_NAME, null);
@@ -972,6 +1256,11 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
             boolean preserveJMSHeaders = jms.getPropertyAsBoolean(PRESERVE_JMS_HEADERS, settings.isPreserveJMSHeaders());
             settings.setPreserveJMSHeaders(preserveJMSHeaders);
 
+            boolean sharedConsumer = jms.getPropertyAsBoolean(SHARED_CONSUMER, settings.isSharedConsumer());
+            if (sharedConsumer && (durable || destType.toLowerCase().equals(QUEUE)) && Log.isWarn())
+                Log.getLogger(LOG_CATEGORY).warn("The <shared-consumer> configuration option is only supported for non-durable topic destinations and will be ignored for destination '" + getDestination().getId() + "'.");
+            settings.setSharedConsumer(sharedConsumer);
+
             String defPriority = jms.getPropertyAsString(MESSAGE_PRIORITY, null);
             if (defPriority != null && !defPriority.equalsIgnoreCase(DEFAULT_PRIORITY))
             {
@@ -989,6 +1278,23 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
             int maxProducers = jms.getPropertyAsInt(MAX_PRODUCERS, defaultMaxProducers);
             settings.setMaxProducers(maxProducers);
 
+            long borrowTimeoutMillis = jms.getPropertyAsLong(PRODUCER_BORROW_TIMEOUT_MILLIS, defaultProducerBorrowTimeoutMillis);
+            settings.setProducerBorrowTimeoutMillis(borrowTimeoutMillis);
+
+            boolean asyncSend = jms.getPropertyAsBoolean(ASYNC_SEND, defaultAsyncSend);
+            settings.setAsyncSend(asyncSend);
+
+            int asyncSendQueueSize = jms.getPropertyAsInt(ASYNC_SEND_QUEUE_SIZE, defaultAsyncSendQueueSize);
+            settings.setAsyncSendQueueSize(asyncSendQueueSize);
+
+            long asyncSendStopTimeoutMillis = jms.getPropertyAsLong(ASYNC_SEND_STOP_TIMEOUT_MILLIS, defaultAsyncSendStopTimeoutMillis);
+            settings.setAsyncSendStopTimeoutMillis(asyncSendStopTimeoutMillis);
+
+            int sendBatchSize = jms.getPropertyAsInt(SEND_BATCH_SIZE, defaultSendBatchSize);
+            if (sendBatchSize > 1 && !asyncSend && Log.isWarn())
+                Log.getLogger(LOG_CATEGORY).warn("The <send-batch-size> configuration option only applies when <async-send> is enabled and will be ignored for destination '" + getDestination().getId() + "'.");
+            settings.setSendBatchSize(sendBatchSize);
+
             // Retrieve any JNDI initial context environment properties.
             ConfigMap env = jms.getPropertyAsMap(INITIAL_CONTEXT_ENVIRONMENT, null);
             if (env != null)
@@ -1070,6 +1376,135 @@ public class JMSAdapter extends MessagingAdapter implements JMSConfigConstants,
         }
     }
 
+    /**
+     * Registers the MessageClient of a subscriber to the shared topic consumer
+     * and starts the shared consumer if it is not running yet.
+     *
+     * @param messageClient The newly created MessageClient.
+     */
+    private void sharedTopicClientCreated(MessageClient messageClient)
+    {
+        String clientId = (String)messageClient.getClientId();
+        MessageException startError = null;
+        synchronized (sharedTopicConsumerLock)
+        {
+            if (!sharedTopicClientIds.contains(clientId))
+                return;
+
+            messageClients.put(clientId, messageClient);
+            JMSTopicConsumer consumer = null;
+            try
+            {
+                if (sharedTopicConsumer == null)
+                {
+                    consumer = new JMSTopicConsumer();
+                    consumer.initialize(settings);
+                    consumer.setMessageReceiver(buildMessageReceiver(consumer));
+                    consumer.addJMSExceptionListener(this);
+                    consumer.addJMSMessageListener(this);
+                    consumer.start();
+                    sharedTopicConsumer = consumer;
+                }
+                // Add JMS adapter as a client destroyed listener, so client
+                // invalidation (eg. due to session timeout) can be handled properly.
+                messageClient.addMessageClientDestroyedListener(this);
+            }
+            catch (MessageException messageEx)
+            {
+                startError = messageEx;
+            }
+            catch (Exception ex)
+            {
+                startError = new MessageException(ex);
+            }
+
+            if (startError != null && consumer != null && sharedTopicConsumer != consumer)
+            {
+                consumer.removeJMSExceptionListener(this);
+                consumer.removeJMSMessageListener(this);
+                consumer.stop();
+            }
+        }
+
+        // Invalidate outside of the lock as invalidation calls back into the adapter.
+        if (startError != null)
+            removeSharedTopicClient(clientId, true, startError.createErrorMessage());
+    }
+
+    /**
+     * Removes a subscriber from the shared topic consumer and stops the shared
+     * consumer once it has no subscribers left.
+     *
+     * @param clientId The clientId of the subscriber to remove.
+     * @param invalidate Whether to invalidate the MessageClient or not.
+     * @param invalidateMessage A message to push to the client before its
+     * MessageClient is invalidated. If the message is null, MessageClient is
+     * invalidated silently.
+     * @return <code>true</code> if the clientId was a subscriber of the shared
+     * topic consumer; otherwise <code>false</code>.
+     */
+    private boolean removeSharedTopicClient(String clientId, boolean invalidate, ErrorMessage invalidateMessage)
+    {
+        JMSTopicConsumer consumerToStop = null;
+        synchronized (sharedTopicConsumerLock)
+        {
+            if (clientId == null || !sharedTopicClientIds.remove(clientId))
+                return false;
+
+            if (sharedTopicClientIds.isEmpty())
+            {
+                consumerToStop = sharedTopicConsumer;
+                sharedTopicConsumer = null;
+            }
+        }
+
+        if (invalidate)
+            invalidateMessageClient(clientId, invalidateMessage);
+
+        if (consumerToStop != null)
+        {
+            if (Log.isInfo())
+                Log.getLogger(JMSAdapter.LOG_CATEGORY).info("Shared JMS consumer for JMS destination '"
+                        + consumerToStop.getDestinationJndiName() + "' is being removed from the JMS adapter as it has no subscribers left");
+
+            consumerToStop.removeJMSExceptionListener(this);
+            consumerToStop.removeJMSMessageListener(this);
+            consumerToStop.stop(true);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the shared topic consumer and invalidates the MessageClients of
+     * all of its subscribers.
+     *
+     * @param invalidateMessage A message to push to the clients before their
+     * MessageClients are invalidated.
+     */
+    private void removeSharedTopicConsumer(ErrorMessage invalidateMessage)
+    {
+        String[] clientIds;
+        synchronized (sharedTopicConsumerLock)
+        {
+            clientIds = sharedTopicClientIds.toArray(new String[sharedTopicClientIds.size()]);
+        }
+
+        for (int i = 0; i < clientIds.length; i++)
+            removeSharedTopicClient(clientIds[i], true, invalidateMessage);
+    }
+
+    private void stopSharedTopicConsumer()
+    {
+        JMSTopicConsumer consumer = sharedTopicConsumer;
+        if (consumer == null)
+            return;
+
+        // Client is unsubscribed because its corresponding JMS consumer for JMS destination ''{0}'' has been stopped.
+        MessageException me = new MessageException();
+        me.setMessage(JMSConfigConstants.CLIENT_UNSUBSCRIBE_DUE_TO_CONSUMER_STOP, new Object[] {consumer.getDestinationJndiName()});
+        removeSharedTopicConsumer(me.createErrorMessage());
+    }
+
     private void stopConsumers(Collection<JMSConsumer> consumers)
     {
         Iterator<JMSConsumer> itr = consumers.iterator();
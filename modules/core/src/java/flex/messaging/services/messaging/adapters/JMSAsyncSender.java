@@ -0,0 +1,340 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging.adapters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.JMSException;
+
+import edu.emory.mathcs.backport.java.util.concurrent.BlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.Executors;
+import edu.emory.mathcs.backport.java.util.concurrent.LinkedBlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ThreadFactory;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+
+import flex.messaging.MessageException;
+import flex.messaging.log.Log;
+import flex.messaging.messages.Message;
+
+/**
+ * Sends Flex messages to JMS in the background so that publishing clients do
+ * not wait for the JMS server. Messages are queued and drained by one sender
+ * thread per pooled producer. When <code>send-batch-size</code> is greater
+ * than one, each sender thread groups up to that many queued messages and
+ * sends them on a transacted producer with a single commit.
+ *
+ * @exclude
+ */
+class JMSAsyncSender
+{
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+
+    private final JMSProducerPool producerPool;
+    private final JMSSettings settings;
+    private final BlockingQueue queue;
+    private final int batchSize;
+    private ExecutorService senderService;
+    private volatile boolean stopped;
+    private volatile boolean abandoned;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong commitCount = new AtomicLong();
+
+    /**
+     * Constructs a <code>JMSAsyncSender</code> that sends with producers
+     * borrowed from the pool.
+     *
+     * @param producerPool The pool to borrow producers from. Its producers
+     * must be transacted if the send batch size is greater than one.
+     * @param settings The <code>JMSSettings</code> of the adapter.
+     */
+    JMSAsyncSender(JMSProducerPool producerPool, JMSSettings settings)
+    {
+        this.producerPool = producerPool;
+        this.settings = settings;
+        queue = new LinkedBlockingQueue(settings.getAsyncSendQueueSize());
+        batchSize = settings.getSendBatchSize();
+    }
+
+    /**
+     * Starts one sender thread per producer allowed by <code>max-producers</code>.
+     */
+    void start()
+    {
+        int threads = settings.getMaxProducers();
+        senderService = Executors.newFixedThreadPool(threads, new SenderThreadFactory());
+        for (int i = 0; i < threads; i++)
+            senderService.execute(new Sender());
+    }
+
+    /**
+     * Stops accepting messages and waits up to <code>async-send-stop-timeout-millis</code>
+     * for the sender threads to send the messages that are already queued.
+     * Messages that are still queued after that are counted as failed.
+     */
+    void stop()
+    {
+        stopped = true;
+        if (senderService != null)
+        {
+            senderService.shutdown();
+            boolean terminated = false;
+            try
+            {
+                terminated = senderService.awaitTermination(settings.getAsyncSendStopTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!terminated)
+            {
+                abandoned = true;
+                senderService.shutdownNow();
+            }
+        }
+
+        List unsent = new ArrayList();
+        queue.drainTo(unsent);
+        if (unsent.size() > 0)
+        {
+            failedCount.addAndGet(unsent.size());
+            if (Log.isError())
+                Log.getLogger(JMSAdapter.LOG_CATEGORY).error("JMS async sender for JMS destination '"
+                        + settings.getDestinationJNDIName() + "' failed to send " + unsent.size()
+                        + " queued messages before it was stopped.");
+        }
+    }
+
+    /**
+     * Queues a message to be sent.
+     *
+     * @param message The Flex message to send.
+     */
+    void send(Message message)
+    {
+        if (stopped)
+        {
+            MessageException me = new MessageException();
+            me.setMessage("The message could not be queued for JMS destination '"
+                    + settings.getDestinationJNDIName() + "' because the async sender has been stopped.");
+            throw me;
+        }
+
+        if (!queue.offer(message))
+        {
+            MessageException me = new MessageException();
+            me.setMessage("The message could not be queued for JMS destination '"
+                    + settings.getDestinationJNDIName() + "' because the async send queue is full.");
+            throw me;
+        }
+
+        // A stop that started after the check above may already have drained the queue.
+        if (stopped && queue.remove(message))
+        {
+            MessageException me = new MessageException();
+            me.setMessage("The message could not be queued for JMS destination '"
+                    + settings.getDestinationJNDIName() + "' because the async sender has been stopped.");
+            throw me;
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     *
+     * @return The number of messages waiting to be sent.
+     */
+    int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of messages sent.
+     *
+     * @return The number of messages sent.
+     */
+    long getSentCount()
+    {
+        return sentCount.get();
+    }
+
+    /**
+     * Returns the number of messages that could not be sent.
+     *
+     * @return The number of messages that could not be sent.
+     */
+    long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    /**
+     * Returns the number of transacted batches committed.
+     *
+     * @return The number of transacted batches committed.
+     */
+    long getCommitCount()
+    {
+        return commitCount.get();
+    }
+
+    /**
+     * Sends a batch of messages with a single borrowed producer.
+     */
+    private void sendBatch(List batch)
+    {
+        JMSProducer producer;
+        try
+        {
+            producer = producerPool.borrowProducer();
+        }
+        catch (MessageException me)
+        {
+            failedCount.addAndGet(batch.size());
+            if (Log.isError())
+                Log.getLogger(JMSAdapter.LOG_CATEGORY).error("JMS async sender could not send " + batch.size() + " messages: " + me.getMessage());
+            return;
+        }
+
+        boolean healthy = true;
+        int sent = 0;
+        int skipped = 0;
+        try
+        {
+            for (int i = 0; i < batch.size(); i++)
+            {
+                try
+                {
+                    producer.sendMessage((Message)batch.get(i));
+                    sent++;
+                }
+                catch (MessageException me)
+                {
+                    // The message itself could not be converted, skip it.
+                    skipped++;
+                    if (Log.isError())
+                        Log.getLogger(JMSAdapter.LOG_CATEGORY).error("JMS async sender could not send a message: " + me.getMessage());
+                }
+            }
+
+            if (producer.isTransacted() && sent > 0)
+            {
+                producer.commit();
+                commitCount.incrementAndGet();
+            }
+            sentCount.addAndGet(sent);
+            failedCount.addAndGet(skipped);
+        }
+        catch (JMSException jmsEx)
+        {
+            healthy = false;
+            if (producer.isTransacted())
+            {
+                // Nothing from the batch was delivered.
+                try
+                {
+                    producer.rollback();
+                }
+                catch (JMSException ignore)
+                {
+                    // The producer is discarded anyway.
+                }
+                failedCount.addAndGet(batch.size());
+            }
+            else
+            {
+                sentCount.addAndGet(sent);
+                failedCount.addAndGet(batch.size() - sent);
+            }
+
+            if (Log.isError())
+                Log.getLogger(JMSAdapter.LOG_CATEGORY).error("JMS async sender for JMS destination '"
+                        + settings.getDestinationJNDIName() + "' failed to send messages: " + jmsEx.getMessage());
+        }
+        finally
+        {
+            producerPool.returnProducer(producer, healthy);
+        }
+    }
+
+    /**
+     * Thread Factory used to create daemon sender threads.
+     */
+    class SenderThreadFactory implements ThreadFactory
+    {
+        private int senderThreadCount;
+
+        public synchronized Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("JMSAsyncSender-" + settings.getDestinationJNDIName() + "-" + senderThreadCount++);
+            return t;
+        }
+    }
+
+    /**
+     * Drains the queue in batches until the sender is stopped and the queue
+     * is empty, or until the sender gives up waiting for it to be emptied.
+     */
+    class Sender implements Runnable
+    {
+        public void run()
+        {
+            List batch = new ArrayList(batchSize);
+            while (!abandoned)
+            {
+                try
+                {
+                    Object first = stopped ? queue.poll() : queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null)
+                    {
+                        if (stopped)
+                            return;
+                        continue;
+                    }
+
+                    batch.add(first);
+                    if (batchSize > 1)
+                        queue.drainTo(batch, batchSize - 1);
+                    sendBatch(batch);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                catch (RuntimeException e)
+                {
+                    if (Log.isError())
+                        Log.getLogger(JMSAdapter.LOG_CATEGORY).error("JMS async sender encountered an unexpected error.", e);
+                }
+                finally
+                {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
@@ -27,6 +27,9 @@ public interface JMSConfigConstants
 {
     // Values used in the messaging configuration
     String ASYNC = "async";
+    String ASYNC_SEND = "async-send";
+    String ASYNC_SEND_QUEUE_SIZE = "async-send-queue-size";
+    String ASYNC_SEND_STOP_TIMEOUT_MILLIS = "async-send-stop-timeout-millis";
     String ACKNOWLEDGE_MODE = "acknowledge-mode";
     String AUTO_ACKNOWLEDGE = "auto_acknowledge";
     String CLIENT_ACKNOWLEDGE = "client_acknowledge";
@@ -52,8 +55,13 @@ public interface JMSConfigConstants
     String PASSWORD = "password";
     String PERSISTENT = "persistent";
     String PRESERVE_JMS_HEADERS = "preserve-jms-headers";
+    String PRODUCER_BORROW_TIMEOUT_MILLIS = "producer-borrow-timeout-millis";
     String PROPERTY = "property";
+    String SEND_BATCH_SIZE = "send-batch-size";
+    String SHARED_CONSUMER = "shared-consumer";
     String SYNC = "sync";
+    String SYNC_MAX_RECEIVE_THREADS = "sync-max-receive-threads";
+    String SYNC_RECEIVE_BATCH_SIZE = "sync-receive-batch-size";
     String SYNC_RECEIVE_INTERVAL_MILLIS = "sync-receive-interval-millis";
     String SYNC_RECEIVE_WAIT_MILLIS = "sync-receive-wait-millis";
     String QUEUE = "queue";
@@ -82,9 +90,17 @@ public interface JMSConfigConstants
     String defaultAcknowledgeMode = AUTO_ACKNOWLEDGE;
     String defaultDestinationType = TOPIC;
     boolean defaultPreserveJMSHeaders = true;
+    boolean defaultSharedConsumer = false;
     long defaultSyncReceiveIntervalMillis = 100;
     long defaultSyncReceiveWaitMillis = 0;
+    int defaultSyncReceiveBatchSize = 1;
+    int defaultSyncMaxReceiveThreads = 1;
     int defaultMaxProducers = 1;
+    long defaultProducerBorrowTimeoutMillis = 30000;
+    boolean defaultAsyncSend = false;
+    int defaultAsyncSendQueueSize = 10000;
+    long defaultAsyncSendStopTimeoutMillis = 10000;
+    int defaultSendBatchSize = 1;
     String defaultMode = SYNC;
 
     // Errors
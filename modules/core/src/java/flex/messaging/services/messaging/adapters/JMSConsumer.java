@@ -283,6 +283,41 @@ public abstract class JMSConsumer extends JMSProxy implements ExceptionListener
         }
     }
 
+    /**
+     * Acknowledges the receipt of a batch of messages to the JMS server and
+     * passes the batch to registered JMS message listeners. Listeners that
+     * implement <code>JMSMessageBatchListener</code> are notified once for the
+     * whole batch, other listeners once per message.
+     *
+     * @param jmsMessages The new JMS messages to acknowledge and dispatch.
+     */
+    public void onMessages(Message[] jmsMessages)
+    {
+        for (int i = 0; i < jmsMessages.length; i++)
+            acknowledgeMessage(jmsMessages[i]);
+
+        if (!jmsMessageListeners.isEmpty())
+        {
+            JMSMessageEvent batchEvent = null;
+            // CopyOnWriteArrayList is iteration-safe from ConcurrentModificationExceptions.
+            for (Iterator iter = jmsMessageListeners.iterator(); iter.hasNext();)
+            {
+                JMSMessageListener listener = (JMSMessageListener)iter.next();
+                if (listener instanceof JMSMessageBatchListener)
+                {
+                    if (batchEvent == null)
+                        batchEvent = new JMSMessageEvent(this, jmsMessages);
+                    ((JMSMessageBatchListener)listener).messagesReceived(batchEvent);
+                }
+                else
+                {
+                    for (int i = 0; i < jmsMessages.length; i++)
+                        listener.messageReceived(new JMSMessageEvent(this, jmsMessages[i]));
+                }
+            }
+        }
+    }
+
     /**
      * Receive the next message from the underlying MessageConsumer or wait
      * indefinetely until a message arrives if there is no message.
@@ -357,6 +392,10 @@ public abstract class JMSConsumer extends JMSProxy implements ExceptionListener
 
     /**
      * Used internally to acknowledge the arrival of a message to the JMS server.
+     * With CLIENT_ACKNOWLEDGE this acknowledges every message consumed by the
+     * session so far, so callers that receive on several threads must not
+     * acknowledge while another thread holds received messages that have not
+     * been delivered yet.
      *
      * @param message The JMS message to acknowledge.
      */
@@ -425,7 +464,9 @@ public abstract class JMSConsumer extends JMSProxy implements ExceptionListener
                     Log.getLogger(JMSAdapter.LOG_CATEGORY).info("JMS consumer for JMS destination '"
                             + destinationJndiName +"' is using sync message receiver"
                             + " with sync-receive-interval-millis: " + smr.getSyncReceiveIntervalMillis()
-                            + ", sync-receive-wait-millis: " + smr.getSyncReceiveWaitMillis());
+                            + ", sync-receive-wait-millis: " + smr.getSyncReceiveWaitMillis()
+                            + ", sync-receive-batch-size: " + smr.getSyncReceiveBatchSize()
+                            + ", sync-max-receive-threads: " + smr.getSyncMaxReceiveThreads());
                 }
             }
         }
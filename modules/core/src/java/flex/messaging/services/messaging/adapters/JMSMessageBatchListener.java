@@ -0,0 +1,38 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging.adapters;
+
+/**
+ * An interface to be notified when a batch of JMS messages is received by the
+ * JMS consumer. JMS message listeners that implement this interface receive
+ * the messages drained by a single sync receive in one notification rather
+ * than one <code>messageReceived</code> call per message.
+ *
+ * @exclude
+ */
+public interface JMSMessageBatchListener extends JMSMessageListener
+{
+    /**
+     * Notification that a batch of JMS messages was received.
+     *
+     * @param evt JMSMessageEvent to dispatch, with the batch available
+     * through <code>getJMSMessages</code>.
+     */
+    public void messagesReceived(JMSMessageEvent evt);
+}
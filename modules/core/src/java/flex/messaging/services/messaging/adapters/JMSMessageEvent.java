@@ -31,6 +31,7 @@ import javax.jms.Message;
 public class JMSMessageEvent extends EventObject
 {
     private Message message;
+    private Message[] messages;
 
     /**
      * Create a new JMSMessageEvent with the source and message.
@@ -45,7 +46,23 @@ public class JMSMessageEvent extends EventObject
     }
 
     /**
-     * Return the JMS message of the event.
+     * Create a new JMSMessageEvent with the source and a batch of messages
+     * received together.
+     *
+     * @param source The source of the messages.
+     * @param messages The JMS messages in the order they were received.
+     */
+    JMSMessageEvent(JMSConsumer source, javax.jms.Message[] messages)
+    {
+        super(source);
+        this.messages = messages;
+        if (messages.length > 0)
+            message = messages[0];
+    }
+
+    /**
+     * Return the JMS message of the event. For a batch event, this is the
+     * first message of the batch.
      *
      * @return The JMS message of the event.
      */
@@ -53,4 +70,16 @@ public class JMSMessageEvent extends EventObject
     {
         return message;
     }
-}
\ No newline at end of file
+
+    /**
+     * Return the JMS messages of the event.
+     *
+     * @return The JMS messages of the event in the order they were received.
+     */
+    public Message[] getJMSMessages()
+    {
+        if (messages == null)
+            messages = new Message[] {message};
+        return messages;
+    }
+}
\ No newline at end of file
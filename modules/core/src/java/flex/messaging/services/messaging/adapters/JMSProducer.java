@@ -45,6 +45,7 @@ public abstract class JMSProducer extends JMSProxy
     protected int deliveryMode;
     protected int messagePriority;
     protected String messageType;
+    protected boolean transacted;
 
     //--------------------------------------------------------------------------
     //
@@ -222,6 +223,51 @@ public abstract class JMSProducer extends JMSProxy
         this.messageType = messageType;
     }
 
+    /**
+     * Returns whether the <code>JMSProducer</code> uses a transacted session.
+     *
+     * @return <code>true</code> if the session is transacted; otherwise <code>false</code>.
+     */
+    public boolean isTransacted()
+    {
+        return transacted;
+    }
+
+    /**
+     * Sets whether the <code>JMSProducer</code> uses a transacted session, in
+     * which case sent messages are only delivered once <code>commit</code> is
+     * called. This property is optional, defaults to false and it should not
+     * change after startup.
+     *
+     * @param transacted <code>true</code> to use a transacted session.
+     */
+    public void setTransacted(boolean transacted)
+    {
+        this.transacted = transacted;
+    }
+
+    /**
+     * Commits the messages sent since the last commit or rollback. Only
+     * applicable when the <code>JMSProducer</code> is transacted.
+     *
+     * @throws JMSException The thrown JMS exception.
+     */
+    public void commit() throws JMSException
+    {
+        session.commit();
+    }
+
+    /**
+     * Discards the messages sent since the last commit or rollback. Only
+     * applicable when the <code>JMSProducer</code> is transacted.
+     *
+     * @throws JMSException The thrown JMS exception.
+     */
+    public void rollback() throws JMSException
+    {
+        session.rollback();
+    }
+
     //--------------------------------------------------------------------------
     //
     // Protected and Private Methods
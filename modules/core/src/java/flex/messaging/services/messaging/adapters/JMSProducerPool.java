@@ -0,0 +1,340 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2002 - 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging.adapters;
+
+import java.util.LinkedList;
+
+import flex.messaging.MessageException;
+import flex.messaging.log.Log;
+
+/**
+ * A bounded pool of started <code>JMSProducer</code>s for a single JMS
+ * destination. A producer is used by one thread at a time; callers borrow
+ * a producer, send with it and return it. Producers that fail while in use
+ * are returned as unhealthy and are stopped and discarded rather than reused,
+ * so that a new one is started on demand.
+ *
+ * @exclude
+ */
+class JMSProducerPool
+{
+    private final JMSSettings settings;
+    private final boolean transacted;
+
+    private final Object lock = new Object();
+    private final LinkedList idleProducers = new LinkedList();
+    private int producerCount;
+    private boolean stopped;
+
+    // Pool metrics, guarded by lock.
+    private long borrowCount;
+    private long borrowWaitCount;
+    private long borrowTimeoutCount;
+    private long createdCount;
+    private long discardedCount;
+
+    /**
+     * Constructs a <code>JMSProducerPool</code> for the destination described
+     * by the settings. The pool holds at most <code>max-producers</code> producers.
+     *
+     * @param settings The <code>JMSSettings</code> used to initialize producers.
+     * @param transacted Whether producers use transacted sessions.
+     */
+    JMSProducerPool(JMSSettings settings, boolean transacted)
+    {
+        this.settings = settings;
+        this.transacted = transacted;
+    }
+
+    /**
+     * Borrows a producer from the pool, starting a new one if all pooled
+     * producers are in use and the pool has not reached its maximum size.
+     * Otherwise, waits up to <code>producer-borrow-timeout-millis</code> for
+     * a producer to be returned.
+     *
+     * @return A started <code>JMSProducer</code> for exclusive use by the caller.
+     */
+    JMSProducer borrowProducer()
+    {
+        synchronized (lock)
+        {
+            long timeout = settings.getProducerBorrowTimeoutMillis();
+            long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+            boolean waited = false;
+            while (true)
+            {
+                if (stopped)
+                {
+                    MessageException me = new MessageException();
+                    me.setMessage("JMS producer pool for JMS destination '" + settings.getDestinationJNDIName() + "' has been stopped.");
+                    throw me;
+                }
+
+                if (!idleProducers.isEmpty())
+                {
+                    borrowCount++;
+                    return (JMSProducer)idleProducers.removeFirst();
+                }
+
+                if (producerCount < settings.getMaxProducers())
+                {
+                    // Reserve the slot and start the producer outside of the lock.
+                    producerCount++;
+                    borrowCount++;
+                    break;
+                }
+
+                if (!waited)
+                {
+                    waited = true;
+                    borrowWaitCount++;
+                }
+
+                long waitMillis = 0;
+                if (deadline != 0)
+                {
+                    waitMillis = deadline - System.currentTimeMillis();
+                    if (waitMillis <= 0)
+                    {
+                        borrowTimeoutCount++;
+                        MessageException me = new MessageException();
+                        me.setMessage("Timed out after " + timeout + " ms waiting for a JMS producer for JMS destination '"
+                                + settings.getDestinationJNDIName() + "'.");
+                        throw me;
+                    }
+                }
+
+                try
+                {
+                    lock.wait(waitMillis);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MessageException(e);
+                }
+            }
+        }
+
+        try
+        {
+            JMSProducer producer = createProducer();
+            synchronized (lock)
+            {
+                createdCount++;
+            }
+            return producer;
+        }
+        catch (RuntimeException e)
+        {
+            releaseSlot();
+            throw e;
+        }
+        catch (Exception e)
+        {
+            releaseSlot();
+            throw new MessageException(e);
+        }
+    }
+
+    /**
+     * Returns a borrowed producer to the pool.
+     *
+     * @param producer The borrowed producer.
+     * @param healthy <code>false</code> if the producer failed while in use, in
+     * which case it is stopped and discarded.
+     */
+    void returnProducer(JMSProducer producer, boolean healthy)
+    {
+        synchronized (lock)
+        {
+            if (healthy && !stopped)
+            {
+                // Most recently used first so that surplus producers stay idle.
+                idleProducers.addFirst(producer);
+                lock.notify();
+                return;
+            }
+            if (!healthy)
+                discardedCount++;
+        }
+
+        producer.stop();
+        releaseSlot();
+    }
+
+    /**
+     * Stops all idle producers and prevents further borrows. Producers that
+     * are in use are stopped when they are returned.
+     */
+    void stop()
+    {
+        Object[] producers;
+        synchronized (lock)
+        {
+            stopped = true;
+            producers = idleProducers.toArray();
+            idleProducers.clear();
+            producerCount -= producers.length;
+            lock.notifyAll();
+        }
+
+        for (int i = 0; i < producers.length; i++)
+            ((JMSProducer)producers[i]).stop();
+    }
+
+    /**
+     * Returns the number of started producers, both idle and in use.
+     *
+     * @return The number of started producers.
+     */
+    int getProducerCount()
+    {
+        synchronized (lock)
+        {
+            return producerCount;
+        }
+    }
+
+    /**
+     * Returns the number of producers currently borrowed.
+     *
+     * @return The number of producers currently borrowed.
+     */
+    int getActiveProducerCount()
+    {
+        synchronized (lock)
+        {
+            return producerCount - idleProducers.size();
+        }
+    }
+
+    /**
+     * Returns the number of idle producers.
+     *
+     * @return The number of idle producers.
+     */
+    int getIdleProducerCount()
+    {
+        synchronized (lock)
+        {
+            return idleProducers.size();
+        }
+    }
+
+    /**
+     * Returns the number of successful borrows.
+     *
+     * @return The number of successful borrows.
+     */
+    long getBorrowCount()
+    {
+        synchronized (lock)
+        {
+            return borrowCount;
+        }
+    }
+
+    /**
+     * Returns the number of borrows that had to wait for a producer.
+     *
+     * @return The number of borrows that had to wait for a producer.
+     */
+    long getBorrowWaitCount()
+    {
+        synchronized (lock)
+        {
+            return borrowWaitCount;
+        }
+    }
+
+    /**
+     * Returns the number of borrows that timed out.
+     *
+     * @return The number of borrows that timed out.
+     */
+    long getBorrowTimeoutCount()
+    {
+        synchronized (lock)
+        {
+            return borrowTimeoutCount;
+        }
+    }
+
+    /**
+     * Returns the number of producers started by the pool.
+     *
+     * @return The number of producers started by the pool.
+     */
+    long getCreatedCount()
+    {
+        synchronized (lock)
+        {
+            return createdCount;
+        }
+    }
+
+    /**
+     * Returns the number of producers discarded because they failed.
+     *
+     * @return The number of producers discarded because they failed.
+     */
+    long getDiscardedCount()
+    {
+        synchronized (lock)
+        {
+            return discardedCount;
+        }
+    }
+
+    private JMSProducer createProducer() throws Exception
+    {
+        JMSProducer producer;
+        if (settings.getDestinationType().equals(JMSConfigConstants.TOPIC))
+            producer = new JMSTopicProducer();
+        else
+            producer = new JMSQueueProducer();
+
+        producer.initialize(settings);
+        producer.setTransacted(transacted);
+        try
+        {
+            producer.start();
+        }
+        catch (Exception e)
+        {
+            producer.stop();
+            throw e;
+        }
+
+        if (Log.isDebug())
+            Log.getLogger(JMSAdapter.LOG_CATEGORY).debug("JMS producer pool for JMS destination '"
+                    + settings.getDestinationJNDIName() + "' started a new producer.");
+        return producer;
+    }
+
+    private void releaseSlot()
+    {
+        synchronized (lock)
+        {
+            producerCount--;
+            lock.notify();
+        }
+    }
+}
@@ -83,7 +83,7 @@ public class JMSQueueProducer extends JMSProducer
 
         // Create queue session on the connection
         QueueConnection queueConnection = (QueueConnection) connection;
-        session = queueConnection.createQueueSession(false, getAcknowledgeMode());
+        session = queueConnection.createQueueSession(transacted, getAcknowledgeMode());
 
         // Create sender on the queue session
         QueueSession queueSession = (QueueSession)session;
@@ -41,6 +41,12 @@ public class JMSSettings
     private int messagePriority;
     private String messageType;
     private boolean preserveJMSHeaders;
+    private boolean sharedConsumer;
+    private long producerBorrowTimeoutMillis;
+    private boolean asyncSend;
+    private int asyncSendQueueSize;
+    private long asyncSendStopTimeoutMillis;
+    private int sendBatchSize;
 
     /**
      * Creates a <code>JMSSettings</code> instance with the following default
@@ -57,6 +63,12 @@ public class JMSSettings
         maxProducers = JMSConfigConstants.defaultMaxProducers;
         messagePriority = javax.jms.Message.DEFAULT_PRIORITY;
         preserveJMSHeaders = JMSConfigConstants.defaultPreserveJMSHeaders;
+        sharedConsumer = JMSConfigConstants.defaultSharedConsumer;
+        producerBorrowTimeoutMillis = JMSConfigConstants.defaultProducerBorrowTimeoutMillis;
+        asyncSend = JMSConfigConstants.defaultAsyncSend;
+        asyncSendQueueSize = JMSConfigConstants.defaultAsyncSendQueueSize;
+        asyncSendStopTimeoutMillis = JMSConfigConstants.defaultAsyncSendStopTimeoutMillis;
+        sendBatchSize = JMSConfigConstants.defaultSendBatchSize;
     }
 
     /**
@@ -393,6 +405,129 @@ public class JMSSettings
         maxProducers = value;
     }
 
+    /**
+     * Returns the <code>producer-borrow-timeout-millis</code> property.
+     *
+     * @return The <code>producer-borrow-timeout-millis</code> property.
+     */
+    public long getProducerBorrowTimeoutMillis()
+    {
+        return producerBorrowTimeoutMillis;
+    }
+
+    /**
+     * Sets the <code>producer-borrow-timeout-millis</code> property which is
+     * how long a publish waits for a producer when all <code>max-producers</code>
+     * producers are in use. This property is optional and defaults to 30000.
+     * Zero means wait until a producer is available.
+     *
+     * @param value A non-negative long for the borrow timeout in milliseconds.
+     */
+    public void setProducerBorrowTimeoutMillis(long value)
+    {
+        if (value < 0)
+            value = JMSConfigConstants.defaultProducerBorrowTimeoutMillis;
+        producerBorrowTimeoutMillis = value;
+    }
+
+    /**
+     * Returns the <code>async-send</code> property.
+     *
+     * @return The <code>async-send</code> property.
+     */
+    public boolean isAsyncSend()
+    {
+        return asyncSend;
+    }
+
+    /**
+     * Sets the <code>async-send</code> property. When <code>true</code>, messages
+     * published by Flex clients are queued and sent to the JMS server by
+     * background threads, and the publish is acknowledged before the message
+     * reaches the JMS server. This property is optional and defaults to false.
+     *
+     * @param asyncSend The <code>async-send</code> property.
+     */
+    public void setAsyncSend(boolean asyncSend)
+    {
+        this.asyncSend = asyncSend;
+    }
+
+    /**
+     * Returns the <code>async-send-queue-size</code> property.
+     *
+     * @return The <code>async-send-queue-size</code> property.
+     */
+    public int getAsyncSendQueueSize()
+    {
+        return asyncSendQueueSize;
+    }
+
+    /**
+     * Sets the <code>async-send-queue-size</code> property which is the maximum
+     * number of messages waiting to be sent when <code>async-send</code> is
+     * enabled. Publishes fail once the queue is full. This property is optional
+     * and defaults to 10000.
+     *
+     * @param value A positive int for the maximum queue size.
+     */
+    public void setAsyncSendQueueSize(int value)
+    {
+        if (value < 1)
+            value = JMSConfigConstants.defaultAsyncSendQueueSize;
+        asyncSendQueueSize = value;
+    }
+
+    /**
+     * Returns the <code>async-send-stop-timeout-millis</code> property.
+     *
+     * @return The <code>async-send-stop-timeout-millis</code> property.
+     */
+    public long getAsyncSendStopTimeoutMillis()
+    {
+        return asyncSendStopTimeoutMillis;
+    }
+
+    /**
+     * Sets the <code>async-send-stop-timeout-millis</code> property which is
+     * how long stopping the adapter waits for queued messages to be sent when
+     * <code>async-send</code> is enabled. Messages still queued after that are
+     * counted as failed. This property is optional and defaults to 10000.
+     *
+     * @param value A non-negative long for the stop timeout in milliseconds.
+     */
+    public void setAsyncSendStopTimeoutMillis(long value)
+    {
+        if (value < 0)
+            value = JMSConfigConstants.defaultAsyncSendStopTimeoutMillis;
+        asyncSendStopTimeoutMillis = value;
+    }
+
+    /**
+     * Returns the <code>send-batch-size</code> property.
+     *
+     * @return The <code>send-batch-size</code> property.
+     */
+    public int getSendBatchSize()
+    {
+        return sendBatchSize;
+    }
+
+    /**
+     * Sets the <code>send-batch-size</code> property which is the maximum
+     * number of queued messages that are sent in a single JMS transaction when
+     * <code>async-send</code> is enabled. A value greater than 1 makes producers
+     * use transacted sessions. This property is optional and defaults to 1.
+     *
+     * @param value A positive int for the maximum batch size.
+     */
+    public void setSendBatchSize(int value)
+    {
+        if (value < 1)
+            value = JMSConfigConstants.defaultSendBatchSize;
+        sendBatchSize = value;
+    }
+
     /**
      * Returns the <code>message-priority</code> property.
      *
@@ -467,6 +602,31 @@ public class JMSSettings
         this.preserveJMSHeaders = preserveJMSHeaders;
     }
 
+    /**
+     * Returns the <code>shared-consumer</code> property.
+     *
+     * @return The <code>shared-consumer</code> property.
+     */
+    public boolean isSharedConsumer()
+    {
+        return sharedConsumer;
+    }
+
+    /**
+     * Sets the <code>shared-consumer</code> property. When <code>true</code>,
+     * all Flex subscribers to a non-durable topic destination share a single
+     * JMS consumer and each subscriber's selector is evaluated by the
+     * destination's subscription manager rather than by the JMS server.
+     * The property is ignored for queues and durable destinations. This
+     * property is optional and defaults to false.
+     *
+     * @param sharedConsumer The <code>shared-consumer</code> property.
+     */
+    public void setSharedConsumer(boolean sharedConsumer)
+    {
+        this.sharedConsumer = sharedConsumer;
+    }
+
     /**
      * Transacted-session property is not used anymore.
      *
@@ -501,6 +661,8 @@ public class JMSSettings
     public static class DeliverySettings
     {
         private String mode;
+        private int syncMaxReceiveThreads;
+        private int syncReceiveBatchSize;
         private long syncReceiveIntervalMillis;
         private long syncReceiveWaitMillis;
 
@@ -513,6 +675,8 @@ public class JMSSettings
             mode = JMSConfigConstants.SYNC;
             syncReceiveIntervalMillis = JMSConfigConstants.defaultSyncReceiveIntervalMillis;
             syncReceiveWaitMillis = JMSConfigConstants.defaultSyncReceiveWaitMillis;
+            syncReceiveBatchSize = JMSConfigConstants.defaultSyncReceiveBatchSize;
+            syncMaxReceiveThreads = JMSConfigConstants.defaultSyncMaxReceiveThreads;
         }
 
         /**
@@ -550,6 +714,56 @@ public class JMSSettings
             this.mode = mode;
         }
 
+        /**
+         * Returns the number of threads used for sync message receive.
+         *
+         * @return The number of threads used for sync message receive.
+         */
+        public int getSyncMaxReceiveThreads()
+        {
+            return syncMaxReceiveThreads;
+        }
+
+        /**
+         * Sets the number of threads used for sync message receive. More than
+         * one thread is only used for queue destinations, as topic messages
+         * must be delivered in order. This property is optional and defaults to 1.
+         *
+         * @param syncMaxReceiveThreads A positive int that indicates the
+         * number of receive threads.
+         */
+        public void setSyncMaxReceiveThreads(int syncMaxReceiveThreads)
+        {
+            if (syncMaxReceiveThreads < 1)
+                syncMaxReceiveThreads = JMSConfigConstants.defaultSyncMaxReceiveThreads;
+            this.syncMaxReceiveThreads = syncMaxReceiveThreads;
+        }
+
+        /**
+         * Returns the maximum number of messages dispatched as one batch by
+         * sync message receive.
+         *
+         * @return The maximum number of messages per batch.
+         */
+        public int getSyncReceiveBatchSize()
+        {
+            return syncReceiveBatchSize;
+        }
+
+        /**
+         * Sets the maximum number of messages dispatched as one batch by sync
+         * message receive. This property is optional and defaults to 1.
+         *
+         * @param syncReceiveBatchSize A positive int that indicates the
+         * maximum number of messages per batch.
+         */
+        public void setSyncReceiveBatchSize(int syncReceiveBatchSize)
+        {
+            if (syncReceiveBatchSize < 1)
+                syncReceiveBatchSize = JMSConfigConstants.defaultSyncReceiveBatchSize;
+            this.syncReceiveBatchSize = syncReceiveBatchSize;
+        }
+
         /**
          * Returns the interval of the sync receive message call.
          *
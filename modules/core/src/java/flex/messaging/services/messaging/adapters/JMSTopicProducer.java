@@ -82,7 +82,7 @@ public class JMSTopicProducer extends JMSProducer
 
         // Create topic session on the connection
         TopicConnection topicConnection = (TopicConnection)connection;
-        session = topicConnection.createTopicSession(false /* Always nontransacted */, getAcknowledgeMode());
+        session = topicConnection.createTopicSession(transacted, getAcknowledgeMode());
 
         // Create publisher on the topic session
         TopicSession topicSession = (TopicSession)session;
@@ -18,8 +18,12 @@
  **************************************************************************/
 package flex.messaging.services.messaging.adapters;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.Session;
 
 import edu.emory.mathcs.backport.java.util.concurrent.Executors;
 import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
@@ -41,9 +45,19 @@ class SyncMessageReceiver implements MessageReceiver
 
     private JMSConsumer jmsConsumer;
     private int syncMaxReceiveThreads;
+    private int syncReceiveBatchSize;
     private long syncReceiveIntervalMillis;
     private long syncReceiveWaitMillis;
 
+    /**
+     * The underlying JMS session is single-threaded, so receive calls from
+     * multiple receive threads are serialized on this lock. The dispatch of
+     * the received batches runs in parallel, except with CLIENT_ACKNOWLEDGE:
+     * acknowledging a message acknowledges everything the session has consumed,
+     * so there the lock is held until the batch is acknowledged and delivered.
+     */
+    private final Object receiveLock = new Object();
+
     /**
      * Constructs a new <code>SyncMessageReceiver</code> with default delivery settings.
      *
@@ -54,7 +68,62 @@ class SyncMessageReceiver implements MessageReceiver
         this.jmsConsumer = jmsConsumer;
         syncReceiveIntervalMillis = JMSConfigConstants.defaultSyncReceiveIntervalMillis;
         syncReceiveWaitMillis = JMSConfigConstants.defaultSyncReceiveWaitMillis;
-        syncMaxReceiveThreads = 1; // Always use one thread.
+        syncReceiveBatchSize = JMSConfigConstants.defaultSyncReceiveBatchSize;
+        syncMaxReceiveThreads = JMSConfigConstants.defaultSyncMaxReceiveThreads;
+    }
+
+    /**
+     * Returns the maximum number of messages dispatched together per receive.
+     *
+     * @return The maximum number of messages dispatched together per receive.
+     */
+    public int getSyncReceiveBatchSize()
+    {
+        return syncReceiveBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of messages that are drained from the JMS
+     * consumer and dispatched together as a batch. Each tick keeps draining
+     * batches until no message is available. This property is optional and
+     * defaults to 1, which dispatches every message individually.
+     *
+     * @param syncReceiveBatchSize A positive int that indicates the maximum
+     * number of messages per batch.
+     */
+    public void setSyncReceiveBatchSize(int syncReceiveBatchSize)
+    {
+        if (syncReceiveBatchSize < 1)
+            syncReceiveBatchSize = JMSConfigConstants.defaultSyncReceiveBatchSize;
+        this.syncReceiveBatchSize = syncReceiveBatchSize;
+    }
+
+    /**
+     * Returns the number of threads used to receive and dispatch messages.
+     *
+     * @return The number of threads used to receive and dispatch messages.
+     */
+    public int getSyncMaxReceiveThreads()
+    {
+        return syncMaxReceiveThreads;
+    }
+
+    /**
+     * Sets the number of threads used to receive and dispatch messages. Only
+     * queue consumers should use more than one thread, as messages dispatched
+     * by different threads may reach subscribers out of order. With
+     * CLIENT_ACKNOWLEDGE the threads take turns, since a batch must be
+     * delivered before the session acknowledges it. This property is optional
+     * and defaults to 1.
+     *
+     * @param syncMaxReceiveThreads A positive int that indicates the number
+     * of receive threads.
+     */
+    public void setSyncMaxReceiveThreads(int syncMaxReceiveThreads)
+    {
+        if (syncMaxReceiveThreads < 1)
+            syncMaxReceiveThreads = JMSConfigConstants.defaultSyncMaxReceiveThreads;
+        this.syncMaxReceiveThreads = syncMaxReceiveThreads;
     }
 
     /**
@@ -120,7 +189,8 @@ class SyncMessageReceiver implements MessageReceiver
 
             ThreadFactory mrtf = new MessageReceiveThreadFactory();
             messageReceiverService = Executors.newScheduledThreadPool(syncMaxReceiveThreads, mrtf);
-            messageReceiverService.scheduleAtFixedRate(new MessageReceiveThread(), syncReceiveIntervalMillis, syncReceiveIntervalMillis, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < syncMaxReceiveThreads; i++)
+                messageReceiverService.scheduleAtFixedRate(new MessageReceiveThread(), syncReceiveIntervalMillis, syncReceiveIntervalMillis, TimeUnit.MILLISECONDS);
             isScheduled = true;
         }
     }
@@ -148,6 +218,75 @@ class SyncMessageReceiver implements MessageReceiver
         return null;
     }
 
+    /**
+     * Used internally to receive up to syncReceiveBatchSize messages. The first
+     * message is received as determined by syncReceiveWaitMillis and the rest
+     * of the batch is filled with the messages that are immediately available.
+     *
+     * @return The received messages, or null if there was no message.
+     */
+    private Message[] receiveMessages() throws JMSException
+    {
+        Message message = receiveMessage();
+        if (message == null)
+            return null;
+
+        if (syncReceiveBatchSize == 1)
+            return new Message[] {message};
+
+        List batch = new ArrayList(syncReceiveBatchSize);
+        batch.add(message);
+        while (batch.size() < syncReceiveBatchSize)
+        {
+            message = jmsConsumer.receiveNoWait();
+            if (message == null)
+                break;
+            batch.add(message);
+        }
+        return (Message[])batch.toArray(new Message[batch.size()]);
+    }
+
+    /**
+     * Used internally to receive one batch of messages and pass it to the
+     * JMS consumer for acknowledgement and dispatch.
+     *
+     * @return false if there was no message.
+     */
+    private boolean receiveAndDispatch() throws JMSException
+    {
+        Message[] messages;
+        if (jmsConsumer.getAcknowledgeMode() == Session.CLIENT_ACKNOWLEDGE)
+        {
+            // Acknowledging also acknowledges every message other threads have
+            // received on the session, so none may be pending delivery then.
+            synchronized (receiveLock)
+            {
+                messages = receiveMessages();
+                if (messages == null)
+                    return false;
+                dispatch(messages);
+            }
+            return true;
+        }
+
+        synchronized (receiveLock)
+        {
+            messages = receiveMessages();
+        }
+        if (messages == null)
+            return false;
+        dispatch(messages);
+        return true;
+    }
+
+    private void dispatch(Message[] messages)
+    {
+        if (messages.length == 1)
+            jmsConsumer.onMessage(messages[0]);
+        else
+            jmsConsumer.onMessages(messages);
+    }
+
     /**
      * Thread Factory used to create message receive threads.
      */
@@ -186,12 +325,10 @@ class SyncMessageReceiver implements MessageReceiver
         {
             try
             {
-                while (true)
-                {
-                    Message message = receiveMessage();
-                    if (message == null) break;
-                    jmsConsumer.onMessage(message);
-                }
+                // Keep draining batches until no message is available.
+                boolean received = true;
+                while (received)
+                    received = receiveAndDispatch();
             }
             catch (JMSException jmsEx)
             {
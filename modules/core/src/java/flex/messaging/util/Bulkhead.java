@@ -0,0 +1,209 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @exclude
+ *
+ * Limits how many threads may be inside a section of code at once, so that one
+ * slow resource cannot tie up every request thread of the container. A caller
+ * that finds all permits taken waits for at most <code>waitTimeoutMillis</code>,
+ * and only if fewer than <code>maxWaiting</code> other callers are already
+ * waiting; otherwise it is rejected immediately.
+ * <p>
+ * Callers run on their own thread, which keeps thread local state such as
+ * <code>FlexContext</code> intact. Every successful <code>tryEnter()</code> must be
+ * matched by exactly one <code>exit()</code>.
+ * </p>
+ */
+public class Bulkhead
+{
+    //--------------------------------------------------------------------------
+    //
+    // Public Static Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /** Configuration element for bulkhead settings. */
+    public static final String BULKHEAD_ELEMENT = "bulkhead";
+
+    /** Configuration element for the maximum number of concurrent callers. */
+    public static final String MAX_CONCURRENT_ELEMENT = "max-concurrent-requests";
+
+    /** Configuration element for the maximum number of waiting callers. */
+    public static final String MAX_WAITING_ELEMENT = "max-waiting-requests";
+
+    /** Configuration element for the time a caller may wait for a permit. */
+    public static final String WAIT_TIMEOUT_ELEMENT = "wait-timeout-millis";
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a <code>Bulkhead</code>.
+     *
+     * @param maxConcurrent The number of callers allowed in at once; must be positive.
+     * @param maxWaiting The number of callers allowed to wait for a permit.
+     * @param waitTimeoutMillis How long a caller may wait for a permit; zero never waits.
+     */
+    public Bulkhead(int maxConcurrent, int maxWaiting, long waitTimeoutMillis)
+    {
+        if (maxConcurrent < 1)
+            throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaiting = Math.max(0, maxWaiting);
+        this.waitTimeoutMillis = Math.max(0, waitTimeoutMillis);
+        permits = new Semaphore(maxConcurrent);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final long waitTimeoutMillis;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Tries to enter the bulkhead, waiting for a permit if allowed.
+     *
+     * @return <code>true</code> if the caller entered and must call <code>exit()</code>;
+     * <code>false</code> if it was rejected.
+     */
+    public boolean tryEnter()
+    {
+        if (permits.tryAcquire())
+            return true;
+
+        if (waitTimeoutMillis > 0)
+        {
+            if (waiting.incrementAndGet() <= maxWaiting)
+            {
+                try
+                {
+                    if (permits.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS))
+                        return true;
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    waiting.decrementAndGet();
+                }
+            }
+            else
+            {
+                waiting.decrementAndGet();
+            }
+        }
+
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Leaves the bulkhead, releasing the permit taken by <code>tryEnter()</code>.
+     */
+    public void exit()
+    {
+        permits.release();
+    }
+
+    /**
+     * Returns the number of callers currently inside the bulkhead.
+     *
+     * @return The number of callers currently inside the bulkhead.
+     */
+    public int getActiveCount()
+    {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of callers currently waiting for a permit.
+     *
+     * @return The number of callers currently waiting for a permit.
+     */
+    public int getWaitingCount()
+    {
+        return Math.min(waiting.get(), maxWaiting);
+    }
+
+    /**
+     * Returns the number of callers rejected since the bulkhead was created.
+     *
+     * @return The number of callers rejected.
+     */
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of callers allowed in at once.
+     *
+     * @return The number of callers allowed in at once.
+     */
+    public int getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+
+    /**
+     * Returns the number of callers allowed to wait for a permit.
+     *
+     * @return The number of callers allowed to wait for a permit.
+     */
+    public int getMaxWaiting()
+    {
+        return maxWaiting;
+    }
+
+    /**
+     * Returns how long a caller may wait for a permit, in milliseconds.
+     *
+     * @return How long a caller may wait for a permit, in milliseconds.
+     */
+    public long getWaitTimeoutMillis()
+    {
+        return waitTimeoutMillis;
+    }
+}
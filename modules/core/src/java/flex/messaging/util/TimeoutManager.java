@@ -18,18 +18,33 @@
  **************************************************************************/
 package flex.messaging.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import flex.messaging.log.Log;
 import flex.messaging.log.LogCategories;
 
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentLinkedQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.Executors;
 import edu.emory.mathcs.backport.java.util.concurrent.Future;
-import edu.emory.mathcs.backport.java.util.concurrent.ScheduledThreadPoolExecutor;
+import edu.emory.mathcs.backport.java.util.concurrent.RejectedExecutionException;
 import edu.emory.mathcs.backport.java.util.concurrent.ThreadFactory;
 import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeoutException;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This class provides a means of managing TimeoutCapable objects. It leverages
- * facilities in the the Java concurrency package to provide a common utility
- * for scheduling timeout Futures and managing the underlying worker thread pools.
+ * This class provides a means of managing TimeoutCapable objects. Timeouts are
+ * tracked in a hashed timing wheel driven by a single worker thread, so scheduling
+ * and cancelling a timeout are constant time operations regardless of how many
+ * sessions, clients and subscriptions are being tracked. Each tick the worker
+ * expires every due timeout in the current wheel bucket as one batch, either on
+ * the worker thread itself or, if configured, on a pool of expiry threads.
+ *
+ * Timeouts are rescheduled rather than expired when the object has been used
+ * since it was scheduled, as described by the TimeoutCapable contract.
  *
  * @author neville
  * @exclude
@@ -38,9 +53,38 @@ public class TimeoutManager
 {
     private static final String LOG_CATEGORY = LogCategories.TIMEOUT;
 
-    private ScheduledThreadPoolExecutor timeoutService;
+    /**
+     * Default duration of a wheel tick, which is also the precision of the timeouts.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    /**
+     * Default number of buckets in the wheel; one revolution of the default wheel
+     * takes a little under a minute.
+     */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /**
+     * Maximum number of newly scheduled timeouts moved into the wheel per tick so
+     * a burst of schedules cannot delay expiry indefinitely.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private final ThreadFactory threadFactory;
+    private final long tickMillis;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final int expiryThreads;
+    private final ConcurrentLinkedQueue pendingTimeouts = new ConcurrentLinkedQueue();
+    private final ConcurrentLinkedQueue cancelledTimeouts = new ConcurrentLinkedQueue();
+    private final AtomicInteger scheduledCount = new AtomicInteger();
+    private final Object lock = new Object();
+
+    private Thread workerThread;
+    private ExecutorService expiryService;
+    private volatile boolean shutdown;
+    private long startTime;
 
-    
     /**
      * Default constructor calls parameterized constructor will a null factory argument.
      */
@@ -51,99 +95,169 @@ public class TimeoutManager
 
     /**
      * Constructs a new TimeoutManager using the passed in factory for thread creation.
-     * 
+     *
      * @param tf ThreadFactory
      */
     public TimeoutManager(ThreadFactory tf)
+    {
+        this(tf, 1);
+    }
+
+    /**
+     * Constructs a new TimeoutManager using the passed in factory for thread creation
+     * and the given number of threads to expire timed out objects on.
+     *
+     * @param tf ThreadFactory
+     * @param expiryThreads number of threads that invoke <code>timeout()</code>; when 1 or
+     * less, objects are timed out on the wheel thread itself
+     */
+    public TimeoutManager(ThreadFactory tf, int expiryThreads)
+    {
+        this(tf, DEFAULT_TICK_MILLIS, DEFAULT_TICKS_PER_WHEEL, expiryThreads);
+    }
+
+    /**
+     * Constructs a new TimeoutManager with a custom wheel layout.
+     *
+     * @param tf ThreadFactory
+     * @param tickMillis duration of a wheel tick in milliseconds
+     * @param ticksPerWheel number of buckets in the wheel, rounded up to a power of two
+     * @param expiryThreads number of threads that invoke <code>timeout()</code>; when 1 or
+     * less, objects are timed out on the wheel thread itself
+     */
+    public TimeoutManager(ThreadFactory tf, long tickMillis, int ticksPerWheel, int expiryThreads)
     {
         if (tf == null)
         {
             tf = new MonitorThreadFactory();
         }
-        timeoutService = new ScheduledThreadPoolExecutor(1, tf);
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tickMillis must be greater than 0: " + tickMillis);
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30))
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30: " + ticksPerWheel);
+
+        int size = 1;
+        while (size < ticksPerWheel)
+            size <<= 1;
+
+        threadFactory = tf;
+        this.tickMillis = tickMillis;
+        this.expiryThreads = expiryThreads;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+        mask = size - 1;
     }
 
     /**
      * Schedule a task to be executed in the future.
-     * 
+     *
      * @param t task to be executed at some future time
      * @return a Future object that enables access to the value(s) returned by the task
      */
     public Future scheduleTimeout(TimeoutCapable t)
     {
-        Future future = null;
+        WheelTimeout timeout = null;
         if (t.getTimeoutPeriod() > 0)
         {
-            Runnable timeoutTask = new TimeoutTask(t);
-            future = timeoutService.schedule(timeoutTask, t.getTimeoutPeriod(), TimeUnit.MILLISECONDS);
-            t.setTimeoutFuture(future);
+            ensureStarted();
+
+            timeout = new WheelTimeout(t);
+            scheduledCount.incrementAndGet();
+            schedule(timeout, t.getTimeoutPeriod());
+            t.setTimeoutFuture(timeout);
             if (t instanceof TimeoutAbstractObject)
             {
                 TimeoutAbstractObject timeoutAbstract = (TimeoutAbstractObject)t;
                 timeoutAbstract.setTimeoutManager(this);
-                timeoutAbstract.setTimeoutTask(timeoutTask);
+                timeoutAbstract.setTimeoutTask(timeout);
             }
             if (Log.isDebug())
                 Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(this) + "' has scheduled instance '" +
-                    System.identityHashCode(t) + "' of type '" + t.getClass().getName() + "' to be timed out in " + t.getTimeoutPeriod() + " milliseconds. Task queue size: "+ timeoutService.getQueue().size());
+                    System.identityHashCode(t) + "' of type '" + t.getClass().getName() + "' to be timed out in " + t.getTimeoutPeriod() + " milliseconds. Scheduled timeouts: " + scheduledCount.get());
         }
-        return future;
+        return timeout;
     }
 
     /**
      * Cancel the execution of a future task and remove all references to it.
-     * 
+     *
      * @param timeoutAbstract the task to be canceled
      * @return true if cancellation were successful
      */
     public boolean unscheduleTimeout(TimeoutAbstractObject timeoutAbstract)
     {
-        Object toRemove = timeoutAbstract.getTimeoutFuture();
-        /*
-         * In more recent versions of the backport, they are requiring that we
-         * pass in the Future returned by the schedule method.  This should always 
-         * implement Runnable even in 2.2 but I'm a little paranoid here so just
-         * to be sure, if we get a future which is not a runnable we go back to the old
-         * code which calls the remove on the instance we passed into the schedule method.
-         */
-        if (!(toRemove instanceof Runnable))
-            toRemove = timeoutAbstract.getTimeoutTask();
-        if (timeoutService.remove((Runnable) toRemove))
+        Future timeoutFuture = timeoutAbstract.getTimeoutFuture();
+        if (timeoutFuture != null)
         {
-            if (Log.isDebug())
-                Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(this) + "' has removed the timeout task for instance '" +
-                    System.identityHashCode(timeoutAbstract) + "' of type '" + timeoutAbstract.getClass().getName() + "' that has requested its timeout be cancelled. Task queue size: "+ timeoutService.getQueue().size());
-        }
-        else
-        {
-            Future timeoutFuture = timeoutAbstract.getTimeoutFuture();
-            timeoutFuture.cancel(false); // Don't interrupt it if it's running.
-            if (Log.isDebug())
+            // Don't interrupt it if it's running.
+            if (timeoutFuture.cancel(false) && Log.isDebug())
                 Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(this) + "' cancelling timeout task for instance '" +
-                    System.identityHashCode(timeoutAbstract) + "' of type '" + timeoutAbstract.getClass().getName() + "' that has requested its timeout be cancelled. Task queue size: "+ timeoutService.getQueue().size());
-            if (timeoutFuture.isDone())
-            {
-                timeoutService.purge(); // Force the service to give up refs to task immediately rather than hanging on to them.
-                if (Log.isDebug())
-                    Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(this) + "' purged queue of any cancelled or completed tasks. Task queue size: "+ timeoutService.getQueue().size());
-            }
+                    System.identityHashCode(timeoutAbstract) + "' of type '" + timeoutAbstract.getClass().getName() + "' that has requested its timeout be cancelled. Scheduled timeouts: " + scheduledCount.get());
         }
-        
-        // to aggressively clean up memory remove the reference from the unscheduled timeout to its 
+
+        // to aggressively clean up memory remove the reference from the unscheduled timeout to its
         // time out object
         Object unscheduledTimeoutTask = timeoutAbstract.getTimeoutTask();
-        if (unscheduledTimeoutTask != null && unscheduledTimeoutTask instanceof TimeoutTask)
-            ((TimeoutTask)timeoutAbstract.getTimeoutTask()).clearTimeoutCapable();
-        
+        if (unscheduledTimeoutTask instanceof WheelTimeout)
+            ((WheelTimeout)unscheduledTimeoutTask).clearTimeoutCapable();
+
         return true;
     }
-    
+
+    /**
+     * Returns the number of timeouts that are currently scheduled.
+     *
+     * @return the number of scheduled timeouts
+     */
+    public int getScheduledTimeoutCount()
+    {
+        return scheduledCount.get();
+    }
+
     /**
      * Cancel any future tasks.
      */
     public void shutdown()
     {
-        timeoutService.shutdown();
+        synchronized (lock)
+        {
+            shutdown = true;
+            if (workerThread != null)
+                workerThread.interrupt();
+            if (expiryService != null)
+                expiryService.shutdown();
+        }
+    }
+
+    /**
+     * Starts the wheel thread, and the expiry threads if any, on first use.
+     */
+    private void ensureStarted()
+    {
+        synchronized (lock)
+        {
+            if (shutdown)
+                throw new RejectedExecutionException("TimeoutManager '" + System.identityHashCode(this) + "' has been shut down.");
+
+            if (workerThread == null)
+            {
+                startTime = System.nanoTime();
+                if (expiryThreads > 1)
+                    expiryService = Executors.newFixedThreadPool(expiryThreads, threadFactory);
+                workerThread = threadFactory.newThread(new Worker());
+                workerThread.start();
+            }
+        }
+    }
+
+    /**
+     * Queues the timeout for insertion into the wheel by the worker thread.
+     */
+    private void schedule(WheelTimeout timeout, long delayMillis)
+    {
+        timeout.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        pendingTimeouts.add(timeout);
     }
 
     class MonitorThreadFactory implements ThreadFactory
@@ -157,43 +271,329 @@ public class TimeoutManager
         }
     }
 
-    class TimeoutTask implements Runnable
+    /**
+     * The thread that advances the wheel. It is the only thread that touches the
+     * buckets, so they need no synchronization; other threads hand it newly
+     * scheduled and cancelled timeouts through queues.
+     */
+    class Worker implements Runnable
     {
-        private TimeoutCapable timeoutObject;
-        
-        
-        /**
-         * Removes the reference from this timeout task to the object that would 
-         * have been timed out.  This is useful for memory clean up when timeouts are unscheduled. 
-         */
-        public void clearTimeoutCapable()
+        private long tick;
+        private final List expired = new ArrayList();
+
+        public void run()
         {
-            timeoutObject = null;
+            long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+            while (!shutdown)
+            {
+                long deadline = startTime + tickNanos * (tick + 1);
+                long sleepNanos = deadline - System.nanoTime();
+                if (sleepNanos > 0)
+                {
+                    try
+                    {
+                        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        if (shutdown)
+                            break;
+                    }
+                    continue;
+                }
+
+                removeCancelledTimeouts();
+                transferPendingTimeouts(tickNanos);
+                collectExpiredTimeouts(wheel[(int)(tick & mask)], deadline);
+                expireTimeouts();
+                tick++;
+            }
+        }
+
+        private void transferPendingTimeouts(long tickNanos)
+        {
+            for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++)
+            {
+                WheelTimeout timeout = (WheelTimeout)pendingTimeouts.poll();
+                if (timeout == null)
+                    break;
+                if (timeout.state.get() != WheelTimeout.ST_SCHEDULED)
+                    continue;
+
+                long ticks = (timeout.deadline - startTime + tickNanos - 1) / tickNanos;
+                long target = ticks > tick ? ticks : tick; // Never schedule in the past.
+                timeout.remainingRounds = (target - tick) / wheel.length;
+                wheel[(int)(target & mask)].add(timeout);
+            }
+        }
+
+        private void removeCancelledTimeouts()
+        {
+            WheelTimeout timeout;
+            while ((timeout = (WheelTimeout)cancelledTimeouts.poll()) != null)
+            {
+                if (timeout.bucket != null)
+                    timeout.bucket.remove(timeout);
+            }
+        }
+
+        private void collectExpiredTimeouts(Bucket bucket, long deadline)
+        {
+            WheelTimeout timeout = bucket.head;
+            while (timeout != null)
+            {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline - deadline <= 0)
+                {
+                    bucket.remove(timeout);
+                    expired.add(timeout);
+                }
+                else if (timeout.remainingRounds > 0)
+                {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void expireTimeouts()
+        {
+            int size = expired.size();
+            if (size == 0)
+                return;
+
+            ExecutorService service = expiryService;
+            if (service == null || size == 1)
+            {
+                for (int i = 0; i < size; i++)
+                    ((WheelTimeout)expired.get(i)).run();
+            }
+            else
+            {
+                // Split the batch evenly across the expiry threads.
+                int batches = Math.min(size, expiryThreads);
+                int batchSize = (size + batches - 1) / batches;
+                for (int from = 0; from < size; from += batchSize)
+                {
+                    int to = Math.min(from + batchSize, size);
+                    try
+                    {
+                        service.execute(new ExpiryBatch(expired.subList(from, to).toArray()));
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        // Shutting down.
+                        break;
+                    }
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Expires a batch of timeouts on one of the expiry threads.
+     */
+    static class ExpiryBatch implements Runnable
+    {
+        private final Object[] timeouts;
+
+        ExpiryBatch(Object[] timeouts)
+        {
+            this.timeouts = timeouts;
+        }
+
+        public void run()
+        {
+            for (int i = 0; i < timeouts.length; i++)
+                ((WheelTimeout)timeouts[i]).run();
         }
+    }
+
+    /**
+     * A wheel bucket; an intrusive doubly linked list of timeouts so that
+     * removal is constant time. Only accessed by the worker thread.
+     */
+    static class Bucket
+    {
+        WheelTimeout head;
+        WheelTimeout tail;
+
+        void add(WheelTimeout timeout)
+        {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null)
+                head = timeout;
+            else
+                tail.next = timeout;
+            tail = timeout;
+        }
+
+        void remove(WheelTimeout timeout)
+        {
+            if (timeout.prev == null)
+                head = timeout.next;
+            else
+                timeout.prev.next = timeout.next;
+            if (timeout.next == null)
+                tail = timeout.prev;
+            else
+                timeout.next.prev = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * The Future handed to a TimeoutCapable. A single instance tracks the object
+     * for its whole lifetime; when the object turns out to have been used since
+     * the timeout was scheduled, the same instance is put back on the wheel.
+     */
+    class WheelTimeout implements Future, Runnable
+    {
+        static final int ST_SCHEDULED = 0;
+        static final int ST_RUNNING = 1;
+        static final int ST_CANCELLED = 2;
+        static final int ST_EXPIRED = 3;
+
+        final AtomicInteger state = new AtomicInteger(ST_SCHEDULED);
+        private volatile TimeoutCapable timeoutObject;
+
+        // Wheel bookkeeping, owned by the worker thread once the timeout has been transferred.
+        volatile long deadline;
+        long remainingRounds;
+        Bucket bucket;
+        WheelTimeout prev;
+        WheelTimeout next;
 
-        public TimeoutTask(TimeoutCapable timeoutObject)
+        WheelTimeout(TimeoutCapable timeoutObject)
         {
             this.timeoutObject = timeoutObject;
         }
 
+        /**
+         * Removes the reference from this timeout task to the object that would
+         * have been timed out.  This is useful for memory clean up when timeouts are unscheduled.
+         */
+        public void clearTimeoutCapable()
+        {
+            timeoutObject = null;
+        }
+
         public void run()
         {
-            long inactiveMillis = System.currentTimeMillis() - timeoutObject.getLastUse();
-            if (inactiveMillis >= timeoutObject.getTimeoutPeriod())
+            if (!state.compareAndSet(ST_SCHEDULED, ST_RUNNING))
+                return;
+
+            TimeoutCapable t = timeoutObject;
+            if (t == null)
             {
-                timeoutObject.timeout();
-                if (Log.isDebug())
-                    Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(TimeoutManager.this) + "' has run the timeout task for instance '" +
-                        System.identityHashCode(timeoutObject) + "' of type '" + timeoutObject.getClass().getName() + "'. Task queue size: "+ timeoutService.getQueue().size());
+                done(ST_EXPIRED);
+                return;
             }
-            else
+
+            long inactiveMillis = System.currentTimeMillis() - t.getLastUse();
+            long timeoutPeriod = t.getTimeoutPeriod();
+            if (inactiveMillis >= timeoutPeriod)
             {
-                // Reschedule timeout and store new Future for cancellation.
-                timeoutObject.setTimeoutFuture(timeoutService.schedule(this, (timeoutObject.getTimeoutPeriod()-inactiveMillis), TimeUnit.MILLISECONDS));
+                try
+                {
+                    t.timeout();
+                    if (Log.isDebug())
+                        Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(TimeoutManager.this) + "' has run the timeout task for instance '" +
+                            System.identityHashCode(t) + "' of type '" + t.getClass().getName() + "'. Scheduled timeouts: " + scheduledCount.get());
+                }
+                catch (Throwable th)
+                {
+                    if (Log.isError())
+                        Log.getLogger(LOG_CATEGORY).error("TimeoutManager '" + System.identityHashCode(TimeoutManager.this) + "' encountered an error timing out instance '" +
+                            System.identityHashCode(t) + "' of type '" + t.getClass().getName() + "'.", th);
+                }
+                finally
+                {
+                    done(ST_EXPIRED);
+                }
+            }
+            else if (!shutdown && state.compareAndSet(ST_RUNNING, ST_SCHEDULED))
+            {
+                // Reschedule the timeout for the remainder of the period.
+                schedule(this, timeoutPeriod - inactiveMillis);
                 if (Log.isDebug())
                     Log.getLogger(LOG_CATEGORY).debug("TimeoutManager '" + System.identityHashCode(TimeoutManager.this) + "' has rescheduled a timeout for the active instance '" +
-                        System.identityHashCode(timeoutObject) + "' of type '" + timeoutObject.getClass().getName() + "'. Task queue size: "+ timeoutService.getQueue().size());
+                        System.identityHashCode(t) + "' of type '" + t.getClass().getName() + "'. Scheduled timeouts: " + scheduledCount.get());
+            }
+            else
+            {
+                done(ST_EXPIRED);
             }
         }
+
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            while (true)
+            {
+                int current = state.get();
+                if (current == ST_CANCELLED || current == ST_EXPIRED)
+                    return false;
+                if (state.compareAndSet(current, ST_CANCELLED))
+                {
+                    if (current == ST_SCHEDULED)
+                        cancelledTimeouts.add(this);
+                    scheduledCount.decrementAndGet();
+                    signalDone();
+                    return true;
+                }
+            }
+        }
+
+        public boolean isCancelled()
+        {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isDone()
+        {
+            int current = state.get();
+            return current == ST_CANCELLED || current == ST_EXPIRED;
+        }
+
+        public synchronized Object get() throws InterruptedException, ExecutionException
+        {
+            while (!isDone())
+                wait();
+            return null;
+        }
+
+        public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+        {
+            long remaining = unit.toNanos(timeout);
+            long waitDeadline = System.nanoTime() + remaining;
+            while (!isDone())
+            {
+                if (remaining <= 0)
+                    throw new TimeoutException();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = waitDeadline - System.nanoTime();
+            }
+            return null;
+        }
+
+        private void done(int finalState)
+        {
+            if (state.compareAndSet(ST_RUNNING, finalState))
+            {
+                scheduledCount.decrementAndGet();
+                timeoutObject = null;
+                signalDone();
+            }
+        }
+
+        private synchronized void signalDone()
+        {
+            notifyAll();
+        }
     }
 }
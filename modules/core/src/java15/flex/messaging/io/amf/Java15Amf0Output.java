@@ -49,6 +49,7 @@ public class Java15Amf0Output extends Amf0Output
     {
         avmPlusOutput = new Java15Amf3Output(context);
         avmPlusOutput.setOutputStream(out);
+        avmPlusOutput.sizeBuffer = sizeBuffer;
         avmPlusOutput.setDebugTrace(trace);
     }
 
@@ -51,7 +51,7 @@ public class Java15AmfxOutput extends AmfxOutput
         if (o != null && o instanceof Enum && PropertyProxyRegistry.getRegistry().getProxy(o.getClass()) == null)
         {
             Enum enumValue = (Enum)o;
-            writeString(enumValue.name());
+            super.writeObject(enumValue.name());
         }
         else
         {
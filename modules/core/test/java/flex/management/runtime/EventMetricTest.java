@@ -0,0 +1,100 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.management.runtime;
+
+import java.util.Date;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class EventMetricTest extends TestCase
+{
+    public EventMetricTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(EventMetricTest.class);
+    }
+
+    public void testNoEvents()
+    {
+        EventMetric metric = new EventMetric();
+        assertEquals(0, metric.getCount());
+        assertNull(metric.getLastEventTimestamp());
+        assertEquals(0d, metric.getFrequency(), 0d);
+    }
+
+    public void testRecord()
+    {
+        long before = System.currentTimeMillis();
+        EventMetric metric = new EventMetric();
+        for (int i = 0; i < 10; i++)
+            metric.record();
+
+        assertEquals(10, metric.getCount());
+        Date last = metric.getLastEventTimestamp();
+        assertNotNull(last);
+        assertTrue(last.getTime() >= before - 1);
+        assertTrue(last.getTime() <= System.currentTimeMillis() + 1);
+        // Less than a minute has passed, so the rate is the count per minute.
+        assertEquals(10d, metric.getFrequency(), 0d);
+    }
+
+    public void testReset()
+    {
+        EventMetric metric = new EventMetric();
+        metric.record();
+        metric.reset();
+        assertEquals(0, metric.getCount());
+        assertNull(metric.getLastEventTimestamp());
+        assertEquals(0d, metric.getFrequency(), 0d);
+    }
+
+    public void testConcurrentRecord() throws Exception
+    {
+        final EventMetric metric = new EventMetric();
+        final StripedCounter bytes = new StripedCounter();
+        final int perThread = 100000;
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < perThread; j++)
+                    {
+                        metric.record();
+                        bytes.add(3);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++)
+            threads[i].join();
+
+        assertEquals(threads.length * perThread, metric.getCount());
+        assertEquals(threads.length * perThread * 3L, bytes.sum());
+    }
+}
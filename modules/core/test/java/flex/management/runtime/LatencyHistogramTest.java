@@ -0,0 +1,101 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.management.runtime;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class LatencyHistogramTest extends TestCase
+{
+    public LatencyHistogramTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(LatencyHistogramTest.class);
+    }
+
+    public void testEmpty()
+    {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99d));
+        assertEquals(0d, snapshot.getMean(), 0d);
+    }
+
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..1000 microseconds.
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000000L, snapshot.getMax());
+        assertWithinPrecision(500000L, snapshot.getValueAtPercentile(50d));
+        assertWithinPrecision(990000L, snapshot.getValueAtPercentile(99d));
+        assertEquals(1000000L, snapshot.getValueAtPercentile(100d));
+        assertEquals(500500d, snapshot.getMean(), 0.001d);
+    }
+
+    public void testBucketBoundaries()
+    {
+        for (long value = 1; value < (1L << 40); value = value * 3 + 1)
+        {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.highestValueInBucket(index));
+            if (index > 0)
+                assertTrue(value > LatencyHistogram.highestValueInBucket(index - 1));
+        }
+    }
+
+    public void testReset()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(12345);
+        histogram.reset();
+        assertEquals(0, histogram.getSnapshot().getCount());
+        assertEquals(0, histogram.getSnapshot().getMax());
+    }
+
+    public void testStageLatencies()
+    {
+        StageLatencies latencies = new StageLatencies(new String[] {"first", "second"});
+        latencies.record(0, 2000000L);
+        latencies.record(1, 4000000L);
+
+        String[] summaries = latencies.getPercentileSummaries();
+        assertEquals(2, summaries.length);
+        assertTrue(summaries[0].startsWith("first: count=1"));
+        assertTrue(summaries[1].startsWith("second: count=1"));
+
+        Double p50 = latencies.getPercentileMillis("second", 50d);
+        assertEquals(4d, p50.doubleValue(), 4d * 0.04d);
+        assertNull(latencies.getPercentileMillis("third", 50d));
+    }
+
+    private void assertWithinPrecision(long expected, long actual)
+    {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04d);
+    }
+}
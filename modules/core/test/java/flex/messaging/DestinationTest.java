@@ -21,15 +21,19 @@ package flex.messaging;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import flex.messaging.config.ConfigMap;
 import flex.messaging.config.ConfigurationConstants;
 import flex.messaging.config.ConfigurationException;
 import flex.messaging.config.NetworkSettings;
 import flex.messaging.config.SecurityConstraint;
+import flex.messaging.messages.Message;
 import flex.messaging.services.HTTPProxyService;
 import flex.messaging.services.RemotingService;
 import flex.messaging.services.ServiceAdapter;
@@ -256,6 +260,84 @@ public class DestinationTest extends TestCase {
         Assert.assertEquals(ns, actual);
     }
 
+    public void testInitializeLazyInheritedFromService()
+    {
+        ConfigMap serviceProperties = new ConfigMap();
+        serviceProperties.addProperty(Destination.LAZY_ELEMENT, "true");
+        destination.initialize("destId", serviceProperties);
+        Assert.assertTrue(destination.isLazy());
+
+        ConfigMap destinationProperties = new ConfigMap();
+        destinationProperties.addProperty("unrelated", "value");
+        destination.initialize("destId", destinationProperties);
+        Assert.assertTrue(destination.isLazy());
+
+        destinationProperties.addProperty(Destination.LAZY_ELEMENT, "false");
+        destination.initialize("destId", destinationProperties);
+        Assert.assertFalse(destination.isLazy());
+    }
+
+    public void testStartIfLazyWaitsForAdapterStart() throws Exception
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        RunningService service = new RunningService();
+        service.setId("remoting-service");
+        broker.addService(service);
+        Map csMap = new HashMap();
+        csMap.put("default-channel", null);
+        broker.setChannelSettings(csMap);
+
+        final CountDownLatch adapterStarting = new CountDownLatch(1);
+        final CountDownLatch releaseAdapter = new CountDownLatch(1);
+        final BlockingAdapter adapter = new BlockingAdapter(adapterStarting, releaseAdapter);
+        adapter.setId("blocking-adapter");
+
+        final Destination lazyDestination = new RemotingDestination();
+        lazyDestination.setId("lazyDest");
+        lazyDestination.setService(service);
+        lazyDestination.setAdapter(adapter);
+        lazyDestination.addChannel("default-channel");
+        lazyDestination.setLazy(true);
+        service.running = true;
+
+        Thread first = new Thread()
+        {
+            public void run()
+            {
+                lazyDestination.startIfLazy();
+            }
+        };
+        first.start();
+        Assert.assertTrue(adapterStarting.await(10, TimeUnit.SECONDS));
+        // The destination already reports started while its adapter is starting.
+        Assert.assertTrue(lazyDestination.isStarted());
+
+        final CountDownLatch secondReturned = new CountDownLatch(1);
+        final boolean[] adapterStartedOnReturn = new boolean[1];
+        Thread second = new Thread()
+        {
+            public void run()
+            {
+                lazyDestination.startIfLazy();
+                adapterStartedOnReturn[0] = adapter.isStarted();
+                secondReturned.countDown();
+            }
+        };
+        second.start();
+
+        // The second caller must wait on the start lock rather than return early.
+        while (second.getState() != Thread.State.BLOCKED && secondReturned.getCount() > 0)
+            Thread.yield();
+        Assert.assertEquals(1, secondReturned.getCount());
+
+        releaseAdapter.countDown();
+        Assert.assertTrue(secondReturned.await(10, TimeUnit.SECONDS));
+        first.join();
+        Assert.assertTrue(adapterStartedOnReturn[0]);
+        Assert.assertEquals(1, adapter.startCount);
+    }
+
     public void testSetSecurityConstraint()
     {
         SecurityConstraint sc = new SecurityConstraint();
@@ -328,4 +410,56 @@ public class DestinationTest extends TestCase {
         destination.setService(service);
         destination.start();
     }
+
+    /**
+     * Service that reports started without starting its destinations.
+     */
+    static class RunningService extends RemotingService
+    {
+        volatile boolean running;
+
+        public boolean isStarted()
+        {
+            return running;
+        }
+    }
+
+    /**
+     * Adapter whose start blocks until the test releases it.
+     */
+    static class BlockingAdapter extends ServiceAdapter
+    {
+        private final CountDownLatch starting;
+        private final CountDownLatch release;
+        volatile int startCount;
+
+        BlockingAdapter(CountDownLatch starting, CountDownLatch release)
+        {
+            this.starting = starting;
+            this.release = release;
+        }
+
+        public void start()
+        {
+            if (isStarted())
+                return;
+
+            starting.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            startCount++;
+            super.start();
+        }
+
+        public Object invoke(Message message)
+        {
+            return null;
+        }
+    }
 }
@@ -24,11 +24,17 @@ import java.util.Map;
 
 import flex.messaging.config.ConfigurationConstants;
 import flex.messaging.config.ConfigurationException;
+import flex.messaging.endpoints.AMFEndpoint;
+import flex.messaging.endpoints.HTTPEndpoint;
 import flex.messaging.factories.JavaFactory;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.security.LoginManager;
 import flex.messaging.services.HTTPProxyService;
 import flex.messaging.services.MessageService;
 import flex.messaging.services.RemotingService;
 import flex.messaging.services.Service;
+import flex.messaging.services.messaging.adapters.ActionScriptAdapter;
+import flex.messaging.util.RedeployManager;
 import junit.framework.Assert;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -367,4 +373,140 @@ public class MessageBrokerTest extends TestCase
         List channelIds = broker.getChannelIds();
         Assert.assertNull(channelIds);
     }
+
+    public void testGetEndpointByPath()
+    {
+        AMFEndpoint amf = new AMFEndpoint();
+        amf.setId("my-amf");
+        amf.setUrl("http://{server.name}:{server.port}/{context.root}/messagebroker/amf");
+        broker.addEndpoint(amf);
+
+        Assert.assertSame(amf, broker.getEndpoint("/messagebroker/amf", "/app"));
+        Assert.assertSame(amf, broker.getEndpoint("/MessageBroker/AMF/", "/app"));
+    }
+
+    public void testGetEndpointByPathUnknown()
+    {
+        String message = null;
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                broker.getEndpoint("/messagebroker/unknown", "/app");
+                fail("MessageException expected");
+            }
+            catch (MessageException e)
+            {
+                // The second lookup is answered from the unknown path cache.
+                Assert.assertEquals(10003, e.getNumber());
+                Assert.assertTrue(e.getMessage().indexOf("/messagebroker/unknown") != -1);
+                if (message != null)
+                    Assert.assertEquals(message, e.getMessage());
+                message = e.getMessage();
+            }
+        }
+    }
+
+    public void testGetEndpointByPathAfterAddAndRemove()
+    {
+        try
+        {
+            broker.getEndpoint("/messagebroker/http", "/app");
+            fail("MessageException expected");
+        }
+        catch (MessageException e)
+        {
+            // Expected; the unknown path is now cached.
+        }
+
+        HTTPEndpoint http = new HTTPEndpoint();
+        http.setId("my-http");
+        http.setUrl("http://{server.name}:{server.port}/{context.root}/messagebroker/http");
+        broker.addEndpoint(http);
+        Assert.assertSame(http, broker.getEndpoint("/messagebroker/http", "/app"));
+
+        broker.removeEndpoint("my-http");
+        try
+        {
+            broker.getEndpoint("/messagebroker/http", "/app");
+            fail("MessageException expected");
+        }
+        catch (MessageException e)
+        {
+            // Expected
+        }
+    }
+
+    public void testStartDestinationsInParallel()
+    {
+        broker.setStartupThreads(4);
+        MessageService service = createMessageService(20);
+
+        try
+        {
+            broker.start();
+
+            for (int i = 0; i < 20; i++)
+                Assert.assertTrue(service.getDestination("dest" + i).isStarted());
+
+            Map phases = broker.getStartupPhaseTimes();
+            Assert.assertTrue(phases.containsKey("services"));
+            Assert.assertTrue(phases.containsKey("endpoints"));
+            Assert.assertTrue(phases.containsKey("servers"));
+        }
+        finally
+        {
+            broker.stop();
+        }
+    }
+
+    public void testSetStartupThreadsBelowOne()
+    {
+        broker.setStartupThreads(0);
+        Assert.assertEquals(1, broker.getStartupThreads());
+    }
+
+    public void testLazyDestinationStartsOnFirstUse()
+    {
+        MessageService service = createMessageService(2);
+        Destination lazy = service.getDestination("dest0");
+        lazy.setLazy(true);
+
+        try
+        {
+            broker.start();
+
+            Assert.assertFalse(lazy.isStarted());
+            Assert.assertTrue(service.getDestination("dest1").isStarted());
+
+            AsyncMessage message = new AsyncMessage();
+            message.setDestination("dest0");
+            Assert.assertSame(lazy, service.getDestination(message));
+            Assert.assertTrue(lazy.isStarted());
+        }
+        finally
+        {
+            broker.stop();
+        }
+    }
+
+    private MessageService createMessageService(int destinationCount)
+    {
+        broker.setLoginManager(new LoginManager());
+        broker.setRedeployManager(new RedeployManager());
+
+        AMFEndpoint amf = new AMFEndpoint();
+        amf.setId("my-amf");
+        amf.setUrl("http://{server.name}:{server.port}/{context.root}/messagebroker/amf");
+        amf.setMessageBroker(broker);
+        broker.addEndpoint(amf);
+
+        MessageService service = (MessageService)broker.createService("message-service", MessageService.class.getName());
+        service.registerAdapter("actionscript", ActionScriptAdapter.class.getName());
+        service.setDefaultAdapter("actionscript");
+        service.addDefaultChannel("my-amf");
+        for (int i = 0; i < destinationCount; i++)
+            service.createDestination("dest" + i).createAdapter("actionscript");
+        return service;
+    }
 }
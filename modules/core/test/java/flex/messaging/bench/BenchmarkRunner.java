@@ -0,0 +1,308 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs microbenchmarks in the way JMH does, without depending on it: each
+ * benchmark is run for a number of timed warmup iterations that are discarded
+ * and then for a number of timed measurement iterations, on one or more
+ * threads. Results are consumed so the JIT cannot remove the work, and the
+ * bytes allocated per operation are measured where the JVM supports
+ * per-thread allocation counters.
+ *
+ * Settings can be overridden with the <code>bench.warmups</code>,
+ * <code>bench.iterations</code> and <code>bench.iterationMillis</code>
+ * system properties.
+ */
+public class BenchmarkRunner
+{
+    private final int warmups;
+    private final int iterations;
+    private final long iterationMillis;
+
+    // Results are folded into this field so that benchmark work is never dead code
+    private volatile int sink;
+
+    public BenchmarkRunner()
+    {
+        this(Integer.getInteger("bench.warmups", 3).intValue(),
+                Integer.getInteger("bench.iterations", 5).intValue(),
+                Long.getLong("bench.iterationMillis", 1000).longValue());
+    }
+
+    public BenchmarkRunner(int warmups, int iterations, long iterationMillis)
+    {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * A benchmarked operation. It is invoked concurrently when a benchmark
+     * runs on more than one thread.
+     */
+    public interface Operation
+    {
+        /**
+         * Performs the operation once and returns its result, which is consumed.
+         */
+        Object invoke() throws Exception;
+    }
+
+    /**
+     * Runs the operation on the given number of threads.
+     *
+     * @param name The name the result is reported under.
+     * @param threads The number of threads invoking the operation at once.
+     * @param operation The operation to measure.
+     * @return The measured throughput and allocation.
+     */
+    public Result run(String name, int threads, Operation operation) throws Exception
+    {
+        for (int i = 0; i < warmups; i++)
+            iterate(threads, operation);
+
+        double[] throughputs = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++)
+        {
+            long[] measured = iterate(threads, operation);
+            throughputs[i] = measured[0] * 1000000000.0 / measured[2];
+            totalOps += measured[0];
+            totalBytes = totalBytes < 0 || measured[1] < 0 ? -1 : totalBytes + measured[1];
+        }
+
+        return new Result(name, threads, throughputs, totalBytes < 0 || totalOps == 0 ? -1 : (double)totalBytes / totalOps);
+    }
+
+    /**
+     * Runs one timed iteration and returns the operation count, the bytes
+     * allocated (or -1 if unknown) and the elapsed nanoseconds.
+     */
+    private long[] iterate(int threads, final Operation operation) throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long[] ops = new long[threads];
+        final long[] bytes = new long[threads];
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++)
+        {
+            final int index = t;
+            Thread worker = new Thread("benchmark-" + t)
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        long allocatedBefore = allocatedBytes();
+                        long count = 0;
+                        int hash = 0;
+                        while (System.nanoTime() - deadline[0] < 0)
+                        {
+                            Object result = operation.invoke();
+                            hash ^= System.identityHashCode(result);
+                            count++;
+                        }
+                        long allocatedAfter = allocatedBytes();
+                        sink ^= hash;
+                        ops[index] = count;
+                        bytes[index] = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+                    }
+                    catch (Throwable ex)
+                    {
+                        failure.compareAndSet(null, ex);
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long started = System.nanoTime();
+        deadline[0] = started + iterationMillis * 1000000L;
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - started;
+
+        Throwable ex = failure.get();
+        if (ex instanceof Exception)
+            throw (Exception)ex;
+        else if (ex != null)
+            throw new RuntimeException(ex);
+
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int t = 0; t < threads; t++)
+        {
+            totalOps += ops[t];
+            totalBytes = totalBytes < 0 || bytes[t] < 0 ? -1 : totalBytes + bytes[t];
+        }
+        return new long[] {totalOps, totalBytes, elapsed};
+    }
+
+    /**
+     * Prints the results as a table.
+     */
+    public static void report(List<Result> results, PrintStream out)
+    {
+        out.println(pad("Benchmark", 60) + pad("Threads", 9) + pad("ops/s", 16) + pad("+/-", 12) + "B/op");
+        for (Result result : results)
+        {
+            out.println(pad(result.getName(), 60)
+                    + pad(String.valueOf(result.getThreads()), 9)
+                    + pad(format(result.getMeanThroughput()), 16)
+                    + pad(format(result.getThroughputDeviation()), 12)
+                    + (result.getBytesPerOperation() < 0 ? "n/a" : format(result.getBytesPerOperation())));
+        }
+    }
+
+    private static String format(double value)
+    {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+
+    private static String pad(String s, int width)
+    {
+        StringBuffer buffer = new StringBuffer(s);
+        while (buffer.length() < width)
+            buffer.append(' ');
+        return buffer.append(' ').toString();
+    }
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final Method allocatedBytesMethod = findAllocatedBytesMethod();
+
+    /**
+     * The per-thread allocation counter is a HotSpot extension, so it is
+     * looked up reflectively.
+     */
+    private static Method findAllocatedBytesMethod()
+    {
+        try
+        {
+            Class beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (!beanClass.isInstance(threadBean))
+                return null;
+            Method method = beanClass.getMethod("getThreadAllocatedBytes", new Class[] {Long.TYPE});
+            method.setAccessible(true);
+            return method;
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    private static long allocatedBytes()
+    {
+        if (allocatedBytesMethod == null)
+            return -1;
+
+        try
+        {
+            Long bytes = (Long)allocatedBytesMethod.invoke(threadBean, new Object[] {new Long(Thread.currentThread().getId())});
+            return bytes.longValue();
+        }
+        catch (Exception ex)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * The outcome of one benchmark.
+     */
+    public static class Result
+    {
+        private final String name;
+        private final int threads;
+        private final double[] throughputs;
+        private final double bytesPerOperation;
+
+        Result(String name, int threads, double[] throughputs, double bytesPerOperation)
+        {
+            this.name = name;
+            this.threads = threads;
+            this.throughputs = throughputs;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getThreads()
+        {
+            return threads;
+        }
+
+        /**
+         * @return The mean operations per second over the measurement iterations.
+         */
+        public double getMeanThroughput()
+        {
+            double sum = 0;
+            for (int i = 0; i < throughputs.length; i++)
+                sum += throughputs[i];
+            return throughputs.length == 0 ? 0 : sum / throughputs.length;
+        }
+
+        /**
+         * @return The standard deviation of the operations per second over the measurement iterations.
+         */
+        public double getThroughputDeviation()
+        {
+            if (throughputs.length < 2)
+                return 0;
+
+            double mean = getMeanThroughput();
+            double sum = 0;
+            for (int i = 0; i < throughputs.length; i++)
+                sum += (throughputs[i] - mean) * (throughputs[i] - mean);
+            return Math.sqrt(sum / (throughputs.length - 1));
+        }
+
+        /**
+         * @return The bytes allocated per operation, or -1 if the JVM can't measure it.
+         */
+        public double getBytesPerOperation()
+        {
+            return bytesPerOperation;
+        }
+    }
+}
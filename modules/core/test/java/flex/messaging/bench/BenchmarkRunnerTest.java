@@ -0,0 +1,83 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.bench;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * JUnit tests for BenchmarkRunner.
+ */
+public class BenchmarkRunnerTest extends TestCase
+{
+    public BenchmarkRunnerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BenchmarkRunnerTest.class);
+    }
+
+    public void testRun() throws Exception
+    {
+        final AtomicLong invocations = new AtomicLong();
+        BenchmarkRunner runner = new BenchmarkRunner(1, 2, 50);
+        BenchmarkRunner.Result result = runner.run("test", 2, new BenchmarkRunner.Operation()
+        {
+            public Object invoke()
+            {
+                invocations.incrementAndGet();
+                return new byte[64];
+            }
+        });
+
+        Assert.assertEquals("test", result.getName());
+        Assert.assertEquals(2, result.getThreads());
+        Assert.assertTrue(invocations.get() > 0);
+        Assert.assertTrue(result.getMeanThroughput() > 0);
+        Assert.assertTrue(result.getBytesPerOperation() < 0 || result.getBytesPerOperation() >= 64);
+    }
+
+    public void testRunFailure() throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner(0, 1, 50);
+        try
+        {
+            runner.run("test", 1, new BenchmarkRunner.Operation()
+            {
+                public Object invoke() throws Exception
+                {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            fail("IllegalStateException expected");
+        }
+        catch (IllegalStateException ex)
+        {
+            Assert.assertEquals("failed", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import flex.messaging.MessageException;
+import flex.messaging.io.ClassAliasRegistry;
+import flex.messaging.io.MessageDeserializer;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.MessageSerializer;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfMessageSerializer;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amfx.AmfxMessageDeserializer;
+import flex.messaging.io.amfx.AmfxMessageSerializer;
+import flex.messaging.messages.AcknowledgeMessageExt;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.AsyncMessageExt;
+import flex.messaging.messages.CommandMessageExt;
+import flex.messaging.util.UUIDUtils;
+import flex.messaging.util.XMLUtil;
+
+/**
+ * Measures the throughput and allocation of writing and reading AMF0, AMF3
+ * and AMFX messages whose body is one of a set of realistic payloads: a list
+ * of typed beans (serialized through <code>BeanProxy</code>), an
+ * <code>ASObject</code> map, large numeric and object arrays, dates, an XML
+ * document and an externalizable <code>AsyncMessageExt</code>.
+ *
+ * Usage:
+ * <pre>
+ *   java flex.messaging.bench.CodecBenchmark [codec|payload]...
+ * </pre>
+ * where the arguments restrict the run to the named codecs (amf0, amf3, amfx)
+ * and payloads; by default every combination is run. See
+ * {@link BenchmarkRunner} for the timing settings.
+ */
+public class CodecBenchmark
+{
+    public static final String[] CODECS = {"amf0", "amf3", "amfx"};
+
+    private final SerializationContext context;
+    private final Map<String, Object> payloads = new LinkedHashMap<String, Object>();
+
+    public CodecBenchmark()
+    {
+        context = new SerializationContext();
+        context.instantiateTypes = true;
+
+        ClassAliasRegistry registry = ClassAliasRegistry.getRegistry();
+        registry.registerAlias(AcknowledgeMessageExt.CLASS_ALIAS, AcknowledgeMessageExt.class.getName());
+        registry.registerAlias(AsyncMessageExt.CLASS_ALIAS, AsyncMessageExt.class.getName());
+        registry.registerAlias(CommandMessageExt.CLASS_ALIAS, CommandMessageExt.class.getName());
+
+        payloads.put("beans", createBeans(100));
+        payloads.put("asobject", createASObject(50));
+        payloads.put("doubles", createDoubles(10000));
+        payloads.put("objects", createObjects(1000));
+        payloads.put("dates", createDates(1000));
+        payloads.put("xml", XMLUtil.stringToDocument(createXML(200)));
+        payloads.put("message", createMessage());
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        List<String> filter = Arrays.asList(args);
+        CodecBenchmark benchmark = new CodecBenchmark();
+        BenchmarkRunner runner = new BenchmarkRunner();
+        List<BenchmarkRunner.Result> results = new ArrayList<BenchmarkRunner.Result>();
+
+        for (int i = 0; i < CODECS.length; i++)
+        {
+            String codec = CODECS[i];
+            for (String payload : benchmark.payloads.keySet())
+            {
+                if (!filter.isEmpty() && !filter.contains(codec) && !filter.contains(payload))
+                    continue;
+
+                String name = codec + "." + payload;
+                try
+                {
+                    byte[] encoded = benchmark.write(codec, payload);
+                    benchmark.read(codec, encoded);
+                    System.out.println(name + ": " + encoded.length + " bytes");
+
+                    results.add(runner.run(name + ".write", 1, benchmark.writeOperation(codec, payload)));
+                    results.add(runner.run(name + ".read", 1, benchmark.readOperation(codec, encoded)));
+                }
+                catch (Throwable ex)
+                {
+                    System.out.println(name + ": skipped, " + ex);
+                }
+            }
+        }
+
+        BenchmarkRunner.report(results, System.out);
+    }
+
+    public BenchmarkRunner.Operation writeOperation(final String codec, final String payload)
+    {
+        return new BenchmarkRunner.Operation()
+        {
+            public Object invoke() throws Exception
+            {
+                return write(codec, payload);
+            }
+        };
+    }
+
+    public BenchmarkRunner.Operation readOperation(final String codec, final byte[] encoded)
+    {
+        return new BenchmarkRunner.Operation()
+        {
+            public Object invoke() throws Exception
+            {
+                return read(codec, encoded);
+            }
+        };
+    }
+
+    /**
+     * Writes a response message with the payload as its body.
+     */
+    public byte[] write(String codec, String payload) throws IOException
+    {
+        ActionMessage message = new ActionMessage("amf0".equals(codec) ? MessageIOConstants.AMF0 : MessageIOConstants.AMF3);
+        message.addBody(new MessageBody("/1/onResult", null, payloads.get(payload)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        MessageSerializer serializer = "amfx".equals(codec) ? (MessageSerializer)new AmfxMessageSerializer() : new AmfMessageSerializer();
+        serializer.initialize(context, out, null);
+        serializer.writeMessage(message);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a message and returns the body.
+     */
+    public Object read(String codec, byte[] encoded) throws ClassNotFoundException, IOException
+    {
+        SerializationContext.setSerializationContext(context);
+        ActionMessage message = new ActionMessage();
+        ActionContext actionContext = new ActionContext();
+        actionContext.setRequestMessage(message);
+
+        MessageDeserializer deserializer = "amfx".equals(codec) ? (MessageDeserializer)new AmfxMessageDeserializer() : new AmfMessageDeserializer();
+        deserializer.initialize(context, new ByteArrayInputStream(encoded), null);
+        deserializer.readMessage(message, actionContext);
+
+        Object data = message.getBody(0).getData();
+        if (data instanceof MessageException)
+            throw (MessageException)data;
+        return data;
+    }
+
+    private static List<BenchmarkBean> createBeans(int count)
+    {
+        List<BenchmarkBean> beans = new ArrayList<BenchmarkBean>(count);
+        for (int i = 0; i < count; i++)
+        {
+            BenchmarkBean bean = new BenchmarkBean();
+            bean.setId(i);
+            bean.setName("Product " + i);
+            bean.setPrice(i * 1.25);
+            bean.setCreated(new Date(1200000000000L + i * 1000L));
+            bean.setTags(new ArrayList<String>(Arrays.asList(new String[] {"tag" + (i % 7), "tag" + (i % 11)})));
+            beans.add(bean);
+        }
+        return beans;
+    }
+
+    private static ASObject createASObject(int size)
+    {
+        ASObject aso = new ASObject();
+        for (int i = 0; i < size; i++)
+        {
+            if (i % 3 == 0)
+                aso.put("key" + i, "value" + i);
+            else if (i % 3 == 1)
+                aso.put("key" + i, new Integer(i));
+            else
+                aso.put("key" + i, new Double(i / 3.0));
+        }
+        return aso;
+    }
+
+    private static double[] createDoubles(int count)
+    {
+        double[] doubles = new double[count];
+        for (int i = 0; i < count; i++)
+            doubles[i] = i * 0.5;
+        return doubles;
+    }
+
+    private static Object[] createObjects(int count)
+    {
+        Object[] objects = new Object[count];
+        for (int i = 0; i < count; i++)
+            objects[i] = i % 2 == 0 ? (Object)new Integer(i) : "item" + (i % 50);
+        return objects;
+    }
+
+    private static Date[] createDates(int count)
+    {
+        Date[] dates = new Date[count];
+        for (int i = 0; i < count; i++)
+            dates[i] = new Date(1200000000000L + i * 60000L);
+        return dates;
+    }
+
+    private static String createXML(int count)
+    {
+        StringBuffer xml = new StringBuffer("<catalog>");
+        for (int i = 0; i < count; i++)
+            xml.append("<item id=\"").append(i).append("\"><name>Item ").append(i).append("</name><price>").append(i * 2).append("</price></item>");
+        return xml.append("</catalog>").toString();
+    }
+
+    private static AsyncMessageExt createMessage()
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setMessageId(UUIDUtils.createUUID());
+        message.setClientId(UUIDUtils.createUUID());
+        message.setDestination("chat");
+        message.setTimestamp(System.currentTimeMillis());
+        message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "news.sport");
+        message.setBody(createASObject(10));
+        return new AsyncMessageExt(message);
+    }
+
+    /**
+     * A typed payload serialized through <code>BeanProxy</code>.
+     */
+    public static class BenchmarkBean
+    {
+        private int id;
+        private String name;
+        private double price;
+        private Date created;
+        private List<String> tags;
+
+        public int getId()
+        {
+            return id;
+        }
+
+        public void setId(int id)
+        {
+            this.id = id;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+
+        public double getPrice()
+        {
+            return price;
+        }
+
+        public void setPrice(double price)
+        {
+            this.price = price;
+        }
+
+        public Date getCreated()
+        {
+            return created;
+        }
+
+        public void setCreated(Date created)
+        {
+            this.created = created;
+        }
+
+        public List<String> getTags()
+        {
+            return tags;
+        }
+
+        public void setTags(List<String> tags)
+        {
+            this.tags = tags;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import flex.messaging.FlexContext;
+import flex.messaging.MessageBroker;
+import flex.messaging.MessageDestination;
+import flex.messaging.NonHttpFlexSession;
+import flex.messaging.client.FlexClient;
+import flex.messaging.config.ThrottleSettings;
+import flex.messaging.endpoints.AMFEndpoint;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.security.LoginManager;
+import flex.messaging.services.MessageService;
+import flex.messaging.services.messaging.SubscriptionManager;
+import flex.messaging.services.messaging.ThrottleManager;
+import flex.messaging.services.messaging.adapters.ActionScriptAdapter;
+import flex.messaging.services.messaging.selector.JMSSelector;
+import flex.messaging.util.RedeployManager;
+
+/**
+ * Measures the messaging routing path in process, without a servlet
+ * container: subscriber lookup in <code>SubscriptionManager</code> with and
+ * without selectors and subtopic wildcards, fan-out through
+ * <code>MessageService.pushMessageToClients</code> with the subscribers'
+ * queues drained by <code>FlexClient.poll</code>, a single
+ * <code>FlexClient.push</code> and <code>poll</code>, outbound throttling and
+ * <code>JMSSelector.match</code>.
+ *
+ * Each benchmark is run for every combination of subscriber count, selector
+ * cardinality and thread count, set with the comma separated
+ * <code>bench.subscribers</code> (default 10,100,1000),
+ * <code>bench.selectors</code> (default 0,10) and <code>bench.threads</code>
+ * (default 1,4) system properties. A selector cardinality of 0 means no
+ * subscriber has a selector; otherwise subscribers are spread over that many
+ * distinct selectors, one of which matches the routed message.
+ *
+ * Usage:
+ * <pre>
+ *   java flex.messaging.bench.RoutingBenchmark [benchmark]...
+ * </pre>
+ * where the arguments restrict the run to benchmarks whose names start with
+ * them. See {@link BenchmarkRunner} for the timing settings.
+ */
+public class RoutingBenchmark
+{
+    public static final String ENDPOINT_ID = "bench-amf";
+    public static final String DESTINATION_ID = "bench";
+    public static final String SUBTOPIC = "prices.equity.ADBE";
+
+    private final int subscriberCount;
+    private final int selectorCardinality;
+
+    private MessageBroker broker;
+    private MessageService service;
+    private MessageDestination destination;
+    private final List<FlexClient> flexClients = new ArrayList<FlexClient>();
+    private final List<Object> clientIds = new ArrayList<Object>();
+
+    public RoutingBenchmark(int subscriberCount, int selectorCardinality)
+    {
+        this.subscriberCount = subscriberCount;
+        this.selectorCardinality = selectorCardinality;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        List<String> filter = Arrays.asList(args);
+        int[] subscriberCounts = parse(System.getProperty("bench.subscribers", "10,100,1000"));
+        int[] cardinalities = parse(System.getProperty("bench.selectors", "0,10"));
+        int[] threadCounts = parse(System.getProperty("bench.threads", "1,4"));
+
+        BenchmarkRunner runner = new BenchmarkRunner();
+        List<BenchmarkRunner.Result> results = new ArrayList<BenchmarkRunner.Result>();
+
+        for (int s = 0; s < subscriberCounts.length; s++)
+        {
+            for (int c = 0; c < cardinalities.length; c++)
+            {
+                RoutingBenchmark benchmark = new RoutingBenchmark(subscriberCounts[s], cardinalities[c]);
+                benchmark.setUp();
+                try
+                {
+                    String[] names = benchmark.getBenchmarkNames();
+                    for (int n = 0; n < names.length; n++)
+                    {
+                        if (!matches(filter, names[n]))
+                            continue;
+
+                        for (int t = 0; t < threadCounts.length; t++)
+                        {
+                            String name = names[n] + "[subscribers=" + subscriberCounts[s]
+                                    + ",selectors=" + cardinalities[c] + "]";
+                            results.add(runner.run(name, threadCounts[t], benchmark.getOperation(names[n])));
+                        }
+                    }
+                }
+                finally
+                {
+                    benchmark.tearDown();
+                }
+            }
+        }
+
+        BenchmarkRunner.report(results, System.out);
+    }
+
+    /**
+     * Starts a broker with one messaging destination and subscribes the
+     * subscribers, a third of them to a subtopic and a third to a subtopic
+     * wildcard. Each subscriber has its own FlexClient and session.
+     */
+    public void setUp()
+    {
+        broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        broker.setLoginManager(new LoginManager());
+        broker.setRedeployManager(new RedeployManager());
+
+        AMFEndpoint amf = new AMFEndpoint();
+        amf.setId(ENDPOINT_ID);
+        amf.setUrl("http://{server.name}:{server.port}/{context.root}/messagebroker/amf");
+        amf.setMessageBroker(broker);
+        broker.addEndpoint(amf);
+
+        service = (MessageService)broker.createService("message-service", MessageService.class.getName());
+        service.registerAdapter("actionscript", ActionScriptAdapter.class.getName());
+        service.setDefaultAdapter("actionscript");
+        service.addDefaultChannel(ENDPOINT_ID);
+        destination = (MessageDestination)service.createDestination(DESTINATION_ID);
+        destination.createAdapter("actionscript");
+        destination.getServerSettings().setAllowSubtopics(true);
+
+        broker.start();
+
+        SubscriptionManager subscriptionManager = destination.getSubscriptionManager();
+        for (int i = 0; i < subscriberCount; i++)
+        {
+            FlexClient flexClient = broker.getFlexClientManager().getFlexClient(null);
+            BenchmarkSession session = new BenchmarkSession("session" + i);
+            FlexContext.setThreadLocalObjects(flexClient, session, broker);
+
+            String clientId = "subscriber" + i;
+            String selector = selectorCardinality > 0 ? "region = 'r" + (i % selectorCardinality) + "'" : null;
+            String subtopic = i % 3 == 0 ? null : i % 3 == 1 ? SUBTOPIC : "prices.*";
+            subscriptionManager.addSubscriber(clientId, selector, subtopic, ENDPOINT_ID);
+
+            flexClients.add(flexClient);
+            clientIds.add(clientId);
+        }
+        FlexContext.setThreadLocalObjects(null, null, broker);
+    }
+
+    public void tearDown()
+    {
+        broker.stop();
+        FlexContext.clearThreadLocalObjects();
+    }
+
+    public String[] getBenchmarkNames()
+    {
+        return new String[] {"subscriberIds", "subscriberIds.subtopic", "subscriberIds.noSelector",
+                "pushMessageToClients", "flexClient.pushPoll", "throttleOutgoingMessage", "selector.match"};
+    }
+
+    public BenchmarkRunner.Operation getOperation(String name)
+    {
+        final SubscriptionManager subscriptionManager = destination.getSubscriptionManager();
+
+        if ("subscriberIds".equals(name))
+        {
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke()
+                {
+                    return subscriptionManager.getSubscriberIds(createMessage(null), true);
+                }
+            };
+        }
+        else if ("subscriberIds.subtopic".equals(name))
+        {
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke()
+                {
+                    return subscriptionManager.getSubscriberIds(createMessage(SUBTOPIC), true);
+                }
+            };
+        }
+        else if ("subscriberIds.noSelector".equals(name))
+        {
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke()
+                {
+                    return subscriptionManager.getSubscriberIds(createMessage(SUBTOPIC), false);
+                }
+            };
+        }
+        else if ("pushMessageToClients".equals(name))
+        {
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke()
+                {
+                    service.pushMessageToClients(createMessage(SUBTOPIC), true);
+                    int polled = 0;
+                    for (int i = 0; i < flexClients.size(); i++)
+                    {
+                        if (flexClients.get(i).poll(ENDPOINT_ID) != null)
+                            polled++;
+                    }
+                    return new Integer(polled);
+                }
+            };
+        }
+        else if ("flexClient.pushPoll".equals(name))
+        {
+            final AtomicInteger next = new AtomicInteger();
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke()
+                {
+                    int index = (next.getAndIncrement() & Integer.MAX_VALUE) % flexClients.size();
+                    FlexClient flexClient = flexClients.get(index);
+                    flexClient.push(createMessage(SUBTOPIC), subscriptionManager.getSubscriber(clientIds.get(index)));
+                    return flexClient.poll(ENDPOINT_ID);
+                }
+            };
+        }
+        else if ("throttleOutgoingMessage".equals(name))
+        {
+            final ThrottleManager throttleManager = createThrottleManager();
+            final AtomicInteger next = new AtomicInteger();
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke()
+                {
+                    int index = (next.getAndIncrement() & Integer.MAX_VALUE) % clientIds.size();
+                    return throttleManager.throttleOutgoingMessage(createMessage(null), clientIds.get(index));
+                }
+            };
+        }
+        else if ("selector.match".equals(name))
+        {
+            // A JMSSelector is not thread safe, and the routing path creates one per match
+            return new BenchmarkRunner.Operation()
+            {
+                public Object invoke() throws Exception
+                {
+                    JMSSelector selector = new JMSSelector("region = 'r0' AND priority > 5");
+                    return Boolean.valueOf(selector.match(createMessage(null)));
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unknown benchmark: " + name);
+    }
+
+    /**
+     * Creates a message matched by one selector value, published to the
+     * subtopic if one is given.
+     */
+    private AsyncMessage createMessage(String subtopic)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setDestination(DESTINATION_ID);
+        message.setHeader("region", "r0");
+        message.setHeader("priority", new Integer(7));
+        if (subtopic != null)
+            message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, subtopic);
+        message.setBody("price update");
+        return message;
+    }
+
+    /**
+     * Creates a throttle manager that limits each client to a rate the
+     * benchmark exceeds, so both accepted and ignored messages are measured.
+     */
+    private ThrottleManager createThrottleManager()
+    {
+        ThrottleSettings settings = new ThrottleSettings();
+        settings.setDestinationName(DESTINATION_ID);
+        settings.setOutboundPolicy(ThrottleSettings.POLICY_IGNORE);
+        settings.setOutgoingDestinationFrequency(1000000);
+        settings.setOutgoingClientFrequency(1000);
+
+        ThrottleManager manager = new ThrottleManager();
+        manager.setThrottleSettings(settings);
+        return manager;
+    }
+
+    private static boolean matches(List<String> filter, String name)
+    {
+        if (filter.isEmpty())
+            return true;
+
+        for (String prefix : filter)
+        {
+            if (name.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    private static int[] parse(String values)
+    {
+        String[] parts = values.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            result[i] = Integer.parseInt(parts[i].trim());
+        return result;
+    }
+
+    /**
+     * An in-memory session for benchmark subscribers.
+     */
+    private static class BenchmarkSession extends NonHttpFlexSession
+    {
+        private final String id;
+
+        BenchmarkSession(String id)
+        {
+            this.id = id;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public boolean isPushSupported()
+        {
+            return false;
+        }
+    }
+}
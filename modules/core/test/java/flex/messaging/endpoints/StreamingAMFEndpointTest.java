@@ -0,0 +1,221 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.endpoints;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import flex.messaging.config.ConfigMap;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.Amf3Input;
+import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.io.amf.AmfMessageSerializer;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verifies how a streaming connection negotiates retained AMF traits: the
+ * retain-stream-traits endpoint property, the retainTraits open request
+ * parameter and the DSRetainTraits header on the connect acknowledgement.
+ */
+public class StreamingAMFEndpointTest extends TestCase
+{
+    public StreamingAMFEndpointTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(StreamingAMFEndpointTest.class);
+    }
+
+    public void testRetainTraitsDisabledByDefault() throws Exception
+    {
+        StreamingAMFEndpoint endpoint = createEndpoint(null);
+        assertFalse(endpoint.isRetainStreamTraits());
+        assertFalse(endpoint.startRetainedStream(createRequest("true")));
+
+        List chunks = stream(endpoint, new AcknowledgeMessage());
+        Message ack = (Message)read(new Amf3Input(new SerializationContext()), (byte[])chunks.get(0));
+        assertNull(ack.getHeader(StreamingAMFEndpoint.RETAIN_TRAITS_HEADER));
+    }
+
+    public void testRetainTraitsNeedsRequestParameter() throws Exception
+    {
+        StreamingAMFEndpoint endpoint = createEndpoint("true");
+        assertTrue(endpoint.isRetainStreamTraits());
+        assertFalse(endpoint.startRetainedStream(createRequest(null)));
+        assertFalse(endpoint.startRetainedStream(createRequest("false")));
+
+        List chunks = stream(endpoint, new AcknowledgeMessage());
+        Message ack = (Message)read(new Amf3Input(new SerializationContext()), (byte[])chunks.get(0));
+        assertNull(ack.getHeader(StreamingAMFEndpoint.RETAIN_TRAITS_HEADER));
+    }
+
+    public void testRetainTraitsNegotiated() throws Exception
+    {
+        StreamingAMFEndpoint endpoint = createEndpoint("true");
+        assertTrue(endpoint.startRetainedStream(createRequest("true")));
+        try
+        {
+            AsyncMessage second = createMessage("second");
+            AsyncMessage third = createMessage("third");
+            List chunks = new ArrayList();
+            chunks.addAll(stream(endpoint, new AcknowledgeMessage()));
+            chunks.addAll(stream(endpoint, second));
+            chunks.addAll(stream(endpoint, third));
+
+            Amf3Input in = new Amf3Input(new SerializationContext());
+            Message ack = (Message)read(in, (byte[])chunks.get(0));
+            assertEquals(Boolean.TRUE, ack.getHeader(StreamingAMFEndpoint.RETAIN_TRAITS_HEADER));
+
+            in.resetRetainingTraits();
+            Message readSecond = (Message)read(in, (byte[])chunks.get(1));
+            assertEquals("second", readSecond.getBody());
+            assertNull(readSecond.getHeader(StreamingAMFEndpoint.RETAIN_TRAITS_HEADER));
+
+            in.resetRetainingTraits();
+            Message readThird = (Message)read(in, (byte[])chunks.get(2));
+            assertEquals("third", readThird.getBody());
+            assertEquals("feed", readThird.getDestination());
+
+            // The third message refers to the traits sent with the second one.
+            assertTrue(((byte[])chunks.get(2)).length < encodedLength(third));
+        }
+        finally
+        {
+            endpoint.endRetainedStream();
+        }
+
+        List chunks = stream(endpoint, new AcknowledgeMessage());
+        Message ack = (Message)read(new Amf3Input(new SerializationContext()), (byte[])chunks.get(0));
+        assertNull(ack.getHeader(StreamingAMFEndpoint.RETAIN_TRAITS_HEADER));
+    }
+
+    private StreamingAMFEndpoint createEndpoint(String retainStreamTraits)
+    {
+        StreamingAMFEndpoint endpoint = new StreamingAMFEndpoint();
+        ConfigMap properties = new ConfigMap();
+        if (retainStreamTraits != null)
+            properties.addProperty("retain-stream-traits", retainStreamTraits);
+        endpoint.initialize("streaming-amf", properties);
+        // Normally done when the endpoint starts.
+        endpoint.getSerializationContext().setSerializerClass(AmfMessageSerializer.class);
+        return endpoint;
+    }
+
+    private HttpServletRequest createRequest(final String retainTraits)
+    {
+        return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {HttpServletRequest.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if ("getParameter".equals(method.getName()) && "retainTraits".equals(args[0]))
+                    return retainTraits;
+                return null;
+            }
+        });
+    }
+
+    private HttpServletResponse createResponse()
+    {
+        return (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {HttpServletResponse.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Streams one message and returns the bodies of the chunks written for it.
+     */
+    private List stream(StreamingAMFEndpoint endpoint, Message message) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ServletOutputStream os = new ServletOutputStream()
+        {
+            public void write(int b)
+            {
+                bytes.write(b);
+            }
+        };
+        endpoint.streamMessages(Collections.singletonList(message), os, createResponse());
+
+        // Each chunk is its hex length, CRLF, the bytes and CRLF.
+        List chunks = new ArrayList();
+        byte[] data = bytes.toByteArray();
+        int pos = 0;
+        while (pos < data.length)
+        {
+            int lineEnd = pos;
+            while (data[lineEnd] != '\r')
+                lineEnd++;
+            int length = Integer.parseInt(new String(data, pos, lineEnd - pos, "ASCII"), 16);
+            byte[] chunk = new byte[length];
+            System.arraycopy(data, lineEnd + 2, chunk, 0, length);
+            chunks.add(chunk);
+            pos = lineEnd + 2 + length + 2;
+        }
+        return chunks;
+    }
+
+    private Object read(Amf3Input in, byte[] chunk) throws Exception
+    {
+        in.setInputStream(new ByteArrayInputStream(chunk));
+        return in.readObject();
+    }
+
+    private int encodedLength(Message message) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(new SerializationContext());
+        out.setOutputStream(buffer);
+        out.writeObject(message);
+        out.flush();
+        return buffer.size();
+    }
+
+    private AsyncMessage createMessage(String body)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setDestination("feed");
+        message.setBody(body);
+        return message;
+    }
+}
@@ -0,0 +1,341 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.endpoints.amf;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.Executors;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+import flex.messaging.FlexContext;
+import flex.messaging.MessageBroker;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amf.MessageHeader;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class BatchProcessFilterTest extends TestCase
+{
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final String NAME_HEADER = "TestName";
+    private static final String REQUEST_URL = "http://localhost/app/messagebroker/amf";
+    private static final String SESSION_SUFFIX = ";jsessionid=abc";
+
+    private ExecutorService executor;
+    private MessageBroker broker;
+    private List events;
+    private Thread requestThread;
+
+    public BatchProcessFilterTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BatchProcessFilterTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(4);
+        broker = new MessageBroker(false);
+        FlexContext.setThreadLocalObjects(null, null, broker);
+        events = Collections.synchronizedList(new ArrayList());
+        requestThread = Thread.currentThread();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        FlexContext.clearThreadLocalObjects();
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testSequentialByDefault() throws Exception
+    {
+        ActionContext context = createContext(new Message[] {remoting("a"), remoting("b")});
+
+        invoke(new BatchProcessFilter(), context, new Recorder());
+
+        assertResponses(context, new String[] {"a", "b"});
+        assertFalse(events.contains("worker thread"));
+        assertTrue(events.indexOf("end a") < events.indexOf("start b"));
+    }
+
+    public void testRemotingCallsRunInParallel() throws Exception
+    {
+        ActionContext context = createContext(new Message[] {remoting("a"), remoting("b"), remoting("c")});
+
+        // Each call waits until all three have started, which only happens if they overlap.
+        final CountDownLatch started = new CountDownLatch(3);
+        invoke(new BatchProcessFilter(executor), context, new Recorder()
+        {
+            void call(String name) throws InterruptedException
+            {
+                started.countDown();
+                if (!started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                    events.add("no overlap");
+            }
+        });
+
+        assertResponses(context, new String[] {"a", "b", "c"});
+        assertFalse("Calls did not overlap", events.contains("no overlap"));
+        assertFalse(events.contains("wrong broker"));
+    }
+
+    public void testCommandWaitsForEarlierCalls() throws Exception
+    {
+        CommandMessage command = new CommandMessage(CommandMessage.CLIENT_PING_OPERATION);
+        command.setHeader(NAME_HEADER, "ping");
+        ActionContext context = createContext(new Message[] {remoting("a"), command, remoting("b")});
+
+        invoke(new BatchProcessFilter(executor), context, new Recorder());
+
+        assertResponses(context, new String[] {"a", "ping", "b"});
+        assertTrue(events.indexOf("end a") < events.indexOf("start ping"));
+        assertTrue(events.indexOf("end ping") < events.indexOf("start b"));
+    }
+
+    public void testNewClientIsSequential() throws Exception
+    {
+        RemotingMessage first = remoting("a");
+        first.setHeader(Message.FLEX_CLIENT_ID_HEADER, "nil");
+        ActionContext context = createContext(new Message[] {first, remoting("b")});
+
+        invoke(new BatchProcessFilter(executor), context, new Recorder());
+
+        assertResponses(context, new String[] {"a", "b"});
+        assertTrue(events.indexOf("end a") < events.indexOf("start b"));
+    }
+
+    public void testWorkersDoNotShareServletObjects() throws Exception
+    {
+        HttpServletRequest request = createRequest();
+        HttpServletResponse response = createResponse();
+        FlexContext.setThreadLocalObjects(null, null, broker, request, response, null);
+
+        ActionContext context = createContext(new Message[] {remoting("a"), remoting("b"), remoting("c")});
+
+        final CountDownLatch started = new CountDownLatch(3);
+        BatchProcessFilter filter = new BatchProcessFilter(executor);
+        SessionFilter sessionFilter = new SessionFilter();
+        filter.setNext(sessionFilter);
+        invoke(sessionFilter, context, new Recorder()
+        {
+            void call(String name) throws InterruptedException
+            {
+                started.countDown();
+                started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                events.add("header " + FlexContext.getHttpRequest().getHeader(NAME_HEADER));
+            }
+        });
+        filter.invoke(context);
+
+        assertResponses(context, new String[] {"a", "b", "c"});
+        assertFalse("Servlet objects were used concurrently", events.contains("concurrent call"));
+        assertFalse("Request URL was read on a worker thread", events.contains("getRequestURL on worker"));
+        assertFalse("URL was encoded on a worker thread", events.contains("encodeURL on worker"));
+        assertEquals(3, Collections.frequency(events, "header value"));
+
+        ActionMessage responseMessage = context.getResponseMessage();
+        assertTrue(responseMessage.getHeaderCount() > 0);
+        for (int i = 0; i < responseMessage.getHeaderCount(); i++)
+        {
+            MessageHeader header = responseMessage.getHeader(i);
+            assertEquals(MessageIOConstants.URL_APPEND_HEADER, header.getName());
+            assertEquals(SESSION_SUFFIX, header.getData());
+        }
+    }
+
+    public void testErrorInWorkerIsAnswered() throws Exception
+    {
+        RemotingMessage failing = remoting("b");
+        ActionContext context = createContext(new Message[] {remoting("a"), failing, remoting("c")});
+
+        invoke(new BatchProcessFilter(executor), context, new Recorder()
+        {
+            void call(String name)
+            {
+                if ("b".equals(name))
+                    throw new Error("boom");
+            }
+        });
+
+        ActionMessage response = context.getResponseMessage();
+        assertEquals("a", response.getBody(0).getData());
+        assertEquals("c", response.getBody(2).getData());
+        assertEquals("/2" + MessageIOConstants.STATUS_METHOD, response.getBody(1).getTargetURI());
+
+        ErrorMessage error = (ErrorMessage)response.getBody(1).getData();
+        assertEquals(failing.getMessageId(), error.getCorrelationId());
+        assertTrue(error.faultString.indexOf("boom") != -1);
+        assertEquals(MessageIOConstants.STATUS_ERR, context.getStatus());
+    }
+
+    private void invoke(BatchProcessFilter filter, ActionContext context, Recorder recorder) throws Exception
+    {
+        invoke((AMFFilter)filter, context, recorder);
+        filter.invoke(context);
+    }
+
+    private void invoke(AMFFilter filter, ActionContext context, final Recorder recorder)
+    {
+        filter.setNext(new AMFFilter()
+        {
+            public void invoke(ActionContext context)
+            {
+                Message message = (Message)((Object[])context.getRequestMessageBody().getData())[0];
+                String name = (String)message.getHeader(NAME_HEADER);
+                if (FlexContext.getMessageBroker() != broker)
+                    events.add("wrong broker");
+                if (Thread.currentThread() != requestThread)
+                    events.add("worker thread");
+                events.add("start " + name);
+                try
+                {
+                    recorder.call(name);
+                }
+                catch (InterruptedException e)
+                {
+                    // Ignore.
+                }
+                events.add("end " + name);
+                context.getResponseMessageBody().setData(name);
+            }
+        });
+    }
+
+    private HttpServletRequest createRequest()
+    {
+        return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {HttpServletRequest.class}, new ServletHandler()
+        {
+            Object answer(Method method, Object[] args)
+            {
+                if ("getRequestURL".equals(method.getName()))
+                    return new StringBuffer(REQUEST_URL);
+                if ("getHeader".equals(method.getName()) && NAME_HEADER.equals(args[0]))
+                    return "value";
+                return null;
+            }
+        });
+    }
+
+    private HttpServletResponse createResponse()
+    {
+        return (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {HttpServletResponse.class}, new ServletHandler()
+        {
+            Object answer(Method method, Object[] args)
+            {
+                if ("encodeURL".equals(method.getName()))
+                    return args[0] + SESSION_SUFFIX;
+                return null;
+            }
+        });
+    }
+
+    private ActionContext createContext(Message[] messages)
+    {
+        ActionMessage request = new ActionMessage();
+        for (int i = 0; i < messages.length; i++)
+            request.addBody(new MessageBody(null, "/" + (i + 1), new Object[] {messages[i]}));
+
+        ActionContext context = new ActionContext();
+        context.setRequestMessage(request);
+        context.setResponseMessage(new ActionMessage());
+        return context;
+    }
+
+    private RemotingMessage remoting(String name)
+    {
+        RemotingMessage message = new RemotingMessage();
+        message.setHeader(Message.FLEX_CLIENT_ID_HEADER, "client");
+        message.setHeader(NAME_HEADER, name);
+        return message;
+    }
+
+    private void assertResponses(ActionContext context, String[] expected)
+    {
+        ActionMessage response = context.getResponseMessage();
+        assertEquals(expected.length, response.getBodyCount());
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals("/" + (i + 1), response.getBody(i).getTargetURI());
+            assertEquals(expected[i], response.getBody(i).getData());
+        }
+    }
+
+    /**
+     * The work done by a call between its start and end events.
+     */
+    private static class Recorder
+    {
+        void call(String name) throws InterruptedException
+        {
+        }
+    }
+
+    /**
+     * Records servlet calls made on worker threads and calls that overlap.
+     */
+    private abstract class ServletHandler implements InvocationHandler
+    {
+        private final AtomicInteger active = new AtomicInteger();
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            if (active.incrementAndGet() > 1)
+                events.add("concurrent call");
+            try
+            {
+                if (Thread.currentThread() != requestThread)
+                    events.add(method.getName() + " on worker");
+                return answer(method, args);
+            }
+            finally
+            {
+                active.decrementAndGet();
+            }
+        }
+
+        abstract Object answer(Method method, Object[] args);
+    }
+}
@@ -0,0 +1,399 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.io;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * JUnit tests for PageableRowSetCache.
+ */
+public class PageableRowSetCacheTest extends TestCase
+{
+    private static final int ROWS = 120;
+
+    private File spillDirectory;
+
+    public PageableRowSetCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PageableRowSetCacheTest.class);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        if (spillDirectory != null)
+        {
+            File[] files = spillDirectory.listFiles();
+            for (int i = 0; files != null && i < files.length; i++)
+                files[i].delete();
+            spillDirectory.delete();
+        }
+        SerializationContext.clearThreadLocalObjects();
+        super.tearDown();
+    }
+
+    public void testPagesMatchRowSet() throws Exception
+    {
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1024 * 1024, 60000);
+        cache.setBlockSize(25);
+
+        PageableRowSet cached = cache.put(createPagedRowSet("a"));
+        Assert.assertEquals(ROWS, cached.getRowCount());
+        Assert.assertSame(cached, cache.get("a"));
+        Assert.assertEquals(2, cached.getColumnNames().length);
+
+        // Spans three blocks
+        assertPage(cached, 20, 40);
+        // Runs off the end
+        assertPage(cached, 110, 50);
+
+        Object[] rows = (Object[])cached.getRecords(ROWS + 5, 10).get(PageableRowSet.PAGE);
+        Assert.assertEquals(0, rows.length);
+    }
+
+    public void testColumnarPages() throws Exception
+    {
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1024 * 1024, 60000);
+        cache.setBlockSize(25);
+        cache.put(createPagedRowSet("a"));
+
+        Object[] rows = (Object[])cache.getPage("a", 20, 5).get(PageableRowSet.PAGE);
+        Assert.assertEquals(5, rows.length);
+
+        SerializationContext context = new SerializationContext();
+        context.columnarRowSets = true;
+        SerializationContext.setSerializationContext(context);
+
+        Map page = cache.getPage("a", 20, 10);
+        Assert.assertEquals(new Integer(20), page.get(PageableRowSet.CURSOR));
+        Object[] columns = (Object[])page.get(PageableRowSet.PAGE);
+        Assert.assertEquals(2, columns.length);
+        Object[] ids = (Object[])columns[0];
+        Object[] names = (Object[])columns[1];
+        Assert.assertEquals(10, ids.length);
+        for (int i = 0; i < ids.length; i++)
+        {
+            Assert.assertEquals(new Integer(20 + i), ids[i]);
+            Assert.assertEquals("name" + (20 + i), names[i]);
+        }
+
+        Assert.assertNull(cache.getPage("missing", 1, 10));
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception
+    {
+        PageableRowSetCache cache = new PageableRowSetCache(2, 1024 * 1024, 60000);
+        cache.put(createPagedRowSet("a"));
+        cache.put(createPagedRowSet("b"));
+        cache.get("a");
+        cache.put(createPagedRowSet("c"));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+    }
+
+    public void testExpire() throws Exception
+    {
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1024 * 1024, 1);
+        cache.put(createPagedRowSet("a"));
+        Thread.sleep(20);
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getMemoryBytes());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    public void testEvictOverMemory() throws Exception
+    {
+        PageableRowSetCache sizing = new PageableRowSetCache(10, 1024 * 1024, 60000);
+        sizing.put(createPagedRowSet("a"));
+        long resultBytes = sizing.getMemoryBytes();
+
+        PageableRowSetCache cache = new PageableRowSetCache(10, resultBytes + resultBytes / 2, 60000);
+        cache.put(createPagedRowSet("a"));
+        cache.put(createPagedRowSet("b"));
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNotNull(cache.get("b"));
+        Assert.assertEquals(resultBytes, cache.getMemoryBytes());
+    }
+
+    public void testRefuseResultLargerThanMemory() throws Exception
+    {
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1, 60000);
+        try
+        {
+            cache.put(createPagedRowSet("a"));
+            fail("SQLException expected");
+        }
+        catch (SQLException expected)
+        {
+        }
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getMemoryBytes());
+    }
+
+    public void testSpillOverMemory() throws Exception
+    {
+        createSpillDirectory();
+
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1, 60000);
+        cache.setBlockSize(50);
+        cache.setSpillDirectory(spillDirectory);
+        PageableRowSet cached = cache.put(createPagedRowSet("a"));
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(0, cache.getMemoryBytes());
+        Assert.assertEquals(3, cache.getSpillCount());
+        Assert.assertEquals(3, spillDirectory.listFiles().length);
+        assertPage(cached, 45, 10);
+
+        cache.remove("a");
+        Assert.assertEquals(0, spillDirectory.listFiles().length);
+    }
+
+    public void testSpillFilesFromEarlierRunDeleted() throws Exception
+    {
+        createSpillDirectory();
+        File leftover = new File(spillDirectory, "rowset123.block");
+        File unrelated = new File(spillDirectory, "other.txt");
+        Assert.assertTrue(leftover.createNewFile());
+        Assert.assertTrue(unrelated.createNewFile());
+
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1, 60000);
+        cache.setSpillDirectory(spillDirectory);
+
+        Assert.assertFalse(leftover.exists());
+        Assert.assertTrue(unrelated.exists());
+    }
+
+    public void testLobValuesCachedAsContent() throws Exception
+    {
+        Object[] rows = new Object[] {
+            new Object[] {new Integer(1), new SerialClob("text".toCharArray()), new SerialBlob(new byte[] {1, 2, 3})}
+        };
+
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1024 * 1024, 60000);
+        PageableRowSet cached = cache.put(new ArrayRowSet("lobs", rows));
+
+        Object[] row = (Object[])((Object[])cached.getRecords(1, 1).get(PageableRowSet.PAGE))[0];
+        Assert.assertEquals(new Integer(1), row[0]);
+        Assert.assertEquals("text", row[1]);
+        byte[] bytes = (byte[])row[2];
+        Assert.assertEquals(3, bytes.length);
+        Assert.assertEquals(3, bytes[2]);
+    }
+
+    public void testRefuseNonSerializableValues() throws Exception
+    {
+        Object[] rows = new Object[] {
+            new Object[] {new Integer(1), "one"},
+            new Object[] {new Integer(2), new Object()}
+        };
+
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1024 * 1024, 60000);
+        try
+        {
+            cache.put(new ArrayRowSet("vendor", rows));
+            fail("SQLException expected");
+        }
+        catch (SQLException expected)
+        {
+        }
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getMemoryBytes());
+    }
+
+    public void testConcurrentPages() throws Exception
+    {
+        PageableRowSetCache cache = new PageableRowSetCache(10, 1024 * 1024, 60000);
+        cache.setBlockSize(10);
+        final PageableRowSet cached = cache.put(createPagedRowSet("a"));
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int offset = t;
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < 50; i++)
+                            assertPage(cached, 1 + (offset * 7 + i) % ROWS, 15);
+                    }
+                    catch (Throwable ex)
+                    {
+                        synchronized (failures)
+                        {
+                            failures.add(ex);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (int t = 0; t < threads.length; t++)
+            threads[t].join();
+
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    private void createSpillDirectory() throws Exception
+    {
+        spillDirectory = File.createTempFile("rowsets", "");
+        spillDirectory.delete();
+        spillDirectory.mkdir();
+    }
+
+    private static void assertPage(PageableRowSet rowSet, int startIndex, int count) throws Exception
+    {
+        Map page = rowSet.getRecords(startIndex, count);
+        Assert.assertEquals(new Integer(startIndex), page.get(PageableRowSet.CURSOR));
+
+        Object[] rows = (Object[])page.get(PageableRowSet.PAGE);
+        Assert.assertEquals(Math.min(count, ROWS - startIndex + 1), rows.length);
+        for (int i = 0; i < rows.length; i++)
+        {
+            Object[] row = (Object[])rows[i];
+            Assert.assertEquals(new Integer(startIndex + i), row[0]);
+            Assert.assertEquals("name" + (startIndex + i), row[1]);
+        }
+    }
+
+    private static PagedRowSet createPagedRowSet(final String id) throws Exception
+    {
+        RowSetMetaData metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(2);
+        metaData.setColumnName(1, "id");
+        metaData.setColumnType(1, Types.INTEGER);
+        metaData.setColumnName(2, "name");
+        metaData.setColumnType(2, Types.VARCHAR);
+
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        // Rows are inserted ahead of the cursor, so add them last to first
+        for (int i = ROWS; i >= 1; i--)
+        {
+            rowSet.moveToInsertRow();
+            rowSet.updateInt(1, i);
+            rowSet.updateString(2, "name" + i);
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        rowSet.beforeFirst();
+
+        return new PagedRowSet(rowSet, 20, false)
+        {
+            public String getID()
+            {
+                return id;
+            }
+        };
+    }
+
+    /**
+     * A PageableRowSet over rows held in an array.
+     */
+    private static class ArrayRowSet implements PageableRowSet
+    {
+        private final String id;
+        private final Object[] rows;
+
+        ArrayRowSet(String id, Object[] rows)
+        {
+            this.id = id;
+            this.rows = rows;
+        }
+
+        public String[] getColumnNames()
+        {
+            return new String[] {"id", "value", "data"};
+        }
+
+        public Map getRecords(int startIndex, int count)
+        {
+            int first = Math.min(startIndex - 1, rows.length);
+            int end = Math.min(rows.length, first + count);
+            Object[] page = new Object[end - first];
+            System.arraycopy(rows, first, page, 0, page.length);
+
+            Map result = new HashMap();
+            result.put(PAGE, page);
+            result.put(CURSOR, new Integer(startIndex));
+            return result;
+        }
+
+        public int getRowCount()
+        {
+            return rows.length;
+        }
+
+        public int getInitialDownloadCount()
+        {
+            return rows.length;
+        }
+
+        public String getID()
+        {
+            return id;
+        }
+
+        public String getServiceName()
+        {
+            return null;
+        }
+
+        public void setServicename(String serviceName)
+        {
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.io;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Types;
+import java.util.Map;
+
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import flex.messaging.io.amf.Amf3Output;
+
+/**
+ * JUnit tests for the row and column layouts of PagedRowSet pages.
+ */
+public class PagedRowSetTest extends TestCase
+{
+    private static final int ROWS = 10;
+
+    public PagedRowSetTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PagedRowSetTest.class);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        SerializationContext.clearThreadLocalObjects();
+        super.tearDown();
+    }
+
+    public void testGetRecords() throws Exception
+    {
+        PagedRowSet prs = new PagedRowSet(createRowSet(-1), 5, false);
+        Assert.assertEquals(ROWS, prs.getRowCount());
+
+        Map page = prs.getRecords(3, 4);
+        Assert.assertEquals(new Integer(3), page.get(PageableRowSet.CURSOR));
+
+        Object[] rows = (Object[])page.get(PageableRowSet.PAGE);
+        Assert.assertEquals(4, rows.length);
+        Object[] row = (Object[])rows[0];
+        Assert.assertEquals(4, row.length);
+        Assert.assertEquals(new Integer(3), row[0]);
+        Assert.assertEquals("name3", row[3]);
+    }
+
+    public void testGetColumns() throws Exception
+    {
+        PagedRowSet prs = new PagedRowSet(createRowSet(-1), 5, false);
+
+        Map page = prs.getColumns(8, 5);
+        Assert.assertEquals(new Integer(8), page.get(PageableRowSet.CURSOR));
+
+        Object[] columns = (Object[])page.get(PageableRowSet.PAGE);
+        Assert.assertEquals(4, columns.length);
+
+        int[] ids = (int[])columns[0];
+        Assert.assertEquals(3, ids.length);
+        Assert.assertEquals(8, ids[0]);
+        Assert.assertEquals(10, ids[2]);
+
+        double[] amounts = (double[])columns[1];
+        Assert.assertEquals(4.0, amounts[0], 0);
+
+        boolean[] flags = (boolean[])columns[2];
+        Assert.assertTrue(flags[0]);
+        Assert.assertFalse(flags[1]);
+
+        Object[] names = (Object[])columns[3];
+        Assert.assertEquals("name10", names[2]);
+    }
+
+    public void testGetColumnsWithNull() throws Exception
+    {
+        PagedRowSet prs = new PagedRowSet(createRowSet(2), 5, false);
+
+        Object[] columns = (Object[])prs.getColumns(1, ROWS).get(PageableRowSet.PAGE);
+        Object[] ids = (Object[])columns[0];
+        Assert.assertEquals(ROWS, ids.length);
+        Assert.assertEquals(new Integer(1), ids[0]);
+        Assert.assertNull(ids[1]);
+        Assert.assertEquals(new Integer(3), ids[2]);
+    }
+
+    public void testLaterPagesMatchServerInfoLayout() throws Exception
+    {
+        PagedRowSet prs = new PagedRowSet(createRowSet(-1), 5, false);
+        PageableRowSetProxy proxy = new PageableRowSetProxy();
+
+        Map serverInfo = (Map)proxy.getValue(prs, PageableRowSetProxy.SERVER_INFO);
+        Assert.assertNull(serverInfo.get(PageableRowSetProxy.COLUMNAR));
+        Object[] rows = (Object[])PageableRowSetProxy.getPage(prs, 6, 5).get(PageableRowSet.PAGE);
+        Assert.assertEquals(5, rows.length);
+        Assert.assertEquals(new Integer(6), ((Object[])rows[0])[0]);
+
+        SerializationContext context = new SerializationContext();
+        context.columnarRowSets = true;
+        SerializationContext.setSerializationContext(context);
+
+        serverInfo = (Map)proxy.getValue(prs, PageableRowSetProxy.SERVER_INFO);
+        Assert.assertEquals(Boolean.TRUE, serverInfo.get(PageableRowSetProxy.COLUMNAR));
+        Object[] initialData = (Object[])serverInfo.get(PageableRowSetProxy.INITIAL_DATA);
+        Assert.assertEquals(5, ((int[])initialData[0]).length);
+
+        Object[] columns = (Object[])PageableRowSetProxy.getPage(prs, 6, 5).get(PageableRowSet.PAGE);
+        Assert.assertEquals(4, columns.length);
+        int[] ids = (int[])columns[0];
+        Assert.assertEquals(5, ids.length);
+        Assert.assertEquals(6, ids[0]);
+    }
+
+    public void testWriteColumnarRowSet() throws Exception
+    {
+        SerializationContext context = new SerializationContext();
+        context.columnarRowSets = true;
+        SerializationContext.setSerializationContext(context);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        out.writeObject(createRowSet(-1));
+        out.flush();
+        Assert.assertTrue(bytes.size() > 0);
+    }
+
+    /**
+     * Creates a RowSet with the given number of rows. The id column is
+     * null for the row at nullRow, if any.
+     */
+    private CachedRowSet createRowSet(int nullRow) throws Exception
+    {
+        RowSetMetaData metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        metaData.setColumnName(1, "id");
+        metaData.setColumnType(1, Types.INTEGER);
+        metaData.setColumnName(2, "amount");
+        metaData.setColumnType(2, Types.DOUBLE);
+        metaData.setColumnName(3, "flag");
+        metaData.setColumnType(3, Types.BOOLEAN);
+        metaData.setColumnName(4, "name");
+        metaData.setColumnType(4, Types.VARCHAR);
+
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        // Rows are inserted ahead of the cursor, so add them last to first
+        for (int i = ROWS; i >= 1; i--)
+        {
+            rowSet.moveToInsertRow();
+            if (i == nullRow)
+                rowSet.updateNull(1);
+            else
+                rowSet.updateInt(1, i);
+            rowSet.updateDouble(2, i / 2.0);
+            rowSet.updateBoolean(3, i % 2 == 0);
+            rowSet.updateString(4, "name" + i);
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        rowSet.beforeFirst();
+        return rowSet;
+    }
+}
@@ -0,0 +1,170 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.messages.AsyncMessage;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verifies that messages written one after another with a retained traits
+ * table send each class description once and read back with a reader that
+ * also keeps its traits.
+ */
+public class Amf3RetainedTraitsTest extends TestCase
+{
+    public Amf3RetainedTraitsTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(Amf3RetainedTraitsTest.class);
+    }
+
+    public void testLaterMessagesReferenceTraits() throws Exception
+    {
+        SerializationContext context = new SerializationContext();
+        Amf3Output out = new Amf3Output(context);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        out.setOutputStream(buffer);
+
+        out.writeObject(createMessage("first"));
+        out.flush();
+        byte[] first = buffer.toByteArray();
+
+        buffer.reset();
+        out.resetRetainingTraits();
+        out.writeObject(createMessage("second"));
+        out.flush();
+        byte[] second = buffer.toByteArray();
+
+        assertTrue("Second message should not repeat its traits", second.length < first.length);
+
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(first));
+        assertEquals("first", ((AsyncMessage)in.readObject()).getBody());
+
+        in.resetRetainingTraits();
+        in.setInputStream(new ByteArrayInputStream(second));
+        AsyncMessage read = (AsyncMessage)in.readObject();
+        assertEquals("second", read.getBody());
+        assertEquals("feed", read.getDestination());
+    }
+
+    public void testStringsAreNotRetained() throws Exception
+    {
+        SerializationContext context = new SerializationContext();
+        Amf3Output out = new Amf3Output(context);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        out.setOutputStream(buffer);
+
+        out.writeObject("repeated");
+        out.flush();
+        int firstLength = buffer.size();
+
+        buffer.reset();
+        out.resetRetainingTraits();
+        out.writeObject("repeated");
+        out.flush();
+        assertEquals(firstLength, buffer.size());
+    }
+
+    public void testAnonymousTraitsAreNotRetained() throws Exception
+    {
+        SerializationContext context = new SerializationContext();
+        Amf3Output out = new Amf3Output(context);
+        Amf3Input in = new Amf3Input(context);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        out.setOutputStream(buffer);
+
+        for (int i = 0; i < 50; i++)
+        {
+            // Every map has a different key, so every one has different traits.
+            Map body = new HashMap();
+            body.put("key" + i, new Integer(i));
+            AsyncMessage message = createMessage("ignored");
+            message.setBody(body);
+
+            buffer.reset();
+            out.resetRetainingTraits();
+            out.writeObject(message);
+            out.flush();
+
+            in.resetRetainingTraits();
+            in.setInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+            AsyncMessage read = (AsyncMessage)in.readObject();
+            assertEquals(new Integer(i), ((Map)read.getBody()).get("key" + i));
+        }
+
+        out.resetRetainingTraits();
+        in.resetRetainingTraits();
+        assertEquals(1, out.traitsTable.size());
+        assertEquals(1, in.traitsTable.size());
+    }
+
+    public void testRetainedTraitsAreCapped() throws Exception
+    {
+        SerializationContext context = new SerializationContext();
+        context.instantiateTypes = false;
+        Amf3Output out = new Amf3Output(context);
+        Amf3Input in = new Amf3Input(context);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        out.setOutputStream(buffer);
+
+        int count = Amf3Output.MAX_RETAINED_TRAITS + 20;
+        for (int i = 0; i < count; i++)
+        {
+            // Typed objects with a new key each are retainable but distinct.
+            ASObject body = new ASObject("test.Typed");
+            body.put("key" + i, new Integer(i));
+
+            buffer.reset();
+            out.resetRetainingTraits();
+            out.writeObject(body);
+            out.flush();
+
+            in.resetRetainingTraits();
+            in.setInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+            Map read = (Map)in.readObject();
+            assertEquals(new Integer(i), read.get("key" + i));
+        }
+
+        out.resetRetainingTraits();
+        in.resetRetainingTraits();
+        assertEquals(Amf3Output.MAX_RETAINED_TRAITS, out.traitsTable.size());
+        assertEquals(Amf3Output.MAX_RETAINED_TRAITS, in.traitsTable.size());
+    }
+
+    private AsyncMessage createMessage(String body)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setDestination("feed");
+        message.setBody(body);
+        return message;
+    }
+}
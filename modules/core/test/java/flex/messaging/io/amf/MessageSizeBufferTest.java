@@ -0,0 +1,151 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.MessagePerformanceInfo;
+import flex.messaging.messages.MessagePerformanceUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verifies that the message size written into an outgoing MPI header can be
+ * filled in after a single serialization pass.
+ */
+public class MessageSizeBufferTest extends TestCase
+{
+    public MessageSizeBufferTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(MessageSizeBufferTest.class);
+    }
+
+    public void testPatchedSizeMatchesSerializedSize() throws Exception
+    {
+        MessagePerformanceInfo mpio = new MessagePerformanceInfo();
+        mpio.messageSize = MessageSizeBuffer.SIZE_PLACEHOLDER;
+        mpio.sendTime = 1234L;
+
+        AcknowledgeMessage ack = new AcknowledgeMessage();
+        ack.setBody("response");
+        MessagePerformanceUtils.setMPIO(ack, mpio);
+
+        ActionMessage response = new ActionMessage(MessageIOConstants.AMF3);
+        response.addBody(new MessageBody("/1/onResult", null, ack));
+
+        SerializationContext context = new SerializationContext();
+        MessageSizeBuffer buffer = new MessageSizeBuffer();
+        AmfMessageSerializer serializer = new AmfMessageSerializer();
+        serializer.initialize(context, buffer, null);
+        serializer.writeMessage(response);
+
+        int size = buffer.size();
+        assertEquals(1, buffer.patchMessageSize(size));
+        assertEquals("Patching must not change the length", size, buffer.size());
+
+        ActionMessage request = new ActionMessage();
+        AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+        deserializer.initialize(context, new ByteArrayInputStream(buffer.toByteArray()), null);
+        deserializer.readMessage(request, new ActionContext());
+
+        Message read = (Message)request.getBody(0).getData();
+        MessagePerformanceInfo readMpio = MessagePerformanceUtils.getMPIO(read);
+        assertEquals(size, readMpio.messageSize);
+        assertEquals(1234L, readMpio.sendTime);
+    }
+
+    public void testPlaceholderValuesInPayloadAreNotPatched() throws Exception
+    {
+        MessagePerformanceInfo mpio = new MessagePerformanceInfo();
+        mpio.messageSize = MessageSizeBuffer.SIZE_PLACEHOLDER;
+
+        Double placeholder = new Double((double)MessageSizeBuffer.SIZE_PLACEHOLDER);
+        AcknowledgeMessage ack = new AcknowledgeMessage();
+        ack.setBody(new Object[] {new Long(MessageSizeBuffer.SIZE_PLACEHOLDER), placeholder});
+        ack.setHeader("userHeader", placeholder);
+        MessagePerformanceUtils.setMPIO(ack, mpio);
+
+        ActionMessage response = new ActionMessage(MessageIOConstants.AMF3);
+        response.addBody(new MessageBody("/1/onResult", null, ack));
+
+        SerializationContext context = new SerializationContext();
+        MessageSizeBuffer buffer = new MessageSizeBuffer();
+        AmfMessageSerializer serializer = new AmfMessageSerializer();
+        serializer.initialize(context, buffer, null);
+        serializer.writeMessage(response);
+
+        int size = buffer.size();
+        assertEquals("Only the MPI size should be patched", 1, buffer.patchMessageSize(size));
+
+        ActionMessage request = new ActionMessage();
+        AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+        deserializer.initialize(context, new ByteArrayInputStream(buffer.toByteArray()), null);
+        deserializer.readMessage(request, new ActionContext());
+
+        Message read = (Message)request.getBody(0).getData();
+        assertEquals(size, MessagePerformanceUtils.getMPIO(read).messageSize);
+        Object[] body = (Object[])read.getBody();
+        assertEquals(placeholder.doubleValue(), ((Number)body[0]).doubleValue(), 0);
+        assertEquals(placeholder.doubleValue(), ((Number)body[1]).doubleValue(), 0);
+        assertEquals(placeholder.doubleValue(), ((Number)read.getHeader("userHeader")).doubleValue(), 0);
+    }
+
+    public void testAmf3OutputRecordsPlaceholder() throws Exception
+    {
+        MessagePerformanceInfo mpio = new MessagePerformanceInfo();
+        mpio.messageSize = MessageSizeBuffer.SIZE_PLACEHOLDER;
+        AcknowledgeMessage ack = new AcknowledgeMessage();
+        ack.setBody(new Double((double)MessageSizeBuffer.SIZE_PLACEHOLDER));
+        MessagePerformanceUtils.setMPIO(ack, mpio);
+
+        SerializationContext context = new SerializationContext();
+        MessageSizeBuffer buffer = new MessageSizeBuffer();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(buffer);
+        out.writeObject(ack);
+        out.flush();
+        assertEquals(1, buffer.patchMessageSize(buffer.size()));
+
+        // Reusing the buffer forgets the old position.
+        buffer.reset();
+        out.reset();
+        mpio.messageSize = 10;
+        out.writeObject(ack);
+        out.flush();
+        assertEquals(0, buffer.patchMessageSize(buffer.size()));
+    }
+
+    public void testPatchWithoutPlaceholder()
+    {
+        MessageSizeBuffer buffer = new MessageSizeBuffer();
+        buffer.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9}, 0, 9);
+        assertEquals(0, buffer.patchMessageSize(9));
+        assertEquals(9, buffer.size());
+    }
+}
@@ -0,0 +1,260 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * ___________________
+ *
+ *  2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated and its
+ * suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.io.amf.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfMessageSerializer;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amf.client.exceptions.ClientStatusException;
+import flex.messaging.io.amf.client.exceptions.ServerStatusException;
+
+/**
+ * JUnit tests for PooledAMFConnection against an in-process HTTP server that
+ * echoes the first argument of each call, or fails calls to the "fail" command.
+ */
+public class PooledAMFConnectionTest extends TestCase
+{
+    private HttpServer server;
+    private String url;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final List<String> cookieHeaders = new ArrayList<String>();
+
+    public PooledAMFConnectionTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PooledAMFConnectionTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/amf", new EchoHandler());
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/amf";
+    }
+
+    protected void tearDown() throws Exception
+    {
+        server.stop(0);
+        super.tearDown();
+    }
+
+    public void testCallNoConnect()
+    {
+        PooledAMFConnection connection = new PooledAMFConnection();
+        try
+        {
+            connection.call("echo", "foo");
+            fail("ClientStatusException expected");
+        }
+        catch (ClientStatusException cse)
+        {
+            Assert.assertEquals(ClientStatusException.AMF_CALL_FAILED_CODE, cse.getCode());
+        }
+        catch (ServerStatusException sse)
+        {
+            fail("Unexpected exception: " + sse);
+        }
+    }
+
+    public void testCall() throws Exception
+    {
+        PooledAMFConnection connection = new PooledAMFConnection();
+        connection.connect(url);
+        try
+        {
+            Assert.assertEquals("foo", connection.call("echo", "foo"));
+            Assert.assertEquals("bar", connection.call("echo", "bar"));
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    public void testCallServerError() throws Exception
+    {
+        PooledAMFConnection connection = new PooledAMFConnection();
+        connection.connect(url);
+        try
+        {
+            connection.call("fail", "foo");
+            fail("ServerStatusException expected");
+        }
+        catch (ServerStatusException sse)
+        {
+            Assert.assertEquals("foo", sse.getData());
+            Assert.assertEquals(200, sse.getHttpResponseInfo().getResponseCode());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    public void testCallBatch() throws Exception
+    {
+        PooledAMFConnection connection = new PooledAMFConnection();
+        connection.connect(url);
+        try
+        {
+            Object[] results = connection.callBatch(new PooledAMFConnection.Call("echo", "one"),
+                    new PooledAMFConnection.Call("fail", "two"),
+                    new PooledAMFConnection.Call("echo", "three"));
+
+            Assert.assertEquals(1, requestCount.get());
+            Assert.assertEquals(3, results.length);
+            Assert.assertEquals("one", results[0]);
+            Assert.assertTrue(results[1] instanceof ServerStatusException);
+            Assert.assertEquals("three", results[2]);
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    public void testCookiesSentWithLaterRequests() throws Exception
+    {
+        PooledAMFConnection connection = new PooledAMFConnection();
+        connection.connect(url);
+        try
+        {
+            connection.call("echo", "foo");
+            connection.call("echo", "bar");
+        }
+        finally
+        {
+            connection.close();
+        }
+
+        synchronized (cookieHeaders)
+        {
+            Assert.assertNull(cookieHeaders.get(0));
+            Assert.assertEquals("session=abc", cookieHeaders.get(1));
+        }
+    }
+
+    public void testCallAsync() throws Exception
+    {
+        PooledAMFConnection connection = new PooledAMFConnection(4);
+        connection.connect(url);
+        try
+        {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 32; i++)
+                futures.add(connection.callAsync("echo", "value" + i));
+
+            for (int i = 0; i < 32; i++)
+                Assert.assertEquals("value" + i, futures.get(i).get());
+
+            try
+            {
+                connection.callAsync("fail", "foo").get();
+                fail("ExecutionException expected");
+            }
+            catch (ExecutionException e)
+            {
+                Assert.assertTrue(e.getCause() instanceof ServerStatusException);
+            }
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    private class EchoHandler implements HttpHandler
+    {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            requestCount.incrementAndGet();
+            synchronized (cookieHeaders)
+            {
+                cookieHeaders.add(exchange.getRequestHeaders().getFirst(AMFConnection.COOKIE));
+            }
+
+            try
+            {
+                SerializationContext context = new SerializationContext();
+                ActionMessage request = new ActionMessage();
+                ActionContext actionContext = new ActionContext();
+                actionContext.setRequestMessage(request);
+                AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+                deserializer.initialize(context, new DataInputStream(exchange.getRequestBody()), null);
+                deserializer.readMessage(request, actionContext);
+
+                ActionMessage response = new ActionMessage(request.getVersion());
+                for (int i = 0; i < request.getBodyCount(); i++)
+                {
+                    MessageBody body = request.getBody(i);
+                    Object data = body.getData();
+                    Object argument = data instanceof List ? ((List)data).get(0) : ((Object[])data)[0];
+                    String method = "fail".equals(body.getTargetURI()) ? MessageIOConstants.STATUS_METHOD : MessageIOConstants.RESULT_METHOD;
+                    response.addBody(new MessageBody(body.getResponseURI() + method, null, argument));
+                }
+
+                ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+                AmfMessageSerializer serializer = new AmfMessageSerializer();
+                serializer.initialize(context, outBuffer, null);
+                serializer.writeMessage(response);
+
+                exchange.getResponseHeaders().add(AMFConnection.SET_COOKIE, "session=abc; Path=/");
+                exchange.sendResponseHeaders(200, outBuffer.size());
+                OutputStream out = exchange.getResponseBody();
+                outBuffer.writeTo(out);
+                out.close();
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+}
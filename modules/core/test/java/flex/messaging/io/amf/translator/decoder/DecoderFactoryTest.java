@@ -0,0 +1,124 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.io.amf.translator.decoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.io.amf.translator.ASTranslator;
+import flex.messaging.io.amf.translator.TranslationException;
+
+/**
+ * Checks that cached decoder selections match what the uncached
+ * lookup would have chosen, including for typed ASObjects whose
+ * decoder depends on the instance rather than its class.
+ */
+public class DecoderFactoryTest extends TestCase
+{
+    public DecoderFactoryTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DecoderFactoryTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        DecoderFactory.clearDecoderCache();
+        SerializationContext.setSerializationContext(new SerializationContext());
+    }
+
+    protected void tearDown() throws Exception
+    {
+        DecoderFactory.clearDecoderCache();
+        SerializationContext.clearThreadLocalObjects();
+        super.tearDown();
+    }
+
+    public void testCachedDecoderIsReused()
+    {
+        ActionScriptDecoder first = DecoderFactory.getDecoder(new Integer(1), Long.TYPE);
+        ActionScriptDecoder second = DecoderFactory.getDecoder(new Integer(2), Long.TYPE);
+        Assert.assertTrue(first instanceof NumberDecoder);
+        Assert.assertSame(first, second);
+    }
+
+    public void testReferenceAwareDecoderCachedSeparately()
+    {
+        ArrayList list = new ArrayList();
+        ActionScriptDecoder shallow = DecoderFactory.getDecoder(list, Collection.class);
+        ActionScriptDecoder deep = DecoderFactory.getReferenceAwareDecoder(list, Collection.class);
+        Assert.assertFalse(shallow instanceof ReferenceAwareCollectionDecoder);
+        Assert.assertTrue(deep instanceof ReferenceAwareCollectionDecoder);
+        Assert.assertSame(shallow, DecoderFactory.getDecoder(list, Collection.class, false));
+        Assert.assertSame(deep, DecoderFactory.getDecoder(list, Collection.class, true));
+    }
+
+    public void testTypedObjectNotCached()
+    {
+        ASObject typed = new ASObject("flex.messaging.io.amf.translator.decoder.DecoderFactoryTest$Bean");
+        Assert.assertTrue(DecoderFactory.getDecoder(typed, Bean.class) instanceof TypedObjectDecoder);
+
+        try
+        {
+            DecoderFactory.getDecoder(new ASObject(), Bean.class);
+            fail("TranslationException expected");
+        }
+        catch (TranslationException ex)
+        {
+            Assert.assertEquals("Client.Message.Deserialize.InvalidType", ex.getCode());
+        }
+    }
+
+    public void testConvertMixedArrayElements()
+    {
+        List list = new ArrayList();
+        list.add(new Integer(1));
+        list.add(new Integer(2));
+        list.add(new Double(3));
+        list.add(null);
+        list.add(new Integer(5));
+
+        Object result = new ASTranslator().convert(list, Long[].class);
+        Assert.assertTrue(result instanceof Long[]);
+        Long[] longs = (Long[])result;
+        Assert.assertEquals(5, longs.length);
+        Assert.assertEquals(new Long(1), longs[0]);
+        Assert.assertEquals(new Long(2), longs[1]);
+        Assert.assertEquals(new Long(3), longs[2]);
+        Assert.assertNull(longs[3]);
+        Assert.assertEquals(new Long(5), longs[4]);
+    }
+
+    public static class Bean
+    {
+    }
+}
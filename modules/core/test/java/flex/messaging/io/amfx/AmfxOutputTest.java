@@ -0,0 +1,242 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.io.amfx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Date;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ASObject;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Compares the AMFX written by AmfxOutput with fixed expected XML for
+ * values that exercise escaping, UTF-8 encoding, number formatting and
+ * the object, string and traits reference tables.
+ */
+public class AmfxOutputTest extends TestCase
+{
+    private SerializationContext context;
+
+    public AmfxOutputTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(AmfxOutputTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = new SerializationContext();
+        SerializationContext.setSerializationContext(context);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        SerializationContext.setSerializationContext(null);
+    }
+
+    public void testEscapedStrings() throws Exception
+    {
+        assertEquals("<string>a&lt;b &amp; c>d</string>", write("a<b & c>d"));
+        assertEquals("<string>&#x0;&#x1;&#x1f;\t\n\r</string>", write("\u0000\u0001\u001F\t\n\r"));
+        assertEquals("<string>&#xfffe;&#xffff;\uFFFD</string>", write("\uFFFE\uFFFF\uFFFD"));
+        assertEquals("<string/>", write(""));
+    }
+
+    public void testNonAsciiCharacters() throws Exception
+    {
+        byte[] bytes = writeBytes("\u00E9\u4E2D");
+        byte[] expected = {'<', 's', 't', 'r', 'i', 'n', 'g', '>',
+                (byte)0xC3, (byte)0xA9,
+                (byte)0xE4, (byte)0xB8, (byte)0xAD,
+                '<', '/', 's', 't', 'r', 'i', 'n', 'g', '>'};
+        assertEquals(toHex(expected), toHex(bytes));
+    }
+
+    public void testSupplementaryCharacters() throws Exception
+    {
+        // Values escape each half of a surrogate pair...
+        assertEquals("<string>a&#xd83d;&#xde00;b&#xd83d;</string>", write("a\uD83D\uDE00b\uD83D"));
+
+        // ...while unescaped text such as trait names is written as UTF-8
+        ASObject value = new ASObject();
+        value.put("\uD83D\uDE00", new Integer(1));
+        byte[] bytes = writeBytes(value);
+        byte[] expected = {'<', 'o', 'b', 'j', 'e', 'c', 't', '>',
+                '<', 't', 'r', 'a', 'i', 't', 's', '>',
+                '<', 's', 't', 'r', 'i', 'n', 'g', '>',
+                (byte)0xF0, (byte)0x9F, (byte)0x98, (byte)0x80,
+                '<', '/', 's', 't', 'r', 'i', 'n', 'g', '>',
+                '<', '/', 't', 'r', 'a', 'i', 't', 's', '>',
+                '<', 'i', 'n', 't', '>', '1', '<', '/', 'i', 'n', 't', '>',
+                '<', '/', 'o', 'b', 'j', 'e', 'c', 't', '>'};
+        assertEquals(toHex(expected), toHex(bytes));
+    }
+
+    public void testDoubles() throws Exception
+    {
+        assertEquals("<double>42.0</double>", write(new Double(42)));
+        assertEquals("<double>-1.5</double>", write(new Double(-1.5)));
+        assertEquals("<double>0.0</double>", write(new Double(0.0)));
+        assertEquals("<double>-0.0</double>", write(new Double(-0.0)));
+        assertEquals("<double>0.1</double>", write(new Double(0.1)));
+        assertEquals("<double>9999999.0</double>", write(new Double(9999999)));
+        assertEquals("<double>1.0E7</double>", write(new Double(1.0E7)));
+        assertEquals("<double>-1.0E7</double>", write(new Double(-1.0E7)));
+        assertEquals("<double>4.9E-324</double>", write(new Double(Double.MIN_VALUE)));
+        assertEquals("<double>NaN</double>", write(new Double(Double.NaN)));
+        assertEquals("<double>Infinity</double>", write(new Double(Double.POSITIVE_INFINITY)));
+        assertEquals("<double>-Infinity</double>", write(new Double(Double.NEGATIVE_INFINITY)));
+        assertEquals("<double>-9.223372036854776E18</double>", write(new Long(Long.MIN_VALUE)));
+    }
+
+    public void testIntegers() throws Exception
+    {
+        assertEquals("<int>0</int>", write(new Integer(0)));
+        assertEquals("<int>-2147483648</int>", write(new Integer(Integer.MIN_VALUE)));
+        assertEquals("<int>2147483647</int>", write(new Integer(Integer.MAX_VALUE)));
+    }
+
+    public void testDates() throws Exception
+    {
+        Date date = new Date(1234567890123L);
+        assertEquals("<array length=\"3\"><date>1234567890123</date><ref id=\"1\"/><date>-1000</date></array>",
+                write(new Object[] {date, date, new Date(-1000)}));
+    }
+
+    public void testArrays() throws Exception
+    {
+        assertEquals("<array length=\"0\"></array>", write(new Object[0]));
+        assertEquals("<array length=\"2\"><int>1</int><int>-2</int></array>", write(new int[] {1, -2}));
+        assertEquals("<array length=\"2\"><double>1.5</double><double>NaN</double></array>",
+                write(new double[] {1.5, Double.NaN}));
+        assertEquals("<array length=\"2\"><true/><false/></array>", write(new boolean[] {true, false}));
+        assertEquals("<bytearray>000FA0FF</bytearray>", write(new byte[] {0x00, 0x0F, (byte)0xA0, (byte)0xFF}));
+        assertEquals("<string>a&amp;b</string>", write(new char[] {'a', '&', 'b'}));
+        assertEquals("<array length=\"2\"><null/><array length=\"1\"><string>x</string></array></array>",
+                write(new Object[] {null, new Object[] {"x"}}));
+    }
+
+    public void testTraitsAndReferences() throws Exception
+    {
+        ASObject first = createPoint(1, 2);
+        ASObject second = createPoint(3, 4);
+
+        String expected = "<array length=\"6\">"
+                + "<object type=\"test.Point\"><traits><string>x</string><string>y</string></traits>"
+                + "<int>1</int><int>2</int></object>"
+                + "<object type=\"test.Point\"><traits id=\"0\"/><int>3</int><int>4</int></object>"
+                + "<ref id=\"1\"/>"
+                + "<string>hello</string><string id=\"2\"/>"
+                + "<string id=\"0\"/>"
+                + "</array>";
+        assertEquals(expected, write(new Object[] {first, second, first, "hello", "hello", "x"}));
+    }
+
+    public void testEmptyAnonymousObject() throws Exception
+    {
+        assertEquals("<object><traits/></object>", write(new ASObject()));
+    }
+
+    public void testExternalizable() throws Exception
+    {
+        String expected = "<object type=\"" + ExternalizableValue.class.getName() + "\">"
+                + "<traits externalizable=\"true\" />"
+                + "<int>7</int><string>a&lt;b</string><long>-5</long><bytes>0A</bytes>"
+                + "</object>";
+        assertEquals(expected, write(new ExternalizableValue()));
+    }
+
+    public void testTextLongerThanBuffer() throws Exception
+    {
+        StringBuffer value = new StringBuffer();
+        for (int i = 0; i < 8190; i++)
+            value.append('a');
+        value.append("&\u4E2D<");
+
+        StringBuffer expected = new StringBuffer("<string>");
+        for (int i = 0; i < 8190; i++)
+            expected.append('a');
+        expected.append("&amp;\u4E2D&lt;</string>");
+
+        assertEquals(expected.toString(), write(value.toString()));
+    }
+
+    private ASObject createPoint(int x, int y)
+    {
+        ASObject point = new ASObject("test.Point");
+        point.put("x", new Integer(x));
+        point.put("y", new Integer(y));
+        return point;
+    }
+
+    private String write(Object value) throws IOException
+    {
+        return new String(writeBytes(value), "UTF-8");
+    }
+
+    private byte[] writeBytes(Object value) throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        AmfxOutput out = new AmfxOutput(context);
+        out.setOutputStream(bout);
+        out.writeObject(value);
+        return bout.toByteArray();
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < bytes.length; i++)
+        {
+            String hex = Integer.toHexString(bytes[i] & 0xFF);
+            if (hex.length() == 1)
+                sb.append('0');
+            sb.append(hex).append(' ');
+        }
+        return sb.toString();
+    }
+
+    public static class ExternalizableValue implements Externalizable
+    {
+        public void writeExternal(ObjectOutput out) throws IOException
+        {
+            out.writeInt(7);
+            out.writeUTF("a<b");
+            out.writeLong(-5);
+            out.write(new byte[] {0x0A});
+        }
+
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+        {
+        }
+    }
+}
@@ -18,6 +18,7 @@
  **************************************************************************/
 package flex.messaging.io.amfx;
 
+import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -57,6 +58,7 @@ public class AmfxSerializationTest extends TestCase
 {
     private String resourceBase = "/flex/messaging/io/amfx/";
     private String baseFilePath;
+    private ArrayList failures;
     private SerializationContext serializationContext;
     private AmfTrace trace;
 
@@ -94,12 +96,17 @@ public class AmfxSerializationTest extends TestCase
             File dir = new File(file.getParent());
 
             baseFilePath = dir.getAbsolutePath();
+            failures = new ArrayList();
 
             if (dir.isDirectory())
             {
                 String resourcePath = getResourcePath(baseFilePath);
                 processDirectory(dir, resourcePath);
             }
+
+            // Report every failed case rather than stopping at the first one
+            if (!failures.isEmpty())
+                fail(failures.size() + " AMFX test(s) failed: " + failures);
         }
         catch (IOException ioe)
         {
@@ -131,7 +138,22 @@ public class AmfxSerializationTest extends TestCase
 
                 FileInputStream fis = new FileInputStream(f);
 
-                processRequest(resourcePath, testName, fis);
+                try
+                {
+                    processRequest(resourcePath, testName, fis);
+                }
+                catch (AssertionFailedError e)
+                {
+                    failures.add(e.getMessage());
+                }
+                catch (MessageException e)
+                {
+                    failures.add(testName + " threw " + e.getMessage());
+                }
+                finally
+                {
+                    fis.close();
+                }
             }
         }
     }
@@ -0,0 +1,420 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.load;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import macromedia.qa.metrics.MetricsManager;
+
+import flex.management.runtime.LatencyHistogram;
+import flex.messaging.io.ClassAliasRegistry;
+import flex.messaging.io.amf.client.PooledAMFConnection;
+import flex.messaging.messages.AcknowledgeMessageExt;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.AsyncMessageExt;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.CommandMessageExt;
+import flex.messaging.messages.Message;
+import flex.messaging.util.UUIDUtils;
+
+/**
+ * Drives messaging load at a running broker over AMF and reports throughput
+ * and end-to-end latency percentiles, so that changes to the push path can be
+ * measured before they are rolled out.
+ *
+ * The harness runs a number of polling consumers, each with its own FlexClient
+ * and session, subscribed to a messaging destination, and a number of
+ * producers that publish to it at a fixed rate. Each message carries the time
+ * it was sent in a header; consumers record the delay until they poll it.
+ *
+ * Usage:
+ * <pre>
+ *   java flex.messaging.load.LoadHarness url destination [consumers] [producers] [seconds] [rate]
+ * </pre>
+ * where <code>url</code> is an AMF polling channel endpoint of the broker and
+ * <code>rate</code> is the number of messages each producer sends per second.
+ * When the <code>metrics.props</code> system property names a
+ * <code>MetricsDatabase</code> properties file, the results are also saved as
+ * a new run of the <code>metrics.project</code> project (default
+ * <code>blazeds-load</code>) and <code>metrics.build</code> build (default
+ * <code>dev</code>). Pointing the properties at an embedded JDBC driver keeps
+ * the run self-contained.
+ */
+public class LoadHarness
+{
+    public static final String SENT_AT_HEADER = "LoadHarnessSentAt";
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_DRAIN_MILLIS = 2000;
+
+    private final String url;
+    private final String destination;
+    private final int consumerCount;
+    private final int producerCount;
+    private final long durationMillis;
+    private final int rate;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicReference<Exception> firstError = new AtomicReference<Exception>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private long drainMillis = DEFAULT_DRAIN_MILLIS;
+    private volatile boolean producing;
+    private volatile boolean consuming;
+    private long elapsedMillis;
+
+    public LoadHarness(String url, String destination, int consumerCount, int producerCount, long durationMillis, int rate)
+    {
+        this.url = url;
+        this.destination = destination;
+        this.consumerCount = consumerCount;
+        this.producerCount = producerCount;
+        this.durationMillis = durationMillis;
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: java " + LoadHarness.class.getName()
+                    + " url destination [consumers] [producers] [seconds] [rate]");
+            System.exit(1);
+        }
+
+        int consumers = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int producers = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        int rate = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+
+        LoadHarness harness = new LoadHarness(args[0], args[1], consumers, producers, seconds * 1000L, rate);
+        harness.run();
+        harness.report(System.out);
+
+        String props = System.getProperty("metrics.props");
+        if (props != null)
+        {
+            MetricsManager metrics = new MetricsManager(System.getProperty("metrics.project", "blazeds-load"),
+                    System.getProperty("metrics.build", "dev"), new File(props));
+            harness.save(metrics);
+        }
+    }
+
+    /**
+     * Sets how long the consumers keep polling after the producers stop.
+     */
+    public void setDrainMillis(long drainMillis)
+    {
+        this.drainMillis = drainMillis;
+    }
+
+    /**
+     * Subscribes the consumers, runs the producers for the configured duration
+     * and then gives the consumers a short time to drain outstanding messages.
+     */
+    public void run() throws Exception
+    {
+        registerSmallMessageAliases();
+
+        consuming = true;
+        CountDownLatch subscribed = new CountDownLatch(consumerCount);
+        List<Thread> consumers = new ArrayList<Thread>();
+        for (int i = 0; i < consumerCount; i++)
+            consumers.add(start(new Consumer(subscribed), "LoadHarness-consumer-" + i));
+
+        if (!subscribed.await(60, TimeUnit.SECONDS))
+            throw new IllegalStateException("Consumers did not subscribe within 60 seconds.");
+
+        producing = true;
+        long start = System.currentTimeMillis();
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < producerCount; i++)
+            producers.add(start(new Producer(), "LoadHarness-producer-" + i));
+
+        Thread.sleep(durationMillis);
+        producing = false;
+        join(producers);
+
+        Thread.sleep(drainMillis);
+        consuming = false;
+        join(consumers);
+        elapsedMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Prints the results of the last run.
+     */
+    public void report(PrintStream out)
+    {
+        out.println("Consumers: " + consumerCount + ", producers: " + producerCount + ", rate: " + rate + "/s per producer");
+        out.println("Sent: " + sent.get() + ", received: " + received.get() + ", errors: " + errors.get());
+        out.println("Throughput: " + getThroughput() + " messages/s delivered");
+        LatencyHistogram.Snapshot snapshot = latencies.getSnapshot();
+        out.println("Latency ms: mean " + toMillis(snapshot.getMean())
+                + ", p50 " + toMillis(snapshot.getValueAtPercentile(50))
+                + ", p90 " + toMillis(snapshot.getValueAtPercentile(90))
+                + ", p99 " + toMillis(snapshot.getValueAtPercentile(99))
+                + ", max " + toMillis(snapshot.getMax()));
+
+        Exception error = firstError.get();
+        if (error != null)
+        {
+            out.println("First error:");
+            error.printStackTrace(out);
+        }
+    }
+
+    /**
+     * Saves the results of the last run as a new run in the metrics database.
+     */
+    public void save(MetricsManager metrics) throws Exception
+    {
+        metrics.newRun();
+        saveMetric(metrics, "load.throughput", "messages/s", getThroughput());
+        saveMetric(metrics, "load.errors", "count", errors.get());
+        LatencyHistogram.Snapshot snapshot = latencies.getSnapshot();
+        saveMetric(metrics, "load.latency.mean", "ms", toMillis(snapshot.getMean()));
+        saveMetric(metrics, "load.latency.p50", "ms", toMillis(snapshot.getValueAtPercentile(50)));
+        saveMetric(metrics, "load.latency.p90", "ms", toMillis(snapshot.getValueAtPercentile(90)));
+        saveMetric(metrics, "load.latency.p99", "ms", toMillis(snapshot.getValueAtPercentile(99)));
+        saveMetric(metrics, "load.latency.max", "ms", toMillis(snapshot.getMax()));
+    }
+
+    public double getThroughput()
+    {
+        return elapsedMillis > 0 ? received.get() * 1000.0 / elapsedMillis : 0;
+    }
+
+    public LatencyHistogram getLatencies()
+    {
+        return latencies;
+    }
+
+    public long getErrorCount()
+    {
+        return errors.get();
+    }
+
+    /**
+     * Returns the first error of the last run, or null if there was none.
+     */
+    public Exception getFirstError()
+    {
+        return firstError.get();
+    }
+
+    private void recordError(Exception e)
+    {
+        errors.incrementAndGet();
+        firstError.compareAndSet(null, e);
+    }
+
+    private static double toMillis(double nanos)
+    {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void saveMetric(MetricsManager metrics, String name, String units, double value) throws Exception
+    {
+        metrics.newMetric(name, units);
+        metrics.saveValue(metrics.createValue(value));
+    }
+
+    /**
+     * Maps the aliases of the small message forms the broker may send back to
+     * their classes, so that they deserialize as messages rather than ASObjects.
+     */
+    private static void registerSmallMessageAliases()
+    {
+        ClassAliasRegistry registry = ClassAliasRegistry.getRegistry();
+        registry.registerAlias(AcknowledgeMessageExt.CLASS_ALIAS, AcknowledgeMessageExt.class.getName());
+        registry.registerAlias(AsyncMessageExt.CLASS_ALIAS, AsyncMessageExt.class.getName());
+        registry.registerAlias(CommandMessageExt.CLASS_ALIAS, CommandMessageExt.class.getName());
+    }
+
+    private static Thread start(Runnable runnable, String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException
+    {
+        for (Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * A Flex client with its own session that sends messages to the broker the
+     * way a Flex application does, wrapped in an AMF body targeted at "null".
+     */
+    private class Client
+    {
+        private final PooledAMFConnection connection = new PooledAMFConnection(1);
+        private String flexClientId = "nil";
+
+        void connect() throws Exception
+        {
+            connection.connect(url);
+
+            CommandMessage ping = new CommandMessage(CommandMessage.CLIENT_PING_OPERATION);
+            ping.setHeader(CommandMessage.MESSAGING_VERSION, new Double(1));
+            Message ack = send(ping);
+            Object id = ack.getHeader(Message.FLEX_CLIENT_ID_HEADER);
+            if (id != null)
+                flexClientId = id.toString();
+        }
+
+        Message send(Message message) throws Exception
+        {
+            message.setHeader(Message.FLEX_CLIENT_ID_HEADER, flexClientId);
+            return (Message)connection.call("null", message);
+        }
+
+        void close()
+        {
+            connection.close();
+        }
+    }
+
+    private class Consumer implements Runnable
+    {
+        private final CountDownLatch subscribed;
+
+        Consumer(CountDownLatch subscribed)
+        {
+            this.subscribed = subscribed;
+        }
+
+        public void run()
+        {
+            Client client = new Client();
+            boolean counted = false;
+            try
+            {
+                client.connect();
+
+                CommandMessage subscribe = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+                subscribe.setDestination(destination);
+                subscribe.setClientId(UUIDUtils.createUUID());
+                client.send(subscribe);
+                subscribed.countDown();
+                counted = true;
+
+                while (consuming)
+                {
+                    CommandMessage poll = new CommandMessage(CommandMessage.POLL_OPERATION);
+                    Message reply = client.send(poll);
+                    if (!receive(reply.getBody()))
+                        Thread.sleep(POLL_INTERVAL_MILLIS);
+                }
+            }
+            catch (Exception e)
+            {
+                recordError(e);
+            }
+            finally
+            {
+                // Don't hold up the run if this consumer failed to subscribe.
+                if (!counted)
+                    subscribed.countDown();
+                client.close();
+            }
+        }
+
+        /**
+         * Records the latency of each polled message, returning false if the
+         * poll was empty.
+         */
+        private boolean receive(Object body)
+        {
+            Object[] messages = null;
+            if (body instanceof Object[])
+                messages = (Object[])body;
+            else if (body instanceof List)
+                messages = ((List)body).toArray();
+
+            if (messages == null || messages.length == 0)
+                return false;
+
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < messages.length; i++)
+            {
+                if (!(messages[i] instanceof Message))
+                    continue;
+
+                received.incrementAndGet();
+                Object sentAt = ((Message)messages[i]).getHeader(SENT_AT_HEADER);
+                if (sentAt instanceof Number)
+                    latencies.record(TimeUnit.MILLISECONDS.toNanos(now - ((Number)sentAt).longValue()));
+            }
+            return true;
+        }
+    }
+
+    private class Producer implements Runnable
+    {
+        public void run()
+        {
+            Client client = new Client();
+            try
+            {
+                client.connect();
+
+                long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(rate, 1);
+                long next = System.nanoTime();
+                while (producing)
+                {
+                    AsyncMessage message = new AsyncMessage();
+                    message.setMessageId(UUIDUtils.createUUID());
+                    message.setDestination(destination);
+                    message.setBody("load " + sent.get());
+                    message.setHeader(SENT_AT_HEADER, new Double(System.currentTimeMillis()));
+                    client.send(message);
+                    sent.incrementAndGet();
+
+                    next += intervalNanos;
+                    long sleepNanos = next - System.nanoTime();
+                    if (sleepNanos > 0)
+                        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+            catch (Exception e)
+            {
+                recordError(e);
+            }
+            finally
+            {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Runs the load harness briefly against a URL with nothing listening, to
+ * check that failed calls are counted and the run is still reported.
+ */
+public class LoadHarnessTest extends TestCase
+{
+    private static final String UNREACHABLE_URL = "http://localhost:1/messagebroker/amfpolling";
+
+    public LoadHarnessTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(LoadHarnessTest.class);
+    }
+
+    public void testUnreachableBroker() throws Exception
+    {
+        LoadHarness harness = new LoadHarness(UNREACHABLE_URL, "messaging", 2, 1, 200, 10);
+        harness.setDrainMillis(0);
+        harness.run();
+
+        Assert.assertEquals(3, harness.getErrorCount());
+        Assert.assertNotNull(harness.getFirstError());
+        Assert.assertEquals(0, harness.getLatencies().getSnapshot().getCount());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        harness.report(out);
+        out.flush();
+
+        String report = bytes.toString();
+        Assert.assertTrue(report, report.indexOf("Sent: 0, received: 0, errors: 3") != -1);
+        Assert.assertTrue(report, report.indexOf("Latency ms:") != -1);
+        Assert.assertTrue(report, report.indexOf("First error:") != -1);
+    }
+}
@@ -0,0 +1,130 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.messages;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import flex.messaging.io.ClassAliasRegistry;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.Amf3Input;
+import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.util.UUIDUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Verifies that messages written in small form keep their ids, including
+ * when the UUID bytes are derived ahead of time and shared between clones.
+ */
+public class SmallMessageTest extends TestCase
+{
+    public SmallMessageTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(SmallMessageTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        ClassAliasRegistry.getRegistry().registerAlias(AsyncMessageExt.CLASS_ALIAS, AsyncMessageExt.class.getName());
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        AsyncMessage message = createMessage();
+
+        AsyncMessage read = roundTrip(message);
+
+        assertTrue(read instanceof AsyncMessageExt);
+        assertEquals(message.getClientId(), read.getClientId());
+        assertEquals(message.getMessageId(), read.getMessageId());
+        assertEquals(message.getCorrelationId(), read.getCorrelationId());
+        assertEquals(message.getDestination(), read.getDestination());
+        assertEquals(message.getBody(), read.getBody());
+    }
+
+    public void testClonesShareCachedIdBytes() throws Exception
+    {
+        AsyncMessage message = createMessage();
+        message.cacheIdBytes();
+
+        for (int i = 0; i < 3; i++)
+        {
+            String clientId = UUIDUtils.createUUID();
+            AsyncMessage copy = (AsyncMessage)message.clone();
+            copy.setClientId(clientId, UUIDUtils.toByteArray(clientId));
+
+            AsyncMessage read = roundTrip(copy);
+            assertEquals(clientId, read.getClientId());
+            assertEquals(message.getMessageId(), read.getMessageId());
+            assertEquals(message.getCorrelationId(), read.getCorrelationId());
+        }
+    }
+
+    public void testIdChangesAfterWriteAreSerialized() throws Exception
+    {
+        AsyncMessage message = createMessage();
+        roundTrip(message);
+
+        String messageId = UUIDUtils.createUUID();
+        String correlationId = UUIDUtils.createUUID();
+        message.setMessageId(messageId);
+        message.setCorrelationId(correlationId);
+        message.setClientId("not-a-uuid");
+
+        AsyncMessage read = roundTrip(message);
+        assertEquals(messageId, read.getMessageId());
+        assertEquals(correlationId, read.getCorrelationId());
+        assertEquals("not-a-uuid", read.getClientId());
+    }
+
+    private AsyncMessage createMessage()
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId(UUIDUtils.createUUID());
+        message.setMessageId(UUIDUtils.createUUID());
+        message.setCorrelationId(UUIDUtils.createUUID());
+        message.setDestination("feed");
+        message.setTimestamp(1234L);
+        message.setBody("payload");
+        return message;
+    }
+
+    private AsyncMessage roundTrip(AsyncMessage message) throws Exception
+    {
+        SerializationContext context = new SerializationContext();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        out.writeObject(message.getSmallMessage());
+        out.flush();
+
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (AsyncMessage)in.readObject();
+    }
+}
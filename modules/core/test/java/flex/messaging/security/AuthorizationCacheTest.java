@@ -0,0 +1,127 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.security;
+
+import java.security.Principal;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.config.SecurityConstraint;
+
+public class AuthorizationCacheTest extends TestCase
+{
+    private SecurityConstraint constraint;
+
+    public AuthorizationCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(AuthorizationCacheTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        constraint = new SecurityConstraint();
+        constraint.addRole("admin");
+    }
+
+    public void testGetAndPut()
+    {
+        AuthorizationCache cache = new AuthorizationCache(10, 60000);
+        Assert.assertNull(cache.get(new TestPrincipal("alice"), constraint));
+
+        cache.put(new TestPrincipal("alice"), constraint, true);
+        cache.put(new TestPrincipal("bob"), constraint, false);
+
+        Assert.assertEquals(Boolean.TRUE, cache.get(new TestPrincipal("alice"), constraint));
+        Assert.assertEquals(Boolean.FALSE, cache.get(new TestPrincipal("bob"), constraint));
+        Assert.assertNull(cache.get(new TestPrincipal("alice"), new SecurityConstraint()));
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.0001);
+    }
+
+    public void testExpiry() throws Exception
+    {
+        AuthorizationCache cache = new AuthorizationCache(10, 1);
+        cache.put(new TestPrincipal("alice"), constraint, true);
+        Thread.sleep(20);
+        Assert.assertNull(cache.get(new TestPrincipal("alice"), constraint));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    public void testInvalidate()
+    {
+        AuthorizationCache cache = new AuthorizationCache(10, 60000);
+        SecurityConstraint other = new SecurityConstraint();
+        cache.put(new TestPrincipal("alice"), constraint, true);
+        cache.put(new TestPrincipal("alice"), other, false);
+        cache.put(new TestPrincipal("bob"), constraint, true);
+
+        cache.invalidate(new TestPrincipal("alice"));
+
+        Assert.assertNull(cache.get(new TestPrincipal("alice"), constraint));
+        Assert.assertNull(cache.get(new TestPrincipal("alice"), other));
+        Assert.assertEquals(Boolean.TRUE, cache.get(new TestPrincipal("bob"), constraint));
+    }
+
+    public void testBoundedSize()
+    {
+        AuthorizationCache cache = new AuthorizationCache(100, 60000);
+        for (int i = 0; i < 1000; i++)
+            cache.put(new TestPrincipal("user" + i), constraint, true);
+
+        Assert.assertTrue(cache.size() <= 100);
+        Assert.assertEquals(Boolean.TRUE, cache.get(new TestPrincipal("user999"), constraint));
+    }
+
+    private static class TestPrincipal implements Principal
+    {
+        private final String name;
+
+        TestPrincipal(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof TestPrincipal && name.equals(((TestPrincipal)o).name);
+        }
+
+        public int hashCode()
+        {
+            return name.hashCode();
+        }
+    }
+}
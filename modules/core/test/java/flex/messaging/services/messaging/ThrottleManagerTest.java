@@ -0,0 +1,155 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.config.ThrottleSettings;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.services.messaging.ThrottleManager.ThrottleResult;
+
+public class ThrottleManagerTest extends TestCase
+{
+    private static final String DESTINATION_ID = "ThrottleManagerTestDestination";
+
+    public ThrottleManagerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ThrottleManagerTest.class);
+    }
+
+    public void testNoPolicyNeverThrottles()
+    {
+        ThrottleManager manager = createManager(ThrottleSettings.POLICY_NONE, 1, 0);
+        AsyncMessage message = createMessage("client1");
+        for (int i = 0; i < 100; i++)
+            Assert.assertSame(ThrottleResult.OK, manager.throttleIncomingMessage(message));
+    }
+
+    public void testDestinationBurstThenError()
+    {
+        ThrottleManager manager = createManager(ThrottleSettings.POLICY_ERROR, 1, 0);
+        AsyncMessage message = createMessage("client1");
+
+        int accepted = 0;
+        ThrottleResult result = null;
+        for (int i = 0; i < 100; i++)
+        {
+            result = manager.throttleIncomingMessage(message);
+            if (result.getResultCode() != ThrottleResult.RESULT_OK)
+                break;
+            accepted++;
+        }
+        Assert.assertTrue("Burst was not limited: " + accepted, accepted > 0 && accepted < 100);
+        Assert.assertEquals(ThrottleResult.RESULT_ERROR, result.getResultCode());
+        Assert.assertNotNull(result.getException());
+        Assert.assertTrue(result.getException().getMessage().indexOf(DESTINATION_ID) != -1);
+    }
+
+    public void testIgnorePolicyReusesResult()
+    {
+        ThrottleManager manager = createManager(ThrottleSettings.POLICY_IGNORE, 1, 0);
+        AsyncMessage message = createMessage("client1");
+
+        ThrottleResult first = null;
+        ThrottleResult second = null;
+        for (int i = 0; i < 100 && second == null; i++)
+        {
+            ThrottleResult result = manager.throttleIncomingMessage(message);
+            if (result.getResultCode() == ThrottleResult.RESULT_IGNORE)
+            {
+                if (first == null)
+                    first = result;
+                else
+                    second = result;
+            }
+        }
+        Assert.assertNotNull(second);
+        Assert.assertSame(first, second);
+    }
+
+    public void testClientsAreThrottledIndependently()
+    {
+        ThrottleManager manager = createManager(ThrottleSettings.POLICY_REPLACE, 1000, 1);
+        AsyncMessage message = createMessage("client1");
+
+        ThrottleResult result = null;
+        for (int i = 0; i < 100; i++)
+        {
+            result = manager.throttleOutgoingMessage(message, "client1");
+            if (result.getResultCode() != ThrottleResult.RESULT_OK)
+                break;
+        }
+        Assert.assertEquals(ThrottleResult.RESULT_REPLACE, result.getResultCode());
+        Assert.assertEquals(ThrottleResult.RESULT_OK, manager.throttleOutgoingMessage(message, "client2").getResultCode());
+        Assert.assertEquals(2, manager.getClientThrottleMarkCount());
+
+        manager.removeClientThrottleMark("client1");
+        manager.removeClientThrottleMark("client2");
+        Assert.assertEquals(0, manager.getClientThrottleMarkCount());
+        Assert.assertEquals(ThrottleResult.RESULT_OK, manager.throttleOutgoingMessage(message, "client1").getResultCode());
+    }
+
+    public void testNullClientIdIsThrottled()
+    {
+        ThrottleManager manager = createManager(ThrottleSettings.POLICY_ERROR, 1000, 1);
+        AsyncMessage message = createMessage(null);
+
+        ThrottleResult result = null;
+        for (int i = 0; i < 100; i++)
+        {
+            result = manager.throttleIncomingMessage(message);
+            if (result.getResultCode() != ThrottleResult.RESULT_OK)
+                break;
+        }
+        Assert.assertEquals(ThrottleResult.RESULT_ERROR, result.getResultCode());
+    }
+
+    private ThrottleManager createManager(int policy, int destinationFrequency, int clientFrequency)
+    {
+        ThrottleSettings settings = new ThrottleSettings();
+        settings.setDestinationName(DESTINATION_ID);
+        if (policy != ThrottleSettings.POLICY_REPLACE)
+            settings.setInboundPolicy(policy);
+        settings.setOutboundPolicy(policy);
+        settings.setIncomingDestinationFrequency(destinationFrequency);
+        settings.setOutgoingDestinationFrequency(destinationFrequency);
+        settings.setIncomingClientFrequency(clientFrequency);
+        settings.setOutgoingClientFrequency(clientFrequency);
+
+        ThrottleManager manager = new ThrottleManager();
+        manager.setThrottleSettings(settings);
+        return manager;
+    }
+
+    private AsyncMessage createMessage(Object clientId)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId(clientId);
+        message.setDestination(DESTINATION_ID);
+        return message;
+    }
+}
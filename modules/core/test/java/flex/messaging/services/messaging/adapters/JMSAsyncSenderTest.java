@@ -0,0 +1,232 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging.adapters;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+import flex.messaging.MessageException;
+import flex.messaging.messages.AsyncMessage;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Exercises queueing, transacted batches and stopping of the async sender
+ * against a mock JMS provider.
+ */
+public class JMSAsyncSenderTest extends TestCase
+{
+    private MockJMS jms;
+    private JMSSettings settings;
+    private JMSProducerPool pool;
+    private JMSAsyncSender sender;
+
+    public JMSAsyncSenderTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(JMSAsyncSenderTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        jms = new MockJMS();
+        settings = new JMSSettings();
+        settings.setConnectionFactory(MockJMS.CONNECTION_FACTORY);
+        settings.setDestinationJNDIName(MockJMS.TOPIC);
+        settings.setMessageType(JMSConfigConstants.TEXT_MESSAGE);
+        settings.setInitialContextEnvironment(jms.createEnvironment());
+        settings.setAsyncSend(true);
+        settings.setAsyncSendQueueSize(2);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        jms.openGate();
+        if (sender != null)
+            sender.stop();
+        if (pool != null)
+            pool.stop();
+        super.tearDown();
+    }
+
+    public void testSendsQueuedMessages() throws Exception
+    {
+        start();
+        sender.send(message());
+        sender.send(message());
+
+        waitFor(2, jms.published);
+        assertEquals(2, sender.getSentCount());
+        assertEquals(0, sender.getFailedCount());
+        assertEquals(0, jms.commits.get());
+    }
+
+    public void testSendFailsWhenQueueIsFull() throws Exception
+    {
+        jms.closeGate();
+        start();
+        sender.send(message());
+        jms.awaitPublish();
+
+        sender.send(message());
+        sender.send(message());
+        assertEquals(2, sender.getQueueSize());
+        try
+        {
+            sender.send(message());
+            fail("Send should fail when the queue is full.");
+        }
+        catch (MessageException expected)
+        {
+        }
+
+        jms.openGate();
+        waitFor(3, jms.published);
+    }
+
+    public void testStopSendsQueuedMessages() throws Exception
+    {
+        jms.closeGate();
+        start();
+        sender.send(message());
+        jms.awaitPublish();
+        sender.send(message());
+        sender.send(message());
+
+        jms.openGate();
+        sender.stop();
+
+        assertEquals(3, jms.published.get());
+        assertEquals(3, sender.getSentCount());
+        assertEquals(0, sender.getFailedCount());
+        assertEquals(0, sender.getQueueSize());
+    }
+
+    public void testStopTimeoutCountsUnsentMessagesAsFailed() throws Exception
+    {
+        settings.setAsyncSendStopTimeoutMillis(100);
+        jms.closeGate();
+        start();
+        sender.send(message());
+        jms.awaitPublish();
+        sender.send(message());
+        sender.send(message());
+
+        sender.stop();
+        assertEquals(0, sender.getQueueSize());
+        assertTrue(sender.getFailedCount() >= 2);
+
+        // The interrupted publish is counted once its sender thread notices.
+        waitForFailed(3);
+        assertEquals(0, sender.getSentCount());
+        assertEquals(0, jms.published.get());
+    }
+
+    public void testSendFailsAfterStop() throws Exception
+    {
+        start();
+        sender.stop();
+        try
+        {
+            sender.send(message());
+            fail("Send should fail after the sender is stopped.");
+        }
+        catch (MessageException expected)
+        {
+        }
+        assertEquals(0, sender.getQueueSize());
+    }
+
+    public void testEachBatchIsCommittedOnce() throws Exception
+    {
+        settings.setSendBatchSize(5);
+        settings.setAsyncSendQueueSize(10);
+        jms.closeGate();
+        start();
+        sender.send(message());
+        jms.awaitPublish();
+        for (int i = 0; i < 4; i++)
+            sender.send(message());
+
+        jms.openGate();
+        sender.stop();
+
+        assertEquals(5, sender.getSentCount());
+        assertEquals(2, sender.getCommitCount());
+        assertEquals(2, jms.commits.get());
+    }
+
+    public void testFailedBatchIsRolledBack() throws Exception
+    {
+        settings.setSendBatchSize(5);
+        settings.setAsyncSendQueueSize(10);
+        jms.setFailPublish(true);
+        jms.closeGate();
+        start();
+        sender.send(message());
+        jms.awaitPublish();
+        for (int i = 0; i < 3; i++)
+            sender.send(message());
+
+        jms.openGate();
+        sender.stop();
+
+        assertEquals(0, sender.getSentCount());
+        assertEquals(4, sender.getFailedCount());
+        assertEquals(0, sender.getCommitCount());
+        assertEquals(2, jms.rollbacks.get());
+        assertEquals(2, pool.getDiscardedCount());
+    }
+
+    private void start()
+    {
+        pool = new JMSProducerPool(settings, settings.getSendBatchSize() > 1);
+        sender = new JMSAsyncSender(pool, settings);
+        sender.start();
+    }
+
+    private AsyncMessage message()
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setBody("body");
+        return message;
+    }
+
+    private void waitFor(int expected, AtomicInteger count)
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count.get() < expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(expected, count.get());
+    }
+
+    private void waitForFailed(long expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sender.getFailedCount() < expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(expected, sender.getFailedCount());
+    }
+}
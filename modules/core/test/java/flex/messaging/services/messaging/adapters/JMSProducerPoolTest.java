@@ -0,0 +1,172 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging.adapters;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+
+import flex.messaging.MessageException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Exercises borrowing, returning and discarding producers against a mock
+ * JMS provider.
+ */
+public class JMSProducerPoolTest extends TestCase
+{
+    private MockJMS jms;
+    private JMSSettings settings;
+    private JMSProducerPool pool;
+
+    public JMSProducerPoolTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(JMSProducerPoolTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        jms = new MockJMS();
+        settings = new JMSSettings();
+        settings.setConnectionFactory(MockJMS.CONNECTION_FACTORY);
+        settings.setDestinationJNDIName(MockJMS.TOPIC);
+        settings.setMessageType(JMSConfigConstants.TEXT_MESSAGE);
+        settings.setInitialContextEnvironment(jms.createEnvironment());
+        settings.setMaxProducers(2);
+        settings.setProducerBorrowTimeoutMillis(100);
+        pool = new JMSProducerPool(settings, false);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        pool.stop();
+        super.tearDown();
+    }
+
+    public void testReturnedProducerIsReused()
+    {
+        JMSProducer producer = pool.borrowProducer();
+        assertEquals(1, pool.getActiveProducerCount());
+        pool.returnProducer(producer, true);
+        assertEquals(0, pool.getActiveProducerCount());
+        assertEquals(1, pool.getIdleProducerCount());
+
+        assertSame(producer, pool.borrowProducer());
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, jms.connections.get());
+    }
+
+    public void testPoolGrowsToMaxProducers()
+    {
+        JMSProducer first = pool.borrowProducer();
+        JMSProducer second = pool.borrowProducer();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getProducerCount());
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    public void testBorrowTimesOutWhenAllProducersAreInUse()
+    {
+        pool.borrowProducer();
+        pool.borrowProducer();
+        try
+        {
+            pool.borrowProducer();
+            fail("Borrow should have timed out.");
+        }
+        catch (MessageException expected)
+        {
+        }
+        assertEquals(1, pool.getBorrowWaitCount());
+        assertEquals(1, pool.getBorrowTimeoutCount());
+        assertEquals(2, pool.getProducerCount());
+    }
+
+    public void testWaitingBorrowGetsReturnedProducer() throws Exception
+    {
+        settings.setProducerBorrowTimeoutMillis(0);
+        final JMSProducer first = pool.borrowProducer();
+        pool.borrowProducer();
+
+        final CountDownLatch borrowed = new CountDownLatch(1);
+        final JMSProducer[] waiting = new JMSProducer[1];
+        Thread borrower = new Thread()
+        {
+            public void run()
+            {
+                waiting[0] = pool.borrowProducer();
+                borrowed.countDown();
+            }
+        };
+        borrower.setDaemon(true);
+        borrower.start();
+
+        while (pool.getBorrowWaitCount() == 0)
+            Thread.sleep(5);
+        pool.returnProducer(first, true);
+        borrower.join(5000);
+
+        assertEquals(0, borrowed.getCount());
+        assertSame(first, waiting[0]);
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    public void testUnhealthyProducerIsDiscarded()
+    {
+        JMSProducer producer = pool.borrowProducer();
+        pool.returnProducer(producer, false);
+
+        assertEquals(1, pool.getDiscardedCount());
+        assertEquals(0, pool.getProducerCount());
+        assertEquals(1, jms.closedConnections.get());
+
+        assertNotSame(producer, pool.borrowProducer());
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(2, jms.connections.get());
+    }
+
+    public void testStopClosesIdleAndReturnedProducers()
+    {
+        JMSProducer idle = pool.borrowProducer();
+        JMSProducer active = pool.borrowProducer();
+        pool.returnProducer(idle, true);
+
+        pool.stop();
+        assertEquals(1, jms.closedConnections.get());
+        try
+        {
+            pool.borrowProducer();
+            fail("Borrow should fail after the pool is stopped.");
+        }
+        catch (MessageException expected)
+        {
+        }
+
+        pool.returnProducer(active, true);
+        assertEquals(2, jms.closedConnections.get());
+        assertEquals(0, pool.getProducerCount());
+    }
+}
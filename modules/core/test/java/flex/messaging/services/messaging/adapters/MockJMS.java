@@ -0,0 +1,185 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.services.messaging.adapters;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+
+import javax.jms.JMSException;
+import javax.jms.Topic;
+import javax.jms.TopicConnectionFactory;
+import javax.naming.Context;
+import javax.naming.spi.InitialContextFactory;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory JMS provider for adapter tests. The JNDI environment returned
+ * by <code>createEnvironment</code> makes the adapter's JNDI lookups return
+ * proxies of the JMS interfaces, which count connections, publishes, commits
+ * and rollbacks. Publishes can be held until <code>openGate</code> is called
+ * or made to fail.
+ */
+public class MockJMS
+{
+    static final String CONNECTION_FACTORY = "MockConnectionFactory";
+    static final String TOPIC = "MockTopic";
+
+    private static final String MOCK_JMS = "mock.jms";
+
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger closedConnections = new AtomicInteger();
+    final AtomicInteger published = new AtomicInteger();
+    final AtomicInteger commits = new AtomicInteger();
+    final AtomicInteger rollbacks = new AtomicInteger();
+
+    private final CountDownLatch publishStarted = new CountDownLatch(1);
+    private volatile CountDownLatch gate;
+    private volatile boolean failPublish;
+
+    /**
+     * Returns a JNDI environment that looks up this provider.
+     */
+    Hashtable createEnvironment()
+    {
+        Hashtable env = new Hashtable();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, ContextFactory.class.getName());
+        env.put(MOCK_JMS, this);
+        return env;
+    }
+
+    /**
+     * Holds publishes until <code>openGate</code> is called.
+     */
+    void closeGate()
+    {
+        gate = new CountDownLatch(1);
+    }
+
+    void openGate()
+    {
+        CountDownLatch current = gate;
+        gate = null;
+        if (current != null)
+            current.countDown();
+    }
+
+    void setFailPublish(boolean value)
+    {
+        failPublish = value;
+    }
+
+    /**
+     * Waits until the first publish has started.
+     */
+    void awaitPublish() throws InterruptedException
+    {
+        publishStarted.await();
+    }
+
+    private void publish() throws JMSException
+    {
+        publishStarted.countDown();
+        CountDownLatch current = gate;
+        if (current != null)
+        {
+            try
+            {
+                current.await();
+            }
+            catch (InterruptedException e)
+            {
+                throw new JMSException("Interrupted while publishing.");
+            }
+        }
+
+        if (failPublish)
+            throw new JMSException("Publish failed.");
+        published.incrementAndGet();
+    }
+
+    private Object createProxy(Class type)
+    {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {type}, new JMSHandler(type));
+    }
+
+    /**
+     * Answers the calls made on every mock JMS object.
+     */
+    private class JMSHandler implements InvocationHandler
+    {
+        private final Class type;
+
+        JMSHandler(Class type)
+        {
+            this.type = type;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if ("equals".equals(name))
+                return Boolean.valueOf(proxy == args[0]);
+            else if ("hashCode".equals(name))
+                return new Integer(System.identityHashCode(proxy));
+            else if ("toString".equals(name))
+                return "Mock " + type.getName();
+            else if ("lookup".equals(name) && CONNECTION_FACTORY.equals(args[0]))
+                return createProxy(TopicConnectionFactory.class);
+            else if ("lookup".equals(name) && TOPIC.equals(args[0]))
+                return createProxy(Topic.class);
+            else if ("createTopicConnection".equals(name))
+                connections.incrementAndGet();
+            else if ("close".equals(name) && type == javax.jms.TopicConnection.class)
+                closedConnections.incrementAndGet();
+            else if ("publish".equals(name))
+                publish();
+            else if ("commit".equals(name))
+                commits.incrementAndGet();
+            else if ("rollback".equals(name))
+                rollbacks.incrementAndGet();
+
+            Class returnType = method.getReturnType();
+            if (returnType.isInterface())
+                return createProxy(returnType);
+            else if (returnType == Long.TYPE)
+                return new Long(0);
+            else if (returnType == Integer.TYPE)
+                return new Integer(0);
+            else if (returnType == Boolean.TYPE)
+                return Boolean.FALSE;
+            return null;
+        }
+    }
+
+    /**
+     * The JNDI initial context factory named by <code>createEnvironment</code>.
+     */
+    public static class ContextFactory implements InitialContextFactory
+    {
+        public Context getInitialContext(Hashtable env)
+        {
+            MockJMS jms = (MockJMS)env.get(MOCK_JMS);
+            return (Context)jms.createProxy(Context.class);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+package flex.messaging.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class BulkheadTest extends TestCase
+{
+    public BulkheadTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BulkheadTest.class);
+    }
+
+    public void testRejectsWhenFullWithoutWaiting()
+    {
+        Bulkhead bulkhead = new Bulkhead(2, 0, 0);
+        assertTrue(bulkhead.tryEnter());
+        assertTrue(bulkhead.tryEnter());
+        assertEquals(2, bulkhead.getActiveCount());
+
+        assertFalse(bulkhead.tryEnter());
+        assertEquals(1, bulkhead.getRejectedCount());
+
+        bulkhead.exit();
+        assertTrue(bulkhead.tryEnter());
+        bulkhead.exit();
+        bulkhead.exit();
+        assertEquals(0, bulkhead.getActiveCount());
+    }
+
+    public void testWaitTimesOut()
+    {
+        Bulkhead bulkhead = new Bulkhead(1, 1, 20);
+        assertTrue(bulkhead.tryEnter());
+
+        long start = System.currentTimeMillis();
+        assertFalse(bulkhead.tryEnter());
+        assertTrue(System.currentTimeMillis() - start >= 15);
+        assertEquals(0, bulkhead.getWaitingCount());
+        assertEquals(1, bulkhead.getRejectedCount());
+    }
+
+    public void testWaiterEntersWhenPermitReleased() throws Exception
+    {
+        final Bulkhead bulkhead = new Bulkhead(1, 1, 5000);
+        assertTrue(bulkhead.tryEnter());
+
+        final boolean[] entered = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread()
+        {
+            public void run()
+            {
+                entered[0] = bulkhead.tryEnter();
+                done.countDown();
+            }
+        };
+        waiter.start();
+
+        while (bulkhead.getWaitingCount() == 0)
+            Thread.sleep(1);
+
+        // The waiting slot is taken, so a third caller is rejected at once.
+        assertFalse(bulkhead.tryEnter());
+
+        bulkhead.exit();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(entered[0]);
+        assertEquals(1, bulkhead.getActiveCount());
+        bulkhead.exit();
+    }
+}
@@ -0,0 +1,145 @@
+/*************************************************************************
+ *
+ * ADOBE CONFIDENTIAL
+ * __________________
+ *
+ *  Copyright 2008 Adobe Systems Incorporated
+ *  All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Adobe Systems Incorporated and its suppliers,
+ * if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Adobe Systems Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Adobe Systems Incorporated.
+ **************************************************************************/
+
+package flex.messaging.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+public class TimeoutManagerTest extends TestCase
+{
+    private static final long TICK_MILLIS = 10;
+
+    private TimeoutManager timeoutManager;
+
+    public TimeoutManagerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(TimeoutManagerTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        timeoutManager = new TimeoutManager(null, TICK_MILLIS, 8, 1);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        timeoutManager.shutdown();
+        super.tearDown();
+    }
+
+    public void testTimeout() throws Exception
+    {
+        TestTimeoutObject object = new TestTimeoutObject(50, 1);
+        long start = System.currentTimeMillis();
+        Future future = timeoutManager.scheduleTimeout(object);
+        assertTrue(object.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        future.get(5, TimeUnit.SECONDS);
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertNoScheduledTimeouts();
+    }
+
+    public void testTimeoutLongerThanWheel() throws Exception
+    {
+        // 8 buckets of 10 milliseconds, so the timeout has to go around the wheel a few times.
+        TestTimeoutObject object = new TestTimeoutObject(300, 1);
+        long start = System.currentTimeMillis();
+        timeoutManager.scheduleTimeout(object);
+        assertTrue(object.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 300);
+    }
+
+    public void testActiveObjectIsRescheduled() throws Exception
+    {
+        TestTimeoutObject object = new TestTimeoutObject(100, 1);
+        long start = System.currentTimeMillis();
+        timeoutManager.scheduleTimeout(object);
+        Thread.sleep(60);
+        object.updateLastUse();
+        assertTrue(object.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 160);
+    }
+
+    public void testCancelTimeout() throws Exception
+    {
+        TestTimeoutObject object = new TestTimeoutObject(50, 1);
+        Future future = timeoutManager.scheduleTimeout(object);
+        object.cancelTimeout();
+        assertTrue(future.isCancelled());
+        assertFalse(object.latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, timeoutManager.getScheduledTimeoutCount());
+    }
+
+    public void testBatchExpiryOnExpiryThreads() throws Exception
+    {
+        timeoutManager.shutdown();
+        timeoutManager = new TimeoutManager(null, TICK_MILLIS, 8, 4);
+
+        int count = 1000;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++)
+            timeoutManager.scheduleTimeout(new TestTimeoutObject(20 + (i % 5) * 10, latch));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNoScheduledTimeouts();
+    }
+
+    private void assertNoScheduledTimeouts() throws InterruptedException
+    {
+        // The count drops once timeout() has returned, which may be just after the latch opens.
+        for (int i = 0; i < 100 && timeoutManager.getScheduledTimeoutCount() > 0; i++)
+            Thread.sleep(10);
+        assertEquals(0, timeoutManager.getScheduledTimeoutCount());
+    }
+
+    static class TestTimeoutObject extends TimeoutAbstractObject
+    {
+        final CountDownLatch latch;
+
+        TestTimeoutObject(long timeoutPeriod, int count)
+        {
+            this(timeoutPeriod, new CountDownLatch(count));
+        }
+
+        TestTimeoutObject(long timeoutPeriod, CountDownLatch latch)
+        {
+            this.latch = latch;
+            setTimeoutPeriod(timeoutPeriod);
+            updateLastUse();
+        }
+
+        public void timeout()
+        {
+            latch.countDown();
+        }
+    }
+}